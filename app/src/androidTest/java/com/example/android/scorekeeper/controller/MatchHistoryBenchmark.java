@@ -0,0 +1,108 @@
+package com.example.android.scorekeeper.controller;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.scorekeeper.model.GameDefinition;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmark of the indexed queries of the match history with 100k stored matches
+ */
+@RunWith(AndroidJUnit4.class)
+public class MatchHistoryBenchmark {
+
+    private static final String TAG = "MatchHistoryBenchmark";
+    private static final String DATABASE_NAME = "match_history_benchmark.db";
+    private static final int MATCH_COUNT = 100000;
+    private static final int BATCH_SIZE = 1000;
+    private static final long DAY_MS = 24L * 60 * 60 * 1000;
+    private static final long MAX_QUERY_MS = 50;
+
+    private Context mContext;
+    private MatchHistory mHistory;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mContext.deleteDatabase(DATABASE_NAME);
+        mHistory = new MatchHistory(mContext, DATABASE_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        mHistory.close();
+        mContext.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void queries_over100kMatches() {
+        GameDefinition volleyball = GameLoader.load(mContext, "beach_volleyball.json");
+        GameDefinition snooker = GameLoader.load(mContext, "snooker.json");
+        assertNotNull(volleyball);
+        assertNotNull(snooker);
+
+        Random random = new Random(14);
+        long start = System.nanoTime();
+        long finishedAt = System.currentTimeMillis() - MATCH_COUNT * DAY_MS / 100;
+        SQLiteDatabase db = mHistory.getWritableDatabase();
+        for (int i = 0; i < MATCH_COUNT; i += BATCH_SIZE) {
+            db.beginTransaction();
+            try {
+                for (int j = 0; j < BATCH_SIZE; j++) {
+                    GameDefinition definition = random.nextBoolean() ? volleyball : snooker;
+                    int[] counts = new int[definition.getActionCount()];
+                    int[] scores = new int[definition.getTeamCount()];
+                    for (int a = 0; a < counts.length; a++) {
+                        counts[a] = random.nextInt(3) == 0 ? 0 : random.nextInt(8);
+                        for (int t = 0; t < scores.length; t++) {
+                            scores[t] += counts[a] * definition.getScoreChange(a, t);
+                        }
+                    }
+                    finishedAt += DAY_MS / 100;
+                    mHistory.record(definition, counts, scores, finishedAt);
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        }
+        Log.d(TAG, "Recorded " + MATCH_COUNT + " matches in " + (System.nanoTime() - start) / 1000000 + " ms");
+
+        long elapsed = System.nanoTime();
+        List<MatchHistory.PlayerTotal> topAces = mHistory.getTopPlayers("Beach volleyball", "Ace", 500, 10);
+        elapsed = (System.nanoTime() - elapsed) / 1000000;
+        Log.d(TAG, "Top 10 aces over the last 500 matches in " + elapsed + " ms");
+        assertFalse(topAces.isEmpty());
+        for (int i = 1; i < topAces.size(); i++) {
+            assertTrue(topAces.get(i - 1).getTotal() >= topAces.get(i).getTotal());
+        }
+        assertTrue(elapsed < MAX_QUERY_MS);
+
+        elapsed = System.nanoTime();
+        int[] scores = mHistory.getTeamScores("Snooker", "Team 1", 500);
+        elapsed = (System.nanoTime() - elapsed) / 1000000;
+        Log.d(TAG, "Scores of the team in the last 500 matches in " + elapsed + " ms");
+        assertEquals(500, scores.length);
+        assertTrue(elapsed < MAX_QUERY_MS);
+
+        elapsed = System.nanoTime();
+        long weekMatches = mHistory.getMatchCount("Snooker", finishedAt - 7 * DAY_MS, finishedAt + 1);
+        elapsed = (System.nanoTime() - elapsed) / 1000000;
+        Log.d(TAG, "Matches of the last week in " + elapsed + " ms");
+        assertTrue(weekMatches > 0 && weekMatches <= 700);
+        assertTrue(elapsed < MAX_QUERY_MS);
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.android.scorekeeper.controller;
+
+import android.util.Log;
+
+import com.example.android.scorekeeper.model.Logger;
+
+/**
+ * Logger of the model writing to the Android log
+ *
+ * @package com.example.android.scorekeeper.controller
+ * (c) 2018, Igor Korovchenko.
+ */
+
+final class AndroidLogger implements Logger {
+
+    /**
+     * Writing the debugging message to the Android log
+     *
+     * @param tag source of the message
+     * @param message text of the message
+     */
+    @Override
+    public void d(String tag, String message) {
+        Log.d(tag, message);
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.android.scorekeeper.controller;
+
+/**
+ * Pool of the read buffers shared by all loads of the games
+ *
+ * @package com.example.android.scorekeeper.controller
+ * (c) 2018, Igor Korovchenko.
+ */
+
+final class BufferPool {
+
+    /**
+     * Size of each buffer and the most count of the pooled buffers
+     */
+    static final int BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_POOLED_BUFFERS = 4;
+
+    /**
+     * Free buffers
+     */
+    private static final byte[][] sBuffers = new byte[MAX_POOLED_BUFFERS][];
+    private static int sCount;
+
+    private BufferPool() {
+    }
+
+    /**
+     * Taking the free buffer from the pool or allocating new one
+     *
+     * @return buffer of BUFFER_SIZE bytes
+     */
+    static synchronized byte[] acquire() {
+        if (sCount == 0) return new byte[BUFFER_SIZE];
+        byte[] buffer = sBuffers[--sCount];
+        sBuffers[sCount] = null;
+        return buffer;
+    }
+
+    /**
+     * Returning the buffer to the pool
+     *
+     * @param buffer buffer taken from the pool
+     */
+    static synchronized void release(byte[] buffer) {
+        if (sCount < MAX_POOLED_BUFFERS) sBuffers[sCount++] = buffer;
+    }
+}
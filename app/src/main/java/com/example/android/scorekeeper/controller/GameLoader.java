@@ -0,0 +1,219 @@
+package com.example.android.scorekeeper.controller;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.android.scorekeeper.model.GameDefinition;
+import com.example.android.scorekeeper.model.GameCodec;
+import com.example.android.scorekeeper.model.GameParser;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Loader of the games from the assets folder.
+ * Parsed definitions are compiled to the binary format and cached in the cache dir,
+ * so the next loads of the same game skip the JSON parsing.
+ * A file of the same name in the external games folder overrides the asset
+ * and is always parsed, as it can be edited while the app is running;
+ * if the edited file can't be parsed, the asset is loaded instead.
+ *
+ * @package com.example.android.scorekeeper.controller
+ * (c) 2018, Igor Korovchenko.
+ */
+
+public final class GameLoader {
+
+    /**
+     * TAG name for debugging
+     */
+    private static final String TAG = "GameLoader";
+
+    /**
+     * Folder in the cache dir for compiled games
+     */
+    private static final String CACHE_DIR = "games";
+    private static final String CACHE_EXTENSION = ".bin";
+
+    /**
+     * Folder in the external files dir for edited games
+     */
+    public static final String EXTERNAL_DIR = "games";
+
+    private GameLoader() {
+    }
+
+    /**
+     * Loading the game from the edited file, the cache or the JSON file in assets folder.
+     * The edited file which fails to parse is logged and skipped, so the game still opens.
+     *
+     * @param context context of the app
+     * @param jsonFileName file name in assets folder
+     * @return game definition or null if the asset can't be read
+     */
+    public static GameDefinition load(Context context, String jsonFileName) {
+        File externalFile = getExternalFile(context, jsonFileName);
+        if (externalFile != null) {
+            GameDefinition definition = parseFile(externalFile);
+            if (definition != null) return definition;
+            Log.d(TAG, "Edited " + jsonFileName + " is skipped, loading the asset");
+        }
+
+        long sourceStamp = getSourceStamp(context);
+        File cacheFile = new File(new File(context.getCacheDir(), CACHE_DIR), jsonFileName + CACHE_EXTENSION);
+
+        GameDefinition definition = readCache(cacheFile, sourceStamp);
+        if (definition != null) return definition;
+
+        definition = parseAsset(context, jsonFileName);
+        if (definition != null) writeCache(cacheFile, GameCodec.encode(definition, sourceStamp));
+        return definition;
+    }
+
+    /**
+     * Parsing the JSON file in assets folder. The file is read in chunks
+     * into the pooled buffer and decoded by the parser on the fly.
+     *
+     * @param context context of the app
+     * @param jsonFileName file name in assets folder
+     * @return game definition or null if the asset can't be read
+     */
+    private static GameDefinition parseAsset(Context context, String jsonFileName) {
+        long start = SystemClock.elapsedRealtime();
+        byte[] buffer = BufferPool.acquire();
+        try {
+            InputStream inputStream = context.getAssets().open(jsonFileName);
+            try {
+                GameParser parser = new GameParser(inputStream, buffer);
+                GameDefinition definition = parser.parse();
+                Log.d(TAG, "Parsed " + jsonFileName + ": " + parser.getBytesRead() + " bytes in "
+                        + (SystemClock.elapsedRealtime() - start) + " ms");
+                return definition;
+            } finally {
+                inputStream.close();
+            }
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            return null;
+        } finally {
+            BufferPool.release(buffer);
+        }
+    }
+
+    /**
+     * Getting the edited game from the external games folder
+     *
+     * @param context context of the app
+     * @param jsonFileName file name in assets folder
+     * @return external file or null if the game is not edited
+     */
+    private static File getExternalFile(Context context, String jsonFileName) {
+        File dir = context.getExternalFilesDir(EXTERNAL_DIR);
+        if (dir == null) return null;
+        File file = new File(dir, jsonFileName);
+        return file.isFile() ? file : null;
+    }
+
+    /**
+     * Parsing the edited JSON file of the external games folder
+     *
+     * @param file JSON file of the game
+     * @return game definition or null if the file can't be parsed
+     */
+    private static GameDefinition parseFile(File file) {
+        try {
+            InputStream inputStream = new FileInputStream(file);
+            try {
+                GameDefinition definition = GameParser.parse(inputStream);
+                Log.d(TAG, "Parsed edited " + file.getName());
+                return definition;
+            } finally {
+                inputStream.close();
+            }
+        } catch (IOException e) {
+            Log.d(TAG, "Can't parse edited " + file.getName() + ": " + e);
+            return null;
+        } catch (RuntimeException e) {
+            // the edited file is not validated by the build, so any error of the parser falls back to the asset
+            Log.d(TAG, "Can't parse edited " + file.getName() + ": " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Getting stamp of the assets. Assets can be changed only with the update of the app,
+     * so the time of the last update identifies their content.
+     *
+     * @param context context of the app
+     * @return stamp of the assets
+     */
+    private static long getSourceStamp(Context context) {
+        try {
+            return context.getPackageManager().getPackageInfo(context.getPackageName(), 0).lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Reading the compiled game with one memory-mapped read
+     *
+     * @param cacheFile file with the compiled game
+     * @param sourceStamp stamp of the current assets
+     * @return game definition or null if there is no valid compiled game
+     */
+    private static GameDefinition readCache(File cacheFile, long sourceStamp) {
+        if (!cacheFile.isFile()) return null;
+        long start = SystemClock.elapsedRealtime();
+        try {
+            FileInputStream inputStream = new FileInputStream(cacheFile);
+            try {
+                FileChannel channel = inputStream.getChannel();
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (GameCodec.readSourceStamp(buffer) == sourceStamp) {
+                    GameDefinition definition = GameCodec.decode(buffer);
+                    Log.d(TAG, "Loaded " + cacheFile.getName() + ": " + buffer.capacity() + " bytes in "
+                            + (SystemClock.elapsedRealtime() - start) + " ms");
+                    return definition;
+                }
+            } finally {
+                inputStream.close();
+            }
+        } catch (IOException e) {
+            Log.d(TAG, e.getLocalizedMessage());
+        }
+        if (!cacheFile.delete()) Log.d(TAG, "Can't delete stale " + cacheFile);
+        return null;
+    }
+
+    /**
+     * Writing the compiled game. The file is replaced atomically,
+     * so a partially written file is never read.
+     *
+     * @param cacheFile file for the compiled game
+     * @param data compiled game
+     */
+    private static void writeCache(File cacheFile, byte[] data) {
+        File dir = cacheFile.getParentFile();
+        File tempFile = new File(dir, cacheFile.getName() + ".tmp");
+        try {
+            if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Can't create " + dir);
+            FileOutputStream outputStream = new FileOutputStream(tempFile);
+            try {
+                outputStream.write(data);
+            } finally {
+                outputStream.close();
+            }
+            if (!tempFile.renameTo(cacheFile)) throw new IOException("Can't rename " + tempFile);
+        } catch (IOException e) {
+            Log.d(TAG, e.getLocalizedMessage());
+        }
+    }
+}
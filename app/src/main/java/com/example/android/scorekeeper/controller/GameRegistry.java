@@ -0,0 +1,105 @@
+package com.example.android.scorekeeper.controller;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.example.android.scorekeeper.model.Game;
+import com.example.android.scorekeeper.model.GameDefinition;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Registry of the game definitions preloaded in parallel on the background executor.
+ * Selecting a game only creates a new match of the already parsed immutable definition.
+ *
+ * @package com.example.android.scorekeeper.controller
+ * (c) 2018, Igor Korovchenko.
+ */
+
+public class GameRegistry {
+
+    /**
+     * TAG name for debugging
+     */
+    private static final String TAG = "GameRegistry";
+
+    /**
+     * Executor for loading of the games
+     */
+    private final ExecutorService mExecutor;
+
+    /**
+     * Parsed definitions by file names
+     */
+    private final HashMap<String, Future<GameDefinition>> mGames = new HashMap<>();
+
+    /**
+     * Constructor of the registry, which starts loading of all games
+     *
+     * @param context context of the app
+     * @param jsonFileNames file names of the games in assets folder
+     */
+    public GameRegistry(Context context, List<String> jsonFileNames) {
+        final Context appContext = context.getApplicationContext();
+        int threads = Math.max(1, Math.min(jsonFileNames.size(), Runtime.getRuntime().availableProcessors()));
+        mExecutor = Executors.newFixedThreadPool(threads);
+        for (final String jsonFileName : jsonFileNames) {
+            mGames.put(jsonFileName, mExecutor.submit(new Callable<GameDefinition>() {
+                @Override
+                public GameDefinition call() {
+                    return GameLoader.load(appContext, jsonFileName);
+                }
+            }));
+        }
+    }
+
+    /**
+     * Creating new match of the game with zero counters
+     *
+     * @param jsonFileName file name of the game in assets folder
+     * @return game model or null if the game can't be loaded
+     */
+    public Game newGame(String jsonFileName) {
+        try {
+            GameDefinition definition = mGames.get(jsonFileName).get();
+            return definition == null ? null : new Game(definition);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Log.d(TAG, e.getLocalizedMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Replacing the definition of the game, e.g. after its file is edited.
+     * Matches created before keep the old definition.
+     *
+     * @param jsonFileName file name of the game in assets folder
+     * @param definition new definition of the game
+     */
+    public void replaceDefinition(String jsonFileName, final GameDefinition definition) {
+        FutureTask<GameDefinition> loaded = new FutureTask<>(new Callable<GameDefinition>() {
+            @Override
+            public GameDefinition call() {
+                return definition;
+            }
+        });
+        loaded.run();
+        mGames.put(jsonFileName, loaded);
+    }
+
+    /**
+     * Stopping loading of the games
+     */
+    public void shutdown() {
+        mExecutor.shutdownNow();
+    }
+}
@@ -3,30 +3,76 @@ package com.example.android.scorekeeper.controller;
 import android.support.annotation.NonNull;
 import android.support.v7.app.AppCompatActivity;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
 import android.widget.AdapterView;
 import android.widget.ArrayAdapter;
 import android.widget.Button;
+import android.widget.FrameLayout;
 import android.widget.ListView;
 import android.widget.ScrollView;
 import android.widget.TextView;
+import android.widget.Toast;
 
 import com.example.android.scorekeeper.R;
+import com.example.android.scorekeeper.model.DefinitionMigration;
+import com.example.android.scorekeeper.model.DefinitionWatcher;
+import com.example.android.scorekeeper.model.Game;
+import com.example.android.scorekeeper.model.GameDefinition;
+import com.example.android.scorekeeper.model.MatchBroadcaster;
+import com.example.android.scorekeeper.model.MatchLog;
+import com.example.android.scorekeeper.model.MatchRules;
+import com.example.android.scorekeeper.model.MatchStateCodec;
+import com.example.android.scorekeeper.model.MatchSubscriber;
+import com.example.android.scorekeeper.model.ModelLog;
 import com.example.android.scorekeeper.view.GameLinearLayout;
+import com.example.android.scorekeeper.view.GameRecyclerLayout;
+import com.example.android.scorekeeper.view.GameView;
 
-import java.util.ArrayList;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 public class MainActivity extends AppCompatActivity {
 
+    /**
+     * TAG name for debugging
+     */
+    private static final String TAG = "MainActivity";
+
     /**
      * Keys for Bundle state saving
      */
     static final String STATE_SELECTED_GAME = "selectedGameState";
     static final String STATE_GAME_STATE = "gameModelCurrentState";
-    static final String STATE_LAST_PRESSED_BUTTON_ID = "lastButtonIdState";
+
+    /**
+     * Folder in the files dir for the logs of the matches
+     */
+    private static final String MATCHES_DIR = "matches";
+
+    /**
+     * Port of the live sync of the match and the extras of the launching intent. The device started
+     * with the host of the scoring device shows the match of that device; the device started
+     * with the numeric local address shares its match to the displays on that address.
+     * The live sync is off without the extras.
+     */
+    private static final int SYNC_PORT = 47800;
+    static final String EXTRA_SYNC_HOST = "sync_host";
+    static final String EXTRA_SYNC_BROADCAST = "sync_broadcast";
+
+    /**
+     * Period of the checks of the edited games
+     */
+    private static final long RELOAD_PERIOD_MS = 1000;
 
     /**
      * Chosen game
@@ -36,7 +82,12 @@ public class MainActivity extends AppCompatActivity {
     /**
      * GameLinearLayout id
      */
-    private int GAME_LINEAR_LAYOUT_ID = 999;
+    private static final int GAME_LINEAR_LAYOUT_ID = R.id.game_layout;
+
+    /**
+     * Games with more actions are shown by the virtualised GameRecyclerLayout
+     */
+    private static final int VIRTUALISED_ACTION_COUNT = 64;
 
     /**
      * Games' names
@@ -48,6 +99,37 @@ public class MainActivity extends AppCompatActivity {
      */
     private List<String> mGameFiles;
 
+    /**
+     * Games preloaded on the background
+     */
+    private GameRegistry mGameRegistry;
+
+    /**
+     * Store of the finished matches
+     */
+    private MatchHistory mMatchHistory;
+
+    /**
+     * Record of the game of the match in progress for recovery
+     */
+    private MatchInProgress mMatchInProgress;
+
+    /**
+     * Log of the match in progress
+     */
+    private MatchLog mMatchLog;
+
+    /**
+     * Live sync of the match: broadcaster of the scoring device or subscriber of the display
+     */
+    private MatchBroadcaster mMatchBroadcaster;
+    private MatchSubscriber mMatchSubscriber;
+
+    /**
+     * Watcher of the edited games, null if the external storage is not available
+     */
+    private DefinitionWatcher mDefinitionWatcher;
+
     /**
      * One of main methods of the activity
      * @param savedInstanceState saved state of the activity
@@ -55,6 +137,7 @@ public class MainActivity extends AppCompatActivity {
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        ModelLog.setLogger(new AndroidLogger());
         setContentView(R.layout.activity_main);
 
         mGameAdapter = new ArrayAdapter<String>(
@@ -73,8 +156,32 @@ public class MainActivity extends AppCompatActivity {
         };
 
         mGameFiles = Arrays.asList(getResources().getStringArray(R.array.game_files));
+        mGameRegistry = new GameRegistry(this, mGameFiles);
+        mMatchHistory = new MatchHistory(this);
+        // the interrupted match is read before the setup of the selector records that no match is in progress
+        mMatchInProgress = new MatchInProgress(getPreferences(MODE_PRIVATE), mGameFiles.size());
+        startDefinitionWatcher();
 
         setupGameSelector();
+        if (savedInstanceState == null) {
+            recoverMatchInProgress();
+        }
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        if (mMatchLog != null) mMatchLog.flush();
+    }
+
+    @Override
+    protected void onDestroy() {
+        closeMatchLog();
+        closeMatchSync();
+        if (mDefinitionWatcher != null) mDefinitionWatcher.close();
+        mMatchHistory.close();
+        mGameRegistry.shutdown();
+        super.onDestroy();
     }
 
     /**
@@ -86,9 +193,8 @@ public class MainActivity extends AppCompatActivity {
     public void onSaveInstanceState(Bundle savedInstanceState) {
         savedInstanceState.putInt(STATE_SELECTED_GAME, mSelectedGame);
         if ((findViewById(R.id.parent_view)).getVisibility() == View.VISIBLE) {
-            GameLinearLayout gameLayout = findViewById(GAME_LINEAR_LAYOUT_ID);
-            savedInstanceState.putIntegerArrayList(STATE_GAME_STATE, gameLayout.getGameModelCurrentState());
-            savedInstanceState.putInt(STATE_LAST_PRESSED_BUTTON_ID, gameLayout.getLastActionId());
+            GameView gameLayout = (GameView) findViewById(GAME_LINEAR_LAYOUT_ID);
+            savedInstanceState.putByteArray(STATE_GAME_STATE, MatchStateCodec.encode(gameLayout.getGame()));
         }
 
         // Always call the superclass so it can save the view hierarchy state
@@ -101,13 +207,14 @@ public class MainActivity extends AppCompatActivity {
 
         // Restore state members from saved instance
         mSelectedGame = savedInstanceState.getInt(STATE_SELECTED_GAME);
-        if (mSelectedGame >= 0) {
-            ArrayList<Integer> savedStates = savedInstanceState.getIntegerArrayList(STATE_GAME_STATE);
-            inflateGameLayout(mGameFiles.get(mSelectedGame));
-            GameLinearLayout gameLayout = findViewById(GAME_LINEAR_LAYOUT_ID);
-            gameLayout.setGameModelCurrentState(savedStates);
+        if (mSelectedGame >= 0 && inflateGameLayout(mGameFiles.get(mSelectedGame), false)) {
+            GameView gameLayout = (GameView) findViewById(GAME_LINEAR_LAYOUT_ID);
+            try {
+                MatchStateCodec.decode(savedInstanceState.getByteArray(STATE_GAME_STATE), gameLayout.getGame());
+            } catch (IOException e) {
+                Log.d(TAG, e.getLocalizedMessage());
+            }
             gameLayout.updateCaptions();
-            gameLayout.setLastActionId(savedInstanceState.getInt(STATE_LAST_PRESSED_BUTTON_ID));
         }
     }
 
@@ -117,6 +224,7 @@ public class MainActivity extends AppCompatActivity {
      * @param view current view
      */
     public void onResetGame(View view) {
+        recordMatch();
         setupGameSelector();
     }
 
@@ -126,7 +234,16 @@ public class MainActivity extends AppCompatActivity {
      * @param view current view
      */
     public void onResetScores(View view) {
-        inflateGameLayout(mGameFiles.get(mSelectedGame));
+        recordMatch();
+        ((GameView) findViewById(GAME_LINEAR_LAYOUT_ID)).resetScores();
+    }
+
+    /**
+     * Recording the shown match to the history before it is reset
+     */
+    private void recordMatch() {
+        GameView gameLayout = (GameView) findViewById(GAME_LINEAR_LAYOUT_ID);
+        if (gameLayout != null) mMatchHistory.recordInBackground(gameLayout.getGame());
     }
 
     /**
@@ -135,11 +252,29 @@ public class MainActivity extends AppCompatActivity {
      * @param view current view
      */
     public void onUndo(View view) {
-        ((GameLinearLayout) findViewById(GAME_LINEAR_LAYOUT_ID)).undoLastAction();
+        ((GameView) findViewById(GAME_LINEAR_LAYOUT_ID)).undoLastAction();
+    }
+
+    /**
+     * Actions due to clicking button "Redo"
+     *
+     * @param view current view
+     */
+    public void onRedo(View view) {
+        ((GameView) findViewById(GAME_LINEAR_LAYOUT_ID)).redoLastAction();
     }
 
     /**
-     * Setup ListView (child of the parent's ScrollView) for selection of the game
+     * Actions due to clicking button "End set"
+     *
+     * @param view current view
+     */
+    public void onEndSet(View view) {
+        ((GameView) findViewById(GAME_LINEAR_LAYOUT_ID)).endSet();
+    }
+
+    /**
+     * Setup ListView for selection of the game
      */
     private void setupGameSelector() {
         String activityTitle =
@@ -147,14 +282,179 @@ public class MainActivity extends AppCompatActivity {
                 + " - "
                 + getResources().getString(R.string.first_selection);
         setTitle(activityTitle);
-        ScrollView parentView = findViewById(R.id.parent_view);
+        FrameLayout parentView = findViewById(R.id.parent_view);
         parentView.setVisibility(View.GONE);
         parentView.removeAllViews();
         ListView gameSelector = findViewById(R.id.game_selector);
         gameSelector.setVisibility(View.VISIBLE);
         enableGameButtons(false);
+        findViewById(R.id.button_end_set).setVisibility(View.GONE);
         inflateGameSelector(gameSelector);
         mSelectedGame = -1;
+        closeMatchLog();
+        closeMatchSync();
+        saveMatchInProgress();
+    }
+
+    /**
+     * Recovering the match which was in progress when the app process was killed
+     */
+    private void recoverMatchInProgress() {
+        int selectedGame = mMatchInProgress.getRecoverableGame();
+        if (selectedGame >= 0) {
+            mSelectedGame = selectedGame;
+            if (inflateGameLayout(mGameFiles.get(selectedGame), true)) {
+                ((GameView) findViewById(GAME_LINEAR_LAYOUT_ID)).updateCaptions();
+            }
+        }
+    }
+
+    /**
+     * Saving the game of the match in progress for recovery
+     */
+    private void saveMatchInProgress() {
+        mMatchInProgress.save(mSelectedGame);
+    }
+
+    /**
+     * Starting the log of the match, continuing the recovered match if required
+     *
+     * @param jsonFileName file name of the game info as JSON object
+     * @param game game of the match
+     * @param recover true if the match is recovered from its log
+     */
+    private void openMatchLog(String jsonFileName, Game game, boolean recover) {
+        closeMatchLog();
+        File dir = new File(getFilesDir(), MATCHES_DIR);
+        if (recover) MatchLog.recover(dir, jsonFileName, game);
+        mMatchLog = new MatchLog(dir, jsonFileName, game);
+        game.addMatchListener(mMatchLog);
+        saveMatchInProgress();
+    }
+
+    /**
+     * Writing the buffered changes and closing the log of the match
+     */
+    private void closeMatchLog() {
+        if (mMatchLog == null) return;
+        mMatchLog.close();
+        mMatchLog = null;
+    }
+
+    /**
+     * Starting the live sync of the match: subscribing to the scoring device
+     * if the activity is started with its host, broadcasting the match on the local address
+     * if the activity is started with it
+     *
+     * @param game game of the match
+     */
+    private void openMatchSync(Game game) {
+        closeMatchSync();
+        String syncHost = getIntent().getStringExtra(EXTRA_SYNC_HOST);
+        if (syncHost != null) {
+            final Handler handler = new Handler(Looper.getMainLooper());
+            mMatchSubscriber = new MatchSubscriber(game, syncHost, SYNC_PORT, new Executor() {
+                @Override
+                public void execute(final Runnable command) {
+                    handler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            command.run();
+                            GameView gameLayout = (GameView) findViewById(GAME_LINEAR_LAYOUT_ID);
+                            if (gameLayout != null) gameLayout.updateCaptions();
+                        }
+                    });
+                }
+            });
+            mMatchSubscriber.start();
+            return;
+        }
+        String syncAddress = getIntent().getStringExtra(EXTRA_SYNC_BROADCAST);
+        // only the numeric address, so the main thread doesn't look up the name
+        if (syncAddress == null || !syncAddress.matches("[0-9A-Fa-f.:]+")) return;
+        try {
+            mMatchBroadcaster = new MatchBroadcaster(game, InetAddress.getByName(syncAddress), SYNC_PORT);
+            game.addMatchListener(mMatchBroadcaster);
+            Log.d(TAG, "Broadcasting the match on " + syncAddress + ":" + SYNC_PORT);
+            Toast.makeText(this, getResources().getString(R.string.sync_broadcasting, syncAddress, SYNC_PORT),
+                    Toast.LENGTH_LONG).show();
+        } catch (IOException e) {
+            Log.d(TAG, "Can't broadcast the match: " + e.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * Stopping the live sync of the match
+     */
+    private void closeMatchSync() {
+        if (mMatchBroadcaster != null) {
+            mMatchBroadcaster.close();
+            mMatchBroadcaster = null;
+        }
+        if (mMatchSubscriber != null) {
+            mMatchSubscriber.close();
+            mMatchSubscriber = null;
+        }
+    }
+
+    /**
+     * Starting the watcher of the games edited in the external games folder
+     */
+    private void startDefinitionWatcher() {
+        File dir = getExternalFilesDir(GameLoader.EXTERNAL_DIR);
+        if (dir == null) return;
+        final Handler handler = new Handler(Looper.getMainLooper());
+        mDefinitionWatcher = new DefinitionWatcher(dir, RELOAD_PERIOD_MS, new DefinitionWatcher.Listener() {
+            @Override
+            public void onDefinitionChanged(final String fileName, final GameDefinition definition) {
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        reloadGame(fileName, definition);
+                    }
+                });
+            }
+        });
+        mDefinitionWatcher.start();
+    }
+
+    /**
+     * Replacing the definition of the edited game. The shown match of the game
+     * is migrated to the new definition and its layout is updated in place.
+     *
+     * @param jsonFileName file name of the game info as JSON object
+     * @param definition new definition of the game
+     */
+    private void reloadGame(String jsonFileName, GameDefinition definition) {
+        if (isDestroyed() || !mGameFiles.contains(jsonFileName)) return;
+        mGameRegistry.replaceDefinition(jsonFileName, definition);
+        if (mSelectedGame < 0 || !mGameFiles.get(mSelectedGame).equals(jsonFileName)) return;
+        GameView gameLayout = (GameView) findViewById(GAME_LINEAR_LAYOUT_ID);
+        if (gameLayout == null) return;
+        Game oldGame = gameLayout.getGame();
+        if (oldGame.getDefinition().getFingerprint() == definition.getFingerprint()) return;
+        long start = SystemClock.elapsedRealtime();
+        DefinitionMigration migration = new DefinitionMigration(oldGame.getDefinition(), definition);
+        Game game = new Game(definition);
+        migration.migrate(oldGame, game);
+        openMatchLog(jsonFileName, game, false);
+        openMatchSync(game);
+        gameLayout.reloadGame(game, migration);
+        showGameTitle(game);
+        Log.d(TAG, "Reloaded " + jsonFileName + " in " + (SystemClock.elapsedRealtime() - start) + " ms");
+    }
+
+    /**
+     * Showing the name of the game in the title and the button of the manual sets if the rules have them
+     *
+     * @param game game of the match
+     */
+    private void showGameTitle(Game game) {
+        String activityTitle = getResources().getString(R.string.app_name) + " - " + game.getGameName();
+        setTitle(activityTitle);
+        MatchRules rules = game.getDefinition().getRules();
+        findViewById(R.id.button_end_set).setVisibility(
+                rules != null && rules.hasManualSets() ? View.VISIBLE : View.GONE);
     }
 
     /**
@@ -168,47 +468,83 @@ public class MainActivity extends AppCompatActivity {
             @Override
             public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
                 mSelectedGame = position;
-                inflateGameLayout(mGameFiles.get(position));
+                inflateGameLayout(mGameFiles.get(position), false);
             }
         });
     }
 
     /**
-     * Inflating parent view (ScrollView) by
+     * Inflating parent view by the layout of the game. Small games are shown by GameLinearLayout
+     * inside ScrollView, large games by the virtualised GameRecyclerLayout.
      *
      * @param jsonFileName file name of the game info as JSON object
+     * @param recover true if the match is recovered from its log
+     * @return false if the game can't be loaded and the game selector is shown again
      */
-    private void inflateGameLayout(String jsonFileName) {
-        GameLinearLayout gameLayout = new GameLinearLayout(this, jsonFileName);
+    private boolean inflateGameLayout(final String jsonFileName, boolean recover) {
+        final long start = SystemClock.elapsedRealtime();
+        Game game = mGameRegistry.newGame(jsonFileName);
+        if (game == null) {
+            Log.d(TAG, "Can't load " + jsonFileName);
+            Toast.makeText(this, getResources().getString(R.string.error_game_not_loaded, jsonFileName),
+                    Toast.LENGTH_LONG).show();
+            setupGameSelector();
+            return false;
+        }
+        openMatchLog(jsonFileName, game, recover);
+        openMatchSync(game);
+        final ViewGroup gameLayout;
+        View gameContent;
+        if (game.getActionCount() > VIRTUALISED_ACTION_COUNT) {
+            gameLayout = new GameRecyclerLayout(this, game);
+            gameContent = gameLayout;
+        } else {
+            gameLayout = new GameLinearLayout(this, game);
+            ScrollView scrollView = new ScrollView(this);
+            scrollView.addView(gameLayout);
+            gameContent = scrollView;
+        }
         gameLayout.setId(GAME_LINEAR_LAYOUT_ID);
-        String activityTitle = getResources().getString(R.string.app_name) + " - " + gameLayout.getGameName();
-        setTitle(activityTitle);
-        ScrollView parentView = findViewById(R.id.parent_view);
+        gameLayout.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                gameLayout.getViewTreeObserver().removeOnPreDrawListener(this);
+                Log.d(TAG, "First frame of " + jsonFileName + " in " + (SystemClock.elapsedRealtime() - start) + " ms");
+                return true;
+            }
+        });
+        showGameTitle(game);
+        FrameLayout parentView = findViewById(R.id.parent_view);
         parentView.setVisibility(View.VISIBLE);
         parentView.removeAllViews();
-        parentView.addView(gameLayout);
+        parentView.addView(gameContent);
         ListView gameSelector = findViewById(R.id.game_selector);
         gameSelector.setVisibility(View.GONE);
         gameSelector.setAdapter(null);
         enableGameButtons(true);
+        return true;
     }
 
     /**
-     * Enabling / Disabling Undo and Reset button
+     * Enabling / Disabling Undo, Redo and Reset button
      *
      * @param flag boolean: true - enable, false - disable
      */
     private void enableGameButtons(boolean flag) {
         Button btnUndo = findViewById(R.id.button_undo);
+        Button btnRedo = findViewById(R.id.button_redo);
         Button btnReset = findViewById(R.id.button_reset_scores);
         if (flag) {
             btnUndo.setBackgroundColor(getResources().getColor(R.color.color_primary_dark));
+            btnRedo.setBackgroundColor(getResources().getColor(R.color.color_primary_dark));
             btnReset.setBackgroundColor(getResources().getColor(R.color.color_primary_dark));
         } else {
             btnUndo.setBackgroundColor(getResources().getColor(R.color.color_accent));
+            btnRedo.setBackgroundColor(getResources().getColor(R.color.color_accent));
             btnReset.setBackgroundColor(getResources().getColor(R.color.color_accent));
         }
         btnUndo.setEnabled(flag);
+        btnRedo.setEnabled(flag);
         btnReset.setEnabled(flag);
     }
 }
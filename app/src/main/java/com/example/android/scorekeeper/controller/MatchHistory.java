@@ -0,0 +1,382 @@
+package com.example.android.scorekeeper.controller;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import com.example.android.scorekeeper.model.Game;
+import com.example.android.scorekeeper.model.GameDefinition;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SQLite store of the finished matches: final scores of the teams
+ * and non-zero counters of the players' actions.
+ * Names are stored once in the names table and referenced by id,
+ * rows of the counters are clustered by match and action for indexed aggregation.
+ *
+ * @package com.example.android.scorekeeper.controller
+ * (c) 2018, Igor Korovchenko.
+ */
+
+public class MatchHistory extends SQLiteOpenHelper {
+
+    /**
+     * TAG name for debugging
+     */
+    private static final String TAG = "MatchHistory";
+
+    /**
+     * Database file and version
+     */
+    private static final String DATABASE_NAME = "match_history.db";
+    private static final int DATABASE_VERSION = 1;
+
+    /**
+     * Schema of the database
+     */
+    private static final String[] SCHEMA = {
+            "CREATE TABLE names (_id INTEGER PRIMARY KEY, name TEXT NOT NULL UNIQUE)",
+            "CREATE TABLE matches (_id INTEGER PRIMARY KEY, game_id INTEGER NOT NULL, finished_at INTEGER NOT NULL)",
+            "CREATE INDEX matches_game_date ON matches (game_id, finished_at)",
+            "CREATE TABLE team_scores (match_id INTEGER NOT NULL, team_id INTEGER NOT NULL,"
+                    + " score INTEGER NOT NULL, PRIMARY KEY (match_id, team_id)) WITHOUT ROWID",
+            "CREATE INDEX team_scores_team ON team_scores (team_id, match_id, score)",
+            "CREATE TABLE action_counts (match_id INTEGER NOT NULL, action_id INTEGER NOT NULL,"
+                    + " team_id INTEGER NOT NULL, player_id INTEGER NOT NULL, count INTEGER NOT NULL,"
+                    + " PRIMARY KEY (match_id, action_id, team_id, player_id)) WITHOUT ROWID"
+    };
+
+    /**
+     * Queries
+     */
+    private static final String SQL_TOP_PLAYERS =
+            "SELECT t.name, p.name, SUM(c.count) AS total FROM action_counts c"
+                    + " JOIN names t ON t._id = c.team_id JOIN names p ON p._id = c.player_id"
+                    + " WHERE c.match_id IN (SELECT _id FROM matches WHERE game_id = ?"
+                    + " ORDER BY finished_at DESC LIMIT ?) AND c.action_id = ?"
+                    + " GROUP BY c.team_id, c.player_id ORDER BY total DESC LIMIT ?";
+    private static final String SQL_TEAM_SCORES =
+            "SELECT s.score FROM team_scores s JOIN matches m ON m._id = s.match_id"
+                    + " WHERE s.team_id = ? AND m.game_id = ? ORDER BY s.match_id DESC LIMIT ?";
+    private static final String SQL_MATCH_COUNT =
+            "SELECT COUNT(*) FROM matches WHERE game_id = ? AND finished_at >= ? AND finished_at < ?";
+
+    /**
+     * Ids of the names by name. Used by the writer only.
+     */
+    private final HashMap<String, Long> mNameIds = new HashMap<>();
+
+    /**
+     * Background writer of the matches
+     */
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    /**
+     * Constructor of the store
+     *
+     * @param context context of the app
+     */
+    public MatchHistory(Context context) {
+        this(context, DATABASE_NAME);
+    }
+
+    /**
+     * Constructor of the store in the given database, e.g. for benchmarks
+     *
+     * @param context context of the app
+     * @param databaseName name of the database file or null for in-memory database
+     */
+    MatchHistory(Context context, String databaseName) {
+        super(context, databaseName, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        for (String sql : SCHEMA) {
+            db.execSQL(sql);
+        }
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // there is only the first version of the schema
+    }
+
+    /**
+     * Recording the match on the background thread. Counters are copied immediately,
+     * so the match can be reset right after the call. Matches without actions are skipped.
+     *
+     * @param game game of the finished match
+     */
+    public void recordInBackground(Game game) {
+        final GameDefinition definition = game.getDefinition();
+        final int[] counts = game.getCurrentState();
+        final int[] scores = game.getScores();
+        final long finishedAt = System.currentTimeMillis();
+        if (isEmpty(counts)) return;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                record(definition, counts, scores, finishedAt);
+            }
+        });
+    }
+
+    /**
+     * Recording the match
+     *
+     * @param definition definition of the game
+     * @param counts counters of all actions
+     * @param scores final scores of the teams
+     * @param finishedAt time of the end of the match in milliseconds since epoch
+     * @return id of the match
+     */
+    synchronized long record(GameDefinition definition, int[] counts, int[] scores, long finishedAt) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            SQLiteStatement insertMatch = db.compileStatement(
+                    "INSERT INTO matches (game_id, finished_at) VALUES (?, ?)");
+            insertMatch.bindLong(1, getNameId(db, definition.getGameName()));
+            insertMatch.bindLong(2, finishedAt);
+            long matchId = insertMatch.executeInsert();
+
+            long[] teamIds = new long[definition.getTeamCount()];
+            SQLiteStatement insertScore = db.compileStatement(
+                    "INSERT INTO team_scores (match_id, team_id, score) VALUES (?, ?, ?)");
+            for (int t = 0; t < teamIds.length; t++) {
+                teamIds[t] = getNameId(db, definition.getTeamName(t));
+                insertScore.bindLong(1, matchId);
+                insertScore.bindLong(2, teamIds[t]);
+                insertScore.bindLong(3, scores[t]);
+                insertScore.executeInsert();
+            }
+
+            SQLiteStatement insertCount = db.compileStatement(
+                    "INSERT INTO action_counts (match_id, action_id, team_id, player_id, count)"
+                            + " VALUES (?, ?, ?, ?, ?)");
+            for (int a = 0; a < counts.length; a++) {
+                if (counts[a] == 0) continue;
+                int p = definition.getActionPlayer(a);
+                insertCount.bindLong(1, matchId);
+                insertCount.bindLong(2, getNameId(db, definition.getActionName(a)));
+                insertCount.bindLong(3, teamIds[definition.getPlayerTeam(p)]);
+                insertCount.bindLong(4, getNameId(db, definition.getPlayerName(p)));
+                insertCount.bindLong(5, counts[a]);
+                insertCount.executeInsert();
+            }
+            db.setTransactionSuccessful();
+            return matchId;
+        } catch (RuntimeException e) {
+            // ids of the names added by the rolled back transaction are not valid
+            mNameIds.clear();
+            throw e;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Getting players with the most counts of the action over the latest matches of the game
+     *
+     * @param gameName name of the game
+     * @param actionName name of the action
+     * @param lastMatches count of the latest matches
+     * @param limit count of the players
+     * @return players in order of the total count
+     */
+    public List<PlayerTotal> getTopPlayers(String gameName, String actionName, int lastMatches, int limit) {
+        ArrayList<PlayerTotal> players = new ArrayList<>(limit);
+        long gameId = findNameId(gameName);
+        long actionId = findNameId(actionName);
+        if (gameId < 0 || actionId < 0) return players;
+        Cursor cursor = getReadableDatabase().rawQuery(SQL_TOP_PLAYERS, new String[]{
+                String.valueOf(gameId), String.valueOf(lastMatches),
+                String.valueOf(actionId), String.valueOf(limit)});
+        try {
+            while (cursor.moveToNext()) {
+                players.add(new PlayerTotal(cursor.getString(0), cursor.getString(1), cursor.getLong(2)));
+            }
+        } finally {
+            cursor.close();
+        }
+        return players;
+    }
+
+    /**
+     * Getting final scores of the team in the latest matches of the game
+     *
+     * @param gameName name of the game
+     * @param teamName name of the team
+     * @param lastMatches count of the latest matches
+     * @return scores of the team, the latest match first
+     */
+    public int[] getTeamScores(String gameName, String teamName, int lastMatches) {
+        long gameId = findNameId(gameName);
+        long teamId = findNameId(teamName);
+        if (gameId < 0 || teamId < 0) return new int[0];
+        Cursor cursor = getReadableDatabase().rawQuery(SQL_TEAM_SCORES, new String[]{
+                String.valueOf(teamId), String.valueOf(gameId), String.valueOf(lastMatches)});
+        try {
+            int[] scores = new int[cursor.getCount()];
+            for (int i = 0; cursor.moveToNext(); i++) {
+                scores[i] = cursor.getInt(0);
+            }
+            return scores;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Getting count of the matches of the game finished in the period
+     *
+     * @param gameName name of the game
+     * @param from start of the period in milliseconds since epoch, inclusive
+     * @param to end of the period in milliseconds since epoch, exclusive
+     * @return matches count
+     */
+    public long getMatchCount(String gameName, long from, long to) {
+        long gameId = findNameId(gameName);
+        if (gameId < 0) return 0;
+        Cursor cursor = getReadableDatabase().rawQuery(SQL_MATCH_COUNT, new String[]{
+                String.valueOf(gameId), String.valueOf(from), String.valueOf(to)});
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Writing the queued matches and closing the database
+     */
+    @Override
+    public void close() {
+        mExecutor.shutdown();
+        try {
+            mExecutor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Log.d(TAG, "Interrupted while writing the matches");
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            super.close();
+        }
+    }
+
+    /**
+     * Getting id of the name, adding the name if required
+     *
+     * @param db writable database
+     * @param name name
+     * @return id of the name
+     */
+    private long getNameId(SQLiteDatabase db, String name) {
+        Long id = mNameIds.get(name);
+        if (id != null) return id;
+        long found = findNameId(name);
+        if (found < 0) {
+            SQLiteStatement insertName = db.compileStatement("INSERT INTO names (name) VALUES (?)");
+            insertName.bindString(1, name);
+            found = insertName.executeInsert();
+        }
+        mNameIds.put(name, found);
+        return found;
+    }
+
+    /**
+     * Finding id of the name
+     *
+     * @param name name
+     * @return id of the name or -1 if there is no such name
+     */
+    private long findNameId(String name) {
+        Cursor cursor = getReadableDatabase().rawQuery(
+                "SELECT _id FROM names WHERE name = ?", new String[]{name == null ? "" : name});
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Checking if all counters are zero
+     *
+     * @param counts counters of all actions
+     * @return true if no action is counted
+     */
+    private static boolean isEmpty(int[] counts) {
+        for (int count : counts) {
+            if (count != 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Total count of the action of the player
+     */
+    public static final class PlayerTotal {
+
+        /**
+         * Names of the team and the player
+         */
+        private final String mTeamName;
+        private final String mPlayerName;
+
+        /**
+         * Total count of the action
+         */
+        private final long mTotal;
+
+        /**
+         * Constructor of the result
+         *
+         * @param teamName name of the team
+         * @param playerName name of the player
+         * @param total total count of the action
+         */
+        PlayerTotal(String teamName, String playerName, long total) {
+            this.mTeamName = teamName;
+            this.mPlayerName = playerName;
+            this.mTotal = total;
+        }
+
+        /**
+         * Getting name of the team
+         *
+         * @return team's name
+         */
+        public String getTeamName() {
+            return mTeamName;
+        }
+
+        /**
+         * Getting name of the player
+         *
+         * @return player's name
+         */
+        public String getPlayerName() {
+            return mPlayerName;
+        }
+
+        /**
+         * Getting total count of the action
+         *
+         * @return total count
+         */
+        public long getTotal() {
+            return mTotal;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.android.scorekeeper.controller;
+
+import android.content.SharedPreferences;
+
+/**
+ * Record of the game of the match in progress, so the match can be recovered
+ * from its log after the app process is killed. The recorded game is read once
+ * when the record is opened, before the activity records anything, as the setup
+ * of the game selector records that no match is in progress.
+ *
+ * @package com.example.android.scorekeeper.controller
+ * (c) 2018, Igor Korovchenko.
+ */
+
+final class MatchInProgress {
+
+    /**
+     * Key of the preferences for the game of the match in progress
+     */
+    static final String PREF_MATCH_IN_PROGRESS = "matchInProgress";
+
+    /**
+     * Preferences of the activity
+     */
+    private final SharedPreferences mPreferences;
+
+    /**
+     * Game of the match which was in progress when the record was opened, -1 if none
+     */
+    private final int mRecoverableGame;
+
+    /**
+     * Constructor of the record, reading the game of the interrupted match
+     *
+     * @param preferences preferences of the activity
+     * @param gameCount count of the games, other recorded games are ignored
+     */
+    MatchInProgress(SharedPreferences preferences, int gameCount) {
+        mPreferences = preferences;
+        int game = preferences.getInt(PREF_MATCH_IN_PROGRESS, -1);
+        mRecoverableGame = game >= 0 && game < gameCount ? game : -1;
+    }
+
+    /**
+     * Getting the game of the match which was in progress when the record was opened
+     *
+     * @return index of the game or -1 if there is no match to recover
+     */
+    int getRecoverableGame() {
+        return mRecoverableGame;
+    }
+
+    /**
+     * Recording the game of the match in progress
+     *
+     * @param selectedGame index of the game or -1 if no match is in progress
+     */
+    void save(int selectedGame) {
+        SharedPreferences.Editor editor = mPreferences.edit();
+        editor.putInt(PREF_MATCH_IN_PROGRESS, selectedGame);
+        editor.apply();
+    }
+}
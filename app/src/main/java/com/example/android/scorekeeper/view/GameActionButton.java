@@ -16,6 +16,13 @@ import com.example.android.scorekeeper.model.GameAction;
 @SuppressLint("ViewConstructor")
 public class GameActionButton extends android.support.v7.widget.AppCompatButton {
 
+    /**
+     * Listener of the changes of the action counter
+     */
+    public interface OnActionChangedListener {
+        void onActionChanged(GameActionButton button);
+    }
+
     /**
      * TextView for showing the result on the Scoreboard
      */
@@ -26,22 +33,45 @@ public class GameActionButton extends android.support.v7.widget.AppCompatButton
      */
     private GameAction mModel;
 
+    /**
+     * Listener which refreshes the caption and scoreboards
+     */
+    private OnActionChangedListener mListener;
+
     /**
      * Constructor of the class connects with model
      *
      * @param context context of the app
      * @param caption caption of the button
      * @param model linked model of the game action with all statistics
+     * @param listener listener of the changes of the action counter
      */
-    public GameActionButton(Context context, String caption, GameAction model) {
+    public GameActionButton(Context context, String caption, GameAction model, OnActionChangedListener listener) {
         super(context);
 
         this.mCaption = caption;
         this.mModel = model;
+        this.mListener = listener;
 
         buildButton(caption);
     }
 
+    /**
+     * Binding the recycled button to another game action
+     *
+     * @param caption caption of the button
+     * @param model linked model of the game action with all statistics
+     */
+    public void bind(String caption, GameAction model) {
+        this.mCaption = caption;
+        this.mModel = model;
+        if (model.getActionsCount() > 0) {
+            updateCaption();
+        } else {
+            setText(caption);
+        }
+    }
+
     /**
      * Button builder as an object of the GameActionButton
      *
@@ -59,25 +89,18 @@ public class GameActionButton extends android.support.v7.widget.AppCompatButton
     }
 
     /**
-     * Undoing last action
-     */
-    public void undoAction() {
-        mModel.undoAction();
-        updateCaptionsAndScores();
-    }
-
-    /**
-     * Updating the caption of the button and scoreboards
+     * Getting model of the game action
+     *
+     * @return game action
      */
-    public void updateCaptionsAndScores() {
-        updateCaption();
-        ((GameLinearLayout) this.getParent().getParent().getParent().getParent()).updateScores(this.getId());
+    public GameAction getModel() {
+        return mModel;
     }
 
     /**
-     * Updating the caption of the button and scoreboards
+     * Updating the caption of the button
      */
-    private void updateCaption() {
+    void updateCaption() {
         String updatedCaption = mCaption + " (" + mModel.getActionsCount() + ")";
         this.setText(updatedCaption);
     }
@@ -87,6 +110,6 @@ public class GameActionButton extends android.support.v7.widget.AppCompatButton
      */
     private void addAction() {
         mModel.addAction();
-        updateCaptionsAndScores();
+        mListener.onActionChanged(this);
     }
 }
@@ -9,12 +9,15 @@ import android.widget.LinearLayout;
 import android.widget.TextView;
 
 import com.example.android.scorekeeper.R;
+import com.example.android.scorekeeper.model.DefinitionMigration;
 import com.example.android.scorekeeper.model.Game;
 import com.example.android.scorekeeper.model.GameAction;
-
-import java.io.IOException;
-import java.io.InputStream;
-import java.util.ArrayList;
+import com.example.android.scorekeeper.model.GameDefinition;
+import com.example.android.scorekeeper.model.MatchState;
+import com.example.android.scorekeeper.model.MatchStatistics;
+import com.example.android.scorekeeper.model.MatchTimeline;
+import com.example.android.scorekeeper.model.Player;
+import com.example.android.scorekeeper.model.RuleEvaluator;
 
 /**
  * Class of the LinearLayout for representation of the Game
@@ -24,7 +27,7 @@ import java.util.ArrayList;
  */
 
 @SuppressLint("ViewConstructor")
-public class GameLinearLayout extends LinearLayout {
+public class GameLinearLayout extends LinearLayout implements GameView, GameActionButton.OnActionChangedListener {
 
     /**
      * TAG name for debugging
@@ -43,34 +46,70 @@ public class GameLinearLayout extends LinearLayout {
     private static final float TEXT_SIZE_TEAM_NAME = 20.0f; // 20sp
 
     /**
-     * ID offset for scoreboards' TextViews
+     * Model of the game for storing all statistics
      */
-    public static final int SCORES_TEXT_VIEW_ID_OFFSET = 1000;
+    private Game mGame;
 
     /**
-     * ID offset for buttons' TextViews
+     * Buttons by index of the action and scoreboards by index of the team
      */
-    public static final int BUTTONS_TEXT_VIEW_ID_OFFSET = 2000;
+    private GameActionButton[] mButtons;
+    private TextView[] mScoreViews;
 
     /**
-     * Last clicked button for undo button
+     * Names of the players with their statistics by index of the player
      */
-    private int mLastClickedButtonID;
+    private TextView[] mPlayerViews;
 
     /**
-     * Model of the game for storing all statistics
+     * Statistics of the match
      */
-    private Game mGame;
+    private MatchStatistics mStatistics;
+
+    /**
+     * Timeline of the match and the views of its analytics by index of the team
+     */
+    private MatchTimeline mTimeline;
+    private TextView[] mMomentumViews;
 
     /**
-     * Constructor of the class from the JSON file in assets folder
+     * Evaluator of the rules and the views of the sets by index of the team, null if the game has no rules
+     */
+    private RuleEvaluator mRules;
+    private TextView[] mSetViews;
+
+    /**
+     * Values shown by the views and buffers for the changed ones
+     */
+    private RenderedState mRenderedState;
+    private int[] mChangedActions;
+    private int[] mChangedTeams;
+
+    /**
+     * Refresh of the changed views is scheduled for the next frame
+     */
+    private boolean mRefreshScheduled;
+
+    /**
+     * Refresh of the changed views
+     */
+    private final Runnable mRefreshRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mRefreshScheduled = false;
+            refreshChangedViews();
+        }
+    };
+
+    /**
+     * Constructor of the class for the game model
      *
      * @param context context of the app
-     * @param jsonFileName JSON file from the assets folder
+     * @param game model of the game
      */
-    public GameLinearLayout(Context context, String jsonFileName) {
+    public GameLinearLayout(Context context, Game game) {
         super(context);
-        mGame = new Game(loadJSONFromAsset(context, jsonFileName));
+        mGame = game;
         buildLayout(context);
     }
 
@@ -81,6 +120,16 @@ public class GameLinearLayout extends LinearLayout {
      */
     public void buildLayout(Context context) {
         int teamCount = mGame.getTeamCount();
+        int actionCount = mGame.getActionCount();
+        mButtons = new GameActionButton[actionCount];
+        mScoreViews = new TextView[teamCount];
+        mPlayerViews = new TextView[mGame.getDefinition().getPlayerCount()];
+        attachListeners();
+        mMomentumViews = new TextView[teamCount];
+        mSetViews = mRules != null ? new TextView[teamCount] : null;
+        mRenderedState = new RenderedState(actionCount, teamCount);
+        mChangedActions = new int[actionCount];
+        mChangedTeams = new int[teamCount];
 
         for (int t = 0; t < teamCount; t++) {
             LinearLayout teamLinearLayout = new LinearLayout(context);
@@ -90,13 +139,12 @@ public class GameLinearLayout extends LinearLayout {
             teamLinearLayout.setLayoutParams(params);
             teamLinearLayout.addView(getNameForTeam(context, t));
             teamLinearLayout.addView(getScoreboard(context, t));
+            teamLinearLayout.addView(getMomentumView(context, t));
+            if (mRules != null) teamLinearLayout.addView(getSetView(context, t));
             LinearLayout playersLayout = new LinearLayout(context);
             playersLayout.setOrientation(LinearLayout.VERTICAL);
             for (int p = 0; p < mGame.getTeam(t).getPlayerCount(); p++) {
-                TextView playerName = new TextView(context);
-                playerName.setText(mGame.getTeam(t).getPlayer(p).getName());
-                playerName.setTextAlignment(TEXT_ALIGNMENT_CENTER);
-                playersLayout.addView(playerName);
+                playersLayout.addView(getPlayerView(context, mGame.getDefinition().getFirstPlayer(t) + p));
                 playersLayout.addView(getButtons(context, t, p));
             }
             teamLinearLayout.addView(playersLayout);
@@ -105,88 +153,265 @@ public class GameLinearLayout extends LinearLayout {
     }
 
     /**
-     * Updating scores due to players' statistics
+     * Showing the match of the reloaded definition. Team views are kept; views of the kept
+     * players and buttons are moved to their new places and rebound to the new match,
+     * only the added ones are created. The layout is rebuilt if the teams or the rules change.
      *
-     * @param buttonId id of the button which sent updating request
-     */
-    public void updateScores(int buttonId) {
-        int[] scores = mGame.getScores();
-        for (int i = 0; i < scores.length; i++) {
-            try {
-                TextView teamScores = findViewById(SCORES_TEXT_VIEW_ID_OFFSET + i);
-                teamScores.setText(String.valueOf(scores[i]));
-            } catch (Exception e) {
-                Log.d(TAG, e.getLocalizedMessage());
+     * @param game new match with the migrated counters
+     * @param migration migration from the definition of the shown match
+     */
+    @Override
+    public void reloadGame(Game game, DefinitionMigration migration) {
+        Context context = getContext();
+        boolean hasRules = game.getDefinition().getRules() != null;
+        mGame = game;
+        if (!migration.isSameTeams() || hasRules != (mRules != null)) {
+            removeAllViews();
+            buildLayout(context);
+            updateCaptions();
+            return;
+        }
+        attachListeners();
+        GameDefinition definition = mGame.getDefinition();
+        GameActionButton[] oldButtons = mButtons;
+        TextView[] oldPlayerViews = mPlayerViews;
+        mButtons = new GameActionButton[definition.getActionCount()];
+        mPlayerViews = new TextView[definition.getPlayerCount()];
+        for (int t = 0; t < definition.getTeamCount(); t++) {
+            LinearLayout teamLinearLayout = (LinearLayout) getChildAt(t);
+            LinearLayout playersLayout =
+                    (LinearLayout) teamLinearLayout.getChildAt(teamLinearLayout.getChildCount() - 1);
+            int firstPlayer = definition.getFirstPlayer(t);
+            int playerCount = definition.getFirstPlayer(t + 1) - firstPlayer;
+            LinearLayout[] buttonsLayouts = new LinearLayout[playerCount];
+            for (int p = 0; p < playerCount; p++) {
+                int sourcePlayer = migration.getSourcePlayer(firstPlayer + p);
+                if (sourcePlayer < 0) {
+                    getPlayerView(context, firstPlayer + p);
+                    continue;
+                }
+                // buttons of the player follow the name of the player
+                TextView playerName = oldPlayerViews[sourcePlayer];
+                buttonsLayouts[p] = (LinearLayout) playersLayout.getChildAt(playersLayout.indexOfChild(playerName) + 1);
+                mPlayerViews[firstPlayer + p] = playerName;
+                updatePlayerCaption(firstPlayer + p);
+            }
+            playersLayout.removeAllViews();
+            for (int p = 0; p < playerCount; p++) {
+                if (buttonsLayouts[p] == null) {
+                    buttonsLayouts[p] = new LinearLayout(context);
+                    buttonsLayouts[p].setOrientation(LinearLayout.VERTICAL);
+                }
+                rebindButtons(context, buttonsLayouts[p], t, p, oldButtons, migration);
+                playersLayout.addView(mPlayerViews[firstPlayer + p]);
+                playersLayout.addView(buttonsLayouts[p]);
             }
         }
-        mLastClickedButtonID = buttonId;
+        mRenderedState = new RenderedState(definition.getActionCount(), definition.getTeamCount());
+        mChangedActions = new int[definition.getActionCount()];
+        mChangedTeams = new int[definition.getTeamCount()];
+        for (int t = 0; t < definition.getTeamCount(); t++) {
+            updateMomentum(t);
+        }
+        updateSets();
+        updateCaptions();
     }
 
     /**
-     * Updating all buttons' captions
+     * Creating statistics, timeline and evaluator of the rules and adding them to the game
      */
-    public void updateCaptions() {
-        for (int i = 0; i < mGame.getTeamCount(); i++) {
-            for (int j = 0; j < mGame.getTeam(i).getPlayerCount(); j++) {
-                for (int k = 0; k < mGame.getTeam(i).getPlayer(j).getActionCount(); k++) {
-                    ((GameActionButton) findViewById(getButtonId(i, j, k))).updateCaptionsAndScores();
-                }
-            }
+    private void attachListeners() {
+        mStatistics = new MatchStatistics(mGame);
+        mGame.addMatchListener(mStatistics);
+        mTimeline = new MatchTimeline(mGame);
+        mGame.addMatchListener(mTimeline);
+        mRules = null;
+        if (mGame.getDefinition().getRules() != null) {
+            mRules = new RuleEvaluator(mGame);
+            mGame.addMatchListener(mRules);
         }
     }
 
     /**
-     * Undoing last action
+     * Handling the change of the action counter by the button
+     *
+     * @param button button which changed the counter
+     */
+    @Override
+    public void onActionChanged(GameActionButton button) {
+        mRenderedState.markAction(button.getModel().getIndex());
+        scheduleRefresh();
+    }
+
+    /**
+     * Updating all buttons' captions and scoreboards, e.g. after restoring the state
+     */
+    @Override
+    public void updateCaptions() {
+        mRenderedState.markAll();
+        scheduleRefresh();
+    }
+
+    /**
+     * Clearing all counters of the match and updating the views
+     */
+    @Override
+    public void resetScores() {
+        mGame.reset();
+        updateCaptions();
+    }
+
+    /**
+     * Undoing last applied action of the journal
      */
+    @Override
     public void undoLastAction() {
-        Log.d(TAG, String.valueOf(mLastClickedButtonID));
-        if (mLastClickedButtonID > 0) {
-            GameActionButton lastButton = findViewById(mLastClickedButtonID);
-            lastButton.undoAction();
-            mLastClickedButtonID = -1;
-        }
+        int actionIndex = mGame.undo();
+        Log.d(TAG, String.valueOf(actionIndex));
+        onJournalStep(actionIndex);
     }
 
     /**
-     * Getting last pressed button's Id for state saving
-     *
-     * @return Id of the last pressed button
+     * Redoing last undone action of the journal
      */
-    public int getLastActionId() {
-        return mLastClickedButtonID;
+    @Override
+    public void redoLastAction() {
+        int actionIndex = mGame.redo();
+        Log.d(TAG, String.valueOf(actionIndex));
+        onJournalStep(actionIndex);
     }
 
     /**
-     * Setting last pressed button's Id
+     * Ending the current set manually and updating the views of the sets
+     */
+    @Override
+    public void endSet() {
+        if (mRules == null) return;
+        mRules.endSet();
+        updateSets();
+    }
+
+    /**
+     * Getting model of the game
      *
-     * @param Id saved Id of the last pressed button
+     * @return game model
      */
-    public void setLastActionId(int Id) {
-        mLastClickedButtonID = Id;
+    @Override
+    public Game getGame() {
+        return mGame;
     }
 
     /**
      * Getting name of the game
      * @return game name
      */
+    @Override
     public String getGameName() {
         return mGame.getGameName();
     }
 
     /**
-     * Getting game model with current state of the game
+     * Marking the action changed by undo or redo
      *
-     * @return game model
+     * @param actionIndex index of the action in the game or -1 if nothing is changed
+     */
+    private void onJournalStep(int actionIndex) {
+        if (actionIndex >= 0) {
+            mRenderedState.markAction(actionIndex);
+            scheduleRefresh();
+        }
+    }
+
+    /**
+     * Getting textView with the points of the team in the current set and the sets won
+     *
+     * @param context context of the app
+     * @param teamIndex index of the team
+     * @return textView with the sets of the team
+     */
+    private TextView getSetView(Context context, int teamIndex) {
+        TextView sets = new TextView(context);
+        sets.setTextAlignment(TEXT_ALIGNMENT_CENTER);
+        mSetViews[teamIndex] = sets;
+        updateSet(teamIndex);
+        return sets;
+    }
+
+    /**
+     * Updating the views of the sets of all teams, as the end of the set changes all of them
+     */
+    private void updateSets() {
+        if (mRules == null) return;
+        for (int t = 0; t < mSetViews.length; t++) {
+            updateSet(t);
+        }
+    }
+
+    /**
+     * Updating the points of the team in the current set and the sets won
+     *
+     * @param teamIndex index of the team
      */
-    public ArrayList<Integer> getGameModelCurrentState() {
-        return mGame.getCurrentState();
+    private void updateSet(int teamIndex) {
+        if (mRules.getMatchWinner() == teamIndex) {
+            mSetViews[teamIndex].setText(getResources().getString(
+                    R.string.team_match_won, mRules.getSetsWon(teamIndex)));
+            return;
+        }
+        mSetViews[teamIndex].setText(getResources().getString(
+                R.string.team_sets,
+                mRules.getRules().getSetName(),
+                mRules.getSetCount() + 1,
+                mRules.getSetScore(teamIndex),
+                mRules.getSetsWon(teamIndex)
+        ));
     }
 
     /**
-     * Setting game model with saved state of the game
+     * Scheduling refresh of the changed views once per frame
      */
-    public void setGameModelCurrentState(ArrayList<Integer> states) {
-        mGame.setCurrentState(states);
+    private void scheduleRefresh() {
+        if (mRefreshScheduled) return;
+        mRefreshScheduled = true;
+        postOnAnimation(mRefreshRunnable);
+    }
+
+    /**
+     * Redrawing only captions and scoreboards whose values are changed
+     */
+    private void refreshChangedViews() {
+        MatchState state = mGame.getState();
+        int changedCount = mRenderedState.collectChangedActions(state, mChangedActions);
+        GameDefinition definition = mGame.getDefinition();
+        for (int i = 0; i < changedCount; i++) {
+            mButtons[mChangedActions[i]].updateCaption();
+            updatePlayerCaption(definition.getActionPlayer(mChangedActions[i]));
+        }
+        changedCount = mRenderedState.collectChangedTeams(state, mChangedTeams);
+        for (int i = 0; i < changedCount; i++) {
+            int t = mChangedTeams[i];
+            mScoreViews[t].setText(String.valueOf(mRenderedState.getScore(t)));
+            updateMomentum(t);
+            // shares of all players of the team are changed with the team's score
+            for (int p = definition.getFirstPlayer(t); p < definition.getFirstPlayer(t + 1); p++) {
+                updatePlayerCaption(p);
+            }
+        }
+        if (changedCount > 0) updateSets();
+    }
+
+    /**
+     * Updating the name of the player with the points and the share of the team's points
+     *
+     * @param playerIndex index of the player in the game
+     */
+    private void updatePlayerCaption(int playerIndex) {
+        mPlayerViews[playerIndex].setText(getResources().getString(
+                R.string.player_stats,
+                mGame.getDefinition().getPlayerName(playerIndex),
+                mStatistics.getPlayerContribution(playerIndex),
+                Math.round(100 * mStatistics.getShareOfTeamPoints(playerIndex))
+        ));
     }
 
     /**
@@ -205,6 +430,34 @@ public class GameLinearLayout extends LinearLayout {
         return teamName;
     }
 
+    /**
+     * Getting textView with the longest run and the scoring rate of the team
+     *
+     * @param context context of the app
+     * @param teamIndex index of the team
+     * @return textView with analytics of the team
+     */
+    private TextView getMomentumView(Context context, int teamIndex) {
+        TextView momentum = new TextView(context);
+        momentum.setTextAlignment(TEXT_ALIGNMENT_CENTER);
+        mMomentumViews[teamIndex] = momentum;
+        updateMomentum(teamIndex);
+        return momentum;
+    }
+
+    /**
+     * Updating the longest run and the scoring rate of the team
+     *
+     * @param teamIndex index of the team
+     */
+    private void updateMomentum(int teamIndex) {
+        mMomentumViews[teamIndex].setText(getResources().getString(
+                R.string.team_momentum,
+                mTimeline.getLongestRun(teamIndex),
+                mTimeline.getScoringRate(teamIndex)
+        ));
+    }
+
     /**
      * Getting the simplest scoreboard for team
      *
@@ -226,66 +479,83 @@ public class GameLinearLayout extends LinearLayout {
         );
         teamScores.setLayoutParams(params);
         teamScores.setTextSize(TypedValue.COMPLEX_UNIT_SP, TEXT_SIZE_SCORE);
-        teamScores.setId(SCORES_TEXT_VIEW_ID_OFFSET + teamIndex);
+        teamScores.setId(generateViewId());
+        mScoreViews[teamIndex] = teamScores;
         scoreboard.addView(teamScores);
         return scoreboard;
     }
 
     /**
-     * Getting all button for each player of the team
+     * Getting textView with the name and the statistics of the player
      *
      * @param context context of the app
-     * @param teamIndex index of the team
-     * @param playerIndex index of the player
-     * @return ViewGroup with buttons
+     * @param playerIndex index of the player in the game
+     * @return textView of the player
      */
-    private ViewGroup getButtons(Context context, int teamIndex, int playerIndex) {
-        LinearLayout layout = new LinearLayout(context);
-        layout.setOrientation(LinearLayout.VERTICAL);
-        int buttonsCount = mGame.getTeam(teamIndex).getPlayer(playerIndex).getActionCount();
-        for (int actionIndex = 0; actionIndex < buttonsCount; actionIndex++) {
-            String name = mGame.getTeam(teamIndex).getPlayer(playerIndex).getGameAction(actionIndex).getName();
-            GameAction model = mGame.getTeam(teamIndex).getPlayer(playerIndex).getGameAction(actionIndex).getModel();
-            GameActionButton btn = new GameActionButton(context, name, model);
-            btn.setId(getButtonId(teamIndex, playerIndex, actionIndex));
-            layout.addView(btn);
-        }
-        return layout;
+    private TextView getPlayerView(Context context, int playerIndex) {
+        TextView playerName = new TextView(context);
+        playerName.setTextAlignment(TEXT_ALIGNMENT_CENTER);
+        mPlayerViews[playerIndex] = playerName;
+        updatePlayerCaption(playerIndex);
+        return playerName;
     }
 
     /**
-     * Getting according game action button index
+     * Filling the layout with the buttons of the player of the reloaded game.
+     * Buttons of the kept actions are rebound, buttons of the added actions are created.
      *
+     * @param context context of the app
+     * @param layout layout of the buttons of the player
      * @param teamIndex index of the team
-     * @param playerIndex index of the player in selected team
-     * @param actionIndex index of the action of a selected player
-     * @return id of the object, instance of the GamActionButton
+     * @param playerIndex index of the player in the team
+     * @param oldButtons buttons of the previous game by index of the action
+     * @param migration migration from the previous game
      */
-    private int getButtonId(int teamIndex, int playerIndex, int actionIndex) {
-        return BUTTONS_TEXT_VIEW_ID_OFFSET + 10 * (teamIndex + 1) + 100 * (playerIndex + 1) + (actionIndex + 1);
+    private void rebindButtons(Context context, LinearLayout layout, int teamIndex, int playerIndex,
+                               GameActionButton[] oldButtons, DefinitionMigration migration) {
+        layout.removeAllViews();
+        Player player = mGame.getTeam(teamIndex).getPlayer(playerIndex);
+        int buttonsCount = player.getActionCount();
+        for (int actionIndex = 0; actionIndex < buttonsCount; actionIndex++) {
+            GameAction model = player.getGameAction(actionIndex);
+            String name = model.getName();
+            int index = mGame.getDefinition().getActionIndex(teamIndex, playerIndex, actionIndex);
+            int sourceAction = migration.getSourceAction(index);
+            GameActionButton btn;
+            if (sourceAction >= 0) {
+                btn = oldButtons[sourceAction];
+                btn.bind(name, model);
+            } else {
+                btn = new GameActionButton(context, name, model, this);
+                btn.setId(generateViewId());
+            }
+            mButtons[index] = btn;
+            layout.addView(btn);
+        }
     }
 
     /**
-     * Getting JSON string from the file in assets folder
+     * Getting all button for each player of the team
      *
      * @param context context of the app
-     * @param jsonFileName file name in assets folder
-     * @return JSON object as a string from the file
-     */
-    private String loadJSONFromAsset(Context context, String jsonFileName) {
-        String jsonString;
-        try {
-            InputStream inputStream = context.getAssets().open(jsonFileName);
-            int size = inputStream.available();
-            byte[] buffer = new byte[size];
-            inputStream.read(buffer);
-            inputStream.close();
-            jsonString = new String(buffer, "UTF-8");
-        } catch (IOException ex) {
-            ex.printStackTrace();
-            return null;
+     * @param teamIndex index of the team
+     * @param playerIndex index of the player
+     * @return ViewGroup with buttons
+     */
+    private ViewGroup getButtons(Context context, int teamIndex, int playerIndex) {
+        LinearLayout layout = new LinearLayout(context);
+        layout.setOrientation(LinearLayout.VERTICAL);
+        Player player = mGame.getTeam(teamIndex).getPlayer(playerIndex);
+        int buttonsCount = player.getActionCount();
+        for (int actionIndex = 0; actionIndex < buttonsCount; actionIndex++) {
+            GameAction model = player.getGameAction(actionIndex);
+            String name = model.getName();
+            GameActionButton btn = new GameActionButton(context, name, model, this);
+            btn.setId(generateViewId());
+            mButtons[mGame.getDefinition().getActionIndex(teamIndex, playerIndex, actionIndex)] = btn;
+            layout.addView(btn);
         }
-        return jsonString;
+        return layout;
     }
 
     /**
@@ -0,0 +1,377 @@
+package com.example.android.scorekeeper.view;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.util.TypedValue;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+
+import com.example.android.scorekeeper.R;
+import com.example.android.scorekeeper.model.DefinitionMigration;
+import com.example.android.scorekeeper.model.Game;
+import com.example.android.scorekeeper.model.GameDefinition;
+import com.example.android.scorekeeper.model.MatchState;
+import com.example.android.scorekeeper.model.MatchStatistics;
+import com.example.android.scorekeeper.model.MatchTimeline;
+import com.example.android.scorekeeper.model.RuleEvaluator;
+
+/**
+ * Class of the virtualised representation of the Game for large rosters.
+ * Scoreboards are pinned at the top; players and their actions are rows
+ * of the RecyclerView, so only visible buttons exist.
+ *
+ * @package com.example.android.scorekeeper.view
+ * (c) 2018, Igor Korovchenko.
+ */
+
+@SuppressLint("ViewConstructor")
+public class GameRecyclerLayout extends LinearLayout implements GameView, GameActionButton.OnActionChangedListener {
+
+    /**
+     * Setup for scores
+     */
+    private static final float TEXT_SIZE_SCORE = 36.0f; // 36sp
+
+    /**
+     * Setup for team's name
+     */
+    private static final float TEXT_SIZE_TEAM_NAME = 20.0f; // 20sp
+
+    /**
+     * Model of the game for storing all statistics
+     */
+    private Game mGame;
+
+    /**
+     * Scoreboards by index of the team
+     */
+    private TextView[] mScoreViews;
+
+    /**
+     * List of the rows and its adapter
+     */
+    private RecyclerView mRecyclerView;
+    private GameRowAdapter mAdapter;
+
+    /**
+     * Statistics of the match
+     */
+    private MatchStatistics mStatistics;
+
+    /**
+     * Timeline of the match and the views of its analytics by index of the team
+     */
+    private MatchTimeline mTimeline;
+    private TextView[] mMomentumViews;
+
+    /**
+     * Evaluator of the rules and the views of the sets by index of the team, null if the game has no rules
+     */
+    private RuleEvaluator mRules;
+    private TextView[] mSetViews;
+
+    /**
+     * Values shown by the views and buffers for the changed ones
+     */
+    private RenderedState mRenderedState;
+    private int[] mChangedActions;
+    private int[] mChangedTeams;
+
+    /**
+     * Refresh of the changed views is scheduled for the next frame
+     */
+    private boolean mRefreshScheduled;
+
+    /**
+     * Refresh of the changed views
+     */
+    private final Runnable mRefreshRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mRefreshScheduled = false;
+            refreshChangedViews();
+        }
+    };
+
+    /**
+     * Constructor of the class for the game model
+     *
+     * @param context context of the app
+     * @param game model of the game
+     */
+    public GameRecyclerLayout(Context context, Game game) {
+        super(context);
+        mGame = game;
+        buildLayout(context);
+    }
+
+    /**
+     * Layout builder for the scoreboards and the list of the players' actions
+     *
+     * @param context context of the app
+     */
+    public void buildLayout(Context context) {
+        int teamCount = mGame.getTeamCount();
+        int actionCount = mGame.getActionCount();
+        mScoreViews = new TextView[teamCount];
+        mRenderedState = new RenderedState(actionCount, teamCount);
+        mChangedActions = new int[actionCount];
+        mChangedTeams = new int[teamCount];
+        setOrientation(VERTICAL);
+
+        attachListeners();
+        mMomentumViews = new TextView[teamCount];
+        mSetViews = mRules != null ? new TextView[teamCount] : null;
+
+        LinearLayout scoreboards = new LinearLayout(context);
+        for (int t = 0; t < teamCount; t++) {
+            LinearLayout teamLayout = new LinearLayout(context);
+            teamLayout.setOrientation(VERTICAL);
+            teamLayout.setLayoutParams(new LinearLayout.LayoutParams(0, LayoutParams.WRAP_CONTENT, 1.0f));
+            TextView teamName = new TextView(context);
+            teamName.setText(mGame.getTeam(t).getName());
+            teamName.setTextAlignment(TEXT_ALIGNMENT_CENTER);
+            teamName.setTextSize(TypedValue.COMPLEX_UNIT_SP, TEXT_SIZE_TEAM_NAME);
+            teamLayout.addView(teamName);
+            mScoreViews[t] = new TextView(context);
+            mScoreViews[t].setText(R.string.zero_scores);
+            mScoreViews[t].setTextAlignment(TEXT_ALIGNMENT_CENTER);
+            mScoreViews[t].setTextSize(TypedValue.COMPLEX_UNIT_SP, TEXT_SIZE_SCORE);
+            teamLayout.addView(mScoreViews[t]);
+            teamLayout.addView(getMomentumView(context, t));
+            if (mRules != null) teamLayout.addView(getSetView(context, t));
+            scoreboards.addView(teamLayout);
+        }
+        addView(scoreboards);
+
+        mAdapter = new GameRowAdapter(mGame, mStatistics, this);
+        mRecyclerView = new RecyclerView(context);
+        mRecyclerView.setLayoutManager(new LinearLayoutManager(context));
+        mRecyclerView.setAdapter(mAdapter);
+        mRecyclerView.setLayoutParams(new LinearLayout.LayoutParams(LayoutParams.MATCH_PARENT, 0, 1.0f));
+        addView(mRecyclerView);
+    }
+
+    /**
+     * Showing the match of the reloaded definition. Scoreboards are kept and the rows
+     * are swapped to the new adapter, so the recycled rows are rebound instead of created.
+     * The layout is rebuilt if the teams or the rules change.
+     *
+     * @param game new match with the migrated counters
+     * @param migration migration from the definition of the shown match
+     */
+    @Override
+    public void reloadGame(Game game, DefinitionMigration migration) {
+        boolean hasRules = game.getDefinition().getRules() != null;
+        mGame = game;
+        if (!migration.isSameTeams() || hasRules != (mRules != null)) {
+            removeAllViews();
+            buildLayout(getContext());
+            updateCaptions();
+            return;
+        }
+        attachListeners();
+        mAdapter = new GameRowAdapter(mGame, mStatistics, this);
+        mRecyclerView.swapAdapter(mAdapter, false);
+        int teamCount = mGame.getTeamCount();
+        int actionCount = mGame.getActionCount();
+        mRenderedState = new RenderedState(actionCount, teamCount);
+        mChangedActions = new int[actionCount];
+        mChangedTeams = new int[teamCount];
+        for (int t = 0; t < teamCount; t++) {
+            updateMomentum(t);
+        }
+        updateSets();
+        updateCaptions();
+    }
+
+    /**
+     * Creating statistics, timeline and evaluator of the rules and adding them to the game
+     */
+    private void attachListeners() {
+        mStatistics = new MatchStatistics(mGame);
+        mGame.addMatchListener(mStatistics);
+        mTimeline = new MatchTimeline(mGame);
+        mGame.addMatchListener(mTimeline);
+        mRules = null;
+        if (mGame.getDefinition().getRules() != null) {
+            mRules = new RuleEvaluator(mGame);
+            mGame.addMatchListener(mRules);
+        }
+    }
+
+    /**
+     * Handling the change of the action counter by the button
+     *
+     * @param button button which changed the counter
+     */
+    @Override
+    public void onActionChanged(GameActionButton button) {
+        mRenderedState.markAction(button.getModel().getIndex());
+        scheduleRefresh();
+    }
+
+    @Override
+    public void updateCaptions() {
+        mRenderedState.markAll();
+        scheduleRefresh();
+    }
+
+    @Override
+    public void resetScores() {
+        mGame.reset();
+        updateCaptions();
+    }
+
+    /**
+     * Undoing last applied action of the journal. The button of the action can be recycled,
+     * so only the rendered state is marked.
+     */
+    @Override
+    public void undoLastAction() {
+        onJournalStep(mGame.undo());
+    }
+
+    @Override
+    public void redoLastAction() {
+        onJournalStep(mGame.redo());
+    }
+
+    @Override
+    public void endSet() {
+        if (mRules == null) return;
+        mRules.endSet();
+        updateSets();
+    }
+
+    @Override
+    public Game getGame() {
+        return mGame;
+    }
+
+    @Override
+    public String getGameName() {
+        return mGame.getGameName();
+    }
+
+    /**
+     * Marking the action changed by undo or redo
+     *
+     * @param actionIndex index of the action in the game or -1 if nothing is changed
+     */
+    private void onJournalStep(int actionIndex) {
+        if (actionIndex >= 0) {
+            mRenderedState.markAction(actionIndex);
+            scheduleRefresh();
+        }
+    }
+
+    /**
+     * Getting textView with the longest run and the scoring rate of the team
+     *
+     * @param context context of the app
+     * @param teamIndex index of the team
+     * @return textView with analytics of the team
+     */
+    private TextView getMomentumView(Context context, int teamIndex) {
+        TextView momentum = new TextView(context);
+        momentum.setTextAlignment(TEXT_ALIGNMENT_CENTER);
+        mMomentumViews[teamIndex] = momentum;
+        updateMomentum(teamIndex);
+        return momentum;
+    }
+
+    /**
+     * Updating the longest run and the scoring rate of the team
+     *
+     * @param teamIndex index of the team
+     */
+    private void updateMomentum(int teamIndex) {
+        mMomentumViews[teamIndex].setText(getResources().getString(
+                R.string.team_momentum,
+                mTimeline.getLongestRun(teamIndex),
+                mTimeline.getScoringRate(teamIndex)
+        ));
+    }
+
+    /**
+     * Getting textView with the points of the team in the current set and the sets won
+     *
+     * @param context context of the app
+     * @param teamIndex index of the team
+     * @return textView with the sets of the team
+     */
+    private TextView getSetView(Context context, int teamIndex) {
+        TextView sets = new TextView(context);
+        sets.setTextAlignment(TEXT_ALIGNMENT_CENTER);
+        mSetViews[teamIndex] = sets;
+        updateSet(teamIndex);
+        return sets;
+    }
+
+    /**
+     * Updating the views of the sets of all teams, as the end of the set changes all of them
+     */
+    private void updateSets() {
+        if (mRules == null) return;
+        for (int t = 0; t < mSetViews.length; t++) {
+            updateSet(t);
+        }
+    }
+
+    /**
+     * Updating the points of the team in the current set and the sets won
+     *
+     * @param teamIndex index of the team
+     */
+    private void updateSet(int teamIndex) {
+        if (mRules.getMatchWinner() == teamIndex) {
+            mSetViews[teamIndex].setText(getResources().getString(
+                    R.string.team_match_won, mRules.getSetsWon(teamIndex)));
+            return;
+        }
+        mSetViews[teamIndex].setText(getResources().getString(
+                R.string.team_sets,
+                mRules.getRules().getSetName(),
+                mRules.getSetCount() + 1,
+                mRules.getSetScore(teamIndex),
+                mRules.getSetsWon(teamIndex)
+        ));
+    }
+
+    /**
+     * Scheduling refresh of the changed views once per frame
+     */
+    private void scheduleRefresh() {
+        if (mRefreshScheduled) return;
+        mRefreshScheduled = true;
+        postOnAnimation(mRefreshRunnable);
+    }
+
+    /**
+     * Rebinding only rows and scoreboards whose values are changed.
+     * Rows out of the screen are bound with actual values when they are shown.
+     */
+    private void refreshChangedViews() {
+        MatchState state = mGame.getState();
+        int changedCount = mRenderedState.collectChangedActions(state, mChangedActions);
+        GameDefinition definition = mGame.getDefinition();
+        for (int i = 0; i < changedCount; i++) {
+            mAdapter.notifyItemChanged(mAdapter.getActionRow(mChangedActions[i]));
+            mAdapter.notifyItemChanged(mAdapter.getPlayerRow(definition.getActionPlayer(mChangedActions[i])));
+        }
+        changedCount = mRenderedState.collectChangedTeams(state, mChangedTeams);
+        for (int i = 0; i < changedCount; i++) {
+            int t = mChangedTeams[i];
+            mScoreViews[t].setText(String.valueOf(mRenderedState.getScore(t)));
+            updateMomentum(t);
+            // shares of all players of the team are changed with the team's score
+            for (int p = definition.getFirstPlayer(t); p < definition.getFirstPlayer(t + 1); p++) {
+                mAdapter.notifyItemChanged(mAdapter.getPlayerRow(p));
+            }
+        }
+        if (changedCount > 0) updateSets();
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.android.scorekeeper.view;
+
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import com.example.android.scorekeeper.R;
+import com.example.android.scorekeeper.model.Game;
+import com.example.android.scorekeeper.model.GameAction;
+import com.example.android.scorekeeper.model.GameDefinition;
+import com.example.android.scorekeeper.model.MatchStatistics;
+
+/**
+ * Adapter of the players and their actions as flat rows of the RecyclerView.
+ * Only visible rows are bound; action buttons are recycled between actions.
+ *
+ * @package com.example.android.scorekeeper.view
+ * (c) 2018, Igor Korovchenko.
+ */
+
+class GameRowAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+
+    /**
+     * Types of the rows
+     */
+    private static final int VIEW_TYPE_PLAYER = 0;
+    private static final int VIEW_TYPE_ACTION = 1;
+
+    /**
+     * Model of the game
+     */
+    private final Game mGame;
+
+    /**
+     * Listener of the buttons
+     */
+    private final GameActionButton.OnActionChangedListener mListener;
+
+    /**
+     * Item of each row: index of the action for action rows, -(index of the player + 1) for player rows
+     */
+    private final int[] mRowItems;
+
+    /**
+     * Row of each action
+     */
+    private final int[] mActionRows;
+
+    /**
+     * Row of each player
+     */
+    private final int[] mPlayerRows;
+
+    /**
+     * Statistics of the match shown in the rows of the players
+     */
+    private final MatchStatistics mStatistics;
+
+    /**
+     * Constructor of the adapter
+     *
+     * @param game model of the game
+     * @param statistics statistics of the match
+     * @param listener listener of the buttons
+     */
+    GameRowAdapter(Game game, MatchStatistics statistics, GameActionButton.OnActionChangedListener listener) {
+        this.mGame = game;
+        this.mStatistics = statistics;
+        this.mListener = listener;
+
+        GameDefinition definition = game.getDefinition();
+        mRowItems = new int[definition.getPlayerCount() + definition.getActionCount()];
+        mActionRows = new int[definition.getActionCount()];
+        mPlayerRows = new int[definition.getPlayerCount()];
+        int row = 0;
+        for (int p = 0; p < definition.getPlayerCount(); p++) {
+            mPlayerRows[p] = row;
+            mRowItems[row++] = -(p + 1);
+            for (int a = definition.getFirstAction(p); a < definition.getFirstAction(p + 1); a++) {
+                mActionRows[a] = row;
+                mRowItems[row++] = a;
+            }
+        }
+    }
+
+    /**
+     * Getting the row of the action
+     *
+     * @param actionIndex index of the action in the game
+     * @return position of the row in the adapter
+     */
+    int getActionRow(int actionIndex) {
+        return mActionRows[actionIndex];
+    }
+
+    /**
+     * Getting the row of the player
+     *
+     * @param playerIndex index of the player in the game
+     * @return position of the row in the adapter
+     */
+    int getPlayerRow(int playerIndex) {
+        return mPlayerRows[playerIndex];
+    }
+
+    @Override
+    public int getItemCount() {
+        return mRowItems.length;
+    }
+
+    @Override
+    public int getItemViewType(int position) {
+        return mRowItems[position] < 0 ? VIEW_TYPE_PLAYER : VIEW_TYPE_ACTION;
+    }
+
+    @Override
+    public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        View view;
+        if (viewType == VIEW_TYPE_PLAYER) {
+            TextView playerName = new TextView(parent.getContext());
+            playerName.setTextAlignment(View.TEXT_ALIGNMENT_CENTER);
+            view = playerName;
+        } else {
+            view = new GameActionButton(parent.getContext(), "", null, mListener);
+        }
+        view.setLayoutParams(new RecyclerView.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT,
+                ViewGroup.LayoutParams.WRAP_CONTENT
+        ));
+        return new RecyclerView.ViewHolder(view) {
+        };
+    }
+
+    @Override
+    public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
+        int item = mRowItems[position];
+        GameDefinition definition = mGame.getDefinition();
+        if (item < 0) {
+            int playerIndex = -item - 1;
+            String caption = definition.getTeamName(definition.getPlayerTeam(playerIndex))
+                    + " - " + definition.getPlayerName(playerIndex);
+            ((TextView) holder.itemView).setText(holder.itemView.getResources().getString(
+                    R.string.player_stats,
+                    caption,
+                    mStatistics.getPlayerContribution(playerIndex),
+                    Math.round(100 * mStatistics.getShareOfTeamPoints(playerIndex))
+            ));
+        } else {
+            GameAction model = mGame.getGameAction(item);
+            ((GameActionButton) holder.itemView).bind(model.getName(), model);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.android.scorekeeper.view;
+
+import com.example.android.scorekeeper.model.DefinitionMigration;
+import com.example.android.scorekeeper.model.Game;
+
+/**
+ * Common interface of the views representing the game,
+ * used by the activity regardless of the rendering mode
+ *
+ * @package com.example.android.scorekeeper.view
+ * (c) 2018, Igor Korovchenko.
+ */
+
+public interface GameView {
+
+    /**
+     * Getting name of the game
+     *
+     * @return game name
+     */
+    String getGameName();
+
+    /**
+     * Getting model of the game shown by the view
+     *
+     * @return game model
+     */
+    Game getGame();
+
+    /**
+     * Updating all buttons' captions and scoreboards, e.g. after restoring the state
+     */
+    void updateCaptions();
+
+    /**
+     * Clearing all counters of the match and updating the views
+     */
+    void resetScores();
+
+    /**
+     * Undoing last applied action of the journal
+     */
+    void undoLastAction();
+
+    /**
+     * Redoing last undone action of the journal
+     */
+    void redoLastAction();
+
+    /**
+     * Ending the current set of the match manually, e.g. a frame of snooker
+     */
+    void endSet();
+
+    /**
+     * Showing the match of the reloaded definition. Views of the kept teams, players
+     * and actions are reused, so the layout is updated in place.
+     *
+     * @param game new match with the migrated counters
+     * @param migration migration from the definition of the shown match
+     */
+    void reloadGame(Game game, DefinitionMigration migration);
+}
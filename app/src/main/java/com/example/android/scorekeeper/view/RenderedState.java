@@ -0,0 +1,144 @@
+package com.example.android.scorekeeper.view;
+
+import com.example.android.scorekeeper.model.MatchState;
+
+/**
+ * Values of the match currently shown by the views.
+ * Collects actions and teams whose values differ from the shown ones,
+ * so only changed captions and scoreboards are redrawn.
+ *
+ * @package com.example.android.scorekeeper.view
+ * (c) 2018, Igor Korovchenko.
+ */
+
+final class RenderedState {
+
+    /**
+     * Shown counters of the actions and shown scores of the teams
+     */
+    private final int[] mCounts;
+    private final int[] mScores;
+
+    /**
+     * Consistent copy of the scores of the state, reused by every refresh
+     */
+    private final int[] mStateScores;
+
+    /**
+     * Actions marked as changed since the last refresh
+     */
+    private final int[] mDirtyActions;
+    private final boolean[] mIsDirty;
+    private int mDirtyCount;
+
+    /**
+     * All actions are marked as changed
+     */
+    private boolean mAllDirty;
+
+    /**
+     * Constructor of the state with zero values shown
+     *
+     * @param actionCount count of the actions
+     * @param teamCount count of the teams
+     */
+    RenderedState(int actionCount, int teamCount) {
+        mCounts = new int[actionCount];
+        mScores = new int[teamCount];
+        mStateScores = new int[teamCount];
+        mDirtyActions = new int[actionCount];
+        mIsDirty = new boolean[actionCount];
+    }
+
+    /**
+     * Marking the action as changed
+     *
+     * @param actionIndex index of the action in the game
+     */
+    void markAction(int actionIndex) {
+        if (mAllDirty || mIsDirty[actionIndex]) return;
+        mIsDirty[actionIndex] = true;
+        mDirtyActions[mDirtyCount++] = actionIndex;
+    }
+
+    /**
+     * Marking all actions as changed, e.g. after restoring or resetting the state
+     */
+    void markAll() {
+        mAllDirty = true;
+    }
+
+    /**
+     * Checking if any action is marked as changed
+     *
+     * @return true if there are marked actions
+     */
+    boolean isDirty() {
+        return mAllDirty || mDirtyCount > 0;
+    }
+
+    /**
+     * Collecting marked actions whose counters differ from the shown ones.
+     * Their counters are considered shown after the call and the marks are cleared.
+     *
+     * @param state state of the match
+     * @param changedActions buffer for indexes of the changed actions, sized by count of the actions
+     * @return count of the changed actions
+     */
+    int collectChangedActions(MatchState state, int[] changedActions) {
+        int changedCount = 0;
+        if (mAllDirty) {
+            for (int a = 0; a < mCounts.length; a++) {
+                changedCount = collectAction(state, a, changedActions, changedCount);
+                mIsDirty[a] = false;
+            }
+        } else {
+            for (int i = 0; i < mDirtyCount; i++) {
+                int a = mDirtyActions[i];
+                changedCount = collectAction(state, a, changedActions, changedCount);
+                mIsDirty[a] = false;
+            }
+        }
+        mAllDirty = false;
+        mDirtyCount = 0;
+        return changedCount;
+    }
+
+    /**
+     * Collecting teams whose scores differ from the shown ones.
+     * Their scores are considered shown after the call.
+     *
+     * @param state state of the match
+     * @param changedTeams buffer for indexes of the changed teams, sized by count of the teams
+     * @return count of the changed teams
+     */
+    int collectChangedTeams(MatchState state, int[] changedTeams) {
+        state.copyScores(mStateScores);
+        int changedCount = 0;
+        for (int t = 0; t < mScores.length; t++) {
+            if (mScores[t] != mStateScores[t]) {
+                mScores[t] = mStateScores[t];
+                changedTeams[changedCount++] = t;
+            }
+        }
+        return changedCount;
+    }
+
+    /**
+     * Getting the shown score of the team
+     *
+     * @param teamIndex index of the team
+     * @return score
+     */
+    int getScore(int teamIndex) {
+        return mScores[teamIndex];
+    }
+
+    private int collectAction(MatchState state, int actionIndex, int[] changedActions, int changedCount) {
+        int count = state.getActionsCount(actionIndex);
+        if (mCounts[actionIndex] == count) return changedCount;
+        mCounts[actionIndex] = count;
+        changedActions[changedCount] = actionIndex;
+        return changedCount + 1;
+    }
+}
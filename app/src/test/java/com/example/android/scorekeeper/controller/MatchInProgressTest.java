@@ -0,0 +1,156 @@
+package com.example.android.scorekeeper.controller;
+
+import android.content.SharedPreferences;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the record of the match in progress
+ */
+public class MatchInProgressTest {
+
+    @Test
+    public void recoverableGame_survivesSetupOfTheSelector() {
+        MemoryPreferences preferences = new MemoryPreferences();
+        new MatchInProgress(preferences, 2).save(1);
+
+        // the process is killed and the activity is created again: the selector records -1 first
+        MatchInProgress record = new MatchInProgress(preferences, 2);
+        record.save(-1);
+        assertEquals(1, record.getRecoverableGame());
+        assertEquals(-1, new MatchInProgress(preferences, 2).getRecoverableGame());
+    }
+
+    @Test
+    public void recoverableGame_ignoresUnknownGames() {
+        MemoryPreferences preferences = new MemoryPreferences();
+        new MatchInProgress(preferences, 3).save(2);
+        assertEquals(-1, new MatchInProgress(preferences, 2).getRecoverableGame());
+        assertEquals(-1, new MatchInProgress(new MemoryPreferences(), 2).getRecoverableGame());
+    }
+
+    /**
+     * Preferences kept in memory, applied immediately like the preferences of Android
+     */
+    private static final class MemoryPreferences implements SharedPreferences, SharedPreferences.Editor {
+
+        private final HashMap<String, Object> mValues = new HashMap<>();
+
+        @Override
+        public Map<String, ?> getAll() {
+            return new HashMap<>(mValues);
+        }
+
+        @Override
+        public String getString(String key, String defValue) {
+            return mValues.containsKey(key) ? (String) mValues.get(key) : defValue;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Set<String> getStringSet(String key, Set<String> defValues) {
+            return mValues.containsKey(key) ? (Set<String>) mValues.get(key) : defValues;
+        }
+
+        @Override
+        public int getInt(String key, int defValue) {
+            return mValues.containsKey(key) ? (Integer) mValues.get(key) : defValue;
+        }
+
+        @Override
+        public long getLong(String key, long defValue) {
+            return mValues.containsKey(key) ? (Long) mValues.get(key) : defValue;
+        }
+
+        @Override
+        public float getFloat(String key, float defValue) {
+            return mValues.containsKey(key) ? (Float) mValues.get(key) : defValue;
+        }
+
+        @Override
+        public boolean getBoolean(String key, boolean defValue) {
+            return mValues.containsKey(key) ? (Boolean) mValues.get(key) : defValue;
+        }
+
+        @Override
+        public boolean contains(String key) {
+            return mValues.containsKey(key);
+        }
+
+        @Override
+        public Editor edit() {
+            return this;
+        }
+
+        @Override
+        public void registerOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        }
+
+        @Override
+        public void unregisterOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        }
+
+        @Override
+        public Editor putString(String key, String value) {
+            mValues.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor putStringSet(String key, Set<String> values) {
+            mValues.put(key, values);
+            return this;
+        }
+
+        @Override
+        public Editor putInt(String key, int value) {
+            mValues.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor putLong(String key, long value) {
+            mValues.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor putFloat(String key, float value) {
+            mValues.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor putBoolean(String key, boolean value) {
+            mValues.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor remove(String key) {
+            mValues.remove(key);
+            return this;
+        }
+
+        @Override
+        public Editor clear() {
+            mValues.clear();
+            return this;
+        }
+
+        @Override
+        public boolean commit() {
+            return true;
+        }
+
+        @Override
+        public void apply() {
+        }
+    }
+}
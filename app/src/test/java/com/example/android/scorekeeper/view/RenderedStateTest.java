@@ -0,0 +1,104 @@
+package com.example.android.scorekeeper.view;
+
+import com.example.android.scorekeeper.model.DefinitionGenerator;
+import com.example.android.scorekeeper.model.Game;
+import com.example.android.scorekeeper.model.GameParser;
+import com.example.android.scorekeeper.model.MatchState;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.Charset;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the dirty tracking of the shown values
+ */
+public class RenderedStateTest {
+
+    private static Game syntheticGame(int playerCount, int actionCount) throws Exception {
+        String json = new DefinitionGenerator(2, playerCount, actionCount).generate();
+        return new Game(GameParser.parse(new ByteArrayInputStream(json.getBytes(Charset.forName("UTF-8")))));
+    }
+
+    private static int[] randomCounts(int size, Random random) {
+        int[] counts = new int[size];
+        for (int i = 0; i < size; i++) {
+            counts[i] = random.nextInt(3);
+        }
+        return counts;
+    }
+
+    @Test
+    public void collect_returnsOnlyChangedValues() throws Exception {
+        Game game = syntheticGame(10, 50);
+        MatchState state = game.getState();
+        RenderedState rendered = new RenderedState(game.getActionCount(), game.getTeamCount());
+        int[] changedActions = new int[game.getActionCount()];
+        int[] changedTeams = new int[game.getTeamCount()];
+        assertEquals(1000, game.getActionCount());
+
+        state.apply(5, 1);
+        state.apply(7, 1);
+        state.apply(7, -1);
+        rendered.markAction(5);
+        rendered.markAction(7);
+        rendered.markAction(5);
+        assertEquals(1, rendered.collectChangedActions(state, changedActions));
+        assertEquals(5, changedActions[0]);
+        assertEquals(1, rendered.collectChangedTeams(state, changedTeams));
+        assertEquals(0, changedTeams[0]);
+        assertFalse(rendered.isDirty());
+        assertEquals(0, rendered.collectChangedTeams(state, changedTeams));
+    }
+
+    @Test
+    public void restore_refreshesChangedButtonsOnly() throws Exception {
+        Game game = syntheticGame(10, 50);
+        MatchState state = game.getState();
+        RenderedState rendered = new RenderedState(game.getActionCount(), game.getTeamCount());
+        int[] changedActions = new int[game.getActionCount()];
+
+        int[] counts = randomCounts(game.getActionCount(), new Random(3));
+        int nonZero = 0;
+        for (int count : counts) {
+            if (count != 0) nonZero++;
+        }
+        state.setCounts(counts);
+        rendered.markAll();
+        assertEquals(nonZero, rendered.collectChangedActions(state, changedActions));
+
+        state.apply(changedActions[0], 1);
+        rendered.markAll();
+        assertEquals(1, rendered.collectChangedActions(state, changedActions));
+    }
+
+    @Test
+    public void restore_growsLinearlyWithButtons() throws Exception {
+        long small = measureRestore(syntheticGame(10, 50));
+        long large = measureRestore(syntheticGame(100, 50));
+        assertTrue("Restore of 10x buttons took " + large / Math.max(1, small) + "x time", large < small * 40);
+    }
+
+    private static long measureRestore(Game game) {
+        MatchState state = game.getState();
+        RenderedState rendered = new RenderedState(game.getActionCount(), game.getTeamCount());
+        int[] changedActions = new int[game.getActionCount()];
+        int[] changedTeams = new int[game.getTeamCount()];
+        Random random = new Random(1);
+        int[][] snapshots = {randomCounts(game.getActionCount(), random), randomCounts(game.getActionCount(), random)};
+
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 200; i++) {
+            long start = System.nanoTime();
+            state.setCounts(snapshots[i % 2]);
+            rendered.markAll();
+            rendered.collectChangedActions(state, changedActions);
+            rendered.collectChangedTeams(state, changedTeams);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+}
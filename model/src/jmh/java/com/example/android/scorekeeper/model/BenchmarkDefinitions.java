@@ -0,0 +1,65 @@
+package com.example.android.scorekeeper.model;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Definitions of the benchmarks: bundled assets by file name
+ * and generated definitions by "synthetic:teams x players x actions", e.g. "synthetic:2x25x40"
+ */
+final class BenchmarkDefinitions {
+
+    /**
+     * Names of the benchmarked definitions for the @Param of the benchmarks
+     */
+    static final String BEACH_VOLLEYBALL = "beach_volleyball.json";
+    static final String SNOOKER = "snooker.json";
+    static final String SYNTHETIC_PREFIX = "synthetic:";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private BenchmarkDefinitions() {
+    }
+
+    /**
+     * Getting UTF-8 JSON of the definition
+     *
+     * @param source file name of the asset or synthetic definition
+     * @return bytes of the definition
+     * @throws IOException if the asset can't be read
+     */
+    static byte[] load(String source) throws IOException {
+        if (source.startsWith(SYNTHETIC_PREFIX)) {
+            String[] sizes = source.substring(SYNTHETIC_PREFIX.length()).split("x");
+            return new DefinitionGenerator(Integer.parseInt(sizes[0]), Integer.parseInt(sizes[1]), Integer.parseInt(sizes[2]))
+                    .generate().getBytes(UTF_8);
+        }
+        InputStream inputStream = BenchmarkDefinitions.class.getResourceAsStream("/" + source);
+        if (inputStream == null) throw new IOException("No asset " + source);
+        try {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            byte[] buffer = new byte[JsonTokenizer.DEFAULT_BUFFER_SIZE];
+            int count;
+            while ((count = inputStream.read(buffer)) > 0) {
+                outputStream.write(buffer, 0, count);
+            }
+            return outputStream.toByteArray();
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * Parsing the definition
+     *
+     * @param source file name of the asset or synthetic definition
+     * @return definition of the game
+     * @throws IOException if the asset can't be read
+     */
+    static GameDefinition parse(String source) throws IOException {
+        return GameParser.parse(new ByteArrayInputStream(load(source)));
+    }
+}
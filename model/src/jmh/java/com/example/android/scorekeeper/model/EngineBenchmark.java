@@ -0,0 +1,155 @@
+package com.example.android.scorekeeper.model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the engine hosting many matches: actions per second over all shards.
+ * Several batches are in flight, so the shards don't wait for the submitting thread.
+ * Every tenth command undoes the last change of its match.
+ * <p>
+ * {@link #main} is the quick run without JMH: one million actions over 100000 matches on one shard
+ * per processor, checking that every action is kept by the snapshots of the matches.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class EngineBenchmark {
+
+    /**
+     * Commands per batch, batches in flight and batches per invocation
+     */
+    private static final int BATCH_SIZE = 10000;
+    private static final int IN_FLIGHT = 4;
+    private static final int BATCHES_PER_INVOCATION = 16;
+
+    @Param({"100000"})
+    public int mMatchCount;
+
+    /**
+     * Count of the shards, 0 for the count of the processors
+     */
+    @Param({"1", "0"})
+    public int mShardCount;
+
+    @Param({BenchmarkDefinitions.BEACH_VOLLEYBALL, "synthetic:2x25x40"})
+    public String mSource;
+
+    private MatchEngine mEngine;
+    private CommandBatch[] mBatches;
+    private int mNext;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, InterruptedException {
+        GameDefinition definition = BenchmarkDefinitions.parse(mSource);
+        mEngine = new MatchEngine(mShardCount > 0 ? mShardCount : Runtime.getRuntime().availableProcessors());
+        int definitionId = mEngine.registerDefinition(definition);
+        CommandBatch create = new CommandBatch();
+        for (int m = 0; m < mMatchCount; m++) {
+            create.addCreate(m, definitionId);
+        }
+        mEngine.submit(create);
+        create.await();
+
+        Random random = new Random(24);
+        mBatches = new CommandBatch[IN_FLIGHT];
+        for (int b = 0; b < IN_FLIGHT; b++) {
+            mBatches[b] = new CommandBatch();
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                long matchId = random.nextInt(mMatchCount);
+                if (random.nextInt(10) == 0) {
+                    mBatches[b].addUndo(matchId);
+                } else {
+                    mBatches[b].addApply(matchId, random.nextInt(definition.getActionCount()), 1);
+                }
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        mEngine.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE * BATCHES_PER_INVOCATION)
+    public int applyBatches() throws InterruptedException {
+        for (int b = 0; b < BATCHES_PER_INVOCATION; b++) {
+            CommandBatch batch = mBatches[mNext++ % IN_FLIGHT];
+            batch.await();
+            mEngine.submit(batch);
+        }
+        for (CommandBatch batch : mBatches) {
+            batch.await();
+        }
+        return mBatches[0].getResult(0);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        final int matchCount = 100000;
+        final int batchSize = 10000;
+        final int batchCount = 100;
+        int shardCount = Runtime.getRuntime().availableProcessors();
+        MatchEngine engine = new MatchEngine(shardCount);
+        GameDefinition definition = BenchmarkDefinitions.parse(BenchmarkDefinitions.BEACH_VOLLEYBALL);
+        int definitionId = engine.registerDefinition(definition);
+        CommandBatch batch = new CommandBatch();
+        for (int m = 0; m < matchCount; m++) {
+            batch.addCreate(m, definitionId);
+        }
+        engine.submit(batch);
+        batch.await();
+
+        Random random = new Random(25);
+        CommandBatch[] batches = new CommandBatch[IN_FLIGHT];
+        for (int b = 0; b < batches.length; b++) {
+            batches[b] = new CommandBatch();
+            for (int i = 0; i < batchSize; i++) {
+                batches[b].addApply(random.nextInt(matchCount), random.nextInt(definition.getActionCount()), 1);
+            }
+        }
+        long start = System.nanoTime();
+        for (int b = 0; b < batchCount; b++) {
+            CommandBatch next = batches[b % batches.length];
+            next.await();
+            engine.submit(next);
+        }
+        for (CommandBatch submitted : batches) {
+            submitted.await();
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.println(String.format(Locale.US, "%d matches on %d shards: %d actions/s", matchCount, shardCount,
+                (long) batchSize * batchCount * 1000000000L / elapsed));
+
+        batch.clear();
+        for (int m = 0; m < matchCount; m++) {
+            batch.addSnapshot(m);
+        }
+        engine.submit(batch);
+        batch.await();
+        long total = 0;
+        for (int m = 0; m < matchCount; m++) {
+            Game restored = new Game(definition);
+            MatchStateCodec.decode(batch.getSnapshot(m), restored);
+            for (int count : restored.getCurrentState()) {
+                total += count;
+            }
+        }
+        engine.close();
+        if (total != (long) batchSize * batchCount) throw new IllegalStateException("Lost actions: " + total);
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.android.scorekeeper.model;
+
+/**
+ * Histogram of the latencies in nanoseconds with 32 buckets per power of two,
+ * so percentiles are within 3% of the recorded values. Recording doesn't allocate.
+ */
+final class LatencyHistogram {
+
+    /**
+     * Latencies below this bound have own buckets
+     */
+    private static final int LINEAR_BOUND = 64;
+
+    /**
+     * Bits of the buckets per power of two
+     */
+    private static final int SUB_BITS = 5;
+
+    private final long[] mCounts = new long[LINEAR_BOUND + (64 - 6) * (1 << SUB_BITS)];
+    private long mTotalCount;
+    private long mTotalNanos;
+    private long mMaxNanos;
+
+    /**
+     * Recording the latency
+     *
+     * @param nanos latency in nanoseconds
+     */
+    void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        mCounts[bucket(nanos)]++;
+        mTotalCount++;
+        mTotalNanos += nanos;
+        if (nanos > mMaxNanos) mMaxNanos = nanos;
+    }
+
+    long getCount() {
+        return mTotalCount;
+    }
+
+    long getMeanNanos() {
+        return mTotalCount == 0 ? 0 : mTotalNanos / mTotalCount;
+    }
+
+    long getMaxNanos() {
+        return mMaxNanos;
+    }
+
+    /**
+     * Getting the latency below which the given share of the recorded latencies is
+     *
+     * @param percentile share in percent, e.g. 99
+     * @return upper bound of the bucket in nanoseconds
+     */
+    long getPercentileNanos(double percentile) {
+        if (mTotalCount == 0) return 0;
+        long rank = (long) Math.ceil(mTotalCount * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < mCounts.length; i++) {
+            seen += mCounts[i];
+            if (seen >= rank) return Math.min(upperBound(i), mMaxNanos);
+        }
+        return mMaxNanos;
+    }
+
+    private static int bucket(long nanos) {
+        if (nanos < LINEAR_BOUND) return (int) nanos;
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) (nanos >>> (exponent - SUB_BITS)) & ((1 << SUB_BITS) - 1);
+        return LINEAR_BOUND + ((exponent - 6) << SUB_BITS) + sub;
+    }
+
+    private static long upperBound(int bucket) {
+        if (bucket < LINEAR_BOUND) return bucket;
+        int exponent = ((bucket - LINEAR_BOUND) >> SUB_BITS) + 6;
+        long sub = (bucket - LINEAR_BOUND) & ((1 << SUB_BITS) - 1);
+        long next = (1L << SUB_BITS) + sub + 1;
+        return (next << (exponent - SUB_BITS)) - 1;
+    }
+}
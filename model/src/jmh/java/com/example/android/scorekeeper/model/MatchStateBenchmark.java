@@ -0,0 +1,62 @@
+package com.example.android.scorekeeper.model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading of the scores and saving and restoring of the counters of the match
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MatchStateBenchmark {
+
+    @Param({
+            BenchmarkDefinitions.BEACH_VOLLEYBALL,
+            BenchmarkDefinitions.SNOOKER,
+            "synthetic:2x25x40",
+            "synthetic:2x100x100"
+    })
+    public String mSource;
+
+    private Game mGame;
+    private int[] mStates;
+    private int[] mNonLinearPoints;
+
+    @Setup
+    public void setup() throws IOException {
+        mGame = new Game(BenchmarkDefinitions.parse(mSource));
+        Random random = new Random(19);
+        for (int i = 0; i < 1000; i++) {
+            mGame.getGameAction(random.nextInt(mGame.getActionCount())).addAction();
+        }
+        mStates = mGame.getCurrentState();
+        mNonLinearPoints = mGame.getState().getNonLinearPoints();
+    }
+
+    @Benchmark
+    public int[] getScores() {
+        return mGame.getScores();
+    }
+
+    @Benchmark
+    public int[] getCurrentState() {
+        return mGame.getCurrentState();
+    }
+
+    @Benchmark
+    public Game setCurrentState() {
+        mGame.setCurrentState(mStates, mNonLinearPoints);
+        return mGame;
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.android.scorekeeper.model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading of the definition: streaming parse of the JSON and decoding of the binary cache
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ParseBenchmark {
+
+    @Param({
+            BenchmarkDefinitions.BEACH_VOLLEYBALL,
+            BenchmarkDefinitions.SNOOKER,
+            "synthetic:2x25x40",
+            "synthetic:2x100x100"
+    })
+    public String mSource;
+
+    private byte[] mJson;
+    private byte[] mBuffer;
+    private byte[] mCache;
+
+    @Setup
+    public void setup() throws IOException {
+        mJson = BenchmarkDefinitions.load(mSource);
+        mBuffer = new byte[JsonTokenizer.DEFAULT_BUFFER_SIZE];
+        mCache = GameCodec.encode(GameParser.parse(new ByteArrayInputStream(mJson)), 0L);
+    }
+
+    @Benchmark
+    public GameDefinition parse() throws IOException {
+        return new GameParser(new ByteArrayInputStream(mJson), mBuffer).parse();
+    }
+
+    @Benchmark
+    public GameDefinition decodeCache() throws IOException {
+        return GameCodec.decode(ByteBuffer.wrap(mCache));
+    }
+}
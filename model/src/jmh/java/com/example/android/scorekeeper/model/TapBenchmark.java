@@ -0,0 +1,72 @@
+package com.example.android.scorekeeper.model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the taps: the counter and the scores of the state alone
+ * and the whole game with the journal. Each tap of the game is undone,
+ * so the journal doesn't grow during the run.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TapBenchmark {
+
+    /**
+     * Count of the pregenerated random actions, power of two
+     */
+    private static final int SEQUENCE_LENGTH = 4096;
+
+    @Param({
+            BenchmarkDefinitions.BEACH_VOLLEYBALL,
+            BenchmarkDefinitions.SNOOKER,
+            "synthetic:2x25x40",
+            "synthetic:2x100x100"
+    })
+    public String mSource;
+
+    private Game mGame;
+    private MatchState mState;
+    private int[] mSequence;
+    private int mNext;
+
+    @Setup
+    public void setup() throws IOException {
+        GameDefinition definition = BenchmarkDefinitions.parse(mSource);
+        mGame = new Game(definition);
+        mState = new MatchState(definition);
+        Random random = new Random(19);
+        mSequence = new int[SEQUENCE_LENGTH];
+        for (int i = 0; i < SEQUENCE_LENGTH; i++) {
+            mSequence[i] = random.nextInt(definition.getActionCount());
+        }
+    }
+
+    @Benchmark
+    public int[] applyToState() {
+        mState.apply(nextAction(), 1);
+        return mState.getScores();
+    }
+
+    @Benchmark
+    public int[] tapAndUndo() {
+        mGame.getGameAction(nextAction()).addAction();
+        mGame.undo();
+        return mGame.getScores();
+    }
+
+    private int nextAction() {
+        return mSequence[mNext++ & (SEQUENCE_LENGTH - 1)];
+    }
+}
@@ -0,0 +1,306 @@
+package com.example.android.scorekeeper.model;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.Charset;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Load test of the model: a scripted stream of taps, undos, redos and reads
+ * is played against generated definitions of growing size. For each size it reports
+ * the throughput and the allocation rate of the untimed run and the latencies
+ * of each operation of the timed run, so the size where Game, Team and Player stop scaling is visible.
+ * <p>
+ * Arguments are written as name=value, lists are separated by commas:
+ * teams=2 players=1,10,100 actions=10,100 events=5000000 seed=20 nonlinear=0
+ * script=tap:88,undo:6,redo:4,scores:1,walk:1
+ * <p>
+ * Operations of the script: tap of the random action, undo, redo, scores of the game,
+ * walk over all teams, players and actions as the layout does, save and restore of the counters.
+ */
+public final class TapStreamSimulator {
+
+    /**
+     * Operations of the script
+     */
+    private static final int OP_TAP = 0;
+    private static final int OP_UNDO = 1;
+    private static final int OP_REDO = 2;
+    private static final int OP_SCORES = 3;
+    private static final int OP_WALK = 4;
+    private static final int OP_SAVE = 5;
+    private static final int OP_RESTORE = 6;
+    private static final String[] OP_NAMES = {"tap", "undo", "redo", "scores", "walk", "save", "restore"};
+
+    /**
+     * Length of the pregenerated stream, power of two. Longer runs repeat the stream.
+     */
+    private static final int STREAM_LENGTH = 1 << 20;
+
+    /**
+     * Share of the events played before the measured runs
+     */
+    private static final int WARMUP_DIVISOR = 5;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Game under the load and the pregenerated stream
+     */
+    private final Game mGame;
+    private final int[] mOps = new int[STREAM_LENGTH];
+    private final int[] mActions = new int[STREAM_LENGTH];
+
+    /**
+     * Saved counters for the restore operation
+     */
+    private int[] mSaved;
+
+    /**
+     * Results of the reads, kept so the reads are not optimized away
+     */
+    private long mSink;
+
+    /**
+     * Constructor of the simulator
+     *
+     * @param definition definition of the game under the load
+     * @param weights weights of the operations in the script by index of the operation
+     * @param seed seed of the stream
+     */
+    TapStreamSimulator(GameDefinition definition, int[] weights, long seed) {
+        mGame = new Game(definition);
+        mSaved = mGame.getCurrentState();
+        int totalWeight = 0;
+        for (int weight : weights) {
+            totalWeight += weight;
+        }
+        if (totalWeight <= 0) throw new IllegalArgumentException("Script has no operations");
+        Random random = new Random(seed);
+        for (int i = 0; i < STREAM_LENGTH; i++) {
+            int pick = random.nextInt(totalWeight);
+            int op = 0;
+            while (pick >= weights[op]) {
+                pick -= weights[op++];
+            }
+            mOps[i] = op;
+            mActions[i] = random.nextInt(definition.getActionCount());
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int[] teams = {2};
+        int[] players = {1, 10, 100};
+        int[] actions = {10, 100};
+        long events = 5000000L;
+        long seed = 20;
+        int nonLinearShare = 0;
+        int[] weights = parseScript("tap:88,undo:6,redo:4,scores:1,walk:1");
+        for (String arg : args) {
+            int split = arg.indexOf('=');
+            if (split < 0) throw new IllegalArgumentException("Argument is not name=value: " + arg);
+            String name = arg.substring(0, split);
+            String value = arg.substring(split + 1);
+            if ("teams".equals(name)) {
+                teams = parseList(value);
+            } else if ("players".equals(name)) {
+                players = parseList(value);
+            } else if ("actions".equals(name)) {
+                actions = parseList(value);
+            } else if ("events".equals(name)) {
+                events = Long.parseLong(value);
+            } else if ("seed".equals(name)) {
+                seed = Long.parseLong(value);
+            } else if ("nonlinear".equals(name)) {
+                nonLinearShare = Integer.parseInt(value);
+            } else if ("script".equals(name)) {
+                weights = parseScript(value);
+            } else {
+                throw new IllegalArgumentException("Unknown argument " + name);
+            }
+        }
+
+        for (int teamCount : teams) {
+            for (int playerCount : players) {
+                for (int actionCount : actions) {
+                    DefinitionGenerator generator = new DefinitionGenerator(teamCount, playerCount, actionCount);
+                    generator.setSeed(seed);
+                    generator.setNonLinearShare(nonLinearShare);
+                    GameDefinition definition = GameParser.parse(
+                            new ByteArrayInputStream(generator.generate().getBytes(UTF_8)));
+                    System.out.println(String.format(Locale.US, "%dx%dx%d (%d actions)",
+                            teamCount, playerCount, actionCount, definition.getActionCount()));
+                    new TapStreamSimulator(definition, weights, seed).run(events);
+                }
+            }
+        }
+    }
+
+    /**
+     * Playing the stream: warmup, untimed run for the throughput and the allocations,
+     * timed run for the latencies. The match is reset before each run.
+     *
+     * @param events count of the events of each measured run
+     */
+    void run(long events) {
+        play(events / WARMUP_DIVISOR, null);
+
+        mGame.reset();
+        long allocatedBefore = getAllocatedBytes();
+        long start = System.nanoTime();
+        play(events, null);
+        long elapsed = System.nanoTime() - start;
+        long allocated = getAllocatedBytes() - allocatedBefore;
+        double seconds = elapsed / 1e9;
+        if (allocatedBefore >= 0) {
+            System.out.println(String.format(Locale.US, "  %.2f M events/s, %.1f MB/s allocated, %.2f B/event",
+                    events / seconds / 1e6, allocated / seconds / 1e6, (double) allocated / events));
+        } else {
+            System.out.println(String.format(Locale.US, "  %.2f M events/s, allocations are not measured by this JVM",
+                    events / seconds / 1e6));
+        }
+
+        mGame.reset();
+        LatencyHistogram[] histograms = new LatencyHistogram[OP_NAMES.length];
+        for (int op = 0; op < histograms.length; op++) {
+            histograms[op] = new LatencyHistogram();
+        }
+        play(events, histograms);
+        System.out.println(String.format(Locale.US, "  %-8s %10s %8s %8s %8s %10s",
+                "op", "count", "mean ns", "p50 ns", "p99 ns", "max ns"));
+        for (int op = 0; op < histograms.length; op++) {
+            LatencyHistogram histogram = histograms[op];
+            if (histogram.getCount() == 0) continue;
+            System.out.println(String.format(Locale.US, "  %-8s %10d %8d %8d %8d %10d",
+                    OP_NAMES[op],
+                    histogram.getCount(),
+                    histogram.getMeanNanos(),
+                    histogram.getPercentileNanos(50),
+                    histogram.getPercentileNanos(99),
+                    histogram.getMaxNanos()));
+        }
+        if (mSink == 42) System.out.println();
+    }
+
+    /**
+     * Playing the events of the stream
+     *
+     * @param events count of the events
+     * @param histograms latencies of each operation or null for the untimed run
+     */
+    private void play(long events, LatencyHistogram[] histograms) {
+        for (long i = 0; i < events; i++) {
+            int position = (int) i & (STREAM_LENGTH - 1);
+            int op = mOps[position];
+            if (histograms == null) {
+                execute(op, mActions[position]);
+            } else {
+                long start = System.nanoTime();
+                execute(op, mActions[position]);
+                histograms[op].record(System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * Executing the operation of the script
+     *
+     * @param op operation
+     * @param actionIndex index of the action for the tap
+     */
+    private void execute(int op, int actionIndex) {
+        switch (op) {
+            case OP_TAP:
+                mGame.getGameAction(actionIndex).addAction();
+                break;
+            case OP_UNDO:
+                mSink += mGame.undo();
+                break;
+            case OP_REDO:
+                mSink += mGame.redo();
+                break;
+            case OP_SCORES:
+                mSink += mGame.getScores()[0];
+                break;
+            case OP_WALK:
+                mSink += walk();
+                break;
+            case OP_SAVE:
+                mSaved = mGame.getCurrentState();
+                break;
+            case OP_RESTORE:
+                mGame.setCurrentState(mSaved);
+                break;
+            default:
+                throw new IllegalStateException("Unknown operation " + op);
+        }
+    }
+
+    /**
+     * Reading the counters of all actions through the teams and the players, as the layout does
+     *
+     * @return sum of the counters
+     */
+    private long walk() {
+        long sum = 0;
+        for (int t = 0; t < mGame.getTeamCount(); t++) {
+            Team team = mGame.getTeam(t);
+            for (int p = 0; p < team.getPlayerCount(); p++) {
+                Player player = team.getPlayer(p);
+                for (int a = 0; a < player.getActionCount(); a++) {
+                    sum += player.getGameAction(a).getActionsCount();
+                }
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Getting bytes allocated by the current thread
+     *
+     * @return bytes count or -1 if the JVM doesn't count them
+     */
+    private static long getAllocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) return -1;
+        return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Parsing the script, e.g. "tap:90,undo:10"
+     *
+     * @param script operations with their weights
+     * @return weights by index of the operation
+     */
+    private static int[] parseScript(String script) {
+        int[] weights = new int[OP_NAMES.length];
+        for (String entry : script.split(",")) {
+            String[] parts = entry.split(":");
+            int op = -1;
+            for (int i = 0; i < OP_NAMES.length; i++) {
+                if (OP_NAMES[i].equals(parts[0].trim())) op = i;
+            }
+            if (op < 0 || parts.length != 2) throw new IllegalArgumentException("Wrong operation of the script: " + entry);
+            weights[op] = Integer.parseInt(parts[1].trim());
+        }
+        return weights;
+    }
+
+    /**
+     * Parsing the list of the sizes, e.g. "1,10,100"
+     *
+     * @param value sizes separated by commas
+     * @return sizes
+     */
+    private static int[] parseList(String value) {
+        String[] parts = value.split(",");
+        int[] result = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            result[i] = Integer.parseInt(parts[i].trim());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,388 @@
+package com.example.android.scorekeeper.model;
+
+import java.util.Arrays;
+
+/**
+ * Append-only journal of the applied actions for multi-level undo and redo.
+ * Entries (action index, delta, timestamp) are stored in primitive ring buffers,
+ * so recording a tap does not allocate unless the buffers grow.
+ * Recording after undo drops the entries which could be redone.
+ * Marks keep the positions of the manual ends of the sets between the entries;
+ * undoing the entry before a mark undoes the mark and redoing the entry restores it,
+ * the undone marks are dropped together with the entries which could be redone.
+ *
+ * @package com.example.android.scorekeeper
+ * (c) 2018, Igor Korovchenko.
+ */
+
+public final class ActionJournal {
+
+    /**
+     * Initial capacity of the buffers
+     */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * Initial capacity of the marks
+     */
+    private static final int INITIAL_MARKS_CAPACITY = 8;
+
+    /**
+     * Most count of the entries. The oldest entries are overwritten after reaching it.
+     */
+    private final int mMaxCapacity;
+
+    /**
+     * Columns of the entries
+     */
+    private int[] mActions;
+    private int[] mDeltas;
+    private long[] mTimestamps;
+
+    /**
+     * Slot of the oldest entry, count of the entries and count of the applied entries
+     */
+    private int mHead;
+    private int mSize;
+    private int mCursor;
+
+    /**
+     * Positions of the marks in order, i.e. counts of the entries before each mark,
+     * count of the applied marks and count of the marks including undone ones
+     */
+    private int[] mMarks = new int[INITIAL_MARKS_CAPACITY];
+    private int mMarkCount;
+    private int mStoredMarkCount;
+
+    /**
+     * Constructor of the unlimited journal
+     */
+    public ActionJournal() {
+        this(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Constructor of the journal keeping only the latest entries
+     *
+     * @param maxCapacity most count of the entries
+     */
+    public ActionJournal(int maxCapacity) {
+        this.mMaxCapacity = Math.max(1, maxCapacity);
+        int capacity = Math.min(INITIAL_CAPACITY, mMaxCapacity);
+        this.mActions = new int[capacity];
+        this.mDeltas = new int[capacity];
+        this.mTimestamps = new long[capacity];
+    }
+
+    /**
+     * Recording the applied action. Entries which could be redone are dropped.
+     *
+     * @param actionIndex index of the action in the game
+     * @param delta change of the action counter
+     * @param timestamp monotonic time of the action in milliseconds
+     */
+    public void record(int actionIndex, int delta, long timestamp) {
+        mSize = mCursor;
+        mStoredMarkCount = mMarkCount;
+        if (mSize == mActions.length) {
+            if (mActions.length < mMaxCapacity) {
+                grow();
+            } else {
+                mHead = (mHead + 1) % mActions.length;
+                mSize--;
+                shiftMarks();
+            }
+        }
+        int slot = slot(mSize);
+        mActions[slot] = actionIndex;
+        mDeltas[slot] = delta;
+        mTimestamps[slot] = timestamp;
+        mSize++;
+        mCursor = mSize;
+    }
+
+    /**
+     * Recording the manual end of the set after the applied entries.
+     * Entries which could be redone are dropped.
+     */
+    public void mark() {
+        mSize = mCursor;
+        if (mMarkCount == mMarks.length) mMarks = Arrays.copyOf(mMarks, mMarkCount * 2);
+        mMarks[mMarkCount++] = mCursor;
+        mStoredMarkCount = mMarkCount;
+    }
+
+    /**
+     * Checking if there is an applied entry to undo
+     *
+     * @return true if undo is possible
+     */
+    public boolean canUndo() {
+        return mCursor > 0;
+    }
+
+    /**
+     * Checking if there is an undone entry to redo
+     *
+     * @return true if redo is possible
+     */
+    public boolean canRedo() {
+        return mCursor < mSize;
+    }
+
+    /**
+     * Moving back over the last applied entry
+     *
+     * @return position of the undone entry or -1 if there is nothing to undo
+     */
+    public int undo() {
+        if (!canUndo()) return -1;
+        mCursor--;
+        while (mMarkCount > 0 && mMarks[mMarkCount - 1] > mCursor) {
+            mMarkCount--;
+        }
+        return mCursor;
+    }
+
+    /**
+     * Moving forward over the first undone entry and the undone marks after it
+     *
+     * @return position of the redone entry or -1 if there is nothing to redo
+     */
+    public int redo() {
+        if (!canRedo()) return -1;
+        mCursor++;
+        while (mMarkCount < mStoredMarkCount && mMarks[mMarkCount] <= mCursor) {
+            mMarkCount++;
+        }
+        return mCursor - 1;
+    }
+
+    /**
+     * Getting count of the entries including undone ones
+     *
+     * @return entries count
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Getting count of the applied entries
+     *
+     * @return applied entries count
+     */
+    public int getCursor() {
+        return mCursor;
+    }
+
+    /**
+     * Getting count of the applied marks
+     *
+     * @return applied marks count
+     */
+    public int getMarkCount() {
+        return mMarkCount;
+    }
+
+    /**
+     * Getting count of the marks including undone ones, which follow the applied marks
+     *
+     * @return marks count
+     */
+    public int getStoredMarkCount() {
+        return mStoredMarkCount;
+    }
+
+    /**
+     * Getting position of the mark
+     *
+     * @param index index of the mark, the oldest mark has zero index, the undone marks are the latest ones
+     * @return count of the entries before the mark
+     */
+    public int getMark(int index) {
+        return mMarks[index];
+    }
+
+    /**
+     * Getting index of the action of the entry
+     *
+     * @param position position of the entry, the oldest entry has zero position
+     * @return index of the action in the game
+     */
+    public int getAction(int position) {
+        return mActions[slot(position)];
+    }
+
+    /**
+     * Getting change of the action counter of the entry
+     *
+     * @param position position of the entry, the oldest entry has zero position
+     * @return delta
+     */
+    public int getDelta(int position) {
+        return mDeltas[slot(position)];
+    }
+
+    /**
+     * Getting time of the entry
+     *
+     * @param position position of the entry, the oldest entry has zero position
+     * @return monotonic time in milliseconds
+     */
+    public long getTimestamp(int position) {
+        return mTimestamps[slot(position)];
+    }
+
+    /**
+     * Applying all applied entries to the state in order
+     *
+     * @param state state of the match
+     */
+    public void replay(MatchState state) {
+        for (int i = 0; i < mCursor; i++) {
+            int slot = slot(i);
+            state.apply(mActions[slot], mDeltas[slot]);
+        }
+    }
+
+    /**
+     * Removing all entries
+     */
+    public void clear() {
+        mHead = 0;
+        mSize = 0;
+        mCursor = 0;
+        mMarkCount = 0;
+        mStoredMarkCount = 0;
+    }
+
+    /**
+     * Exporting the entries for state saving
+     *
+     * @return cursor followed by pairs of action index and delta
+     */
+    public int[] exportEntries() {
+        int[] entries = new int[1 + 2 * mSize];
+        entries[0] = mCursor;
+        for (int i = 0; i < mSize; i++) {
+            int slot = slot(i);
+            entries[1 + 2 * i] = mActions[slot];
+            entries[2 + 2 * i] = mDeltas[slot];
+        }
+        return entries;
+    }
+
+    /**
+     * Exporting times of the entries for state saving
+     *
+     * @return times of the entries in order
+     */
+    public long[] exportTimestamps() {
+        long[] timestamps = new long[mSize];
+        for (int i = 0; i < mSize; i++) {
+            timestamps[i] = mTimestamps[slot(i)];
+        }
+        return timestamps;
+    }
+
+    /**
+     * Exporting the marks including undone ones for state saving
+     *
+     * @return positions of the marks in order
+     */
+    public int[] exportMarks() {
+        return Arrays.copyOf(mMarks, mStoredMarkCount);
+    }
+
+    /**
+     * Importing the saved entries. Entries of the wrong format are ignored.
+     *
+     * @param entries cursor followed by pairs of action index and delta
+     * @param timestamps times of the entries in order
+     * @return true if the entries are imported
+     */
+    public boolean importEntries(int[] entries, long[] timestamps) {
+        return importEntries(entries, timestamps, null);
+    }
+
+    /**
+     * Importing the saved entries and marks. Entries or marks of the wrong format are ignored.
+     *
+     * @param entries cursor followed by pairs of action index and delta
+     * @param timestamps times of the entries in order
+     * @param marks positions of the marks in order, not after the last entry, or null.
+     *              The marks after the cursor are undone.
+     * @return true if the entries are imported
+     */
+    public boolean importEntries(int[] entries, long[] timestamps, int[] marks) {
+        if (entries == null || timestamps == null || entries.length != 1 + 2 * timestamps.length
+                || entries[0] < 0 || entries[0] > timestamps.length) {
+            return false;
+        }
+        if (marks != null) {
+            for (int i = 0; i < marks.length; i++) {
+                if (marks[i] < (i == 0 ? 0 : marks[i - 1]) || marks[i] > timestamps.length) return false;
+            }
+        }
+        clear();
+        if (marks != null) {
+            mMarks = Arrays.copyOf(marks, Math.max(INITIAL_MARKS_CAPACITY, marks.length));
+            mMarkCount = marks.length;
+            mStoredMarkCount = marks.length;
+        }
+        for (int i = 0; i < timestamps.length; i++) {
+            record(entries[1 + 2 * i], entries[2 + 2 * i], timestamps[i]);
+        }
+        mCursor = Math.max(0, entries[0] - (timestamps.length - mSize));
+        while (mMarkCount > 0 && mMarks[mMarkCount - 1] > mCursor) {
+            mMarkCount--;
+        }
+        return true;
+    }
+
+    /**
+     * Getting slot of the buffers by position of the entry
+     *
+     * @param position position of the entry
+     * @return slot in the buffers
+     */
+    private int slot(int position) {
+        int slot = mHead + position;
+        return slot < mActions.length ? slot : slot - mActions.length;
+    }
+
+    /**
+     * Moving the marks back after the oldest entry is overwritten.
+     * Marks before the oldest entry are dropped.
+     */
+    private void shiftMarks() {
+        int kept = 0;
+        for (int i = 0; i < mMarkCount; i++) {
+            if (mMarks[i] > 0) mMarks[kept++] = mMarks[i] - 1;
+        }
+        mMarkCount = kept;
+        mStoredMarkCount = kept;
+    }
+
+    /**
+     * Doubling capacity of the buffers, unwrapping the entries to the beginning
+     */
+    private void grow() {
+        int capacity = (int) Math.min((long) mActions.length * 2, mMaxCapacity);
+        int[] actions = new int[capacity];
+        int[] deltas = new int[capacity];
+        long[] timestamps = new long[capacity];
+        int tail = mActions.length - mHead;
+        System.arraycopy(mActions, mHead, actions, 0, tail);
+        System.arraycopy(mActions, 0, actions, tail, mHead);
+        System.arraycopy(mDeltas, mHead, deltas, 0, tail);
+        System.arraycopy(mDeltas, 0, deltas, tail, mHead);
+        System.arraycopy(mTimestamps, mHead, timestamps, 0, tail);
+        System.arraycopy(mTimestamps, 0, timestamps, tail, mHead);
+        mActions = actions;
+        mDeltas = deltas;
+        mTimestamps = timestamps;
+        mHead = 0;
+    }
+}
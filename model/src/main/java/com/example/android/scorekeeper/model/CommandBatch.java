@@ -0,0 +1,342 @@
+package com.example.android.scorekeeper.model;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Batch of the commands for the matches of the {@link MatchEngine}.
+ * Commands are stored in primitive columns, so the batch can be refilled
+ * and submitted again without allocation. Commands of one match are executed
+ * in the order of the batch; results are available after {@link #await()}.
+ *
+ * @package com.example.android.scorekeeper
+ * (c) 2018, Igor Korovchenko.
+ */
+
+public final class CommandBatch {
+
+    /**
+     * Types of the commands
+     */
+    static final int OP_CREATE = 1;
+    static final int OP_APPLY = 2;
+    static final int OP_UNDO = 3;
+    static final int OP_SNAPSHOT = 4;
+    static final int OP_REMOVE = 5;
+
+    /**
+     * Result of the executed command without the value
+     */
+    public static final int RESULT_OK = 0;
+
+    /**
+     * Result of the undo if the journal of the match has nothing to undo
+     */
+    public static final int RESULT_NOTHING_TO_UNDO = -1;
+
+    /**
+     * Result of the command for the match which is not created
+     */
+    public static final int RESULT_UNKNOWN_MATCH = -2;
+
+    /**
+     * Result of the command with the wrong action or definition
+     */
+    public static final int RESULT_WRONG_ARGUMENT = -3;
+
+    /**
+     * Result of the creation of the match which already exists
+     */
+    public static final int RESULT_MATCH_EXISTS = -4;
+
+    /**
+     * Initial capacity of the columns
+     */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * Columns of the commands: match id, type, action index or definition id, delta and result
+     */
+    private long[] mMatchIds;
+    private int[] mOps;
+    private int[] mArguments;
+    private int[] mDeltas;
+    private int[] mResults;
+
+    /**
+     * Index of the action undone by each undo command or -1
+     */
+    private int[] mUndoneActions;
+
+    /**
+     * Encoded states of the snapshot commands or null before the first snapshot
+     */
+    private byte[][] mSnapshots;
+
+    /**
+     * Count of the commands
+     */
+    private int mSize;
+
+    /**
+     * Commands ordered by the shard and the first position of each shard. Used by the engine.
+     */
+    int[] mShardOrder;
+    int[] mShardStarts;
+
+    /**
+     * Shards which have not executed their commands yet and the signal of the completion
+     */
+    final AtomicInteger mPendingShards = new AtomicInteger();
+    private volatile CountDownLatch mDone = new CountDownLatch(0);
+
+    /**
+     * Constructor of the empty batch
+     */
+    public CommandBatch() {
+        mMatchIds = new long[INITIAL_CAPACITY];
+        mOps = new int[INITIAL_CAPACITY];
+        mArguments = new int[INITIAL_CAPACITY];
+        mDeltas = new int[INITIAL_CAPACITY];
+        mResults = new int[INITIAL_CAPACITY];
+        mUndoneActions = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Adding creation of the match with zero counters
+     *
+     * @param matchId id of the new match
+     * @param definitionId id of the definition given by {@link MatchEngine#registerDefinition}
+     * @return position of the command
+     */
+    public int addCreate(long matchId, int definitionId) {
+        return add(matchId, OP_CREATE, definitionId, 0);
+    }
+
+    /**
+     * Adding change of the action counter of the match
+     *
+     * @param matchId id of the match
+     * @param actionIndex index of the action in the game
+     * @param delta change of the counter
+     * @return position of the command
+     */
+    public int addApply(long matchId, int actionIndex, int delta) {
+        return add(matchId, OP_APPLY, actionIndex, delta);
+    }
+
+    /**
+     * Adding undo of the last change of the match. The undone action is given by {@link #getUndoneAction}.
+     *
+     * @param matchId id of the match
+     * @return position of the command
+     */
+    public int addUndo(long matchId) {
+        return add(matchId, OP_UNDO, 0, 0);
+    }
+
+    /**
+     * Adding the snapshot of the match encoded by {@link MatchStateCodec}
+     *
+     * @param matchId id of the match
+     * @return position of the command
+     */
+    public int addSnapshot(long matchId) {
+        return add(matchId, OP_SNAPSHOT, 0, 0);
+    }
+
+    /**
+     * Adding removal of the finished match
+     *
+     * @param matchId id of the match
+     * @return position of the command
+     */
+    public int addRemove(long matchId) {
+        return add(matchId, OP_REMOVE, 0, 0);
+    }
+
+    /**
+     * Getting count of the commands
+     *
+     * @return commands count
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Getting result of the executed command
+     *
+     * @param position position of the command
+     * @return {@link #RESULT_OK} or negative error
+     */
+    public int getResult(int position) {
+        return mResults[position];
+    }
+
+    /**
+     * Getting index of the action undone by the executed undo command
+     *
+     * @param position position of the command
+     * @return action index or -1 if nothing is undone or the command is not the undo
+     */
+    public int getUndoneAction(int position) {
+        return mUndoneActions[position];
+    }
+
+    /**
+     * Getting the encoded state taken by the snapshot command
+     *
+     * @param position position of the command
+     * @return encoded state or null if the match is unknown
+     */
+    public byte[] getSnapshot(int position) {
+        return mSnapshots == null ? null : mSnapshots[position];
+    }
+
+    /**
+     * Removing all commands, so the batch can be filled again
+     */
+    public void clear() {
+        if (mSnapshots != null) Arrays.fill(mSnapshots, 0, mSize, null);
+        mSize = 0;
+    }
+
+    /**
+     * Waiting until all commands of the submitted batch are executed
+     *
+     * @throws InterruptedException if the waiting thread is interrupted
+     */
+    public void await() throws InterruptedException {
+        mDone.await();
+    }
+
+    /**
+     * Checking if all commands of the submitted batch are executed
+     *
+     * @return true if the batch is executed
+     */
+    public boolean isDone() {
+        return mDone.getCount() == 0;
+    }
+
+    /**
+     * Getting id of the match of the command
+     *
+     * @param position position of the command
+     * @return match id
+     */
+    long getMatchId(int position) {
+        return mMatchIds[position];
+    }
+
+    /**
+     * Getting type of the command
+     *
+     * @param position position of the command
+     * @return one of OP_ constants
+     */
+    int getOp(int position) {
+        return mOps[position];
+    }
+
+    /**
+     * Getting action index or definition id of the command
+     *
+     * @param position position of the command
+     * @return argument
+     */
+    int getArgument(int position) {
+        return mArguments[position];
+    }
+
+    /**
+     * Getting change of the counter of the apply command
+     *
+     * @param position position of the command
+     * @return delta
+     */
+    int getDelta(int position) {
+        return mDeltas[position];
+    }
+
+    /**
+     * Setting result of the executed command. Called by the shard of the command.
+     *
+     * @param position position of the command
+     * @param result result
+     */
+    void setResult(int position, int result) {
+        mResults[position] = result;
+    }
+
+    /**
+     * Setting index of the action undone by the undo command. Called by the shard of the command.
+     *
+     * @param position position of the command
+     * @param actionIndex undone action index
+     */
+    void setUndoneAction(int position, int actionIndex) {
+        mUndoneActions[position] = actionIndex;
+    }
+
+    /**
+     * Setting encoded state of the snapshot command. Called by the shard of the command.
+     *
+     * @param position position of the command
+     * @param snapshot encoded state
+     */
+    void setSnapshot(int position, byte[] snapshot) {
+        if (mSnapshots == null) mSnapshots = new byte[mMatchIds.length][];
+        mSnapshots[position] = snapshot;
+    }
+
+    /**
+     * Starting the execution of the batch by the shards
+     *
+     * @param shardCount count of the shards executing the commands
+     */
+    void start(int shardCount) {
+        if (mDone.getCount() != 0) throw new IllegalStateException("Batch is executed already");
+        mPendingShards.set(shardCount);
+        if (shardCount > 0) mDone = new CountDownLatch(1);
+    }
+
+    /**
+     * Finishing the commands of one shard
+     */
+    void finishShard() {
+        if (mPendingShards.decrementAndGet() == 0) mDone.countDown();
+    }
+
+    /**
+     * Adding the command
+     *
+     * @param matchId id of the match
+     * @param op type of the command
+     * @param argument action index or definition id
+     * @param delta change of the counter
+     * @return position of the command
+     */
+    private int add(long matchId, int op, int argument, int delta) {
+        if (mDone.getCount() != 0) throw new IllegalStateException("Batch is executed");
+        if (mSize == mMatchIds.length) {
+            int capacity = mMatchIds.length * 2;
+            mMatchIds = Arrays.copyOf(mMatchIds, capacity);
+            mOps = Arrays.copyOf(mOps, capacity);
+            mArguments = Arrays.copyOf(mArguments, capacity);
+            mDeltas = Arrays.copyOf(mDeltas, capacity);
+            mResults = Arrays.copyOf(mResults, capacity);
+            mUndoneActions = Arrays.copyOf(mUndoneActions, capacity);
+            if (mSnapshots != null) mSnapshots = Arrays.copyOf(mSnapshots, capacity);
+        }
+        mMatchIds[mSize] = matchId;
+        mOps[mSize] = op;
+        mArguments[mSize] = argument;
+        mDeltas[mSize] = delta;
+        mResults[mSize] = RESULT_OK;
+        mUndoneActions[mSize] = -1;
+        return mSize++;
+    }
+}
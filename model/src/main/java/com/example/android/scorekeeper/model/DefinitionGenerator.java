@@ -0,0 +1,179 @@
+package com.example.android.scorekeeper.model;
+
+import java.util.Random;
+
+/**
+ * Generator of the valid game definitions of any size for the tests and the load tests.
+ * Each team has the same count of the players and each player has the same count of the actions.
+ * Actions score for the team of the player, some of them give points to the opponents as well.
+ * When the share of the non-linear actions is set, the first action of each player is a counter
+ * and the following actions are conditional or scaled by it with the given share.
+ * The same seed gives the same definition.
+ *
+ * @package com.example.android.scorekeeper
+ * (c) 2018, Igor Korovchenko.
+ */
+
+public final class DefinitionGenerator {
+
+    /**
+     * Greatest points of one action
+     */
+    private static final int MAX_POINTS = 7;
+
+    /**
+     * Share of the actions giving the point to the opponents, in percent
+     */
+    private static final int PENALTY_SHARE = 10;
+
+    /**
+     * Sizes of the definition
+     */
+    private final int mTeamCount;
+    private final int mPlayerCount;
+    private final int mActionCount;
+
+    /**
+     * Seed of the points and kinds of the actions
+     */
+    private long mSeed;
+
+    /**
+     * Share of the conditional and scaled actions, in percent
+     */
+    private int mNonLinearShare;
+
+    /**
+     * Rules of the match or null
+     */
+    private MatchRules mRules;
+
+    /**
+     * Constructor of the generator
+     *
+     * @param teamCount count of the teams
+     * @param playerCount count of the players of each team
+     * @param actionCount count of the actions of each player
+     */
+    public DefinitionGenerator(int teamCount, int playerCount, int actionCount) {
+        if (teamCount < 1 || playerCount < 1 || actionCount < 1) {
+            throw new IllegalArgumentException("Sizes must be positive: " + teamCount + "x" + playerCount + "x" + actionCount);
+        }
+        mTeamCount = teamCount;
+        mPlayerCount = playerCount;
+        mActionCount = actionCount;
+    }
+
+    /**
+     * Setting the seed of the points and kinds of the actions
+     *
+     * @param seed seed of the random generator
+     */
+    public void setSeed(long seed) {
+        mSeed = seed;
+    }
+
+    /**
+     * Setting the share of the conditional and scaled actions
+     *
+     * @param percent share in percent from 0 to 100
+     */
+    public void setNonLinearShare(int percent) {
+        mNonLinearShare = Math.max(0, Math.min(100, percent));
+    }
+
+    /**
+     * Setting the rules of the match
+     *
+     * @param rules rules of the match or null
+     */
+    public void setRules(MatchRules rules) {
+        mRules = rules;
+    }
+
+    /**
+     * Getting count of the actions in the generated definition
+     *
+     * @return actions count
+     */
+    public int getTotalActionCount() {
+        return mTeamCount * mPlayerCount * mActionCount;
+    }
+
+    /**
+     * Generating JSON of the definition
+     *
+     * @return JSON of the definition
+     */
+    public String generate() {
+        Random random = new Random(mSeed);
+        boolean hasCounters = mNonLinearShare > 0 && mActionCount > 1;
+        StringBuilder json = new StringBuilder(64 + getTotalActionCount() * (16 + 4 * mTeamCount));
+        json.append("{\"name\":\"Synthetic ").append(mTeamCount).append('x').append(mPlayerCount)
+                .append('x').append(mActionCount).append("\",\"teams\":{");
+        for (int t = 0; t < mTeamCount; t++) {
+            if (t > 0) json.append(',');
+            json.append("\"Team ").append(t + 1).append("\":{");
+            for (int p = 0; p < mPlayerCount; p++) {
+                if (p > 0) json.append(',');
+                json.append("\"Player ").append(p + 1).append("\":{\"buttons\":{");
+                for (int a = 0; a < mActionCount; a++) {
+                    if (a > 0) json.append(',');
+                    json.append("\"Action ").append(a + 1).append("\":");
+                    if (hasCounters && a == 0) {
+                        json.append("{\"kind\":\"counter\"}");
+                    } else if (hasCounters && random.nextInt(100) < mNonLinearShare) {
+                        json.append("{\"points\":");
+                        appendPoints(json, t, random);
+                        json.append(random.nextBoolean() ? ",\"if\":" : ",\"per\":")
+                                .append("\"Action 1\",\"min\":").append(1 + random.nextInt(3)).append('}');
+                    } else {
+                        appendPoints(json, t, random);
+                    }
+                }
+                json.append("}}");
+            }
+            json.append('}');
+        }
+        json.append('}');
+        if (mRules != null) appendRules(json);
+        return json.append('}').toString();
+    }
+
+    /**
+     * Appending the score changes of the action of the team's player
+     *
+     * @param json JSON of the definition
+     * @param teamIndex index of the team of the player
+     * @param random random generator of the points
+     */
+    private void appendPoints(StringBuilder json, int teamIndex, Random random) {
+        int points = 1 + random.nextInt(MAX_POINTS);
+        boolean isPenalty = mTeamCount > 1 && random.nextInt(100) < PENALTY_SHARE;
+        json.append('[');
+        for (int i = 0; i < mTeamCount; i++) {
+            if (i > 0) json.append(',');
+            json.append(i == teamIndex ? (isPenalty ? 0 : points) : (isPenalty ? 1 : 0));
+        }
+        json.append(']');
+    }
+
+    /**
+     * Appending the rules of the match
+     *
+     * @param json JSON of the definition
+     */
+    private void appendRules(StringBuilder json) {
+        json.append(",\"rules\":{");
+        if (mRules.getSetName() != null) {
+            json.append("\"set\":\"").append(mRules.getSetName().replace("\\", "\\\\").replace("\"", "\\\"")).append("\",");
+        }
+        json.append("\"points\":[");
+        for (int i = 0; i < mRules.getSetPointsCount(); i++) {
+            if (i > 0) json.append(',');
+            json.append(mRules.getSetPoints(i));
+        }
+        json.append("],\"margin\":").append(mRules.getMargin())
+                .append(",\"sets_to_win\":").append(mRules.getSetsToWin()).append('}');
+    }
+}
@@ -0,0 +1,286 @@
+package com.example.android.scorekeeper.model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Migration of the match between two versions of the game definition, e.g. after
+ * the definition file is edited. Teams, players and actions are matched by their names,
+ * not by positions, so added, removed and reordered buttons keep the counters of the others.
+ * Counters of the removed actions and their entries of the journal are dropped.
+ * Points of the conditional and scaled actions keep the values of the taps if the action is scored
+ * the same way in both definitions; points of the added and changed ones are evaluated on the migrated counters.
+ *
+ * @package com.example.android.scorekeeper
+ * (c) 2018, Igor Korovchenko.
+ */
+
+public final class DefinitionMigration {
+
+    /**
+     * Separator of the names in the keys, not expected in the names of the definitions
+     */
+    private static final char SEPARATOR = '\u0000';
+
+    /**
+     * Old and new definitions
+     */
+    private final GameDefinition mSource;
+    private final GameDefinition mTarget;
+
+    /**
+     * Index of the old action for each new action and of the new action for each old action, -1 if none
+     */
+    private final int[] mSourceActions;
+    private final int[] mTargetActions;
+
+    /**
+     * Index of the old player for each new player, -1 if the player is added
+     */
+    private final int[] mSourcePlayers;
+
+    /**
+     * Both definitions have the same teams in the same order
+     */
+    private final boolean mIsSameTeams;
+
+    /**
+     * Constructor of the migration matching the members of the definitions by names
+     *
+     * @param source definition of the current match
+     * @param target new definition of the game
+     */
+    public DefinitionMigration(GameDefinition source, GameDefinition target) {
+        mSource = source;
+        mTarget = target;
+
+        HashMap<String, Integer> players = new HashMap<>(source.getPlayerCount() * 2);
+        for (int p = 0; p < source.getPlayerCount(); p++) {
+            players.put(playerKey(source, p), p);
+        }
+        mSourcePlayers = new int[target.getPlayerCount()];
+        for (int p = 0; p < target.getPlayerCount(); p++) {
+            Integer sourcePlayer = players.get(playerKey(target, p));
+            mSourcePlayers[p] = sourcePlayer == null ? -1 : sourcePlayer;
+        }
+
+        HashMap<String, Integer> actions = new HashMap<>(source.getActionCount() * 2);
+        for (int a = 0; a < source.getActionCount(); a++) {
+            actions.put(actionKey(source, a), a);
+        }
+        mSourceActions = new int[target.getActionCount()];
+        mTargetActions = new int[source.getActionCount()];
+        Arrays.fill(mTargetActions, -1);
+        for (int a = 0; a < target.getActionCount(); a++) {
+            Integer sourceAction = actions.get(actionKey(target, a));
+            mSourceActions[a] = sourceAction == null ? -1 : sourceAction;
+            if (sourceAction != null) mTargetActions[sourceAction] = a;
+        }
+
+        boolean isSameTeams = source.getTeamCount() == target.getTeamCount();
+        for (int t = 0; isSameTeams && t < target.getTeamCount(); t++) {
+            isSameTeams = source.getTeamName(t).equals(target.getTeamName(t));
+        }
+        mIsSameTeams = isSameTeams;
+    }
+
+    /**
+     * Getting definition of the current match
+     *
+     * @return old definition
+     */
+    public GameDefinition getSource() {
+        return mSource;
+    }
+
+    /**
+     * Getting new definition of the game
+     *
+     * @return new definition
+     */
+    public GameDefinition getTarget() {
+        return mTarget;
+    }
+
+    /**
+     * Getting the old action of the new action
+     *
+     * @param targetAction index of the action in the new definition
+     * @return index of the action in the old definition or -1 if the action is added
+     */
+    public int getSourceAction(int targetAction) {
+        return mSourceActions[targetAction];
+    }
+
+    /**
+     * Getting the new action of the old action
+     *
+     * @param sourceAction index of the action in the old definition
+     * @return index of the action in the new definition or -1 if the action is removed
+     */
+    public int getTargetAction(int sourceAction) {
+        return mTargetActions[sourceAction];
+    }
+
+    /**
+     * Getting the old player of the new player
+     *
+     * @param targetPlayer index of the player in the new definition
+     * @return index of the player in the old definition or -1 if the player is added
+     */
+    public int getSourcePlayer(int targetPlayer) {
+        return mSourcePlayers[targetPlayer];
+    }
+
+    /**
+     * Checking if both definitions have the same teams in the same order,
+     * so the views of the teams can be kept
+     *
+     * @return true if the teams are the same
+     */
+    public boolean isSameTeams() {
+        return mIsSameTeams;
+    }
+
+    /**
+     * Mapping the counters of the old actions to the new actions
+     *
+     * @param counts counters of the old actions
+     * @return counters of the new actions, zero for the added ones
+     */
+    public int[] migrateCounts(int[] counts) {
+        int[] result = new int[mTarget.getActionCount()];
+        for (int a = 0; a < result.length; a++) {
+            if (mSourceActions[a] >= 0) result[a] = counts[mSourceActions[a]];
+        }
+        return result;
+    }
+
+    /**
+     * Mapping the points of the conditional and scaled actions to the slots of the new actions.
+     * Points of the action scored the same way are kept, as they depend on the counters at the time
+     * of the taps; points of the added and changed actions are evaluated on the migrated counters.
+     *
+     * @param nonLinearPoints points of the old actions: row per slot, column per team
+     * @param counts migrated counters of the new actions
+     * @return points of the new actions: row per slot, column per team
+     */
+    public int[] migrateNonLinearPoints(int[] nonLinearPoints, int[] counts) {
+        int teamCount = mTarget.getTeamCount();
+        int[] result = new int[mTarget.getNonLinearCount() * teamCount];
+        int[] targetDispatch = mTarget.getDispatchTable();
+        if (targetDispatch == null) return result;
+        int[] sourceDispatch = mSource.getDispatchTable();
+        for (int a = 0; a < counts.length; a++) {
+            int entry = a * GameDefinition.DISPATCH_STRIDE;
+            int targetRow = targetDispatch[entry + GameDefinition.DISPATCH_SLOT] * teamCount;
+            int kind = targetDispatch[entry + GameDefinition.DISPATCH_KIND];
+            if (kind == GameDefinition.KIND_LINEAR || kind == GameDefinition.KIND_COUNTER) continue;
+            int sourceAction = mSourceActions[a];
+            if (sourceAction >= 0 && isScoredSame(sourceAction, a)) {
+                int sourceRow = sourceDispatch[sourceAction * GameDefinition.DISPATCH_STRIDE
+                        + GameDefinition.DISPATCH_SLOT] * teamCount;
+                System.arraycopy(nonLinearPoints, sourceRow, result, targetRow, teamCount);
+                continue;
+            }
+            int factor = counts[a] * MatchState.multiplier(targetDispatch, entry,
+                    counts[targetDispatch[entry + GameDefinition.DISPATCH_SOURCE]]);
+            for (int i = 0; i < teamCount; i++) {
+                result[targetRow + i] = factor * mTarget.getScoreChange(a, i);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Moving the counters, the journal, the manual ends and the history of the sets of the match to the new match
+     *
+     * @param from match of the old definition
+     * @param to new match of the new definition, its state is replaced
+     */
+    public void migrate(Game from, Game to) {
+        int[] counts = migrateCounts(from.getCurrentState());
+        ActionJournal journal = from.getJournal();
+        int[] entries = journal.exportEntries();
+        long[] timestamps = journal.exportTimestamps();
+        int[] marks = journal.exportMarks();
+        int appliedMarkCount = journal.getMarkCount();
+        int cursor = entries[0];
+        int size = 0;
+        int mark = 0;
+        for (int i = 0; i < timestamps.length; i++) {
+            // marks stay after the same kept entries
+            for (; mark < marks.length && marks[mark] == i; mark++) {
+                marks[mark] = size;
+            }
+            int action = mTargetActions[entries[1 + 2 * i]];
+            if (action < 0) {
+                // the undo of the kept entries doesn't depend on the dropped ones
+                if (i < entries[0]) cursor--;
+                continue;
+            }
+            entries[1 + 2 * size] = action;
+            entries[2 + 2 * size] = entries[2 + 2 * i];
+            timestamps[size] = timestamps[i];
+            size++;
+        }
+        for (; mark < marks.length; mark++) {
+            marks[mark] = size;
+        }
+        // undone marks stay undone, so the ones moved back to the cursor by the dropped entries are dropped
+        int markCount = 0;
+        for (int m = 0; m < marks.length; m++) {
+            if (m < appliedMarkCount || marks[m] > cursor) marks[markCount++] = marks[m];
+        }
+        marks = Arrays.copyOf(marks, markCount);
+        int[] migratedEntries = Arrays.copyOf(entries, 1 + 2 * size);
+        migratedEntries[0] = cursor;
+        int[] nonLinearPoints = migrateNonLinearPoints(from.getState().getNonLinearPoints(), counts);
+        // finished sets keep the points of the teams, so they are kept only with the same teams
+        to.setCurrentState(counts, nonLinearPoints, migratedEntries, Arrays.copyOf(timestamps, size), marks,
+                mIsSameTeams ? from.getSetHistory() : null);
+    }
+
+    /**
+     * Checking if the conditional or scaled action is scored the same way in both definitions:
+     * the same kind, value, score changes and the source action
+     *
+     * @param sourceAction index of the action in the old definition
+     * @param targetAction index of the action in the new definition
+     * @return true if the points of the taps are the same
+     */
+    private boolean isScoredSame(int sourceAction, int targetAction) {
+        if (!mIsSameTeams) return false;
+        if (mSource.getActionKind(sourceAction) != mTarget.getActionKind(targetAction)) return false;
+        if (mSource.getActionValue(sourceAction) != mTarget.getActionValue(targetAction)) return false;
+        if (mTargetActions[mSource.getActionSource(sourceAction)] != mTarget.getActionSource(targetAction)) return false;
+        for (int i = 0; i < mTarget.getTeamCount(); i++) {
+            if (mSource.getScoreChange(sourceAction, i) != mTarget.getScoreChange(targetAction, i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Getting the key of the player by the names
+     *
+     * @param definition definition of the game
+     * @param playerIndex index of the player
+     * @return key of the player
+     */
+    private static String playerKey(GameDefinition definition, int playerIndex) {
+        return definition.getTeamName(definition.getPlayerTeam(playerIndex)) + SEPARATOR
+                + definition.getPlayerName(playerIndex);
+    }
+
+    /**
+     * Getting the key of the action by the names
+     *
+     * @param definition definition of the game
+     * @param actionIndex index of the action
+     * @return key of the action
+     */
+    private static String actionKey(GameDefinition definition, int actionIndex) {
+        return playerKey(definition, definition.getActionPlayer(actionIndex)) + SEPARATOR
+                + definition.getActionName(actionIndex);
+    }
+}
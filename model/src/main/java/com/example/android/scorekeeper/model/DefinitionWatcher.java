@@ -0,0 +1,169 @@
+package com.example.android.scorekeeper.model;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watcher of the folder with the definition files for the hot reload of the games.
+ * The background thread checks the time and the size of the JSON files periodically
+ * and parses only the changed ones. Files present at the start are considered loaded.
+ * Files which can't be parsed are skipped until they are changed again, so the game
+ * keeps its last valid definition while the file is edited.
+ *
+ * @package com.example.android.scorekeeper
+ * (c) 2018, Igor Korovchenko.
+ */
+
+public final class DefinitionWatcher {
+
+    /**
+     * TAG name for debugging
+     */
+    private static final String TAG = "DefinitionWatcher";
+
+    /**
+     * Extension of the definition files
+     */
+    private static final String JSON_EXTENSION = ".json";
+
+    /**
+     * Listener of the changed definitions
+     */
+    public interface Listener {
+
+        /**
+         * Called on the thread of the watcher with the definition parsed from the changed file.
+         * Not called if the changed file can't be read or parsed, so the listener keeps its definition.
+         *
+         * @param fileName name of the file in the folder
+         * @param definition new definition of the game
+         */
+        void onDefinitionChanged(String fileName, GameDefinition definition);
+    }
+
+    /**
+     * Watched folder, period of the checks and the listener
+     */
+    private final File mDir;
+    private final long mPeriodMillis;
+    private final Listener mListener;
+
+    /**
+     * Background thread of the checks
+     */
+    private final ScheduledExecutorService mExecutor;
+
+    /**
+     * Time and size of each known file. Used by the thread of the watcher only.
+     */
+    private final HashMap<String, long[]> mStamps = new HashMap<>();
+
+    /**
+     * Constructor of the watcher. Checks start with {@link #start()}.
+     *
+     * @param dir folder with the definition files
+     * @param periodMillis period of the checks in milliseconds
+     * @param listener listener of the changed definitions
+     */
+    public DefinitionWatcher(File dir, long periodMillis, Listener listener) {
+        mDir = dir;
+        mPeriodMillis = periodMillis;
+        mListener = listener;
+        mExecutor = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    /**
+     * Starting the periodic checks of the folder
+     */
+    public void start() {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                scan(false);
+            }
+        });
+        mExecutor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                scan(true);
+            }
+        }, mPeriodMillis, mPeriodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stopping the checks. The running check is finished.
+     */
+    public void close() {
+        mExecutor.shutdown();
+    }
+
+    /**
+     * Checking the files of the folder and reloading the changed ones
+     *
+     * @param isReloading false for the first check, which only remembers the files
+     */
+    private void scan(boolean isReloading) {
+        File[] files = mDir.listFiles();
+        if (files == null) return;
+        HashMap<String, long[]> seen = new HashMap<>(files.length * 2);
+        for (File file : files) {
+            String name = file.getName();
+            if (!name.endsWith(JSON_EXTENSION) || !file.isFile()) continue;
+            long[] stamp = {file.lastModified(), file.length()};
+            seen.put(name, stamp);
+            long[] known = mStamps.get(name);
+            if (known != null && known[0] == stamp[0] && known[1] == stamp[1]) continue;
+            mStamps.put(name, stamp);
+            if (isReloading) reload(file);
+        }
+        // deleted files are forgotten, so restoring them reloads the game
+        Iterator<String> names = mStamps.keySet().iterator();
+        while (names.hasNext()) {
+            if (!seen.containsKey(names.next())) names.remove();
+        }
+    }
+
+    /**
+     * Parsing the changed file and passing its definition to the listener.
+     * The listener is not called if the file fails to parse, so the old definition stays in use.
+     *
+     * @param file changed file
+     */
+    private void reload(File file) {
+        GameDefinition definition = parse(file);
+        if (definition == null) return;
+        ModelLog.d(TAG, "Reloaded " + file.getName());
+        mListener.onDefinitionChanged(file.getName(), definition);
+    }
+
+    /**
+     * Parsing the definition file. Errors are logged and not thrown,
+     * as a failed check would cancel the periodic task.
+     *
+     * @param file definition file
+     * @return game definition or null if the file can't be read or parsed
+     */
+    private static GameDefinition parse(File file) {
+        try {
+            InputStream inputStream = new FileInputStream(file);
+            try {
+                return GameParser.parse(inputStream);
+            } finally {
+                inputStream.close();
+            }
+        } catch (IOException e) {
+            ModelLog.d(TAG, "Can't reload " + file.getName() + ", the old definition is kept: " + e.getMessage());
+            return null;
+        } catch (RuntimeException e) {
+            ModelLog.d(TAG, "Can't reload " + file.getName() + ", the old definition is kept: " + e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,551 @@
+package com.example.android.scorekeeper.model;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Class of the game's model with all information of the game.
+ * Combines the shared definition of the game with the state of one match.
+ * Changes of the match may come from several threads, e.g. the UI, the sync and the replay:
+ * they are serialized by the lock of the game, so the journal and the listeners see them
+ * in the order of the counters, while the scores and the counters are read without the lock.
+ *
+ * @package com.example.android.scorekeeper
+ * (c) 2018, Igor Korovchenko.
+ */
+
+public class Game {
+
+    /**
+     * TAG name for debugging
+     */
+    private static final String TAG = "Game";
+
+    /**
+     * Nanoseconds in one millisecond for the monotonic time of the journal
+     */
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    /**
+     * Messages for debugging
+     */
+    static final String MSG_ERR_WRONG_JSON_TEAM_OBJECT = "Wrong JSON. Team's substructure is not a JSON object";
+    static final String MSG_ERR_WRONG_JSON_PLAYER_OBJECT = "Wrong JSON. Player's substructure is not a JSON object";
+    static final String MSG_ERR_WRONG_JSON_ACTION_OBJECT = "Wrong JSON. GameAction's substructure is not a JSON object";
+    static final String MSG_ERR_WRONG_JSON_TEAM_COUNT = "Wrong JSON. Team count is not equal to scores count";
+
+    /**
+     * Definition of the game shared between matches
+     */
+    private GameDefinition mDefinition;
+
+    /**
+     * State of the match
+     */
+    private MatchState mState;
+
+    /**
+     * Journal of the applied actions for undo and redo
+     */
+    private ActionJournal mJournal;
+
+    /**
+     * Sets finished before the oldest entry of the journal, e.g. before the saved entries of the restored match:
+     * row per set with the points of each team followed by the index of the winner. Guarded by this.
+     */
+    private int[] mSetHistory = new int[0];
+
+    /**
+     * Listeners of the changes of the match
+     */
+    private final CopyOnWriteArrayList<MatchListener> mListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Constructor of the game from the parsed JSON object.
+     * Definitions are usually read by the streaming {@link GameParser}.
+     *
+     * @param gameInfo JSON object with all information of the game
+     */
+    public Game(JsonObjectView gameInfo) {
+        GameBuilder builder = new GameBuilder();
+        try {
+            parseJSON(gameInfo, builder);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        setup(builder.build());
+    }
+
+    /**
+     * Constructor of the new match of the game with zero counters
+     *
+     * @param definition definition of the game
+     */
+    public Game(GameDefinition definition) {
+        setup(definition);
+    }
+
+    /**
+     * Getting common scores for all teams as the consistent copy, which may be taken on any thread
+     *
+     * @return scores for each team
+     */
+    public int[] getScores() {
+        return mState.getScores();
+    }
+
+    /**
+     * Copying common scores for all teams into the array without allocation, e.g. on every frame
+     *
+     * @param scores array of the size of the teams count
+     */
+    public void copyScores(int[] scores) {
+        mState.copyScores(scores);
+    }
+
+    /**
+     * Getting the team at index. Teams, players and actions are views over the definition
+     * and the state, so the match keeps no objects for them.
+     *
+     * @param index index of the team. First team has zero index.
+     * @return Team object
+     */
+    public Team getTeam(int index) {
+        return new Team(this, index);
+    }
+
+    /**
+     * Getting count of the team
+     *
+     * @return teams count
+     */
+    public int getTeamCount() {
+        return mDefinition.getTeamCount();
+    }
+
+    /**
+     * Getting the game action by its index in the game
+     *
+     * @param actionIndex index of the action in the game
+     * @return GameAction object
+     */
+    public GameAction getGameAction(int actionIndex) {
+        return new GameAction(this, actionIndex);
+    }
+
+    /**
+     * Getting name of the game
+     *
+     * @return game's name
+     */
+    public String getGameName() {
+        return mDefinition.getGameName();
+    }
+
+    /**
+     * Getting definition of the game
+     *
+     * @return game definition
+     */
+    public GameDefinition getDefinition() {
+        return mDefinition;
+    }
+
+    /**
+     * Getting state of the match
+     *
+     * @return match state
+     */
+    public MatchState getState() {
+        return mState;
+    }
+
+    /**
+     * Getting count of all actions of the game
+     *
+     * @return actions count
+     */
+    public int getActionCount() {
+        return mDefinition.getActionCount();
+    }
+
+    /**
+     * Getting journal of the applied actions. The journal should be read by the listeners
+     * or under the lock of the game.
+     *
+     * @return action journal
+     */
+    public ActionJournal getJournal() {
+        return mJournal;
+    }
+
+    /**
+     * Undoing the last applied action of the journal
+     *
+     * @return index of the undone action in the game or -1 if there is nothing to undo
+     */
+    public synchronized int undo() {
+        int markCount = mJournal.getMarkCount();
+        int position = mJournal.undo();
+        if (position < 0) return -1;
+        int actionIndex = mJournal.getAction(position);
+        int delta = -mJournal.getDelta(position);
+        mState.apply(actionIndex, delta);
+        notifyActionChanged(actionIndex, delta, now());
+        // taking away a point reopens the manually ended set, otherwise the sets are rebuilt without the end
+        if (delta > 0 && mJournal.getMarkCount() < markCount) notifyMatchReset();
+        return actionIndex;
+    }
+
+    /**
+     * Redoing the last undone action of the journal together with the manual ends of the sets after it
+     *
+     * @return index of the redone action in the game or -1 if there is nothing to redo
+     */
+    public synchronized int redo() {
+        int markCount = mJournal.getMarkCount();
+        int position = mJournal.redo();
+        if (position < 0) return -1;
+        int actionIndex = mJournal.getAction(position);
+        int delta = mJournal.getDelta(position);
+        mState.apply(actionIndex, delta);
+        long timestamp = now();
+        notifyActionChanged(actionIndex, delta, timestamp);
+        for (int m = markCount; m < mJournal.getMarkCount(); m++) {
+            notifySetEnded(timestamp);
+        }
+        return actionIndex;
+    }
+
+    /**
+     * Getting current state of all actions as copy of their counters
+     *
+     * @return array of actions' states
+     */
+    public int[] getCurrentState() {
+        return mState.getCounts();
+    }
+
+    /**
+     * Setting current states for all actions. States of other size are ignored.
+     * The journal is cleared as it does not lead to the set states.
+     *
+     * @param states of the actions
+     */
+    public synchronized void setCurrentState(int[] states) {
+        if (mState.setCounts(states)) {
+            mJournal.clear();
+            mSetHistory = new int[0];
+            notifyMatchReset();
+        }
+    }
+
+    /**
+     * Setting current states for all actions and the points given by the conditional and scaled actions.
+     * The journal is cleared as it does not lead to the set states.
+     *
+     * @param states of the actions
+     * @param nonLinearPoints points of the conditional and scaled actions as they are kept by the state
+     */
+    public synchronized void setCurrentState(int[] states, int[] nonLinearPoints) {
+        if (mState.setCounts(states, nonLinearPoints)) {
+            mJournal.clear();
+            mSetHistory = new int[0];
+            notifyMatchReset();
+        }
+    }
+
+    /**
+     * Setting current states for all actions together with the journal leading to them,
+     * so the listeners see the restored journal when the match is reset. States of other size are ignored.
+     *
+     * @param states of the actions
+     * @param nonLinearPoints points of the conditional and scaled actions as they are kept by the state
+     * @param entries cursor of the journal followed by pairs of action index and delta
+     * @param timestamps times of the entries of the journal
+     */
+    public synchronized void setCurrentState(int[] states, int[] nonLinearPoints, int[] entries, long[] timestamps) {
+        setCurrentState(states, nonLinearPoints, entries, timestamps, null);
+    }
+
+    /**
+     * Setting current states for all actions together with the journal leading to them
+     * and the manual ends of the sets. States of other size are ignored.
+     *
+     * @param states of the actions
+     * @param nonLinearPoints points of the conditional and scaled actions as they are kept by the state
+     * @param entries cursor of the journal followed by pairs of action index and delta
+     * @param timestamps times of the entries of the journal
+     * @param marks positions of the manual ends of the sets in the journal, or null
+     */
+    public synchronized void setCurrentState(int[] states, int[] nonLinearPoints, int[] entries, long[] timestamps,
+                                             int[] marks) {
+        setCurrentState(states, nonLinearPoints, entries, timestamps, marks, null);
+    }
+
+    /**
+     * Setting current states for all actions together with the journal leading to them, the manual ends
+     * of the sets and the sets finished before the journal, so the sets of the long match are kept
+     * when only the latest entries of its journal are saved. States of other size are ignored.
+     *
+     * @param states of the actions
+     * @param nonLinearPoints points of the conditional and scaled actions as they are kept by the state
+     * @param entries cursor of the journal followed by pairs of action index and delta
+     * @param timestamps times of the entries of the journal
+     * @param marks positions of the manual ends of the sets in the journal, or null
+     * @param setHistory sets finished before the journal as given by {@link #getSetHistory()}, or null
+     */
+    public synchronized void setCurrentState(int[] states, int[] nonLinearPoints, int[] entries, long[] timestamps,
+                                             int[] marks, int[] setHistory) {
+        if (mState.setCounts(states, nonLinearPoints)) {
+            mJournal.clear();
+            mJournal.importEntries(entries, timestamps, marks);
+            mSetHistory = setHistory == null || setHistory.length % (getTeamCount() + 1) != 0
+                    ? new int[0] : setHistory.clone();
+            notifyMatchReset();
+        }
+    }
+
+    /**
+     * Getting the sets finished before the oldest entry of the journal, which can't be rebuilt from it
+     *
+     * @return row per set with the points of each team followed by the index of the winner
+     */
+    public synchronized int[] getSetHistory() {
+        return mSetHistory.clone();
+    }
+
+    /**
+     * Ending the current set manually: the end is marked in the journal, so it is kept
+     * by the saved state and the rebuilt sets, and the listeners are notified.
+     * Usually called by {@link RuleEvaluator#endSet()}.
+     */
+    public synchronized void endSet() {
+        mJournal.mark();
+        notifySetEnded(now());
+    }
+
+    /**
+     * Clearing all counters and the journal of the match
+     */
+    public synchronized void reset() {
+        mState.reset();
+        mJournal.clear();
+        mSetHistory = new int[0];
+        notifyMatchReset();
+    }
+
+    /**
+     * Adding the listener of the changes of the match
+     *
+     * @param listener match listener
+     */
+    public void addMatchListener(MatchListener listener) {
+        mListeners.add(listener);
+    }
+
+    /**
+     * Removing the listener of the changes of the match
+     *
+     * @param listener match listener
+     */
+    public void removeMatchListener(MatchListener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Getting the counter of the action
+     *
+     * @param actionIndex index of the action in the game
+     * @return count of the action
+     */
+    int getActionsCount(int actionIndex) {
+        return mState.getActionsCount(actionIndex);
+    }
+
+    /**
+     * Getting score change of the action for the team
+     *
+     * @param actionIndex index of the action in the game
+     * @param teamIndex index of the team
+     * @return score change
+     */
+    int getScoreChange(int actionIndex, int teamIndex) {
+        return mDefinition.getScoreChange(actionIndex, teamIndex);
+    }
+
+    /**
+     * Changing the counter of the action and the running totals by delta
+     *
+     * @param actionIndex index of the action in the game
+     * @param delta change of the counter
+     */
+    synchronized void changeActionsCount(int actionIndex, int delta) {
+        long timestamp = now();
+        mState.apply(actionIndex, delta);
+        mJournal.record(actionIndex, delta, timestamp);
+        notifyActionChanged(actionIndex, delta, timestamp);
+    }
+
+    /**
+     * Changing the counter of the action by the change made on other device, e.g. merged by {@link MatchReplica}.
+     * The listeners see the change, but it is not recorded to the journal, so the local undo doesn't take it back.
+     *
+     * @param actionIndex index of the action in the game
+     * @param delta change of the counter
+     */
+    synchronized void applyRemoteChange(int actionIndex, int delta) {
+        mState.apply(actionIndex, delta);
+        notifyActionChanged(actionIndex, delta, now());
+    }
+
+    /**
+     * Taking back one tap of the action if its counter is positive. Conditional and scaled actions
+     * are taken back only if their source counter is not changed since their last tap in the journal,
+     * so the taken back points are the points of that tap; otherwise the tap is left for {@link #undo()}.
+     *
+     * @param actionIndex index of the action in the game
+     */
+    synchronized void removeAction(int actionIndex) {
+        if (mState.getActionsCount(actionIndex) > 0 && isLastTapRemovable(actionIndex)) {
+            changeActionsCount(actionIndex, -1);
+        }
+    }
+
+    /**
+     * Checking if the points of the last tap of the action are the points evaluated on the current counters
+     *
+     * @param actionIndex index of the action in the game
+     * @return true if the last tap can be taken back
+     */
+    private boolean isLastTapRemovable(int actionIndex) {
+        int kind = mDefinition.getActionKind(actionIndex);
+        if (kind == GameDefinition.KIND_LINEAR || kind == GameDefinition.KIND_COUNTER) return true;
+        int source = mDefinition.getActionSource(actionIndex);
+        int taps = 0;
+        for (int i = mJournal.getCursor() - 1; i >= 0; i--) {
+            int action = mJournal.getAction(i);
+            if (action == actionIndex) {
+                taps += mJournal.getDelta(i);
+                if (taps > 0) return true;
+            } else if (action == source) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Notifying the listeners about the change of the action counter
+     *
+     * @param actionIndex index of the action in the game
+     * @param delta change of the counter
+     * @param timestamp monotonic time of the change in milliseconds
+     */
+    private void notifyActionChanged(int actionIndex, int delta, long timestamp) {
+        for (int i = 0; i < mListeners.size(); i++) {
+            mListeners.get(i).onActionChanged(actionIndex, delta, timestamp);
+        }
+    }
+
+    /**
+     * Notifying the listeners about the manual end of the set
+     *
+     * @param timestamp monotonic time of the end in milliseconds
+     */
+    private void notifySetEnded(long timestamp) {
+        for (int i = 0; i < mListeners.size(); i++) {
+            mListeners.get(i).onSetEnded(timestamp);
+        }
+    }
+
+    /**
+     * Notifying the listeners about replacing of all counters
+     */
+    private void notifyMatchReset() {
+        for (int i = 0; i < mListeners.size(); i++) {
+            mListeners.get(i).onMatchReset();
+        }
+    }
+
+    /**
+     * Getting monotonic time for the journal
+     *
+     * @return time in milliseconds
+     */
+    static long now() {
+        return System.nanoTime() / NANOS_PER_MILLI;
+    }
+
+    /**
+     * Setting up the state of the new match of the definition
+     *
+     * @param definition definition of the game
+     */
+    private void setup(GameDefinition definition) {
+        mDefinition = definition;
+        mState = new MatchState(definition);
+        mJournal = new ActionJournal();
+    }
+
+    /**
+     * Parsing of the team model from the JSON object.
+     * Convert JSON info to instances of class fields.
+     *
+     * @param gameInfo JSON object with all information of the game
+     * @param builder builder of the game definition
+     * @throws IOException if the JSON object has no expected values
+     */
+    private void parseJSON(JsonObjectView gameInfo, GameBuilder builder) throws IOException {
+        final String GAME_NAME = "name";
+        final String TEAMS_INFO = "teams";
+        final String BUTTONS_INFO = "buttons";
+
+        builder.setGameName(gameInfo.getString(GAME_NAME));
+        JsonObjectView teamsJSON = gameInfo.getObject(TEAMS_INFO);
+        if (teamsJSON == null) {
+            ModelLog.d(TAG, MSG_ERR_WRONG_JSON_TEAM_OBJECT);
+            return;
+        }
+        int teamCount = teamsJSON.length();
+
+        Iterator<String> teamKeys = teamsJSON.keys();
+        while (teamKeys.hasNext()) {
+            String teamName = teamKeys.next();
+            JsonObjectView team = teamsJSON.getObject(teamName);
+            if (team == null) {
+                ModelLog.d(TAG, MSG_ERR_WRONG_JSON_PLAYER_OBJECT);
+                continue;
+            }
+            builder.addTeam(teamName);
+            Iterator<String> playerKeys = team.keys();
+
+            while (playerKeys.hasNext()) {
+                String playerName = playerKeys.next();
+                JsonObjectView playerJSON = team.getObject(playerName);
+                if (playerJSON == null) {
+                    ModelLog.d(TAG, MSG_ERR_WRONG_JSON_ACTION_OBJECT);
+                    continue;
+                }
+                builder.addPlayer(playerName);
+                JsonObjectView buttonsJSON = playerJSON.getObject(BUTTONS_INFO);
+                if (buttonsJSON == null) throw new IOException("Buttons of " + playerName + " are not a JSON object");
+                Iterator<String> actionKeys = buttonsJSON.keys();
+
+                while (actionKeys.hasNext()) {
+                    String actionName = actionKeys.next();
+                    int[] scores = buttonsJSON.getIntArray(actionName);
+                    if (scores == null) {
+                        // other kinds of the actions are read by the streaming parser only
+                        ModelLog.d(TAG, "Kind of the action " + actionName + " is not supported");
+                    } else if (scores.length == teamCount) {
+                        builder.addAction(actionName, scores, scores.length);
+                    } else {
+                        ModelLog.d(TAG, MSG_ERR_WRONG_JSON_TEAM_COUNT);
+                    }
+                }
+            }
+        }
+    }
+}
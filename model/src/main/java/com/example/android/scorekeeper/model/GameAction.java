@@ -0,0 +1,79 @@
+package com.example.android.scorekeeper.model;
+
+/**
+ * Class of the actions in games.
+ * The action is a lightweight view of its counter and score changes stored in the game.
+ *
+ * @package com.example.android.scorekeeper
+ * (c) 2018, Igor Korovchenko.
+ */
+
+public class GameAction {
+
+    /**
+     * Game which stores the counter and score changes of the action
+     */
+    private final Game mGame;
+
+    /**
+     * Index of the action in the game
+     */
+    private final int mIndex;
+
+    /**
+     * Constructor of the game action model
+     *
+     * @param game game which stores the state of the action
+     * @param index index of the action in the game
+     */
+    GameAction(Game game, int index) {
+        this.mGame = game;
+        this.mIndex = index;
+    }
+
+    /**
+     * Getting a count of the game actions
+     *
+     * @return actions count
+     */
+    public int getActionsCount() {
+        return mGame.getActionsCount(mIndex);
+    }
+
+    /**
+     * Getting index of the action in the game
+     *
+     * @return action's index
+     */
+    public int getIndex() {
+        return mIndex;
+    }
+
+    /**
+     * Getting name of the action
+     *
+     * @return action's name
+     */
+    public String getName() {
+        return mGame.getDefinition().getActionName(mIndex);
+    }
+
+    public GameAction getModel() {
+        return this;
+    }
+
+    /**
+     * Adding new action to counter
+     */
+    public void addAction() {
+        mGame.changeActionsCount(mIndex, 1);
+    }
+
+    /**
+     * Undo last action to counter. Conditional and scaled actions are undone only
+     * while their source counter is not changed after the last tap, see {@link Game#undo()} for others.
+     */
+    public void undoAction() {
+        mGame.removeAction(mIndex);
+    }
+}
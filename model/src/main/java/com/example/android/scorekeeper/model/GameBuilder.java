@@ -0,0 +1,278 @@
+package com.example.android.scorekeeper.model;
+
+import java.util.ArrayList;
+
+/**
+ * Builder of the game definition from the streamed definition.
+ * Count of the teams is known only at the end of the definition,
+ * so actions are validated when the definition is built. Source actions of the conditional
+ * and scaled actions are resolved by name among the actions of the same player,
+ * then of the same team, then of the whole game.
+ *
+ * @package com.example.android.scorekeeper
+ * (c) 2018, Igor Korovchenko.
+ */
+
+final class GameBuilder {
+
+    /**
+     * TAG name for debugging
+     */
+    private static final String TAG = "GameBuilder";
+
+    /**
+     * Messages for debugging
+     */
+    private static final String MSG_ERR_UNKNOWN_SOURCE = "Wrong JSON. Unknown source action ";
+
+    /**
+     * Game name
+     */
+    private String mGameName;
+
+    /**
+     * Names of the teams, players and actions in order of the definition
+     */
+    private final ArrayList<String> mTeamNames = new ArrayList<>(0);
+    private final ArrayList<String> mPlayerNames = new ArrayList<>(0);
+    private final ArrayList<String> mActionNames = new ArrayList<>(0);
+
+    /**
+     * Count of the players of each team and count of the actions of each player
+     */
+    private int[] mTeamPlayerCounts = new int[4];
+    private int[] mPlayerActionCounts = new int[16];
+
+    /**
+     * Score changes of each action as they are written in the definition
+     */
+    private final ArrayList<int[]> mScoreRows = new ArrayList<>(0);
+
+    /**
+     * Kind and value of each action and name of its source action or null
+     */
+    private int[] mActionKinds = new int[32];
+    private final ArrayList<String> mSourceNames = new ArrayList<>(0);
+
+    /**
+     * Actions of other kinds than linear are added
+     */
+    private boolean mHasKinds;
+
+    /**
+     * Rules of the match or null
+     */
+    private MatchRules mRules;
+
+    /**
+     * Setting the name of the game
+     *
+     * @param gameName name of the game
+     */
+    void setGameName(String gameName) {
+        mGameName = gameName;
+    }
+
+    /**
+     * Setting the rules of the match
+     *
+     * @param rules rules of the match
+     */
+    void setRules(MatchRules rules) {
+        mRules = rules;
+    }
+
+    /**
+     * Adding new team. Following players belong to this team.
+     *
+     * @param teamName name of the team
+     */
+    void addTeam(String teamName) {
+        mTeamPlayerCounts = ensureCapacity(mTeamPlayerCounts, mTeamNames.size());
+        mTeamNames.add(teamName);
+    }
+
+    /**
+     * Adding new player to the last team. Following actions belong to this player.
+     *
+     * @param playerName name of the player
+     */
+    void addPlayer(String playerName) {
+        mPlayerActionCounts = ensureCapacity(mPlayerActionCounts, mPlayerNames.size());
+        mPlayerNames.add(playerName);
+        mTeamPlayerCounts[mTeamNames.size() - 1]++;
+    }
+
+    /**
+     * Adding new action to the last player
+     *
+     * @param actionName name of the action
+     * @param scores buffer with score changes for each team
+     * @param scoresCount count of the score changes in the buffer
+     */
+    void addAction(String actionName, int[] scores, int scoresCount) {
+        addAction(actionName, scores, scoresCount, GameDefinition.KIND_LINEAR, null, 0);
+    }
+
+    /**
+     * Adding new action of the given kind to the last player
+     *
+     * @param actionName name of the action
+     * @param scores buffer with score changes for each team, ignored for the counter
+     * @param scoresCount count of the score changes in the buffer
+     * @param kind one of KIND_ constants of the definition
+     * @param sourceName name of the source action of the conditional or scaled action
+     * @param value least counter of the source action or least multiplier
+     */
+    void addAction(String actionName, int[] scores, int scoresCount, int kind, String sourceName, int value) {
+        int index = mActionNames.size();
+        mActionKinds = ensureCapacity(mActionKinds, 2 * index + 1);
+        mActionKinds[2 * index] = kind;
+        mActionKinds[2 * index + 1] = value;
+        mSourceNames.add(sourceName);
+        if (kind != GameDefinition.KIND_LINEAR) mHasKinds = true;
+        int[] row = null;
+        if (kind != GameDefinition.KIND_COUNTER) {
+            row = new int[scoresCount];
+            System.arraycopy(scores, 0, row, 0, scoresCount);
+        }
+        mActionNames.add(actionName);
+        mScoreRows.add(row);
+        mPlayerActionCounts[mPlayerNames.size() - 1]++;
+    }
+
+    /**
+     * Building the definition. Actions with score changes not matching
+     * the count of the teams and actions with unknown source actions are skipped.
+     * Score changes of the counters are zero.
+     *
+     * @return game definition
+     */
+    GameDefinition build() {
+        int teamCount = mTeamNames.size();
+        int playerCount = mPlayerNames.size();
+        int rawCount = mActionNames.size();
+        int[] rawPlayer = new int[rawCount];
+        int[] playerTeam = new int[playerCount];
+        boolean[] isValid = new boolean[rawCount];
+        int playerIndex = 0;
+        int actionIndex = 0;
+        for (int t = 0; t < teamCount; t++) {
+            for (int p = 0; p < mTeamPlayerCounts[t]; p++, playerIndex++) {
+                playerTeam[playerIndex] = t;
+                for (int a = 0; a < mPlayerActionCounts[playerIndex]; a++, actionIndex++) {
+                    int[] row = mScoreRows.get(actionIndex);
+                    rawPlayer[actionIndex] = playerIndex;
+                    isValid[actionIndex] = row == null || row.length == teamCount;
+                    if (!isValid[actionIndex]) ModelLog.d(TAG, Game.MSG_ERR_WRONG_JSON_TEAM_COUNT);
+                }
+            }
+        }
+
+        // skipped action can be the source of other action, so sources are resolved until nothing is skipped
+        int[] rawSources = new int[rawCount];
+        boolean isChanged = mHasKinds;
+        while (isChanged) {
+            isChanged = false;
+            for (int a = 0; a < rawCount; a++) {
+                if (!isValid[a] || mSourceNames.get(a) == null) continue;
+                rawSources[a] = findSource(a, rawPlayer, playerTeam, isValid);
+                if (rawSources[a] < 0) {
+                    ModelLog.d(TAG, MSG_ERR_UNKNOWN_SOURCE + mSourceNames.get(a));
+                    isValid[a] = false;
+                    isChanged = true;
+                }
+            }
+        }
+
+        int[] teamFirstPlayer = new int[teamCount + 1];
+        int[] playerFirstAction = new int[playerCount + 1];
+        ArrayList<String> actionNames = new ArrayList<>(rawCount);
+        int[] scoreChanges = new int[rawCount * teamCount];
+        int[] validIndex = new int[rawCount];
+        playerIndex = 0;
+        actionIndex = 0;
+        for (int t = 0; t < teamCount; t++) {
+            teamFirstPlayer[t] = playerIndex;
+            for (int p = 0; p < mTeamPlayerCounts[t]; p++, playerIndex++) {
+                playerFirstAction[playerIndex] = actionNames.size();
+                for (int a = 0; a < mPlayerActionCounts[playerIndex]; a++, actionIndex++) {
+                    if (!isValid[actionIndex]) continue;
+                    int[] row = mScoreRows.get(actionIndex);
+                    if (row != null) {
+                        System.arraycopy(row, 0, scoreChanges, actionNames.size() * teamCount, teamCount);
+                    }
+                    validIndex[actionIndex] = actionNames.size();
+                    actionNames.add(mActionNames.get(actionIndex));
+                }
+            }
+        }
+        teamFirstPlayer[teamCount] = playerCount;
+        playerFirstAction[playerCount] = actionNames.size();
+
+        int[] validScoreChanges = new int[actionNames.size() * teamCount];
+        System.arraycopy(scoreChanges, 0, validScoreChanges, 0, validScoreChanges.length);
+        int[] actionKinds = null;
+        if (mHasKinds) {
+            actionKinds = new int[3 * actionNames.size()];
+            for (int a = 0; a < rawCount; a++) {
+                if (!isValid[a]) continue;
+                int entry = 3 * validIndex[a];
+                actionKinds[entry] = mActionKinds[2 * a];
+                actionKinds[entry + 1] = mSourceNames.get(a) == null ? 0 : validIndex[rawSources[a]];
+                actionKinds[entry + 2] = mActionKinds[2 * a + 1];
+            }
+        }
+        return new GameDefinition(
+                mGameName,
+                mTeamNames.toArray(new String[teamCount]),
+                teamFirstPlayer,
+                mPlayerNames.toArray(new String[playerCount]),
+                playerFirstAction,
+                actionNames.toArray(new String[actionNames.size()]),
+                validScoreChanges,
+                actionKinds,
+                mRules
+        );
+    }
+
+    /**
+     * Finding the source action by name among the actions of the same player,
+     * then of the same team, then of the whole game
+     *
+     * @param actionIndex index of the action as it is added
+     * @param rawPlayer player of each added action
+     * @param playerTeam team of each player
+     * @param isValid validity of each added action
+     * @return index of the source action as it is added or -1 if there is no such action
+     */
+    private int findSource(int actionIndex, int[] rawPlayer, int[] playerTeam, boolean[] isValid) {
+        String sourceName = mSourceNames.get(actionIndex);
+        int player = rawPlayer[actionIndex];
+        int found = -1;
+        int foundScope = 3;
+        for (int a = 0; a < isValid.length && foundScope > 0; a++) {
+            if (!isValid[a] || !sourceName.equals(mActionNames.get(a))) continue;
+            int scope = rawPlayer[a] == player ? 0 : playerTeam[rawPlayer[a]] == playerTeam[player] ? 1 : 2;
+            if (scope < foundScope) {
+                found = a;
+                foundScope = scope;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Growing the array to hold the element at index
+     *
+     * @param array array of the counters
+     * @param index index of the new element
+     * @return array with enough capacity
+     */
+    private static int[] ensureCapacity(int[] array, int index) {
+        if (index < array.length) return array;
+        int[] result = new int[array.length * 2];
+        System.arraycopy(array, 0, result, 0, array.length);
+        return result;
+    }
+}
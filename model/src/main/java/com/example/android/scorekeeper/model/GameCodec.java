@@ -0,0 +1,256 @@
+package com.example.android.scorekeeper.model;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Compact binary encoding of the parsed game definition.
+ * Layout (big-endian):
+ * magic, version, source stamp, names table, game name,
+ * team / player / action structure as indexes in the names table,
+ * the packed score changes matrix, the optional kinds of the actions and the optional rules of the match.
+ *
+ * @package com.example.android.scorekeeper
+ * (c) 2018, Igor Korovchenko.
+ */
+
+public final class GameCodec {
+
+    /**
+     * Magic number "SKGD" and version of the format
+     */
+    private static final int MAGIC = 0x534B4744;
+    private static final int VERSION = 4;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private GameCodec() {
+    }
+
+    /**
+     * Encoding the definition of the game
+     *
+     * @param definition definition of the game
+     * @param sourceStamp stamp of the source definition for invalidation of the encoded data
+     * @return encoded definition
+     */
+    public static byte[] encode(GameDefinition definition, long sourceStamp) {
+        ArrayList<String> names = new ArrayList<>(0);
+        HashMap<String, Integer> nameIndexes = new HashMap<>();
+        String gameName = definition.getGameName();
+        int teamCount = definition.getTeamCount();
+        int playerCount = definition.getPlayerCount();
+        int actionCount = definition.getActionCount();
+
+        if (gameName != null) indexName(gameName, names, nameIndexes);
+        for (int t = 0; t < teamCount; t++) {
+            indexName(definition.getTeamName(t), names, nameIndexes);
+        }
+        for (int p = 0; p < playerCount; p++) {
+            indexName(definition.getPlayerName(p), names, nameIndexes);
+        }
+        for (int a = 0; a < actionCount; a++) {
+            indexName(definition.getActionName(a), names, nameIndexes);
+        }
+
+        byte[][] encodedNames = new byte[names.size()][];
+        int namesSize = 4;
+        for (int i = 0; i < encodedNames.length; i++) {
+            encodedNames[i] = names.get(i).getBytes(UTF_8);
+            namesSize += 4 + encodedNames[i].length;
+        }
+
+        MatchRules rules = definition.getRules();
+        byte[] setName = rules == null || rules.getSetName() == null ? null : rules.getSetName().getBytes(UTF_8);
+        int rulesSize = rules == null ? 4 : 20 + (setName == null ? 0 : setName.length) + 4 * rules.getSetPointsCount();
+        int structureSize = 8 + 8 * teamCount + 8 * playerCount + 4 * actionCount;
+        int kindsSize = definition.isLinear() ? 4 : 4 + 12 * actionCount;
+        ByteBuffer buffer = ByteBuffer.allocate(
+                16 + namesSize + structureSize + 4 + 4 * actionCount * teamCount + kindsSize + rulesSize);
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(sourceStamp);
+        buffer.putInt(encodedNames.length);
+        for (byte[] name : encodedNames) {
+            buffer.putInt(name.length).put(name);
+        }
+
+        // missing name is kept as null, so the fingerprint of the decoded definition is the same
+        buffer.putInt(gameName == null ? -1 : nameIndexes.get(gameName));
+        buffer.putInt(teamCount);
+        for (int t = 0; t < teamCount; t++) {
+            buffer.putInt(nameIndexes.get(definition.getTeamName(t)));
+            buffer.putInt(definition.getFirstPlayer(t + 1) - definition.getFirstPlayer(t));
+            for (int p = definition.getFirstPlayer(t); p < definition.getFirstPlayer(t + 1); p++) {
+                buffer.putInt(nameIndexes.get(definition.getPlayerName(p)));
+                buffer.putInt(definition.getFirstAction(p + 1) - definition.getFirstAction(p));
+                for (int a = definition.getFirstAction(p); a < definition.getFirstAction(p + 1); a++) {
+                    buffer.putInt(nameIndexes.get(definition.getActionName(a)));
+                }
+            }
+        }
+
+        buffer.putInt(actionCount);
+        buffer.asIntBuffer().put(definition.getScoreChanges());
+        buffer.position(buffer.position() + 4 * actionCount * teamCount);
+
+        buffer.putInt(definition.isLinear() ? 0 : 1);
+        if (!definition.isLinear()) {
+            for (int a = 0; a < actionCount; a++) {
+                buffer.putInt(definition.getActionKind(a));
+                buffer.putInt(definition.getActionSource(a));
+                buffer.putInt(definition.getActionValue(a));
+            }
+        }
+
+        buffer.putInt(rules == null ? 0 : 1);
+        if (rules != null) {
+            buffer.putInt(setName == null ? -1 : setName.length);
+            if (setName != null) buffer.put(setName);
+            buffer.putInt(rules.getSetPointsCount());
+            for (int i = 0; i < rules.getSetPointsCount(); i++) {
+                buffer.putInt(rules.getSetPoints(i));
+            }
+            buffer.putInt(rules.getMargin());
+            buffer.putInt(rules.getSetsToWin());
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Reading the source stamp of the encoded definition
+     *
+     * @param buffer encoded definition
+     * @return source stamp
+     * @throws IOException if the data is not an encoded definition of this version
+     */
+    public static long readSourceStamp(ByteBuffer buffer) throws IOException {
+        try {
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("Unknown format of the encoded game");
+            }
+            return buffer.getLong(8);
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Truncated encoded game", e);
+        }
+    }
+
+    /**
+     * Decoding the definition of the game
+     *
+     * @param buffer encoded definition, read from its beginning
+     * @return game definition
+     * @throws IOException if the data is not a valid encoded definition
+     */
+    public static GameDefinition decode(ByteBuffer buffer) throws IOException {
+        readSourceStamp(buffer);
+        try {
+            buffer.position(16);
+            String[] names = new String[buffer.getInt()];
+            byte[] bytes = new byte[64];
+            for (int i = 0; i < names.length; i++) {
+                int length = buffer.getInt();
+                if (length > bytes.length) bytes = new byte[Math.max(length, bytes.length * 2)];
+                buffer.get(bytes, 0, length);
+                names[i] = new String(bytes, 0, length, UTF_8);
+            }
+
+            int gameNameIndex = buffer.getInt();
+            String gameName = gameNameIndex < 0 ? null : names[gameNameIndex];
+            int teamCount = buffer.getInt();
+            String[] teamNames = new String[teamCount];
+            int[] teamFirstPlayer = new int[teamCount + 1];
+            ArrayList<String> playerNames = new ArrayList<>(0);
+            int[] playerFirstAction = new int[16];
+            ArrayList<String> actionNames = new ArrayList<>(0);
+            for (int t = 0; t < teamCount; t++) {
+                teamNames[t] = names[buffer.getInt()];
+                teamFirstPlayer[t] = playerNames.size();
+                int playerCount = buffer.getInt();
+                for (int p = 0; p < playerCount; p++) {
+                    if (playerNames.size() + 1 >= playerFirstAction.length) {
+                        playerFirstAction = Arrays.copyOf(playerFirstAction, playerFirstAction.length * 2);
+                    }
+                    playerFirstAction[playerNames.size()] = actionNames.size();
+                    playerNames.add(names[buffer.getInt()]);
+                    int actionCount = buffer.getInt();
+                    for (int a = 0; a < actionCount; a++) {
+                        actionNames.add(names[buffer.getInt()]);
+                    }
+                }
+            }
+            teamFirstPlayer[teamCount] = playerNames.size();
+            playerFirstAction[playerNames.size()] = actionNames.size();
+
+            if (buffer.getInt() != actionNames.size()) throw new IOException("Wrong count of the encoded actions");
+            int[] scoreChanges = new int[actionNames.size() * teamCount];
+            buffer.asIntBuffer().get(scoreChanges);
+            buffer.position(buffer.position() + 4 * scoreChanges.length);
+
+            int[] actionKinds = null;
+            if (buffer.getInt() != 0) {
+                actionKinds = new int[3 * actionNames.size()];
+                for (int a = 0; a < actionNames.size(); a++) {
+                    int kind = buffer.getInt();
+                    int source = buffer.getInt();
+                    if (kind < GameDefinition.KIND_LINEAR || kind > GameDefinition.KIND_SCALED
+                            || source < 0 || source >= actionNames.size()) {
+                        throw new IOException("Wrong kind of the encoded action");
+                    }
+                    actionKinds[3 * a] = kind;
+                    actionKinds[3 * a + 1] = source;
+                    actionKinds[3 * a + 2] = buffer.getInt();
+                }
+            }
+
+            MatchRules rules = null;
+            if (buffer.getInt() != 0) {
+                int length = buffer.getInt();
+                if (length > buffer.remaining()) throw new IOException("Wrong length of the set's name");
+                String setName = null;
+                if (length >= 0) {
+                    byte[] name = new byte[length];
+                    buffer.get(name);
+                    setName = new String(name, UTF_8);
+                }
+                int pointsCount = buffer.getInt();
+                if (pointsCount > buffer.remaining() / 4) throw new IOException("Wrong count of the set's points");
+                int[] setPoints = new int[pointsCount];
+                for (int i = 0; i < setPoints.length; i++) {
+                    setPoints[i] = buffer.getInt();
+                }
+                rules = new MatchRules(setName, setPoints, buffer.getInt(), buffer.getInt());
+            }
+            return new GameDefinition(
+                    gameName,
+                    teamNames,
+                    teamFirstPlayer,
+                    playerNames.toArray(new String[playerNames.size()]),
+                    Arrays.copyOf(playerFirstAction, playerNames.size() + 1),
+                    actionNames.toArray(new String[actionNames.size()]),
+                    scoreChanges,
+                    actionKinds,
+                    rules
+            );
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+            throw new IOException("Corrupted encoded game", e);
+        }
+    }
+
+    /**
+     * Adding the name to the names table if it is not there yet
+     *
+     * @param name name of the game, team, player or action
+     * @param names names table
+     * @param nameIndexes indexes of the names in the table
+     */
+    private static void indexName(String name, ArrayList<String> names, HashMap<String, Integer> nameIndexes) {
+        if (!nameIndexes.containsKey(name)) {
+            nameIndexes.put(name, names.size());
+            names.add(name);
+        }
+    }
+}
@@ -0,0 +1,475 @@
+package com.example.android.scorekeeper.model;
+
+/**
+ * Immutable definition of the game: names of the teams, players and actions
+ * and the score changes matrix. One definition is shared by all matches of the game.
+ * Actions which are not linear are compiled into the dispatch table of the model.
+ * Teams, players and actions are indexed in order of the definition;
+ * players and actions are numbered through the whole game.
+ *
+ * @package com.example.android.scorekeeper
+ * (c) 2018, Igor Korovchenko.
+ */
+
+public final class GameDefinition {
+
+    /**
+     * Parameters of 64-bit FNV-1a hash
+     */
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * Kinds of the actions. Linear action adds its score changes for each tap,
+     * counter action only counts taps, conditional action adds its score changes
+     * if the counter of the source action is at least the value, and scaled action
+     * adds its score changes multiplied by the counter of the source action but not less than the value.
+     */
+    public static final int KIND_LINEAR = 0;
+    public static final int KIND_COUNTER = 1;
+    public static final int KIND_CONDITIONAL = 2;
+    public static final int KIND_SCALED = 3;
+
+    /**
+     * Layout of the dispatch table: kind, source action, value and slot of the points of the action
+     */
+    static final int DISPATCH_STRIDE = 4;
+    static final int DISPATCH_KIND = 0;
+    static final int DISPATCH_SOURCE = 1;
+    static final int DISPATCH_VALUE = 2;
+    static final int DISPATCH_SLOT = 3;
+
+    /**
+     * Game name
+     */
+    private final String mGameName;
+
+    /**
+     * Names of the teams, players and actions
+     */
+    private final String[] mTeamNames;
+    private final String[] mPlayerNames;
+    private final String[] mActionNames;
+
+    /**
+     * Index of the first player of each team and of the first action of each player.
+     * The last element is the count of all players / actions.
+     */
+    private final int[] mTeamFirstPlayer;
+    private final int[] mPlayerFirstAction;
+
+    /**
+     * Index of the team of each player and of the player of each action
+     */
+    private final int[] mPlayerTeam;
+    private final int[] mActionPlayer;
+
+    /**
+     * Score changes matrix: row per action, column per team
+     */
+    private final int[] mScoreChanges;
+
+    /**
+     * Dispatch table of the actions: row of {@link #DISPATCH_STRIDE} values per action,
+     * or null if all actions are linear
+     */
+    private final int[] mDispatch;
+
+    /**
+     * Count of the actions whose points depend on the state of the match
+     */
+    private final int mNonLinearCount;
+
+    /**
+     * Rules of the match or null if the definition has no rules
+     */
+    private final MatchRules mRules;
+
+    /**
+     * 64-bit FNV-1a hash of the names, structure and score changes
+     */
+    private final long mFingerprint;
+
+    /**
+     * Constructor of the definition. Arrays are owned by the definition after the call.
+     *
+     * @param gameName name of the game
+     * @param teamNames names of the teams
+     * @param teamFirstPlayer index of the first player of each team and count of the players
+     * @param playerNames names of the players
+     * @param playerFirstAction index of the first action of each player and count of the actions
+     * @param actionNames names of the actions
+     * @param scoreChanges score changes matrix: row per action, column per team
+     */
+    GameDefinition(String gameName,
+                   String[] teamNames, int[] teamFirstPlayer,
+                   String[] playerNames, int[] playerFirstAction,
+                   String[] actionNames, int[] scoreChanges) {
+        this(gameName, teamNames, teamFirstPlayer, playerNames, playerFirstAction, actionNames, scoreChanges, null);
+    }
+
+    /**
+     * Constructor of the definition with rules of the match. Arrays are owned by the definition after the call.
+     *
+     * @param gameName name of the game
+     * @param teamNames names of the teams
+     * @param teamFirstPlayer index of the first player of each team and count of the players
+     * @param playerNames names of the players
+     * @param playerFirstAction index of the first action of each player and count of the actions
+     * @param actionNames names of the actions
+     * @param scoreChanges score changes matrix: row per action, column per team
+     * @param rules rules of the match or null
+     */
+    GameDefinition(String gameName,
+                   String[] teamNames, int[] teamFirstPlayer,
+                   String[] playerNames, int[] playerFirstAction,
+                   String[] actionNames, int[] scoreChanges,
+                   MatchRules rules) {
+        this(gameName, teamNames, teamFirstPlayer, playerNames, playerFirstAction, actionNames, scoreChanges,
+                null, rules);
+    }
+
+    /**
+     * Constructor of the definition with kinds of the actions. Arrays are owned by the definition after the call.
+     *
+     * @param gameName name of the game
+     * @param teamNames names of the teams
+     * @param teamFirstPlayer index of the first player of each team and count of the players
+     * @param playerNames names of the players
+     * @param playerFirstAction index of the first action of each player and count of the actions
+     * @param actionNames names of the actions
+     * @param scoreChanges score changes matrix: row per action, column per team
+     * @param actionKinds kind, source action and value of each action, or null if all actions are linear
+     * @param rules rules of the match or null
+     */
+    GameDefinition(String gameName,
+                   String[] teamNames, int[] teamFirstPlayer,
+                   String[] playerNames, int[] playerFirstAction,
+                   String[] actionNames, int[] scoreChanges,
+                   int[] actionKinds, MatchRules rules) {
+        this.mGameName = gameName;
+        this.mRules = rules;
+        this.mTeamNames = teamNames;
+        this.mTeamFirstPlayer = teamFirstPlayer;
+        this.mPlayerNames = playerNames;
+        this.mPlayerFirstAction = playerFirstAction;
+        this.mActionNames = actionNames;
+        this.mScoreChanges = scoreChanges;
+
+        this.mPlayerTeam = new int[playerNames.length];
+        for (int t = 0; t < teamNames.length; t++) {
+            for (int p = teamFirstPlayer[t]; p < teamFirstPlayer[t + 1]; p++) {
+                mPlayerTeam[p] = t;
+            }
+        }
+        this.mActionPlayer = new int[actionNames.length];
+        for (int p = 0; p < playerNames.length; p++) {
+            for (int a = playerFirstAction[p]; a < playerFirstAction[p + 1]; a++) {
+                mActionPlayer[a] = p;
+            }
+        }
+
+        int[] dispatch = null;
+        int nonLinearCount = 0;
+        for (int a = 0; actionKinds != null && a < actionNames.length; a++) {
+            int kind = actionKinds[3 * a];
+            if (kind == KIND_LINEAR) continue;
+            if (dispatch == null) dispatch = new int[actionNames.length * DISPATCH_STRIDE];
+            int entry = a * DISPATCH_STRIDE;
+            dispatch[entry + DISPATCH_KIND] = kind;
+            dispatch[entry + DISPATCH_SOURCE] = actionKinds[3 * a + 1];
+            dispatch[entry + DISPATCH_VALUE] = actionKinds[3 * a + 2];
+            dispatch[entry + DISPATCH_SLOT] = kind == KIND_COUNTER ? -1 : nonLinearCount++;
+        }
+        this.mDispatch = dispatch;
+        this.mNonLinearCount = nonLinearCount;
+        this.mFingerprint = computeFingerprint();
+    }
+
+    /**
+     * Getting hash of the whole definition for checking compatibility of the saved states
+     *
+     * @return fingerprint of the definition
+     */
+    public long getFingerprint() {
+        return mFingerprint;
+    }
+
+    /**
+     * Getting rules of the match
+     *
+     * @return rules or null if the definition has no rules
+     */
+    public MatchRules getRules() {
+        return mRules;
+    }
+
+    /**
+     * Getting name of the game
+     *
+     * @return game's name
+     */
+    public String getGameName() {
+        return mGameName;
+    }
+
+    /**
+     * Getting count of the teams
+     *
+     * @return teams count
+     */
+    public int getTeamCount() {
+        return mTeamNames.length;
+    }
+
+    /**
+     * Getting count of all players of the game
+     *
+     * @return players count
+     */
+    public int getPlayerCount() {
+        return mPlayerNames.length;
+    }
+
+    /**
+     * Getting count of all actions of the game
+     *
+     * @return actions count
+     */
+    public int getActionCount() {
+        return mActionNames.length;
+    }
+
+    /**
+     * Getting name of the team
+     *
+     * @param teamIndex index of the team
+     * @return team's name
+     */
+    public String getTeamName(int teamIndex) {
+        return mTeamNames[teamIndex];
+    }
+
+    /**
+     * Getting name of the player
+     *
+     * @param playerIndex index of the player in the game
+     * @return player's name
+     */
+    public String getPlayerName(int playerIndex) {
+        return mPlayerNames[playerIndex];
+    }
+
+    /**
+     * Getting name of the action
+     *
+     * @param actionIndex index of the action in the game
+     * @return action's name
+     */
+    public String getActionName(int actionIndex) {
+        return mActionNames[actionIndex];
+    }
+
+    /**
+     * Getting index of the first player of the team
+     *
+     * @param teamIndex index of the team or count of the teams
+     * @return index of the player in the game
+     */
+    public int getFirstPlayer(int teamIndex) {
+        return mTeamFirstPlayer[teamIndex];
+    }
+
+    /**
+     * Getting index of the first action of the player
+     *
+     * @param playerIndex index of the player in the game or count of the players
+     * @return index of the action in the game
+     */
+    public int getFirstAction(int playerIndex) {
+        return mPlayerFirstAction[playerIndex];
+    }
+
+    /**
+     * Getting index of the action in the game by its position in the team and player.
+     * Indexes are dense and unique for any count of the teams, players and actions.
+     *
+     * @param teamIndex index of the team
+     * @param playerIndex index of the player in the team
+     * @param actionIndex index of the action of the player
+     * @return index of the action in the game
+     */
+    public int getActionIndex(int teamIndex, int playerIndex, int actionIndex) {
+        return mPlayerFirstAction[mTeamFirstPlayer[teamIndex] + playerIndex] + actionIndex;
+    }
+
+    /**
+     * Getting team of the player
+     *
+     * @param playerIndex index of the player in the game
+     * @return index of the team
+     */
+    public int getPlayerTeam(int playerIndex) {
+        return mPlayerTeam[playerIndex];
+    }
+
+    /**
+     * Getting player of the action
+     *
+     * @param actionIndex index of the action in the game
+     * @return index of the player in the game
+     */
+    public int getActionPlayer(int actionIndex) {
+        return mActionPlayer[actionIndex];
+    }
+
+    /**
+     * Getting score change of the action for the team
+     *
+     * @param actionIndex index of the action in the game
+     * @param teamIndex index of the team
+     * @return score change
+     */
+    public int getScoreChange(int actionIndex, int teamIndex) {
+        return mScoreChanges[actionIndex * mTeamNames.length + teamIndex];
+    }
+
+    /**
+     * Getting kind of the action
+     *
+     * @param actionIndex index of the action in the game
+     * @return one of KIND_ constants
+     */
+    public int getActionKind(int actionIndex) {
+        return mDispatch == null ? KIND_LINEAR : mDispatch[actionIndex * DISPATCH_STRIDE + DISPATCH_KIND];
+    }
+
+    /**
+     * Getting source action of the conditional or scaled action
+     *
+     * @param actionIndex index of the action in the game
+     * @return index of the source action in the game
+     */
+    public int getActionSource(int actionIndex) {
+        return mDispatch == null ? 0 : mDispatch[actionIndex * DISPATCH_STRIDE + DISPATCH_SOURCE];
+    }
+
+    /**
+     * Getting value of the conditional or scaled action:
+     * least counter of the source action or least multiplier
+     *
+     * @param actionIndex index of the action in the game
+     * @return value of the action
+     */
+    public int getActionValue(int actionIndex) {
+        return mDispatch == null ? 0 : mDispatch[actionIndex * DISPATCH_STRIDE + DISPATCH_VALUE];
+    }
+
+    /**
+     * Checking if all actions are linear, so scores depend on the counters only
+     *
+     * @return true if there are no actions of other kinds
+     */
+    public boolean isLinear() {
+        return mDispatch == null;
+    }
+
+    /**
+     * Getting count of the conditional and scaled actions, whose points are kept by the match
+     *
+     * @return actions count
+     */
+    public int getNonLinearCount() {
+        return mNonLinearCount;
+    }
+
+    /**
+     * Getting the dispatch table for the hot paths of the model
+     *
+     * @return row of {@link #DISPATCH_STRIDE} values per action or null if all actions are linear
+     */
+    int[] getDispatchTable() {
+        return mDispatch;
+    }
+
+    /**
+     * Getting the score changes matrix for the hot paths of the model
+     *
+     * @return score changes matrix: row per action, column per team
+     */
+    int[] getScoreChanges() {
+        return mScoreChanges;
+    }
+
+    /**
+     * Computing 64-bit FNV-1a hash of the definition
+     *
+     * @return fingerprint of the definition
+     */
+    private long computeFingerprint() {
+        long hash = FNV_OFFSET_BASIS;
+        hash = hash(hash, mGameName);
+        for (String name : mTeamNames) {
+            hash = hash(hash, name);
+        }
+        for (String name : mPlayerNames) {
+            hash = hash(hash, name);
+        }
+        for (String name : mActionNames) {
+            hash = hash(hash, name);
+        }
+        for (int value : mTeamFirstPlayer) {
+            hash = hash(hash, value);
+        }
+        for (int value : mPlayerFirstAction) {
+            hash = hash(hash, value);
+        }
+        for (int value : mScoreChanges) {
+            hash = hash(hash, value);
+        }
+        if (mDispatch != null) {
+            for (int value : mDispatch) {
+                hash = hash(hash, value);
+            }
+        }
+        if (mRules != null) {
+            hash = hash(hash, mRules.getSetName());
+            for (int i = 0; i < mRules.getSetPointsCount(); i++) {
+                hash = hash(hash, mRules.getSetPoints(i));
+            }
+            hash = hash(hash, mRules.getMargin());
+            hash = hash(hash, mRules.getSetsToWin());
+        }
+        return hash;
+    }
+
+    /**
+     * Mixing the string into FNV-1a hash, including its length
+     *
+     * @param hash current hash
+     * @param value string or null
+     * @return updated hash
+     */
+    private static long hash(long hash, String value) {
+        if (value == null) return hash(hash, -1);
+        hash = hash(hash, value.length());
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Mixing the int into FNV-1a hash byte by byte
+     *
+     * @param hash current hash
+     * @param value int value
+     * @return updated hash
+     */
+    private static long hash(long hash, int value) {
+        for (int shift = 0; shift < 32; shift += 8) {
+            hash = (hash ^ ((value >>> shift) & 0xFF)) * FNV_PRIME;
+        }
+        return hash;
+    }
+}
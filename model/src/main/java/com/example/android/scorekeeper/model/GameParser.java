@@ -0,0 +1,283 @@
+package com.example.android.scorekeeper.model;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Single-pass streaming parser of the game definition.
+ * Builds the game definition directly from the UTF-8 input stream
+ * without creating intermediate JSON objects.
+ *
+ * @package com.example.android.scorekeeper
+ * (c) 2018, Igor Korovchenko.
+ */
+
+public final class GameParser {
+
+    /**
+     * TAG name for debugging
+     */
+    private static final String TAG = "GameParser";
+
+    /**
+     * Keys of the game definition
+     */
+    private static final String GAME_NAME = "name";
+    private static final String TEAMS_INFO = "teams";
+    private static final String BUTTONS_INFO = "buttons";
+    private static final String RULES_INFO = "rules";
+
+    /**
+     * Keys of the rules
+     */
+    private static final String RULES_SET = "set";
+    private static final String RULES_POINTS = "points";
+    private static final String RULES_MARGIN = "margin";
+    private static final String RULES_SETS_TO_WIN = "sets_to_win";
+
+    /**
+     * Keys of the action written as an object and the name of the counter kind
+     */
+    private static final String ACTION_KIND = "kind";
+    private static final String ACTION_POINTS = "points";
+    private static final String ACTION_IF = "if";
+    private static final String ACTION_PER = "per";
+    private static final String ACTION_MIN = "min";
+    private static final String KIND_COUNTER = "counter";
+
+    /**
+     * Messages for debugging
+     */
+    private static final String MSG_ERR_WRONG_JSON_RULES_OBJECT = "Wrong JSON. Rules' substructure is not a JSON object";
+
+    /**
+     * Tokenizer of the definition
+     */
+    private final JsonTokenizer mTokenizer;
+
+    /**
+     * Builder of the game definition
+     */
+    private final GameBuilder mBuilder = new GameBuilder();
+
+    /**
+     * Buffer for score changes of the action
+     */
+    private int[] mScores = new int[4];
+
+    /**
+     * Constructor of the parser reading the stream in chunks into the given buffer
+     *
+     * @param inputStream stream with UTF-8 JSON definition
+     * @param buffer read buffer, which can be reused after parsing
+     */
+    public GameParser(InputStream inputStream, byte[] buffer) {
+        this.mTokenizer = new JsonTokenizer(inputStream, buffer);
+    }
+
+    /**
+     * Parsing of the game model from the stream with JSON definition.
+     * The stream is not closed.
+     *
+     * @param inputStream stream with UTF-8 JSON definition
+     * @return game definition
+     * @throws IOException on I/O error or malformed JSON
+     */
+    public static GameDefinition parse(InputStream inputStream) throws IOException {
+        return new GameParser(inputStream, new byte[JsonTokenizer.DEFAULT_BUFFER_SIZE]).parse();
+    }
+
+    /**
+     * Getting count of the bytes read from the stream
+     *
+     * @return bytes count
+     */
+    public long getBytesRead() {
+        return mTokenizer.getBytesRead();
+    }
+
+    /**
+     * Parsing of the whole definition. The stream is not closed.
+     *
+     * @return game definition
+     * @throws IOException on I/O error or malformed JSON
+     */
+    public GameDefinition parse() throws IOException {
+        mTokenizer.beginObject();
+        while (mTokenizer.hasNext()) {
+            String name = mTokenizer.nextName();
+            if (GAME_NAME.equals(name)) {
+                mBuilder.setGameName(mTokenizer.nextString());
+            } else if (TEAMS_INFO.equals(name) && isObject(Game.MSG_ERR_WRONG_JSON_TEAM_OBJECT)) {
+                parseTeams();
+            } else if (RULES_INFO.equals(name) && isObject(MSG_ERR_WRONG_JSON_RULES_OBJECT)) {
+                parseRules();
+            } else {
+                mTokenizer.skipValue();
+            }
+        }
+        mTokenizer.endObject();
+        mTokenizer.endDocument();
+        return mBuilder.build();
+    }
+
+    /**
+     * Parsing of the teams' object
+     */
+    private void parseTeams() throws IOException {
+        mTokenizer.beginObject();
+        while (mTokenizer.hasNext()) {
+            String teamName = mTokenizer.nextName();
+            if (isObject(Game.MSG_ERR_WRONG_JSON_PLAYER_OBJECT)) {
+                mBuilder.addTeam(teamName);
+                parsePlayers();
+            }
+        }
+        mTokenizer.endObject();
+    }
+
+    /**
+     * Parsing of the players' object of the team
+     */
+    private void parsePlayers() throws IOException {
+        mTokenizer.beginObject();
+        while (mTokenizer.hasNext()) {
+            String playerName = mTokenizer.nextName();
+            if (isObject(Game.MSG_ERR_WRONG_JSON_ACTION_OBJECT)) {
+                mBuilder.addPlayer(playerName);
+                parsePlayer();
+            }
+        }
+        mTokenizer.endObject();
+    }
+
+    /**
+     * Parsing of the player's object
+     */
+    private void parsePlayer() throws IOException {
+        mTokenizer.beginObject();
+        while (mTokenizer.hasNext()) {
+            if (BUTTONS_INFO.equals(mTokenizer.nextName())) {
+                parseButtons();
+            } else {
+                mTokenizer.skipValue();
+            }
+        }
+        mTokenizer.endObject();
+    }
+
+    /**
+     * Parsing of the buttons' object of the player
+     */
+    private void parseButtons() throws IOException {
+        mTokenizer.beginObject();
+        while (mTokenizer.hasNext()) {
+            String actionName = mTokenizer.nextName();
+            if (mTokenizer.peek() == JsonTokenizer.BEGIN_OBJECT) {
+                parseAction(actionName);
+            } else {
+                mBuilder.addAction(actionName, mScores, parseScores());
+            }
+        }
+        mTokenizer.endObject();
+    }
+
+    /**
+     * Parsing of the action written as an object: counter, e.g. {"kind": "counter"},
+     * conditional, e.g. {"points": [0, 1], "if": "Free ball", "min": 1},
+     * or scaled, e.g. {"points": [0, 1], "per": "Ball on", "min": 4}.
+     * Object with the points only is the linear action.
+     *
+     * @param actionName name of the action
+     */
+    private void parseAction(String actionName) throws IOException {
+        int kind = GameDefinition.KIND_LINEAR;
+        int count = 0;
+        String sourceName = null;
+        int value = 1;
+        mTokenizer.beginObject();
+        while (mTokenizer.hasNext()) {
+            String name = mTokenizer.nextName();
+            if (ACTION_KIND.equals(name)) {
+                if (KIND_COUNTER.equals(mTokenizer.nextString())) kind = GameDefinition.KIND_COUNTER;
+            } else if (ACTION_POINTS.equals(name)) {
+                count = parseScores();
+            } else if (ACTION_IF.equals(name)) {
+                kind = GameDefinition.KIND_CONDITIONAL;
+                sourceName = mTokenizer.nextString();
+            } else if (ACTION_PER.equals(name)) {
+                kind = GameDefinition.KIND_SCALED;
+                sourceName = mTokenizer.nextString();
+            } else if (ACTION_MIN.equals(name)) {
+                value = mTokenizer.nextInt();
+            } else {
+                mTokenizer.skipValue();
+            }
+        }
+        mTokenizer.endObject();
+        if (kind == GameDefinition.KIND_COUNTER) sourceName = null;
+        mBuilder.addAction(actionName, mScores, count, kind, sourceName, value);
+    }
+
+    /**
+     * Parsing of the array of the score changes into the buffer
+     *
+     * @return count of the score changes
+     */
+    private int parseScores() throws IOException {
+        int count = 0;
+        mTokenizer.beginArray();
+        while (mTokenizer.hasNext()) {
+            if (count == mScores.length) {
+                int[] scores = new int[count * 2];
+                System.arraycopy(mScores, 0, scores, 0, count);
+                mScores = scores;
+            }
+            mScores[count++] = mTokenizer.nextInt();
+        }
+        mTokenizer.endArray();
+        return count;
+    }
+
+    /**
+     * Parsing of the rules' object
+     */
+    private void parseRules() throws IOException {
+        String setName = null;
+        int[] setPoints = new int[0];
+        int margin = 1;
+        int setsToWin = 1;
+        mTokenizer.beginObject();
+        while (mTokenizer.hasNext()) {
+            String name = mTokenizer.nextName();
+            if (RULES_SET.equals(name)) {
+                setName = mTokenizer.nextString();
+            } else if (RULES_POINTS.equals(name)) {
+                int count = parseScores();
+                setPoints = new int[count];
+                System.arraycopy(mScores, 0, setPoints, 0, count);
+            } else if (RULES_MARGIN.equals(name)) {
+                margin = mTokenizer.nextInt();
+            } else if (RULES_SETS_TO_WIN.equals(name)) {
+                setsToWin = mTokenizer.nextInt();
+            } else {
+                mTokenizer.skipValue();
+            }
+        }
+        mTokenizer.endObject();
+        mBuilder.setRules(new MatchRules(setName, setPoints, margin, setsToWin));
+    }
+
+    /**
+     * Checking that the next value is an object. Other values are skipped.
+     *
+     * @param errorMessage message for debugging if the value is not an object
+     * @return true if the next value is an object
+     */
+    private boolean isObject(String errorMessage) throws IOException {
+        if (mTokenizer.peek() == JsonTokenizer.BEGIN_OBJECT) return true;
+        ModelLog.d(TAG, errorMessage);
+        mTokenizer.skipValue();
+        return false;
+    }
+}
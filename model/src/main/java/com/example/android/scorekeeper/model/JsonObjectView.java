@@ -0,0 +1,56 @@
+package com.example.android.scorekeeper.model;
+
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * Read-only view of the parsed JSON object, e.g. over org.json.JSONObject.
+ * Used by the game built from the JSON tree, so the model doesn't depend on the JSON library.
+ *
+ * @package com.example.android.scorekeeper
+ * (c) 2018, Igor Korovchenko.
+ */
+
+public interface JsonObjectView {
+
+    /**
+     * Getting count of the names of the object
+     *
+     * @return names count
+     */
+    int length();
+
+    /**
+     * Getting names of the object in order of the underlying JSON object
+     *
+     * @return iterator over the names
+     */
+    Iterator<String> keys();
+
+    /**
+     * Getting the string value
+     *
+     * @param name name of the value
+     * @return string value
+     * @throws IOException if there is no such value
+     */
+    String getString(String name) throws IOException;
+
+    /**
+     * Getting the object value
+     *
+     * @param name name of the value
+     * @return view of the object or null if the value is not an object
+     * @throws IOException if there is no such value
+     */
+    JsonObjectView getObject(String name) throws IOException;
+
+    /**
+     * Getting the array of the integers
+     *
+     * @param name name of the value
+     * @return integers or null if the value is not an array
+     * @throws IOException if there is no such value or the array has other values
+     */
+    int[] getIntArray(String name) throws IOException;
+}
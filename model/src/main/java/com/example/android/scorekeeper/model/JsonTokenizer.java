@@ -0,0 +1,511 @@
+package com.example.android.scorekeeper.model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Streaming pull tokenizer of JSON documents.
+ * Reads UTF-8 bytes in chunks and decodes names and strings directly from the buffer,
+ * so the whole document is never kept in memory as a String.
+ *
+ * @package com.example.android.scorekeeper
+ * (c) 2018, Igor Korovchenko.
+ */
+
+final class JsonTokenizer implements Closeable {
+
+    /**
+     * Tokens of the JSON document
+     */
+    static final int BEGIN_OBJECT = 1;
+    static final int END_OBJECT = 2;
+    static final int BEGIN_ARRAY = 3;
+    static final int END_ARRAY = 4;
+    static final int NAME = 5;
+    static final int STRING = 6;
+    static final int NUMBER = 7;
+    static final int LITERAL = 8;
+    static final int END_DOCUMENT = 9;
+
+    /**
+     * No token is peeked yet
+     */
+    private static final int PEEKED_NONE = 0;
+
+    /**
+     * Scopes of the nesting stack
+     */
+    private static final int SCOPE_EMPTY_OBJECT = 1;
+    private static final int SCOPE_OBJECT = 2;
+    private static final int SCOPE_DANGLING_NAME = 3;
+    private static final int SCOPE_EMPTY_ARRAY = 4;
+    private static final int SCOPE_ARRAY = 5;
+    private static final int SCOPE_EMPTY_DOCUMENT = 6;
+    private static final int SCOPE_DOCUMENT = 7;
+
+    /**
+     * Default size of the read buffer
+     */
+    static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    /**
+     * Source of the UTF-8 bytes
+     */
+    private final InputStream mInputStream;
+
+    /**
+     * Read buffer, its position and limit
+     */
+    private final byte[] mBuffer;
+    private int mPos;
+    private int mLimit;
+
+    /**
+     * Count of the bytes consumed from the input stream
+     */
+    private long mBytesRead;
+
+    /**
+     * Nesting stack of the scopes
+     */
+    private int[] mStack = new int[32];
+    private int mStackSize;
+
+    /**
+     * Peeked token or PEEKED_NONE
+     */
+    private int mPeeked = PEEKED_NONE;
+
+    /**
+     * Reusable buffer for decoded names, strings and numbers
+     */
+    private char[] mChars = new char[64];
+
+    /**
+     * Constructor of the tokenizer with its own read buffer
+     *
+     * @param inputStream source of the UTF-8 bytes
+     */
+    JsonTokenizer(InputStream inputStream) {
+        this(inputStream, new byte[DEFAULT_BUFFER_SIZE]);
+    }
+
+    /**
+     * Constructor of the tokenizer with the given read buffer
+     *
+     * @param inputStream source of the UTF-8 bytes
+     * @param buffer read buffer, which can be reused by the caller after closing
+     */
+    JsonTokenizer(InputStream inputStream, byte[] buffer) {
+        this.mInputStream = inputStream;
+        this.mBuffer = buffer;
+        this.mStack[mStackSize++] = SCOPE_EMPTY_DOCUMENT;
+    }
+
+    /**
+     * Getting count of the bytes read from the input stream
+     *
+     * @return bytes count
+     */
+    long getBytesRead() {
+        return mBytesRead;
+    }
+
+    /**
+     * Getting the type of the next token without consuming it
+     *
+     * @return type of the token
+     * @throws IOException on I/O error or malformed JSON
+     */
+    int peek() throws IOException {
+        if (mPeeked != PEEKED_NONE) return mPeeked;
+
+        int c;
+        int scope = mStack[mStackSize - 1];
+        switch (scope) {
+            case SCOPE_EMPTY_ARRAY:
+                mStack[mStackSize - 1] = SCOPE_ARRAY;
+                c = nextNonWhitespace();
+                if (c == ']') return mPeeked = END_ARRAY;
+                if (c != -1) mPos--;
+                break;
+            case SCOPE_ARRAY:
+                c = nextNonWhitespace();
+                if (c == ']') return mPeeked = END_ARRAY;
+                if (c != ',') throw syntaxError("Expected ',' or ']'");
+                break;
+            case SCOPE_EMPTY_OBJECT:
+            case SCOPE_OBJECT:
+                c = nextNonWhitespace();
+                if (c == '}') return mPeeked = END_OBJECT;
+                if (scope == SCOPE_OBJECT) {
+                    if (c != ',') throw syntaxError("Expected ',' or '}'");
+                    c = nextNonWhitespace();
+                }
+                if (c != '"') throw syntaxError("Expected name");
+                mStack[mStackSize - 1] = SCOPE_DANGLING_NAME;
+                return mPeeked = NAME;
+            case SCOPE_DANGLING_NAME:
+                mStack[mStackSize - 1] = SCOPE_OBJECT;
+                if (nextNonWhitespace() != ':') throw syntaxError("Expected ':'");
+                break;
+            case SCOPE_EMPTY_DOCUMENT:
+                mStack[mStackSize - 1] = SCOPE_DOCUMENT;
+                break;
+            default:
+                if (nextNonWhitespace() == -1) return mPeeked = END_DOCUMENT;
+                throw syntaxError("Expected end of the document");
+        }
+
+        c = nextNonWhitespace();
+        switch (c) {
+            case '{':
+                return mPeeked = BEGIN_OBJECT;
+            case '[':
+                return mPeeked = BEGIN_ARRAY;
+            case '"':
+                return mPeeked = STRING;
+            case 't':
+            case 'f':
+            case 'n':
+                mPos--;
+                return mPeeked = LITERAL;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    mPos--;
+                    return mPeeked = NUMBER;
+                }
+                throw syntaxError("Unexpected character");
+        }
+    }
+
+    /**
+     * Consuming the beginning of the object
+     */
+    void beginObject() throws IOException {
+        expect(BEGIN_OBJECT);
+        push(SCOPE_EMPTY_OBJECT);
+    }
+
+    /**
+     * Consuming the end of the object
+     */
+    void endObject() throws IOException {
+        expect(END_OBJECT);
+        mStackSize--;
+    }
+
+    /**
+     * Consuming the beginning of the array
+     */
+    void beginArray() throws IOException {
+        expect(BEGIN_ARRAY);
+        push(SCOPE_EMPTY_ARRAY);
+    }
+
+    /**
+     * Consuming the end of the array
+     */
+    void endArray() throws IOException {
+        expect(END_ARRAY);
+        mStackSize--;
+    }
+
+    /**
+     * Consuming the end of the document. Only whitespace can follow the root value.
+     */
+    void endDocument() throws IOException {
+        expect(END_DOCUMENT);
+    }
+
+    /**
+     * Checking if the current object or array has more elements
+     *
+     * @return true if there is one more element
+     */
+    boolean hasNext() throws IOException {
+        int token = peek();
+        return token != END_OBJECT && token != END_ARRAY && token != END_DOCUMENT;
+    }
+
+    /**
+     * Consuming the name of the object's member
+     *
+     * @return name
+     */
+    String nextName() throws IOException {
+        expect(NAME);
+        return new String(mChars, 0, readString());
+    }
+
+    /**
+     * Consuming the string value. Numbers and literals are returned as they are written.
+     *
+     * @return value as a string
+     */
+    String nextString() throws IOException {
+        int token = peek();
+        if (token == STRING) {
+            mPeeked = PEEKED_NONE;
+            return new String(mChars, 0, readString());
+        }
+        if (token == NUMBER || token == LITERAL) {
+            mPeeked = PEEKED_NONE;
+            return new String(mChars, 0, readUnquoted());
+        }
+        throw syntaxError("Expected string");
+    }
+
+    /**
+     * Consuming the integer value
+     *
+     * @return value
+     */
+    int nextInt() throws IOException {
+        expect(NUMBER);
+        int length = readUnquoted();
+        long value = 0;
+        int i = mChars[0] == '-' ? 1 : 0;
+        boolean integral = i < length && length - i <= 10;
+        for (; integral && i < length; i++) {
+            char c = mChars[i];
+            if (c < '0' || c > '9') {
+                integral = false;
+            } else {
+                value = value * 10 + (c - '0');
+            }
+        }
+        if (mChars[0] == '-') value = -value;
+        if (integral && value == (int) value) return (int) value;
+
+        try {
+            double number = Double.parseDouble(new String(mChars, 0, length));
+            if (number == (int) number) return (int) number;
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw syntaxError("Expected integer");
+    }
+
+    /**
+     * Skipping the next value including all nested objects and arrays
+     */
+    void skipValue() throws IOException {
+        int depth = 0;
+        do {
+            switch (peek()) {
+                case BEGIN_OBJECT:
+                    beginObject();
+                    depth++;
+                    break;
+                case BEGIN_ARRAY:
+                    beginArray();
+                    depth++;
+                    break;
+                case END_OBJECT:
+                    endObject();
+                    depth--;
+                    break;
+                case END_ARRAY:
+                    endArray();
+                    depth--;
+                    break;
+                case NAME:
+                case STRING:
+                    mPeeked = PEEKED_NONE;
+                    readString();
+                    break;
+                case NUMBER:
+                case LITERAL:
+                    mPeeked = PEEKED_NONE;
+                    readUnquoted();
+                    break;
+                default:
+                    throw syntaxError("Unexpected end of the document");
+            }
+        } while (depth > 0);
+    }
+
+    /**
+     * Closing the input stream
+     */
+    @Override
+    public void close() throws IOException {
+        mInputStream.close();
+    }
+
+    /**
+     * Consuming the peeked token of the expected type
+     *
+     * @param token expected type of the token
+     */
+    private void expect(int token) throws IOException {
+        if (peek() != token) throw syntaxError("Unexpected token");
+        mPeeked = PEEKED_NONE;
+    }
+
+    /**
+     * Pushing the scope into the nesting stack
+     *
+     * @param scope new scope
+     */
+    private void push(int scope) {
+        if (mStackSize == mStack.length) {
+            int[] stack = new int[mStackSize * 2];
+            System.arraycopy(mStack, 0, stack, 0, mStackSize);
+            mStack = stack;
+        }
+        mStack[mStackSize++] = scope;
+    }
+
+    /**
+     * Reading the next byte from the buffer, refilling it from the input stream
+     *
+     * @return byte as unsigned value or -1 at the end of the stream
+     */
+    private int read() throws IOException {
+        if (mPos == mLimit) {
+            int count = mInputStream.read(mBuffer, 0, mBuffer.length);
+            if (count <= 0) return -1;
+            mBytesRead += count;
+            mPos = 0;
+            mLimit = count;
+        }
+        return mBuffer[mPos++] & 0xff;
+    }
+
+    /**
+     * Reading the next byte which is not a whitespace
+     *
+     * @return byte as unsigned value or -1 at the end of the stream
+     */
+    private int nextNonWhitespace() throws IOException {
+        int c;
+        do {
+            c = read();
+        } while (c == ' ' || c == '\n' || c == '\r' || c == '\t');
+        return c;
+    }
+
+    /**
+     * Reading the quoted string after the opening quote into the chars buffer.
+     * UTF-8 sequences and escapes are decoded on the fly.
+     *
+     * @return length of the decoded string
+     */
+    private int readString() throws IOException {
+        int length = 0;
+        while (true) {
+            int c = read();
+            if (c == '"') return length;
+            if (c == -1) throw syntaxError("Unterminated string");
+
+            int codePoint;
+            if (c == '\\') {
+                codePoint = readEscape();
+            } else if (c < 0x80) {
+                codePoint = c;
+            } else if (c >= 0xf0) {
+                codePoint = ((c & 0x07) << 18) | (readContinuation() << 12) | (readContinuation() << 6) | readContinuation();
+                if (c > 0xf4 || codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT
+                        || codePoint > Character.MAX_CODE_POINT) {
+                    throw syntaxError("Malformed UTF-8");
+                }
+            } else if (c >= 0xe0) {
+                codePoint = ((c & 0x0f) << 12) | (readContinuation() << 6) | readContinuation();
+            } else if (c >= 0xc0) {
+                codePoint = ((c & 0x1f) << 6) | readContinuation();
+            } else {
+                throw syntaxError("Malformed UTF-8");
+            }
+
+            if (length + 2 > mChars.length) {
+                char[] chars = new char[mChars.length * 2];
+                System.arraycopy(mChars, 0, chars, 0, length);
+                mChars = chars;
+            }
+            length += Character.toChars(codePoint, mChars, length);
+        }
+    }
+
+    /**
+     * Reading the continuation byte of the UTF-8 sequence
+     *
+     * @return payload bits of the byte
+     */
+    private int readContinuation() throws IOException {
+        int c = read();
+        if ((c & 0xc0) != 0x80) throw syntaxError("Malformed UTF-8");
+        return c & 0x3f;
+    }
+
+    /**
+     * Reading the escape sequence after the backslash
+     *
+     * @return decoded character
+     */
+    private int readEscape() throws IOException {
+        int c = read();
+        switch (c) {
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(read(), 16);
+                    if (digit < 0) throw syntaxError("Malformed escape");
+                    value = (value << 4) | digit;
+                }
+                return value;
+            case '"':
+            case '\\':
+            case '/':
+                return c;
+            default:
+                throw syntaxError("Malformed escape");
+        }
+    }
+
+    /**
+     * Reading the number or literal into the chars buffer
+     *
+     * @return length of the value
+     */
+    private int readUnquoted() throws IOException {
+        int length = 0;
+        while (true) {
+            int c = read();
+            if (c == -1) return length;
+            if (c == ',' || c == '}' || c == ']' || c == ':'
+                    || c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+                mPos--;
+                return length;
+            }
+            if (length == mChars.length) {
+                char[] chars = new char[mChars.length * 2];
+                System.arraycopy(mChars, 0, chars, 0, length);
+                mChars = chars;
+            }
+            mChars[length++] = (char) c;
+        }
+    }
+
+    /**
+     * Creating exception for malformed document
+     *
+     * @param message description of the error
+     * @return exception with the position in the document
+     */
+    private IOException syntaxError(String message) {
+        return new IOException("Malformed JSON. " + message + " at byte " + (mBytesRead - mLimit + mPos));
+    }
+}
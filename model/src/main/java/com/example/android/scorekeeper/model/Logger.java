@@ -0,0 +1,29 @@
+package com.example.android.scorekeeper.model;
+
+/**
+ * Sink of the debugging messages of the model. The model has no dependency
+ * on the platform, so the application binds the logger, e.g. to android.util.Log.
+ *
+ * @package com.example.android.scorekeeper
+ * (c) 2018, Igor Korovchenko.
+ */
+
+public interface Logger {
+
+    /**
+     * Logger dropping all messages, used until the application binds its own logger
+     */
+    Logger NONE = new Logger() {
+        @Override
+        public void d(String tag, String message) {
+        }
+    };
+
+    /**
+     * Writing the debugging message
+     *
+     * @param tag source of the message
+     * @param message text of the message
+     */
+    void d(String tag, String message);
+}
@@ -0,0 +1,510 @@
+package com.example.android.scorekeeper.model;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Live sync of the match from the scoring device to the display devices over TCP.
+ * Changes of the counters get consecutive sequence numbers and are coalesced
+ * into one deltas frame per {@link #BATCH_DELAY_MS}, queued by the background thread
+ * to all subscribers. Each subscriber has its own bounded queue and writing thread,
+ * so a stalled display doesn't delay the others: a subscriber with the full queue gets
+ * the snapshot instead of the queued frames, and a subscriber blocked in one write
+ * longer than {@link #WRITE_TIMEOUT_MS} is disconnected. Subscribers connecting later
+ * and all subscribers after reset of the match get the snapshot of the counters.
+ * The broadcaster keeps its own copy of the state, so the game is read only on the thread
+ * changing it. See {@link SyncProtocol} for the wire format.
+ *
+ * @package com.example.android.scorekeeper
+ * (c) 2018, Igor Korovchenko.
+ */
+
+public final class MatchBroadcaster implements MatchListener {
+
+    /**
+     * TAG name for debugging
+     */
+    private static final String TAG = "MatchBroadcaster";
+
+    /**
+     * Delay of the batch after the first buffered change
+     */
+    static final int BATCH_DELAY_MS = 5;
+
+    /**
+     * Queue length of the incoming connections
+     */
+    private static final int ACCEPT_BACKLOG = 64;
+
+    /**
+     * Most count of the frames queued to one subscriber
+     */
+    static final int MAX_QUEUED_FRAMES = 64;
+
+    /**
+     * Longest time of one write before the subscriber is disconnected
+     */
+    static final long WRITE_TIMEOUT_MS = 1000;
+
+    /**
+     * Fingerprint of the definition and state of the game
+     */
+    private final long mFingerprint;
+    private final MatchState mGameState;
+
+    /**
+     * Listening socket and the thread accepting the subscribers
+     */
+    private final ServerSocket mServerSocket;
+    private final Thread mAcceptThread;
+
+    /**
+     * Background thread queueing the frames to the subscribers
+     */
+    private final ScheduledExecutorService mExecutor;
+
+    /**
+     * Batch write of the buffered changes
+     */
+    private final Runnable mSyncRunnable = new Runnable() {
+        @Override
+        public void run() {
+            sync();
+        }
+    };
+
+    /**
+     * Copy of the state, sequence of the last change, buffered changes with the sequence
+     * of the first one and the flags of the pending snapshot and of the scheduled batch. Guarded by this.
+     */
+    private final MatchState mMirror;
+    private long mSequence;
+    private int[] mPending = new int[2 * 256];
+    private int mPendingCount;
+    private long mPendingFirst;
+    private boolean mSnapshotPending;
+    private boolean mSyncScheduled;
+
+    /**
+     * Connected subscribers. Used by the background thread only.
+     */
+    private final ArrayList<Subscriber> mSubscribers = new ArrayList<>(0);
+    private volatile int mSubscriberCount;
+
+    /**
+     * Constructor of the broadcaster listening on the port of the given address. The subscribers
+     * are not authenticated, so the address should be chosen by the user, e.g. the address
+     * of the device in the local network. The broadcaster should be added to the game as a listener.
+     *
+     * @param game game of the match
+     * @param bindAddress local address of the listening socket
+     * @param port TCP port or 0 for any free port
+     * @throws IOException if the port can't be opened
+     */
+    public MatchBroadcaster(Game game, InetAddress bindAddress, int port) throws IOException {
+        mFingerprint = game.getDefinition().getFingerprint();
+        mGameState = game.getState();
+        mMirror = new MatchState(game.getDefinition());
+        mMirror.setCounts(mGameState.getCounts(), mGameState.getNonLinearPoints());
+        mServerSocket = new ServerSocket(port, ACCEPT_BACKLOG, bindAddress);
+        mExecutor = Executors.newSingleThreadScheduledExecutor();
+        mAcceptThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                acceptSubscribers();
+            }
+        }, TAG);
+        mAcceptThread.setDaemon(true);
+        mAcceptThread.start();
+    }
+
+    /**
+     * Getting the port of the broadcaster
+     *
+     * @return TCP port
+     */
+    public int getPort() {
+        return mServerSocket.getLocalPort();
+    }
+
+    /**
+     * Getting count of the connected subscribers
+     *
+     * @return subscribers count
+     */
+    public int getSubscriberCount() {
+        return mSubscriberCount;
+    }
+
+    /**
+     * Getting sequence of the last change of the match
+     *
+     * @return sequence number
+     */
+    public synchronized long getSequence() {
+        return mSequence;
+    }
+
+    /**
+     * Buffering the change of the action counter for the next batch
+     *
+     * @param actionIndex index of the action in the game
+     * @param delta change of the counter
+     * @param timestamp monotonic time of the change in milliseconds
+     */
+    @Override
+    public synchronized void onActionChanged(int actionIndex, int delta, long timestamp) {
+        mMirror.apply(actionIndex, delta);
+        mSequence++;
+        if (mPendingCount == 0) mPendingFirst = mSequence;
+        if (2 * mPendingCount + 2 > mPending.length) {
+            int[] pending = new int[mPending.length * 2];
+            System.arraycopy(mPending, 0, pending, 0, 2 * mPendingCount);
+            mPending = pending;
+        }
+        mPending[2 * mPendingCount] = actionIndex;
+        mPending[2 * mPendingCount + 1] = delta;
+        mPendingCount++;
+        scheduleSync();
+    }
+
+    /**
+     * Ends of the sets are not synchronized, the displays show the counters only
+     *
+     * @param timestamp monotonic time of the end in milliseconds
+     */
+    @Override
+    public void onSetEnded(long timestamp) {
+    }
+
+    /**
+     * Replacing the buffered changes by the snapshot of all counters
+     */
+    @Override
+    public void onMatchReset() {
+        int[] counts = mGameState.getCounts();
+        int[] nonLinearPoints = mGameState.getNonLinearPoints();
+        synchronized (this) {
+            // the snapshot takes its own sequence, so the subscribers see that they are behind
+            mMirror.setCounts(counts, nonLinearPoints);
+            mSequence++;
+            mPendingCount = 0;
+            mSnapshotPending = true;
+            scheduleSync();
+        }
+    }
+
+    /**
+     * Sending the buffered changes without waiting for the batch delay
+     */
+    public void flush() {
+        mExecutor.execute(mSyncRunnable);
+    }
+
+    /**
+     * Sending the buffered changes, disconnecting the subscribers after their queued frames and closing the port
+     */
+    public void close() {
+        try {
+            mServerSocket.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        mExecutor.execute(mSyncRunnable);
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = mSubscribers.size() - 1; i >= 0; i--) {
+                    mSubscribers.remove(i).finish();
+                }
+                mSubscriberCount = 0;
+            }
+        });
+        mExecutor.shutdown();
+    }
+
+    /**
+     * Scheduling the batch write if it is not scheduled yet. Called under the lock.
+     */
+    private void scheduleSync() {
+        if (mSyncScheduled) return;
+        mSyncScheduled = true;
+        try {
+            mExecutor.schedule(mSyncRunnable, BATCH_DELAY_MS, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // the broadcaster is closed
+        }
+    }
+
+    /**
+     * Accepting the subscribers until the port is closed. Runs on the accept thread.
+     */
+    private void acceptSubscribers() {
+        while (!mServerSocket.isClosed()) {
+            final Socket socket;
+            try {
+                socket = mServerSocket.accept();
+                socket.setTcpNoDelay(true);
+            } catch (IOException e) {
+                if (!mServerSocket.isClosed()) ModelLog.d(TAG, "Can't accept subscriber: " + e.getMessage());
+                continue;
+            }
+            try {
+                mExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        addSubscriber(socket);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                closeQuietly(socket);
+            }
+        }
+    }
+
+    /**
+     * Queueing the snapshot to the new subscriber and starting its writing thread.
+     * Runs on the background thread. Buffered changes included in the snapshot are sent
+     * to the subscriber by the next batch as well and are skipped by their sequence.
+     *
+     * @param socket connection of the subscriber
+     */
+    private void addSubscriber(Socket socket) {
+        byte[] snapshot;
+        long sequence;
+        synchronized (this) {
+            sequence = mSequence;
+            snapshot = encodeSnapshot();
+        }
+        try {
+            Subscriber subscriber = new Subscriber(socket, mFingerprint);
+            subscriber.offer(snapshot);
+            subscriber.start();
+            mSubscribers.add(subscriber);
+            mSubscriberCount = mSubscribers.size();
+            ModelLog.d(TAG, "Subscriber " + socket.getRemoteSocketAddress() + " joined at " + sequence);
+        } catch (IOException e) {
+            closeQuietly(socket);
+        }
+    }
+
+    /**
+     * Queueing the pending snapshot or the buffered changes to all subscribers.
+     * Runs on the background thread, so it doesn't wait for the writes.
+     */
+    private void sync() {
+        byte[] frame = null;
+        synchronized (this) {
+            if (mSnapshotPending) {
+                // the snapshot includes all buffered changes
+                frame = encodeSnapshot();
+            } else if (mPendingCount > 0) {
+                frame = SyncProtocol.encodeDeltas(mPendingFirst, mPending, mPendingCount);
+            }
+            mPendingCount = 0;
+            mSnapshotPending = false;
+            mSyncScheduled = false;
+        }
+        if (frame == null) return;
+        byte[] snapshot = null;
+        for (int i = mSubscribers.size() - 1; i >= 0; i--) {
+            Subscriber subscriber = mSubscribers.get(i);
+            if (subscriber.isClosed()) {
+                removeSubscriber(i);
+            } else if (!subscriber.offer(frame)) {
+                if (subscriber.isStalled()) {
+                    ModelLog.d(TAG, "Subscriber " + subscriber.mSocket.getRemoteSocketAddress() + " is stalled");
+                    removeSubscriber(i);
+                    continue;
+                }
+                // the subscriber is behind, so the snapshot replaces its queued frames
+                if (snapshot == null) {
+                    synchronized (this) {
+                        snapshot = encodeSnapshot();
+                    }
+                }
+                subscriber.resync(snapshot);
+            }
+        }
+    }
+
+    /**
+     * Encoding the snapshot of the copy of the state. Called under the lock.
+     *
+     * @return snapshot frame
+     */
+    private byte[] encodeSnapshot() {
+        return SyncProtocol.encodeSnapshot(mSequence, mMirror.getCounts(), mMirror.getNonLinearPoints());
+    }
+
+    /**
+     * Disconnecting the subscriber. Runs on the background thread.
+     *
+     * @param index index of the subscriber
+     */
+    private void removeSubscriber(int index) {
+        mSubscribers.remove(index).close();
+        mSubscriberCount = mSubscribers.size();
+    }
+
+    /**
+     * Closing the socket ignoring errors
+     *
+     * @param socket socket
+     */
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // nothing to do with the broken connection
+        }
+    }
+
+    /**
+     * Connection of the subscriber with its queue of the frames and the writing thread
+     */
+    private static final class Subscriber implements Runnable {
+
+        /**
+         * Frame closing the connection after the queued frames
+         */
+        private static final byte[] END = new byte[0];
+
+        /**
+         * Socket, its buffered stream and fingerprint of the definition for the hello
+         */
+        private final Socket mSocket;
+        private final DataOutputStream mOut;
+        private final long mFingerprint;
+
+        /**
+         * Frames waiting for the writing thread
+         */
+        private final ArrayBlockingQueue<byte[]> mQueue = new ArrayBlockingQueue<>(MAX_QUEUED_FRAMES);
+
+        /**
+         * Writing thread
+         */
+        private final Thread mThread;
+
+        /**
+         * Start of the write in progress in nanoseconds or 0, and the flag of the closed connection
+         */
+        private volatile long mWriteStart;
+        private volatile boolean mIsClosed;
+
+        /**
+         * Constructor of the connection
+         *
+         * @param socket socket of the subscriber
+         * @param fingerprint fingerprint of the definition of the game
+         * @throws IOException if the socket is closed
+         */
+        Subscriber(Socket socket, long fingerprint) throws IOException {
+            mSocket = socket;
+            mOut = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            mFingerprint = fingerprint;
+            mThread = new Thread(this, TAG + " " + socket.getRemoteSocketAddress());
+            mThread.setDaemon(true);
+        }
+
+        /**
+         * Starting the writing thread
+         */
+        void start() {
+            mThread.start();
+        }
+
+        /**
+         * Queueing the frame without waiting
+         *
+         * @param frame frame with the length
+         * @return false if the queue is full
+         */
+        boolean offer(byte[] frame) {
+            return mQueue.offer(frame);
+        }
+
+        /**
+         * Replacing the queued frames by the snapshot. Frames taken by the writing thread
+         * are written before the snapshot, so the order of the sequences is kept.
+         *
+         * @param snapshot snapshot frame
+         */
+        void resync(byte[] snapshot) {
+            mQueue.clear();
+            mQueue.offer(snapshot);
+        }
+
+        /**
+         * Checking if the write in progress takes longer than the timeout
+         *
+         * @return true if the subscriber doesn't read the frames
+         */
+        boolean isStalled() {
+            long start = mWriteStart;
+            return start != 0 && System.nanoTime() - start > WRITE_TIMEOUT_MS * 1000000L;
+        }
+
+        /**
+         * Checking if the connection is closed after the failed write
+         *
+         * @return true if the connection is closed
+         */
+        boolean isClosed() {
+            return mIsClosed;
+        }
+
+        /**
+         * Closing the connection after the queued frames, or now if the queue is full
+         */
+        void finish() {
+            if (!mQueue.offer(END)) close();
+        }
+
+        /**
+         * Closing the connection now. The blocked write fails and the writing thread ends.
+         */
+        void close() {
+            mIsClosed = true;
+            closeQuietly(mSocket);
+            mThread.interrupt();
+        }
+
+        /**
+         * Writing the hello and the queued frames until the connection is closed.
+         * Runs on the writing thread; the stream is flushed when the queue is empty.
+         */
+        @Override
+        public void run() {
+            try {
+                SyncProtocol.writeHello(mOut, mFingerprint);
+                while (!mIsClosed) {
+                    byte[] frame = mQueue.take();
+                    if (frame == END) break;
+                    mWriteStart = System.nanoTime();
+                    mOut.write(frame);
+                    if (mQueue.isEmpty()) mOut.flush();
+                    mWriteStart = 0;
+                }
+            } catch (IOException e) {
+                ModelLog.d(TAG, "Subscriber " + mSocket.getRemoteSocketAddress() + " left: " + e.getMessage());
+            } catch (InterruptedException e) {
+                // the connection is closed
+            } finally {
+                mIsClosed = true;
+                closeQuietly(mSocket);
+            }
+        }
+    }
+}
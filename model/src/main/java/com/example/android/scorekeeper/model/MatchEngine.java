@@ -0,0 +1,410 @@
+package com.example.android.scorekeeper.model;
+
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Headless engine hosting many matches at once, e.g. all courts of the tournament on the server.
+ * Matches are keyed by id and sharded across the fixed set of single-threaded loops, so each match
+ * is changed by one thread only and its state and journal need no coordination: the state is
+ * the {@link SingleWriterMatchState} of plain arrays instead of the locked {@link MatchState}.
+ * Commands come in {@link CommandBatch}es: the batch is split by the shards, each shard executes
+ * its commands in the order of the batch and the batch is done when all shards are done.
+ * Batches submitted by one thread are executed by each shard in the order of the submission.
+ *
+ * @package com.example.android.scorekeeper
+ * (c) 2018, Igor Korovchenko.
+ */
+
+public final class MatchEngine {
+
+    /**
+     * TAG name for debugging
+     */
+    private static final String TAG = "MatchEngine";
+
+    /**
+     * Default count of the changes of each match which can be undone
+     */
+    public static final int DEFAULT_UNDO_DEPTH = 64;
+
+    /**
+     * Nanoseconds in one millisecond for the monotonic time of the journal
+     */
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    /**
+     * Marker stopping the loop of the shard
+     */
+    private static final CommandBatch STOP = new CommandBatch();
+
+    /**
+     * Loops of the shards
+     */
+    private final Shard[] mShards;
+
+    /**
+     * Count of the changes of each match kept by its journal
+     */
+    private final int mUndoDepth;
+
+    /**
+     * Registered definitions by id. Replaced on registration, so the shards read it without the lock.
+     */
+    private volatile GameDefinition[] mDefinitions = new GameDefinition[0];
+
+    /**
+     * Engine doesn't take new batches
+     */
+    private volatile boolean mClosed;
+
+    /**
+     * Constructor of the engine with the default undo depth
+     *
+     * @param shardCount count of the shards, e.g. count of the processors
+     */
+    public MatchEngine(int shardCount) {
+        this(shardCount, DEFAULT_UNDO_DEPTH);
+    }
+
+    /**
+     * Constructor of the engine starting the loops of the shards
+     *
+     * @param shardCount count of the shards, e.g. count of the processors
+     * @param undoDepth count of the changes of each match which can be undone
+     */
+    public MatchEngine(int shardCount, int undoDepth) {
+        if (shardCount <= 0) throw new IllegalArgumentException("Wrong shards count " + shardCount);
+        mUndoDepth = Math.max(1, undoDepth);
+        mShards = new Shard[shardCount];
+        for (int s = 0; s < shardCount; s++) {
+            mShards[s] = new Shard(s);
+            mShards[s].start();
+        }
+    }
+
+    /**
+     * Registering the definition for the new matches
+     *
+     * @param definition definition of the game
+     * @return id of the definition for {@link CommandBatch#addCreate}
+     */
+    public synchronized int registerDefinition(GameDefinition definition) {
+        GameDefinition[] definitions = Arrays.copyOf(mDefinitions, mDefinitions.length + 1);
+        definitions[definitions.length - 1] = definition;
+        mDefinitions = definitions;
+        return definitions.length - 1;
+    }
+
+    /**
+     * Getting count of the shards
+     *
+     * @return shards count
+     */
+    public int getShardCount() {
+        return mShards.length;
+    }
+
+    /**
+     * Getting count of the hosted matches after the executed batches
+     *
+     * @return matches count
+     */
+    public int getMatchCount() {
+        int count = 0;
+        for (Shard shard : mShards) {
+            count += shard.mMatchCount;
+        }
+        return count;
+    }
+
+    /**
+     * Submitting the batch for the execution. The batch must not be changed until it is done.
+     *
+     * @param batch batch of the commands
+     */
+    public void submit(CommandBatch batch) {
+        if (mClosed) throw new IllegalStateException("Engine is closed");
+        int size = batch.size();
+        int shardCount = mShards.length;
+        if (batch.mShardOrder == null || batch.mShardOrder.length < size) batch.mShardOrder = new int[size];
+        if (batch.mShardStarts == null || batch.mShardStarts.length != shardCount + 1) {
+            batch.mShardStarts = new int[shardCount + 1];
+        }
+        int[] order = batch.mShardOrder;
+        int[] starts = batch.mShardStarts;
+        // counting sort by the shard keeps the order of the commands of each match
+        Arrays.fill(starts, 0);
+        for (int i = 0; i < size; i++) {
+            starts[shardOf(batch.getMatchId(i), shardCount) + 1]++;
+        }
+        int activeCount = 0;
+        for (int s = 0; s < shardCount; s++) {
+            if (starts[s + 1] > 0) activeCount++;
+            starts[s + 1] += starts[s];
+        }
+        for (int i = 0; i < size; i++) {
+            order[starts[shardOf(batch.getMatchId(i), shardCount)]++] = i;
+        }
+        for (int s = shardCount; s > 0; s--) {
+            starts[s] = starts[s - 1];
+        }
+        starts[0] = 0;
+
+        batch.start(activeCount);
+        for (int s = 0; s < shardCount; s++) {
+            if (starts[s + 1] > starts[s]) mShards[s].mQueue.add(batch);
+        }
+    }
+
+    /**
+     * Executing the submitted batches and stopping the loops of the shards
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting for the shards
+     */
+    public void close() throws InterruptedException {
+        mClosed = true;
+        for (Shard shard : mShards) {
+            shard.mQueue.add(STOP);
+        }
+        for (Shard shard : mShards) {
+            shard.join();
+        }
+    }
+
+    /**
+     * Getting shard of the match
+     *
+     * @param matchId id of the match
+     * @param shardCount count of the shards
+     * @return index of the shard
+     */
+    private static int shardOf(long matchId, int shardCount) {
+        return (int) (((matchId * 0x9E3779B97F4A7C15L) >>> 32) % shardCount);
+    }
+
+    /**
+     * Match hosted by the shard
+     */
+    private static final class Match {
+
+        /**
+         * Id, state and journal of the match
+         */
+        final long mId;
+        final SingleWriterMatchState mState;
+        final ActionJournal mJournal;
+
+        Match(long id, GameDefinition definition, int undoDepth) {
+            mId = id;
+            mState = new SingleWriterMatchState(definition);
+            mJournal = new ActionJournal(undoDepth);
+        }
+    }
+
+    /**
+     * Single-threaded loop of the shard with its matches in the open addressing table
+     */
+    private final class Shard extends Thread {
+
+        /**
+         * Least capacity of the table of the matches, power of two
+         */
+        private static final int INITIAL_CAPACITY = 1024;
+
+        /**
+         * Batches with the commands of the shard
+         */
+        final BlockingQueue<CommandBatch> mQueue = new LinkedBlockingQueue<>();
+
+        /**
+         * Index of the shard
+         */
+        private final int mIndex;
+
+        /**
+         * Table of the matches by id with linear probing. Used by the thread of the shard only.
+         */
+        private Match[] mTable = new Match[INITIAL_CAPACITY];
+        private int mSize;
+
+        /**
+         * Count of the matches after the last batch
+         */
+        volatile int mMatchCount;
+
+        Shard(int index) {
+            super(TAG + "-" + index);
+            mIndex = index;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                CommandBatch batch;
+                try {
+                    batch = mQueue.take();
+                } catch (InterruptedException e) {
+                    ModelLog.d(TAG, getName() + " is interrupted");
+                    return;
+                }
+                if (batch == STOP) return;
+                try {
+                    execute(batch);
+                } catch (RuntimeException e) {
+                    // the loop keeps serving other batches, the failed command keeps its previous result
+                    ModelLog.d(TAG, "Batch failed on " + getName() + ": " + e);
+                } finally {
+                    mMatchCount = mSize;
+                    batch.finishShard();
+                }
+            }
+        }
+
+        /**
+         * Executing the commands of the shard from the batch
+         *
+         * @param batch batch of the commands
+         */
+        private void execute(CommandBatch batch) {
+            GameDefinition[] definitions = mDefinitions;
+            long timestamp = System.nanoTime() / NANOS_PER_MILLI;
+            int[] order = batch.mShardOrder;
+            int end = batch.mShardStarts[mIndex + 1];
+            for (int i = batch.mShardStarts[mIndex]; i < end; i++) {
+                int position = order[i];
+                batch.setResult(position, executeCommand(batch, position, definitions, timestamp));
+            }
+        }
+
+        /**
+         * Executing the command
+         *
+         * @param batch batch of the commands
+         * @param position position of the command in the batch
+         * @param definitions registered definitions
+         * @param timestamp monotonic time of the batch in milliseconds
+         * @return result of the command
+         */
+        private int executeCommand(CommandBatch batch, int position, GameDefinition[] definitions, long timestamp) {
+            long matchId = batch.getMatchId(position);
+            int op = batch.getOp(position);
+            if (op == CommandBatch.OP_CREATE) {
+                int definitionId = batch.getArgument(position);
+                if (definitionId < 0 || definitionId >= definitions.length) return CommandBatch.RESULT_WRONG_ARGUMENT;
+                if (find(matchId) >= 0) return CommandBatch.RESULT_MATCH_EXISTS;
+                insert(new Match(matchId, definitions[definitionId], mUndoDepth));
+                return CommandBatch.RESULT_OK;
+            }
+            int slot = find(matchId);
+            if (slot < 0) return CommandBatch.RESULT_UNKNOWN_MATCH;
+            Match match = mTable[slot];
+            switch (op) {
+                case CommandBatch.OP_APPLY:
+                    int actionIndex = batch.getArgument(position);
+                    if (actionIndex < 0 || actionIndex >= match.mState.getDefinition().getActionCount()) {
+                        return CommandBatch.RESULT_WRONG_ARGUMENT;
+                    }
+                    int delta = batch.getDelta(position);
+                    match.mState.apply(actionIndex, delta);
+                    match.mJournal.record(actionIndex, delta, timestamp);
+                    return CommandBatch.RESULT_OK;
+                case CommandBatch.OP_UNDO:
+                    int undone = match.mJournal.undo();
+                    if (undone < 0) return CommandBatch.RESULT_NOTHING_TO_UNDO;
+                    match.mState.apply(match.mJournal.getAction(undone), -match.mJournal.getDelta(undone));
+                    batch.setUndoneAction(position, match.mJournal.getAction(undone));
+                    return CommandBatch.RESULT_OK;
+                case CommandBatch.OP_SNAPSHOT:
+                    batch.setSnapshot(position, MatchStateCodec.encode(match.mState, match.mJournal));
+                    return CommandBatch.RESULT_OK;
+                case CommandBatch.OP_REMOVE:
+                    delete(slot);
+                    return CommandBatch.RESULT_OK;
+                default:
+                    return CommandBatch.RESULT_WRONG_ARGUMENT;
+            }
+        }
+
+        /**
+         * Finding slot of the match in the table
+         *
+         * @param matchId id of the match
+         * @return slot or -1 if the match is not hosted
+         */
+        private int find(long matchId) {
+            int mask = mTable.length - 1;
+            for (int slot = home(matchId, mask); ; slot = (slot + 1) & mask) {
+                Match match = mTable[slot];
+                if (match == null) return -1;
+                if (match.mId == matchId) return slot;
+            }
+        }
+
+        /**
+         * Inserting the new match, growing the table at half load
+         *
+         * @param match new match
+         */
+        private void insert(Match match) {
+            if (2 * (mSize + 1) > mTable.length) {
+                Match[] table = mTable;
+                mTable = new Match[table.length * 2];
+                for (Match moved : table) {
+                    if (moved != null) place(moved);
+                }
+            }
+            place(match);
+            mSize++;
+        }
+
+        /**
+         * Placing the match into the first free slot of its probe sequence
+         *
+         * @param match match
+         */
+        private void place(Match match) {
+            int mask = mTable.length - 1;
+            int slot = home(match.mId, mask);
+            while (mTable[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            mTable[slot] = match;
+        }
+
+        /**
+         * Deleting the match and shifting back the following matches of the probe sequence,
+         * so the lookups need no tombstones
+         *
+         * @param slot slot of the match
+         */
+        private void delete(int slot) {
+            int mask = mTable.length - 1;
+            int hole = slot;
+            for (int next = (hole + 1) & mask; mTable[next] != null; next = (next + 1) & mask) {
+                int home = home(mTable[next].mId, mask);
+                // the match can fill the hole if its home is not between the hole and its slot
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    mTable[hole] = mTable[next];
+                    hole = next;
+                }
+            }
+            mTable[hole] = null;
+            mSize--;
+        }
+
+        /**
+         * Getting the first slot of the probe sequence of the match
+         *
+         * @param matchId id of the match
+         * @param mask size of the table minus one
+         * @return slot
+         */
+        private int home(long matchId, int mask) {
+            int hash = (int) (matchId ^ (matchId >>> 32)) * 0x9E3779B9;
+            return (hash ^ (hash >>> 16)) & mask;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.android.scorekeeper.model;
+
+/**
+ * Listener of the changes of the match state, e.g. for persistence or statistics.
+ * Listeners are called on the thread changing the game.
+ *
+ * @package com.example.android.scorekeeper
+ * (c) 2018, Igor Korovchenko.
+ */
+
+public interface MatchListener {
+
+    /**
+     * Called after the counter of the action is changed by tap, undo or redo
+     *
+     * @param actionIndex index of the action in the game
+     * @param delta change of the counter
+     * @param timestamp monotonic time of the change in milliseconds
+     */
+    void onActionChanged(int actionIndex, int delta, long timestamp);
+
+    /**
+     * Called after the current set is ended manually, see {@link RuleEvaluator#endSet()}
+     *
+     * @param timestamp monotonic time of the end in milliseconds
+     */
+    void onSetEnded(long timestamp);
+
+    /**
+     * Called after all counters are replaced, i.e. the match is reset or its state is restored
+     */
+    void onMatchReset();
+}
@@ -0,0 +1,587 @@
+package com.example.android.scorekeeper.model;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Crash-safe persistence of the match as an append-only log of the counter changes.
+ * Changes are buffered in memory and written by the background thread in batches
+ * with one fsync per batch. Every {@link #SNAPSHOT_INTERVAL} changes, and after reset,
+ * the counters are written to the snapshot file and the log is started again,
+ * so recovery replays at most one interval of the changes. After reset the snapshot
+ * has the counters before the journal of the match and the journal is logged again,
+ * so the recovered match keeps its sets. The sets finished before the logged changes
+ * are kept by the snapshot, so they survive the snapshots of the long match.
+ *
+ * Snapshot (big-endian): magic, version, actions count, generation, counters,
+ * points of the conditional and scaled actions (since version 2), count of the finished sets
+ * and per set the points of each team and the winner (since version 3), CRC32.
+ * Log (big-endian): magic, version, actions count, generation and records of
+ * action index, delta and check value. The manual end of the set is a record with
+ * the action index -1 and zero delta. The log is replayed only over the snapshot
+ * of the same generation; a torn record at the end of the log stops the replay.
+ *
+ * @package com.example.android.scorekeeper
+ * (c) 2018, Igor Korovchenko.
+ */
+
+public final class MatchLog implements MatchListener {
+
+    /**
+     * TAG name for debugging
+     */
+    private static final String TAG = "MatchLog";
+
+    /**
+     * Magic numbers "SKSN", "SKLG" and version of the formats
+     */
+    private static final int MAGIC_SNAPSHOT = 0x534B534E;
+    private static final int MAGIC_LOG = 0x534B4C47;
+    private static final int VERSION = 3;
+
+    /**
+     * Version of the snapshot with the points but without the finished sets
+     */
+    private static final int VERSION_WITHOUT_SETS = 2;
+
+    /**
+     * Action index of the record of the manual end of the set
+     */
+    private static final int SET_END = -1;
+
+    /**
+     * Sizes of the header of the files and of the record of the log
+     */
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 12;
+
+    /**
+     * Delay of the batch write after the first buffered change
+     */
+    static final int FLUSH_DELAY_MS = 200;
+
+    /**
+     * Count of the logged changes between snapshots
+     */
+    static final int SNAPSHOT_INTERVAL = 4096;
+
+    /**
+     * File extensions of the snapshot and the log
+     */
+    private static final String SNAPSHOT_EXTENSION = ".snap";
+    private static final String LOG_EXTENSION = ".log";
+    private static final String TEMP_EXTENSION = ".tmp";
+
+    /**
+     * Files of the match
+     */
+    private final File mSnapshotFile;
+    private final File mLogFile;
+
+    /**
+     * Game, state and journal of the logged match
+     */
+    private final Game mGame;
+    private final MatchState mState;
+    private final ActionJournal mJournal;
+
+    /**
+     * Background writer of the files
+     */
+    private final ScheduledThreadPoolExecutor mExecutor;
+
+    /**
+     * Batch write of the buffered changes
+     */
+    private final Runnable mSyncRunnable = new Runnable() {
+        @Override
+        public void run() {
+            sync();
+        }
+    };
+
+    /**
+     * Buffered records, counters and points for the next snapshot and the scheduling flag. Guarded by this.
+     */
+    private byte[] mPending = new byte[RECORD_SIZE * 256];
+    private byte[] mSpare = new byte[RECORD_SIZE * 256];
+    private int mPendingSize;
+    private int[] mPendingSnapshot;
+    private int mRecordsSinceSnapshot;
+    private boolean mSyncScheduled;
+    private boolean mClosed;
+
+    /**
+     * Opened log and generation of the files. Used by the writer thread only.
+     */
+    private FileOutputStream mLogStream;
+    private int mGeneration;
+
+    /**
+     * Constructor of the log of the match. The current state of the match
+     * is written as the first snapshot of the new generation.
+     *
+     * @param dir folder for the files of the match
+     * @param name name of the match files
+     * @param game game of the match
+     */
+    public MatchLog(File dir, String name, Game game) {
+        mSnapshotFile = new File(dir, name + SNAPSHOT_EXTENSION);
+        mLogFile = new File(dir, name + LOG_EXTENSION);
+        mGame = game;
+        mState = game.getState();
+        mJournal = game.getJournal();
+        mExecutor = new ScheduledThreadPoolExecutor(1);
+        // the batch delay isn't waited for on close, the closing sync writes the buffered changes
+        mExecutor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        if (!dir.isDirectory() && !dir.mkdirs()) ModelLog.d(TAG, "Can't create " + dir);
+        try {
+            ByteBuffer snapshot = ByteBuffer.wrap(readFile(mSnapshotFile));
+            if (snapshot.remaining() >= HEADER_SIZE && snapshot.getInt() == MAGIC_SNAPSHOT) {
+                mGeneration = snapshot.getInt(12);
+            }
+        } catch (IOException e) {
+            mGeneration = 0;
+        }
+        onMatchReset();
+    }
+
+    /**
+     * Recovering the counters of the match from the snapshot and the log.
+     * The changes of the log become the journal of the match together with the manual ends
+     * of the sets, so the sets since the snapshot are rebuilt; the sets finished before
+     * are restored from the snapshot. Times of the changes are not logged.
+     *
+     * @param dir folder of the files of the match
+     * @param name name of the match files
+     * @param game game of the match, its state is replaced by the recovered one
+     * @return true if the match is recovered
+     */
+    public static boolean recover(File dir, String name, Game game) {
+        long start = System.nanoTime();
+        GameDefinition definition = game.getDefinition();
+        int actionCount = definition.getActionCount();
+        int[] counts = new int[actionCount];
+        int[] nonLinearPoints = null;
+        int[] setHistory = null;
+        int generation;
+        try {
+            ByteBuffer snapshot = ByteBuffer.wrap(readFile(new File(dir, name + SNAPSHOT_EXTENSION)));
+            if (snapshot.remaining() < HEADER_SIZE || snapshot.getInt() != MAGIC_SNAPSHOT) return false;
+            // snapshots of the first version have no points, all actions were linear
+            int version = snapshot.getInt();
+            if (version != 1 && version != VERSION_WITHOUT_SETS && version != VERSION) return false;
+            int pointsCount = version == 1 ? 0 : definition.getNonLinearCount() * definition.getTeamCount();
+            int valuesSize = HEADER_SIZE + 4 * (actionCount + pointsCount);
+            int setsSize = 0;
+            if (version == VERSION) {
+                if (snapshot.limit() < valuesSize + 4 + 8) return false;
+                long setCount = snapshot.getInt(valuesSize);
+                setsSize = (int) Math.min(Integer.MAX_VALUE, 4 + 4 * setCount * (definition.getTeamCount() + 1));
+                if (setCount < 0) return false;
+            }
+            if (snapshot.limit() != valuesSize + setsSize + 8 || snapshot.getInt() != actionCount) return false;
+            generation = snapshot.getInt();
+            CRC32 crc = new CRC32();
+            crc.update(snapshot.array(), 0, snapshot.limit() - 8);
+            if (crc.getValue() != snapshot.getLong(snapshot.limit() - 8)) return false;
+            for (int a = 0; a < actionCount; a++) {
+                counts[a] = snapshot.getInt();
+            }
+            if (version != 1) {
+                nonLinearPoints = new int[pointsCount];
+                for (int i = 0; i < pointsCount; i++) {
+                    nonLinearPoints[i] = snapshot.getInt();
+                }
+            }
+            if (version == VERSION) {
+                setHistory = new int[snapshot.getInt() * (definition.getTeamCount() + 1)];
+                for (int i = 0; i < setHistory.length; i++) {
+                    setHistory[i] = snapshot.getInt();
+                }
+            }
+        } catch (IOException e) {
+            return false;
+        }
+
+        // changes are replayed in order, as points of the actions can depend on the counters
+        MatchState state = new MatchState(definition);
+        state.setCounts(counts, nonLinearPoints);
+
+        int records = 0;
+        int[] entries = new int[1 + 2 * 256];
+        int[] marks = new int[8];
+        int markCount = 0;
+        try {
+            ByteBuffer log = ByteBuffer.wrap(readFile(new File(dir, name + LOG_EXTENSION)));
+            // records of the log are the same in both versions
+            if (log.remaining() >= HEADER_SIZE
+                    && log.getInt(0) == MAGIC_LOG
+                    && (log.getInt(4) == 1 || log.getInt(4) == VERSION)
+                    && log.getInt(8) == actionCount
+                    && log.getInt(12) == generation) {
+                log.position(HEADER_SIZE);
+                while (log.remaining() >= RECORD_SIZE) {
+                    int actionIndex = log.getInt();
+                    int delta = log.getInt();
+                    if (log.getInt() != check(actionIndex, delta)) break;
+                    if (actionIndex == SET_END && delta == 0) {
+                        if (markCount == marks.length) marks = Arrays.copyOf(marks, markCount * 2);
+                        marks[markCount++] = records;
+                        continue;
+                    }
+                    if (actionIndex < 0 || actionIndex >= actionCount) break;
+                    state.apply(actionIndex, delta);
+                    if (3 + 2 * records > entries.length) entries = Arrays.copyOf(entries, entries.length * 2);
+                    entries[1 + 2 * records] = actionIndex;
+                    entries[2 + 2 * records] = delta;
+                    records++;
+                }
+            }
+        } catch (IOException e) {
+            ModelLog.d(TAG, "No log of " + name);
+        }
+        entries = Arrays.copyOf(entries, 1 + 2 * records);
+        entries[0] = records;
+        game.setCurrentState(state.getCounts(), state.getNonLinearPoints(), entries, new long[records],
+                Arrays.copyOf(marks, markCount), setHistory);
+        ModelLog.d(TAG, "Recovered " + name + " with " + records + " changes in "
+                + (System.nanoTime() - start) / 1000 + " us");
+        return true;
+    }
+
+    /**
+     * Buffering the change of the action counter for the next batch
+     *
+     * @param actionIndex index of the action in the game
+     * @param delta change of the counter
+     * @param timestamp monotonic time of the change in milliseconds
+     */
+    @Override
+    public void onActionChanged(int actionIndex, int delta, long timestamp) {
+        if (mRecordsSinceSnapshot + 1 >= SNAPSHOT_INTERVAL) {
+            takeSnapshot(false);
+            return;
+        }
+        synchronized (this) {
+            appendRecord(actionIndex, delta);
+        }
+    }
+
+    /**
+     * Buffering the manual end of the set for the next batch. The next snapshot
+     * keeps the set among the finished ones.
+     *
+     * @param timestamp monotonic time of the end in milliseconds
+     */
+    @Override
+    public void onSetEnded(long timestamp) {
+        synchronized (this) {
+            appendRecord(SET_END, 0);
+        }
+    }
+
+    /**
+     * Replacing the buffered changes by the snapshot before the journal and the journal
+     */
+    @Override
+    public void onMatchReset() {
+        takeSnapshot(true);
+    }
+
+    /**
+     * Writing the buffered changes without waiting for the batch delay,
+     * e.g. when the activity goes to background
+     */
+    public void flush() {
+        mExecutor.execute(mSyncRunnable);
+    }
+
+    /**
+     * Writing the buffered changes and waiting until they are on the disk
+     */
+    public void flushAndWait() {
+        try {
+            mExecutor.submit(mSyncRunnable).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Writing the buffered changes and closing the log. Waits until the files are closed,
+     * so the new log of the same match can be opened right after. The changes after the close
+     * are not logged.
+     */
+    public void close() {
+        synchronized (this) {
+            if (mClosed) return;
+            mClosed = true;
+        }
+        mExecutor.execute(mSyncRunnable);
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                closeLog();
+            }
+        });
+        mExecutor.shutdown();
+        try {
+            mExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Replacing the buffered changes by the snapshot of all counters and the finished sets.
+     * The journal is kept as the records after the snapshot if it is shorter than the interval
+     * of the snapshots; otherwise its sets are moved to the snapshot.
+     *
+     * @param isJournalKept true if the journal should be logged again
+     */
+    private void takeSnapshot(boolean isJournalKept) {
+        int cursor = mJournal.getCursor();
+        int markCount = mJournal.getMarkCount();
+        if (cursor + markCount >= SNAPSHOT_INTERVAL) isJournalKept = false;
+        MatchState base = mState;
+        if (isJournalKept && cursor > 0) {
+            // points of the actions can depend on the counters, so the journal is undone on a copy
+            base = new MatchState(mState.getDefinition());
+            base.setCounts(mState.getCounts(), mState.getNonLinearPoints());
+            for (int i = cursor - 1; i >= 0; i--) {
+                base.apply(mJournal.getAction(i), -mJournal.getDelta(i));
+            }
+        }
+        int[] counts = base.getCounts();
+        int[] nonLinearPoints = base.getNonLinearPoints();
+        // manual ends at the start of the logged journal are logged with it
+        int[] setHistory = RuleEvaluator.getSetHistory(mGame, isJournalKept ? 0 : cursor, !isJournalKept);
+        int[] snapshot = new int[counts.length + nonLinearPoints.length + 1 + setHistory.length];
+        System.arraycopy(counts, 0, snapshot, 0, counts.length);
+        System.arraycopy(nonLinearPoints, 0, snapshot, counts.length, nonLinearPoints.length);
+        snapshot[counts.length + nonLinearPoints.length] = setHistory.length / (mGame.getTeamCount() + 1);
+        System.arraycopy(setHistory, 0, snapshot, counts.length + nonLinearPoints.length + 1, setHistory.length);
+        synchronized (this) {
+            mPendingSnapshot = snapshot;
+            mPendingSize = 0;
+            mRecordsSinceSnapshot = 0;
+            if (isJournalKept) {
+                int mark = 0;
+                for (int i = 0; i <= cursor; i++) {
+                    if (i > 0) appendRecord(mJournal.getAction(i - 1), mJournal.getDelta(i - 1));
+                    for (; mark < markCount && mJournal.getMark(mark) == i; mark++) {
+                        appendRecord(SET_END, 0);
+                    }
+                }
+            }
+            scheduleSync();
+        }
+    }
+
+    /**
+     * Buffering the record of the log and scheduling the batch write. Called under the lock.
+     *
+     * @param actionIndex index of the action or {@link #SET_END}
+     * @param delta change of the counter
+     */
+    private void appendRecord(int actionIndex, int delta) {
+        if (mPendingSize + RECORD_SIZE > mPending.length) {
+            byte[] pending = new byte[mPending.length * 2];
+            System.arraycopy(mPending, 0, pending, 0, mPendingSize);
+            mPending = pending;
+        }
+        putInt(mPending, mPendingSize, actionIndex);
+        putInt(mPending, mPendingSize + 4, delta);
+        putInt(mPending, mPendingSize + 8, check(actionIndex, delta));
+        mPendingSize += RECORD_SIZE;
+        mRecordsSinceSnapshot++;
+        scheduleSync();
+    }
+
+    /**
+     * Scheduling the batch write if it is not scheduled yet. Called under the lock.
+     */
+    private void scheduleSync() {
+        if (mSyncScheduled || mClosed) return;
+        mSyncScheduled = true;
+        mExecutor.schedule(mSyncRunnable, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writing the pending snapshot and the buffered changes with one fsync of the log.
+     * Runs on the writer thread.
+     */
+    private void sync() {
+        byte[] records;
+        int size;
+        int[] snapshot;
+        synchronized (this) {
+            records = mPending;
+            size = mPendingSize;
+            snapshot = mPendingSnapshot;
+            mPending = mSpare;
+            mPendingSize = 0;
+            mPendingSnapshot = null;
+            mSyncScheduled = false;
+        }
+        try {
+            if (snapshot != null) {
+                mGeneration++;
+                writeSnapshot(snapshot);
+                openLog();
+            }
+            if (size > 0 && mLogStream != null) {
+                mLogStream.write(records, 0, size);
+                mLogStream.getFD().sync();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            synchronized (this) {
+                mSpare = records;
+            }
+        }
+    }
+
+    /**
+     * Writing the snapshot atomically through the temporary file
+     *
+     * @param values counters of all actions followed by the points of the conditional and scaled actions
+     *               and the finished sets
+     * @throws IOException if the snapshot can't be written
+     */
+    private void writeSnapshot(int[] values) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + 4 * values.length + 8);
+        buffer.putInt(MAGIC_SNAPSHOT).putInt(VERSION).putInt(mState.getDefinition().getActionCount()).putInt(mGeneration);
+        for (int value : values) {
+            buffer.putInt(value);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putLong(crc.getValue());
+
+        File tempFile = new File(mSnapshotFile.getParentFile(), mSnapshotFile.getName() + TEMP_EXTENSION);
+        FileOutputStream outputStream = new FileOutputStream(tempFile);
+        try {
+            outputStream.write(buffer.array());
+            outputStream.getFD().sync();
+        } finally {
+            outputStream.close();
+        }
+        if (!tempFile.renameTo(mSnapshotFile)) throw new IOException("Can't rename " + tempFile);
+        syncDir(mSnapshotFile.getParentFile());
+    }
+
+    /**
+     * Syncing the folder, so the renamed snapshot is on the disk before the log of its generation.
+     * The folder can be opened by the channel only, which is missing on Android before API 26;
+     * the rename stays atomic there, but it can be lost together with the new log on the power loss.
+     *
+     * @param dir folder of the files
+     */
+    private static void syncDir(File dir) {
+        try {
+            FileChannel channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ);
+            try {
+                channel.force(true);
+            } finally {
+                channel.close();
+            }
+        } catch (IOException e) {
+            ModelLog.d(TAG, "Can't sync " + dir);
+        } catch (LinkageError e) {
+            ModelLog.d(TAG, "Can't sync folders");
+        }
+    }
+
+    /**
+     * Starting the new log of the current generation
+     *
+     * @throws IOException if the log can't be created
+     */
+    private void openLog() throws IOException {
+        closeLog();
+        mLogStream = new FileOutputStream(mLogFile);
+        byte[] header = new byte[HEADER_SIZE];
+        putInt(header, 0, MAGIC_LOG);
+        putInt(header, 4, VERSION);
+        putInt(header, 8, mState.getDefinition().getActionCount());
+        putInt(header, 12, mGeneration);
+        mLogStream.write(header);
+    }
+
+    /**
+     * Closing the opened log
+     */
+    private void closeLog() {
+        if (mLogStream == null) return;
+        try {
+            mLogStream.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        mLogStream = null;
+    }
+
+    /**
+     * Getting check value of the record for detecting of the torn writes
+     *
+     * @param actionIndex index of the action
+     * @param delta change of the counter
+     * @return check value
+     */
+    private static int check(int actionIndex, int delta) {
+        return ~(actionIndex * 0x9E3779B1 + delta) ^ 0x5A5A5A5A;
+    }
+
+    /**
+     * Writing the big-endian int to the array
+     *
+     * @param array destination array
+     * @param offset offset in the array
+     * @param value value
+     */
+    private static void putInt(byte[] array, int offset, int value) {
+        array[offset] = (byte) (value >>> 24);
+        array[offset + 1] = (byte) (value >>> 16);
+        array[offset + 2] = (byte) (value >>> 8);
+        array[offset + 3] = (byte) value;
+    }
+
+    /**
+     * Reading the whole file
+     *
+     * @param file file
+     * @return content of the file
+     * @throws IOException if the file can't be read
+     */
+    private static byte[] readFile(File file) throws IOException {
+        InputStream inputStream = new FileInputStream(file);
+        try {
+            byte[] data = new byte[(int) file.length()];
+            int size = 0;
+            while (size < data.length) {
+                int read = inputStream.read(data, size, data.length - size);
+                if (read < 0) break;
+                size += read;
+            }
+            return size == data.length ? data : Arrays.copyOf(data, size);
+        } finally {
+            inputStream.close();
+        }
+    }
+}
@@ -0,0 +1,442 @@
+package com.example.android.scorekeeper.model;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Replica of the counters of the match for the concurrent scoring from several devices.
+ * Counter of each action is the PN-counter: increments and decrements of each device
+ * are counted separately and the counter is their difference summed over the devices.
+ * Merging takes the maximum of each device's increments and decrements, so merges
+ * are commutative, associative and idempotent and the replicas converge without
+ * coordination in any order of the delivery.
+ * <p>
+ * Local changes of the game are counted for the device of the replica. Reset and
+ * restore of the local game are counted as the changes from the merged counters to the new ones.
+ * Merged changes are applied to the game as the remote changes of the counters: the listeners see them,
+ * but they are not recorded to the journal, so the local undo takes back only the local taps and the journal,
+ * the sets and the log of the match are kept. Counters are applied before the other actions, so the points
+ * of the conditional and scaled actions are evaluated on the merged counters; as the points depend
+ * on the order of the changes, only the counters are the same on all devices.
+ * <p>
+ * Delta: version, fingerprint of the definition (8 bytes, big-endian), devices count and
+ * per device its id (8 bytes, big-endian), entries count and per entry the gap from the previous
+ * action index, increments and decrements as varints. The delta carries the counters changed
+ * since the previous delta, the full state carries all nonzero counters; both are merged the same way.
+ * <p>
+ * Threading: the replica is guarded by the monitor of its game, the same one as the changes of the game,
+ * so the merge, the delta and the state may be called from any thread, e.g. the network one, while the
+ * game is scored on the main thread. The listener callbacks are already called under the monitor.
+ * Changes applied by the merge are recognized by the merging thread, so the changes of the game made
+ * by other threads are counted even while it waits for the monitor.
+ *
+ * @package com.example.android.scorekeeper
+ * (c) 2018, Igor Korovchenko.
+ */
+
+public final class MatchReplica implements MatchListener {
+
+    /**
+     * Version of the format
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Game of the replica, its definition and count of its actions
+     */
+    private final Game mGame;
+    private final GameDefinition mDefinition;
+    private final int mActionCount;
+
+    /**
+     * Ids of the devices, the first one is the device of the replica
+     */
+    private long[] mDeviceIds = new long[4];
+    private int mDeviceCount;
+
+    /**
+     * Increments and decrements of each action per device (row per device)
+     */
+    private int[][] mIncrements = new int[4][];
+    private int[][] mDecrements = new int[4][];
+
+    /**
+     * Counters changed since the previous delta per device and their indexes
+     */
+    private boolean[][] mIsDirty = new boolean[4][];
+    private int[][] mDirtyActions = new int[4][];
+    private int[] mDirtyCounts = new int[4];
+
+    /**
+     * Merged counter of each action
+     */
+    private final int[] mValues;
+
+    /**
+     * Thread applying the merged counters to the game, its changes are not counted as the local ones
+     */
+    private Thread mMergingThread;
+
+    /**
+     * Constructor of the replica over the current counters of the game, which are counted
+     * for the device of the replica. The replica should be added to the game as a listener.
+     *
+     * @param game game of the match
+     * @param deviceId unique id of the device
+     */
+    public MatchReplica(Game game, long deviceId) {
+        mGame = game;
+        mDefinition = game.getDefinition();
+        mActionCount = mDefinition.getActionCount();
+        mValues = new int[mActionCount];
+        addDevice(deviceId);
+        onMatchReset();
+    }
+
+    /**
+     * Getting id of the device of the replica
+     *
+     * @return device id
+     */
+    public long getDeviceId() {
+        synchronized (mGame) {
+            return mDeviceIds[0];
+        }
+    }
+
+    /**
+     * Getting count of the devices known by the replica
+     *
+     * @return devices count
+     */
+    public int getDeviceCount() {
+        synchronized (mGame) {
+            return mDeviceCount;
+        }
+    }
+
+    /**
+     * Getting merged counter of the action
+     *
+     * @param actionIndex index of the action in the game
+     * @return counter
+     */
+    public int getValue(int actionIndex) {
+        synchronized (mGame) {
+            return mValues[actionIndex];
+        }
+    }
+
+    /**
+     * Counting the local change for the device of the replica
+     *
+     * @param actionIndex index of the action in the game
+     * @param delta change of the counter
+     * @param timestamp monotonic time of the change in milliseconds
+     */
+    @Override
+    public void onActionChanged(int actionIndex, int delta, long timestamp) {
+        synchronized (mGame) {
+            if (isMerging()) return;
+            addLocal(actionIndex, delta);
+        }
+    }
+
+    /**
+     * Ends of the sets are not replicated, the replicas merge the counters only
+     *
+     * @param timestamp monotonic time of the end in milliseconds
+     */
+    @Override
+    public void onSetEnded(long timestamp) {
+    }
+
+    /**
+     * Counting the replaced counters of the game as the local changes from the merged counters
+     */
+    @Override
+    public void onMatchReset() {
+        synchronized (mGame) {
+            if (isMerging()) return;
+            for (int a = 0; a < mActionCount; a++) {
+                int delta = mGame.getGameAction(a).getActionsCount() - mValues[a];
+                if (delta != 0) addLocal(a, delta);
+            }
+        }
+    }
+
+    /**
+     * Encoding the counters changed since the previous delta, including the merged ones,
+     * so the delta can be relayed by other devices
+     *
+     * @return encoded delta or null if nothing is changed
+     */
+    public byte[] takeDelta() {
+        synchronized (mGame) {
+            return encodeDelta();
+        }
+    }
+
+    /**
+     * Encoding the counters changed since the previous delta and clearing their marks,
+     * called under the monitor of the game
+     *
+     * @return encoded delta or null if nothing is changed
+     */
+    private byte[] encodeDelta() {
+        int entryCount = 0;
+        for (int d = 0; d < mDeviceCount; d++) {
+            entryCount += mDirtyCounts[d];
+        }
+        if (entryCount == 0) return null;
+        MatchStateCodec.Writer writer = startEncoding(entryCount);
+        for (int d = 0; d < mDeviceCount; d++) {
+            int[] actions = mDirtyActions[d];
+            int count = mDirtyCounts[d];
+            Arrays.sort(actions, 0, count);
+            writer.writeFixed64(mDeviceIds[d]);
+            writer.writeVarint(count);
+            int previous = 0;
+            for (int i = 0; i < count; i++) {
+                int a = actions[i];
+                writer.writeVarint(a - previous);
+                writer.writeVarint(mIncrements[d][a]);
+                writer.writeVarint(mDecrements[d][a]);
+                previous = a;
+                mIsDirty[d][a] = false;
+            }
+            mDirtyCounts[d] = 0;
+        }
+        return writer.toByteArray();
+    }
+
+    /**
+     * Encoding all counters, e.g. for the device joining the match
+     *
+     * @return encoded state
+     */
+    public byte[] encodeState() {
+        synchronized (mGame) {
+            return encodeCounters();
+        }
+    }
+
+    /**
+     * Encoding all counters, called under the monitor of the game
+     *
+     * @return encoded state
+     */
+    private byte[] encodeCounters() {
+        MatchStateCodec.Writer writer = startEncoding(mDeviceCount * mActionCount);
+        for (int d = 0; d < mDeviceCount; d++) {
+            int count = 0;
+            for (int a = 0; a < mActionCount; a++) {
+                if (mIncrements[d][a] != 0 || mDecrements[d][a] != 0) count++;
+            }
+            writer.writeFixed64(mDeviceIds[d]);
+            writer.writeVarint(count);
+            int previous = 0;
+            for (int a = 0; a < mActionCount; a++) {
+                if (mIncrements[d][a] == 0 && mDecrements[d][a] == 0) continue;
+                writer.writeVarint(a - previous);
+                writer.writeVarint(mIncrements[d][a]);
+                writer.writeVarint(mDecrements[d][a]);
+                previous = a;
+            }
+        }
+        return writer.toByteArray();
+    }
+
+    /**
+     * Merging the delta or the state of other replica and applying the changed counters to the game.
+     * The replica is not changed if the data is rejected.
+     *
+     * @param data encoded delta or state
+     * @throws IOException if the data is corrupted or encoded for other definition
+     */
+    public void merge(byte[] data) throws IOException {
+        MatchStateCodec.Reader reader = new MatchStateCodec.Reader(data);
+        if (reader.readVarint() != VERSION) throw new IOException("Unsupported replica version");
+        if (reader.readFixed64() != mDefinition.getFingerprint()) {
+            throw new IOException("Replica of other game definition");
+        }
+        // the data is validated before the merge, so the rejected data doesn't change the replica
+        long deviceCount = reader.readVarint();
+        if (deviceCount < 0 || deviceCount > Integer.MAX_VALUE) throw new IOException("Wrong devices count");
+        long[] deviceIds = new long[(int) Math.min(deviceCount, 1024)];
+        int[][] entries = new int[deviceIds.length][];
+        for (int i = 0; i < deviceCount; i++) {
+            if (i == deviceIds.length) {
+                deviceIds = Arrays.copyOf(deviceIds, deviceIds.length * 2);
+                entries = Arrays.copyOf(entries, entries.length * 2);
+            }
+            deviceIds[i] = reader.readFixed64();
+            long count = reader.readVarint();
+            if (count < 0 || count > mActionCount) throw new IOException("Wrong entries count " + count);
+            int[] deviceEntries = new int[3 * (int) count];
+            long actionIndex = 0;
+            for (int e = 0; e < count; e++) {
+                actionIndex += reader.readVarint();
+                long increments = reader.readVarint();
+                long decrements = reader.readVarint();
+                if (actionIndex >= mActionCount || (e > 0 && deviceEntries[3 * e - 3] >= actionIndex)) {
+                    throw new IOException("Wrong action index " + actionIndex);
+                }
+                if (increments > Integer.MAX_VALUE || decrements > Integer.MAX_VALUE) {
+                    throw new IOException("Wrong counter of the action " + actionIndex);
+                }
+                deviceEntries[3 * e] = (int) actionIndex;
+                deviceEntries[3 * e + 1] = (int) increments;
+                deviceEntries[3 * e + 2] = (int) decrements;
+            }
+            entries[i] = deviceEntries;
+        }
+        if (reader.hasRemaining()) throw new IOException("Trailing bytes in replica");
+
+        // the counters are joined and applied at once, so no local change falls between them
+        synchronized (mGame) {
+            int[] previousValues = mValues.clone();
+            boolean isChanged = false;
+            for (int i = 0; i < deviceCount; i++) {
+                int d = findDevice(deviceIds[i]);
+                if (d < 0) d = addDevice(deviceIds[i]);
+                int[] deviceEntries = entries[i];
+                for (int e = 0; e < deviceEntries.length; e += 3) {
+                    isChanged |= join(d, deviceEntries[e], deviceEntries[e + 1], deviceEntries[e + 2]);
+                }
+            }
+            if (isChanged) applyToGame(previousValues);
+        }
+    }
+
+    /**
+     * Checking if the change of the game is made by the merge of this thread
+     *
+     * @return true if the current thread applies the merged counters
+     */
+    private boolean isMerging() {
+        return mMergingThread == Thread.currentThread();
+    }
+
+    /**
+     * Counting the local change for the device of the replica
+     *
+     * @param actionIndex index of the action
+     * @param delta change of the counter
+     */
+    private void addLocal(int actionIndex, int delta) {
+        if (delta > 0) {
+            mIncrements[0][actionIndex] += delta;
+        } else {
+            mDecrements[0][actionIndex] -= delta;
+        }
+        mValues[actionIndex] += delta;
+        markDirty(0, actionIndex);
+    }
+
+    /**
+     * Joining the counters of the device with the received ones
+     *
+     * @param device index of the device
+     * @param actionIndex index of the action
+     * @param increments received increments
+     * @param decrements received decrements
+     * @return true if the counters are changed
+     */
+    private boolean join(int device, int actionIndex, int increments, int decrements) {
+        int incrementsGrowth = Math.max(0, increments - mIncrements[device][actionIndex]);
+        int decrementsGrowth = Math.max(0, decrements - mDecrements[device][actionIndex]);
+        if (incrementsGrowth == 0 && decrementsGrowth == 0) return false;
+        mIncrements[device][actionIndex] += incrementsGrowth;
+        mDecrements[device][actionIndex] += decrementsGrowth;
+        mValues[actionIndex] += incrementsGrowth - decrementsGrowth;
+        markDirty(device, actionIndex);
+        return true;
+    }
+
+    /**
+     * Applying the merged counters to the game, called under the monitor of the game
+     *
+     * @param previousValues counters before the merge
+     */
+    private void applyToGame(int[] previousValues) {
+        mMergingThread = Thread.currentThread();
+        try {
+            // counters go first, as the points of the conditional and scaled actions are evaluated on them
+            for (int pass = 0; pass < 2; pass++) {
+                for (int a = 0; a < mActionCount; a++) {
+                    boolean isCounter = mDefinition.getActionKind(a) == GameDefinition.KIND_COUNTER;
+                    if (isCounter != (pass == 0)) continue;
+                    int delta = mValues[a] - previousValues[a];
+                    if (delta != 0) mGame.applyRemoteChange(a, delta);
+                }
+            }
+        } finally {
+            mMergingThread = null;
+        }
+    }
+
+    /**
+     * Writing the header of the delta or the state
+     *
+     * @param entryCount expected count of the entries
+     * @return writer of the data
+     */
+    private MatchStateCodec.Writer startEncoding(int entryCount) {
+        MatchStateCodec.Writer writer = new MatchStateCodec.Writer(16 + 10 * mDeviceCount + 4 * entryCount);
+        writer.writeVarint(VERSION);
+        writer.writeFixed64(mDefinition.getFingerprint());
+        writer.writeVarint(mDeviceCount);
+        return writer;
+    }
+
+    /**
+     * Marking the counter of the device for the next delta
+     *
+     * @param device index of the device
+     * @param actionIndex index of the action
+     */
+    private void markDirty(int device, int actionIndex) {
+        if (mIsDirty[device][actionIndex]) return;
+        mIsDirty[device][actionIndex] = true;
+        mDirtyActions[device][mDirtyCounts[device]++] = actionIndex;
+    }
+
+    /**
+     * Finding the device by id
+     *
+     * @param deviceId id of the device
+     * @return index of the device or -1 if the device is unknown
+     */
+    private int findDevice(long deviceId) {
+        for (int d = 0; d < mDeviceCount; d++) {
+            if (mDeviceIds[d] == deviceId) return d;
+        }
+        return -1;
+    }
+
+    /**
+     * Adding the device with zero counters
+     *
+     * @param deviceId id of the device
+     * @return index of the device
+     */
+    private int addDevice(long deviceId) {
+        if (mDeviceCount == mDeviceIds.length) {
+            int capacity = mDeviceIds.length * 2;
+            mDeviceIds = Arrays.copyOf(mDeviceIds, capacity);
+            mIncrements = Arrays.copyOf(mIncrements, capacity);
+            mDecrements = Arrays.copyOf(mDecrements, capacity);
+            mIsDirty = Arrays.copyOf(mIsDirty, capacity);
+            mDirtyActions = Arrays.copyOf(mDirtyActions, capacity);
+            mDirtyCounts = Arrays.copyOf(mDirtyCounts, capacity);
+        }
+        int d = mDeviceCount++;
+        mDeviceIds[d] = deviceId;
+        mIncrements[d] = new int[mActionCount];
+        mDecrements[d] = new int[mActionCount];
+        mIsDirty[d] = new boolean[mActionCount];
+        mDirtyActions[d] = new int[mActionCount];
+        return d;
+    }
+}
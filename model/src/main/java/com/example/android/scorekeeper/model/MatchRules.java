@@ -0,0 +1,134 @@
+package com.example.android.scorekeeper.model;
+
+import java.util.Arrays;
+
+/**
+ * Immutable rules of the match from the optional "rules" section of the definition:
+ * the match is played in sets (or frames) and is won by the team winning the given count of sets.
+ * A set is won by the team reaching the target points with the given margin;
+ * sets with zero target are ended manually, e.g. frames of snooker.
+ *
+ * @package com.example.android.scorekeeper
+ * (c) 2018, Igor Korovchenko.
+ */
+
+public final class MatchRules {
+
+    /**
+     * Name of the set, e.g. "Set" or "Frame"
+     */
+    private final String mSetName;
+
+    /**
+     * Target points of each set; the last target is used for all following sets
+     */
+    private final int[] mSetPoints;
+
+    /**
+     * Points of the lead required to win the set
+     */
+    private final int mMargin;
+
+    /**
+     * Count of the sets to win the match
+     */
+    private final int mSetsToWin;
+
+    /**
+     * Constructor of the rules
+     *
+     * @param setName name of the set
+     * @param setPoints target points of each set, zero for manual sets
+     * @param margin points of the lead required to win the set
+     * @param setsToWin count of the sets to win the match
+     */
+    public MatchRules(String setName, int[] setPoints, int margin, int setsToWin) {
+        this.mSetName = setName;
+        this.mSetPoints = setPoints.length == 0 ? new int[]{0} : setPoints.clone();
+        this.mMargin = Math.max(1, margin);
+        this.mSetsToWin = Math.max(1, setsToWin);
+    }
+
+    /**
+     * Getting name of the set
+     *
+     * @return set's name
+     */
+    public String getSetName() {
+        return mSetName;
+    }
+
+    /**
+     * Getting target points of the set
+     *
+     * @param setIndex index of the set. First set has zero index.
+     * @return target points or zero for manual set
+     */
+    public int getSetPoints(int setIndex) {
+        return mSetPoints[Math.min(setIndex, mSetPoints.length - 1)];
+    }
+
+    /**
+     * Getting count of the targets of the sets as written in the definition
+     *
+     * @return targets count
+     */
+    public int getSetPointsCount() {
+        return mSetPoints.length;
+    }
+
+    /**
+     * Getting points of the lead required to win the set
+     *
+     * @return margin
+     */
+    public int getMargin() {
+        return mMargin;
+    }
+
+    /**
+     * Getting count of the sets to win the match
+     *
+     * @return sets count
+     */
+    public int getSetsToWin() {
+        return mSetsToWin;
+    }
+
+    /**
+     * Checking if the set is ended manually
+     *
+     * @param setIndex index of the set
+     * @return true if the set has no target points
+     */
+    public boolean isManual(int setIndex) {
+        return getSetPoints(setIndex) <= 0;
+    }
+
+    /**
+     * Checking if any set is ended manually
+     *
+     * @return true if any set has no target points
+     */
+    public boolean hasManualSets() {
+        for (int points : mSetPoints) {
+            if (points <= 0) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof MatchRules)) return false;
+        MatchRules rules = (MatchRules) o;
+        return mMargin == rules.mMargin && mSetsToWin == rules.mSetsToWin
+                && (mSetName == null ? rules.mSetName == null : mSetName.equals(rules.mSetName))
+                && Arrays.equals(mSetPoints, rules.mSetPoints);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * Arrays.hashCode(mSetPoints) + mMargin) + mSetsToWin;
+    }
+}
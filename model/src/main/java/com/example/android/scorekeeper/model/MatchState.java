@@ -0,0 +1,393 @@
+package com.example.android.scorekeeper.model;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Mutable state of one match of the game: counters of all actions
+ * and running totals of the scores. The definition is shared between matches.
+ * Linear actions change the totals by their score changes; other actions are dispatched
+ * by the kind from the dispatch table of the definition, and the points given by the conditional
+ * and scaled actions are kept by the state, as they depend on the counters at the time of the tap.
+ * Taps are evaluated on the counters before the change and undoes on the counters after it,
+ * so undoing the last tap takes back exactly the points it gave.
+ * <p>
+ * Changes are serialized by the lock of the state, while readers take no lock: counters and totals
+ * are atomic and each change is published under the sequence number, which is odd while the change
+ * is in progress, so the copies of the counters and the scores are retried until they are consistent.
+ *
+ * @package com.example.android.scorekeeper
+ * (c) 2018, Igor Korovchenko.
+ */
+
+public final class MatchState {
+
+    /**
+     * Definition of the game
+     */
+    private final GameDefinition mDefinition;
+
+    /**
+     * Score changes matrix of the definition and count of its columns
+     */
+    private final int[] mScoreChanges;
+    private final int mTeamCount;
+
+    /**
+     * Dispatch table of the definition or null if all actions are linear
+     */
+    private final int[] mDispatch;
+
+    /**
+     * Counters of all game actions
+     */
+    private final AtomicIntegerArray mActionsCounts;
+
+    /**
+     * Running totals of the scores for each team
+     */
+    private final AtomicIntegerArray mScores;
+
+    /**
+     * Points given by each conditional and scaled action: row per slot of the action, column per team
+     */
+    private final AtomicIntegerArray mNonLinearPoints;
+
+    /**
+     * Points given to each team by the last change. Read by the thread making the change.
+     */
+    private final int[] mLastPoints;
+
+    /**
+     * Sequence number of the changes, odd while the change is in progress
+     */
+    private volatile int mVersion;
+
+    /**
+     * Constructor of the match with zero counters
+     *
+     * @param definition definition of the game
+     */
+    public MatchState(GameDefinition definition) {
+        this.mDefinition = definition;
+        this.mScoreChanges = definition.getScoreChanges();
+        this.mTeamCount = definition.getTeamCount();
+        this.mActionsCounts = new AtomicIntegerArray(definition.getActionCount());
+        this.mScores = new AtomicIntegerArray(mTeamCount);
+        this.mDispatch = definition.getDispatchTable();
+        this.mNonLinearPoints = new AtomicIntegerArray(definition.getNonLinearCount() * mTeamCount);
+        this.mLastPoints = new int[mTeamCount];
+    }
+
+    /**
+     * Getting definition of the game
+     *
+     * @return game definition
+     */
+    public GameDefinition getDefinition() {
+        return mDefinition;
+    }
+
+    /**
+     * Getting the counter of the action
+     *
+     * @param actionIndex index of the action in the game
+     * @return count of the action
+     */
+    public int getActionsCount(int actionIndex) {
+        return mActionsCounts.get(actionIndex);
+    }
+
+    /**
+     * Getting common scores for all teams as the consistent copy,
+     * which may be taken on any thread without blocking the changes
+     *
+     * @return scores for each team
+     */
+    public int[] getScores() {
+        int[] scores = new int[mTeamCount];
+        copyScores(scores);
+        return scores;
+    }
+
+    /**
+     * Copying common scores for all teams into the array without allocation.
+     * The copy is consistent like {@link #getScores()}.
+     *
+     * @param scores array of the size of the teams count
+     */
+    public void copyScores(int[] scores) {
+        for (int attempt = 0; ; attempt++) {
+            int version = mVersion;
+            if ((version & 1) == 0) {
+                for (int i = 0; i < mTeamCount; i++) {
+                    scores[i] = mScores.get(i);
+                }
+                if (mVersion == version) return;
+            }
+            backOff(attempt);
+        }
+    }
+
+    /**
+     * Getting score of the team
+     *
+     * @param teamIndex index of the team
+     * @return score
+     */
+    public int getScore(int teamIndex) {
+        return mScores.get(teamIndex);
+    }
+
+    /**
+     * Getting points given to the team by the last change, e.g. for the listeners of the match
+     *
+     * @param teamIndex index of the team
+     * @return points
+     */
+    public int getLastPoints(int teamIndex) {
+        return mLastPoints[teamIndex];
+    }
+
+    /**
+     * Getting points given to the team by all taps of the action
+     *
+     * @param actionIndex index of the action in the game
+     * @param teamIndex index of the team
+     * @return points
+     */
+    public int getActionPoints(int actionIndex, int teamIndex) {
+        if (mDispatch == null) return mActionsCounts.get(actionIndex) * mScoreChanges[actionIndex * mTeamCount + teamIndex];
+        int entry = actionIndex * GameDefinition.DISPATCH_STRIDE;
+        switch (mDispatch[entry + GameDefinition.DISPATCH_KIND]) {
+            case GameDefinition.KIND_LINEAR:
+                return mActionsCounts.get(actionIndex) * mScoreChanges[actionIndex * mTeamCount + teamIndex];
+            case GameDefinition.KIND_COUNTER:
+                return 0;
+            default:
+                return mNonLinearPoints.get(mDispatch[entry + GameDefinition.DISPATCH_SLOT] * mTeamCount + teamIndex);
+        }
+    }
+
+    /**
+     * Changing the counter of the action and the running totals by delta
+     *
+     * @param actionIndex index of the action in the game
+     * @param delta change of the counter
+     */
+    public synchronized void apply(int actionIndex, int delta) {
+        mVersion++;
+        try {
+            if (mDispatch != null && mDispatch[actionIndex * GameDefinition.DISPATCH_STRIDE] != GameDefinition.KIND_LINEAR) {
+                applyDispatched(actionIndex, delta);
+                return;
+            }
+            addCount(actionIndex, delta);
+            int row = actionIndex * mTeamCount;
+            for (int i = 0; i < mTeamCount; i++) {
+                int points = delta * mScoreChanges[row + i];
+                addScore(i, points);
+                mLastPoints[i] = points;
+            }
+        } finally {
+            mVersion++;
+        }
+    }
+
+    /**
+     * Changing the counter of the counter, conditional or scaled action and the running totals
+     *
+     * @param actionIndex index of the action in the game
+     * @param delta change of the counter
+     */
+    private void applyDispatched(int actionIndex, int delta) {
+        int entry = actionIndex * GameDefinition.DISPATCH_STRIDE;
+        if (delta < 0) addCount(actionIndex, delta);
+        int factor = delta * evaluate(entry);
+        if (delta >= 0) addCount(actionIndex, delta);
+        int row = actionIndex * mTeamCount;
+        int slotRow = mDispatch[entry + GameDefinition.DISPATCH_SLOT] * mTeamCount;
+        for (int i = 0; i < mTeamCount; i++) {
+            int points = factor * mScoreChanges[row + i];
+            addScore(i, points);
+            mLastPoints[i] = points;
+            if (slotRow >= 0) mNonLinearPoints.lazySet(slotRow + i, mNonLinearPoints.get(slotRow + i) + points);
+        }
+    }
+
+    /**
+     * Evaluating the multiplier of the score changes of the action on the current counters
+     *
+     * @param entry row of the action in the dispatch table
+     * @return multiplier of one tap
+     */
+    private int evaluate(int entry) {
+        return multiplier(mDispatch, entry, mActionsCounts.get(mDispatch[entry + GameDefinition.DISPATCH_SOURCE]));
+    }
+
+    /**
+     * Evaluating the multiplier of the score changes of the action on the counter of its source
+     *
+     * @param dispatch dispatch table of the definition
+     * @param entry row of the action in the dispatch table
+     * @param source counter of the source action
+     * @return multiplier of one tap
+     */
+    static int multiplier(int[] dispatch, int entry, int source) {
+        int value = dispatch[entry + GameDefinition.DISPATCH_VALUE];
+        switch (dispatch[entry + GameDefinition.DISPATCH_KIND]) {
+            case GameDefinition.KIND_CONDITIONAL:
+                return source >= value ? 1 : 0;
+            case GameDefinition.KIND_SCALED:
+                return Math.max(value, source);
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Getting consistent copy of all counters
+     *
+     * @return array of actions' states
+     */
+    public int[] getCounts() {
+        return copy(mActionsCounts);
+    }
+
+    /**
+     * Getting consistent copy of the points given by the conditional and scaled actions
+     *
+     * @return row per slot of the action, column per team
+     */
+    public int[] getNonLinearPoints() {
+        return copy(mNonLinearPoints);
+    }
+
+    /**
+     * Setting all counters and recomputing the totals. Counters of other size are ignored.
+     * Points of the conditional and scaled actions are evaluated on the set counters.
+     *
+     * @param counts counters of the actions
+     * @return true if the counters are set
+     */
+    public boolean setCounts(int[] counts) {
+        return setCounts(counts, null);
+    }
+
+    /**
+     * Setting all counters and the points of the conditional and scaled actions and recomputing the totals.
+     * Counters of other size are ignored; points of other size are evaluated on the set counters.
+     *
+     * @param counts counters of the actions
+     * @param nonLinearPoints points given by the conditional and scaled actions or null
+     * @return true if the counters are set
+     */
+    public synchronized boolean setCounts(int[] counts, int[] nonLinearPoints) {
+        if (counts == null || counts.length != mActionsCounts.length()) return false;
+        mVersion++;
+        try {
+            boolean hasPoints = nonLinearPoints != null && nonLinearPoints.length == mNonLinearPoints.length();
+            int[] scores = new int[mTeamCount];
+            for (int a = 0; a < counts.length; a++) {
+                mActionsCounts.lazySet(a, counts[a]);
+            }
+            for (int p = 0; hasPoints && p < nonLinearPoints.length; p++) {
+                mNonLinearPoints.lazySet(p, nonLinearPoints[p]);
+            }
+            for (int a = 0; a < counts.length; a++) {
+                int row = a * mTeamCount;
+                int entry = a * GameDefinition.DISPATCH_STRIDE;
+                int kind = mDispatch == null ? GameDefinition.KIND_LINEAR : mDispatch[entry + GameDefinition.DISPATCH_KIND];
+                if (kind == GameDefinition.KIND_LINEAR) {
+                    for (int i = 0; i < mTeamCount; i++) {
+                        scores[i] += counts[a] * mScoreChanges[row + i];
+                    }
+                } else if (kind != GameDefinition.KIND_COUNTER) {
+                    int slotRow = mDispatch[entry + GameDefinition.DISPATCH_SLOT] * mTeamCount;
+                    int factor = counts[a] * evaluate(entry);
+                    for (int i = 0; i < mTeamCount; i++) {
+                        if (!hasPoints) mNonLinearPoints.lazySet(slotRow + i, factor * mScoreChanges[row + i]);
+                        scores[i] += mNonLinearPoints.get(slotRow + i);
+                    }
+                }
+            }
+            for (int i = 0; i < mTeamCount; i++) {
+                mScores.lazySet(i, scores[i]);
+            }
+            Arrays.fill(mLastPoints, 0);
+        } finally {
+            mVersion++;
+        }
+        return true;
+    }
+
+    /**
+     * Clearing all counters and totals
+     */
+    public synchronized void reset() {
+        mVersion++;
+        try {
+            for (int a = 0; a < mActionsCounts.length(); a++) {
+                mActionsCounts.lazySet(a, 0);
+            }
+            for (int i = 0; i < mTeamCount; i++) {
+                mScores.lazySet(i, 0);
+            }
+            for (int p = 0; p < mNonLinearPoints.length(); p++) {
+                mNonLinearPoints.lazySet(p, 0);
+            }
+            Arrays.fill(mLastPoints, 0);
+        } finally {
+            mVersion++;
+        }
+    }
+
+    /**
+     * Changing the counter of the action. Called under the lock, so the counter has the only writer.
+     *
+     * @param actionIndex index of the action
+     * @param delta change of the counter
+     */
+    private void addCount(int actionIndex, int delta) {
+        mActionsCounts.lazySet(actionIndex, mActionsCounts.get(actionIndex) + delta);
+    }
+
+    /**
+     * Changing the score of the team. Called under the lock, so the score has the only writer.
+     *
+     * @param teamIndex index of the team
+     * @param points change of the score
+     */
+    private void addScore(int teamIndex, int points) {
+        mScores.lazySet(teamIndex, mScores.get(teamIndex) + points);
+    }
+
+    /**
+     * Copying the array consistently with the other values of the state
+     *
+     * @param values atomic array of the state
+     * @return copy of the array
+     */
+    private int[] copy(AtomicIntegerArray values) {
+        int[] result = new int[values.length()];
+        for (int attempt = 0; ; attempt++) {
+            int version = mVersion;
+            if ((version & 1) == 0) {
+                for (int i = 0; i < result.length; i++) {
+                    result[i] = values.get(i);
+                }
+                if (mVersion == version) return result;
+            }
+            backOff(attempt);
+        }
+    }
+
+    /**
+     * Waiting for the change in progress before the next attempt of the copy
+     *
+     * @param attempt count of the failed attempts
+     */
+    private static void backOff(int attempt) {
+        if (attempt > 16) Thread.yield();
+    }
+}
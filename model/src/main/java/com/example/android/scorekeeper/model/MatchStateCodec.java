@@ -0,0 +1,376 @@
+package com.example.android.scorekeeper.model;
+
+import java.io.IOException;
+
+/**
+ * Compact binary encoding of the match state for the saved instance state.
+ * Layout: version, fingerprint of the definition (8 bytes, big-endian),
+ * actions count, zigzag varint counters, zigzag varint points of the conditional and scaled actions
+ * (row per action, column per team), then the latest entries of the journal:
+ * entries count, cursor and per entry action index, zigzag delta
+ * and zigzag varint difference of the timestamp, then the marks of the manual ends
+ * of the sets in the saved entries including the undone ones: marks count and varint differences of their positions,
+ * then the sets finished before the saved entries (since version 4): sets count and per set
+ * zigzag varint points of each team and the winner, so the sets of the long match are kept.
+ *
+ * @package com.example.android.scorekeeper
+ * (c) 2018, Igor Korovchenko.
+ */
+
+public final class MatchStateCodec {
+
+    /**
+     * Version of the format
+     */
+    private static final int VERSION = 4;
+
+    /**
+     * Version of the format without the finished sets, still decoded
+     */
+    private static final int VERSION_WITHOUT_SETS = 3;
+
+    /**
+     * Most count of the saved entries of the journal
+     */
+    static final int MAX_JOURNAL_ENTRIES = 1024;
+
+    private MatchStateCodec() {
+    }
+
+    /**
+     * Encoding counters and the latest entries of the journal of the match
+     *
+     * @param game game of the match
+     * @return encoded state
+     */
+    public static byte[] encode(Game game) {
+        synchronized (game) {
+            ActionJournal journal = game.getJournal();
+            int[] setHistory = RuleEvaluator.getSetHistory(game, getFirstSaved(journal), false);
+            MatchState state = game.getState();
+            return encode(state.getDefinition(), state.getCounts(), state.getNonLinearPoints(), journal, setHistory);
+        }
+    }
+
+    /**
+     * Encoding counters and the latest entries of the journal of the match without the game,
+     * e.g. for the matches of the {@link MatchEngine}
+     *
+     * @param state state of the match
+     * @param journal journal of the match
+     * @return encoded state
+     */
+    public static byte[] encode(MatchState state, ActionJournal journal) {
+        return encode(state.getDefinition(), state.getCounts(), state.getNonLinearPoints(), journal, new int[0]);
+    }
+
+    /**
+     * Encoding counters and the latest entries of the journal of the match hosted by the shard of the engine
+     *
+     * @param state state of the match
+     * @param journal journal of the match
+     * @return encoded state
+     */
+    static byte[] encode(SingleWriterMatchState state, ActionJournal journal) {
+        return encode(state.getDefinition(), state.getCounts(), state.getNonLinearPoints(), journal, new int[0]);
+    }
+
+    /**
+     * Getting position of the oldest saved entry of the journal: the latest entries are saved,
+     * but not the ones after the cursor if they don't leave room for the applied ones
+     *
+     * @param journal journal of the match
+     * @return position of the entry
+     */
+    private static int getFirstSaved(ActionJournal journal) {
+        return Math.min(journal.getCursor(), Math.max(0, journal.size() - MAX_JOURNAL_ENTRIES));
+    }
+
+    /**
+     * Encoding the counters, the points of the conditional and scaled actions, the journal and the sets
+     *
+     * @param definition definition of the game
+     * @param counts counters of the actions
+     * @param nonLinearPoints points given by the conditional and scaled actions
+     * @param journal journal of the match
+     * @param setHistory sets finished before the oldest saved entry
+     * @return encoded state
+     */
+    private static byte[] encode(GameDefinition definition, int[] counts, int[] nonLinearPoints,
+                                 ActionJournal journal, int[] setHistory) {
+        int actionCount = definition.getActionCount();
+
+        int cursor = journal.getCursor();
+        int first = getFirstSaved(journal);
+        int last = Math.min(journal.size(), first + MAX_JOURNAL_ENTRIES);
+
+        Writer writer = new Writer(16 + 2 * actionCount + 4 * (last - first));
+        writer.writeVarint(VERSION);
+        writer.writeFixed64(definition.getFingerprint());
+        writer.writeVarint(actionCount);
+        for (int a = 0; a < actionCount; a++) {
+            writer.writeVarint(zigzag(counts[a]));
+        }
+        for (int points : nonLinearPoints) {
+            writer.writeVarint(zigzag(points));
+        }
+        writer.writeVarint(last - first);
+        writer.writeVarint(cursor - first);
+        long timestamp = 0;
+        for (int i = first; i < last; i++) {
+            writer.writeVarint(journal.getAction(i));
+            writer.writeVarint(zigzag(journal.getDelta(i)));
+            writer.writeVarint(zigzag(journal.getTimestamp(i) - timestamp));
+            timestamp = journal.getTimestamp(i);
+        }
+        int firstMark = 0;
+        while (firstMark < journal.getStoredMarkCount() && journal.getMark(firstMark) < first) {
+            firstMark++;
+        }
+        int lastMark = firstMark;
+        while (lastMark < journal.getStoredMarkCount() && journal.getMark(lastMark) <= last) {
+            lastMark++;
+        }
+        writer.writeVarint(lastMark - firstMark);
+        int position = first;
+        for (int m = firstMark; m < lastMark; m++) {
+            writer.writeVarint(journal.getMark(m) - position);
+            position = journal.getMark(m);
+        }
+        writer.writeVarint(setHistory.length / (definition.getTeamCount() + 1));
+        for (int value : setHistory) {
+            writer.writeVarint(zigzag(value));
+        }
+        return writer.toByteArray();
+    }
+
+    /**
+     * Decoding the saved state into the match. The match is not changed if the state is rejected.
+     *
+     * @param data encoded state
+     * @param game game of the match
+     * @throws IOException if the state is corrupted or saved for other definition
+     */
+    public static void decode(byte[] data, Game game) throws IOException {
+        Reader reader = new Reader(data);
+        long version = reader.readVarint();
+        if (version != VERSION && version != VERSION_WITHOUT_SETS) {
+            throw new IOException("Unsupported match state version");
+        }
+        if (reader.readFixed64() != game.getDefinition().getFingerprint()) {
+            throw new IOException("Match state of other game definition");
+        }
+        int actionCount = game.getActionCount();
+        if (reader.readVarint() != actionCount) throw new IOException("Wrong actions count");
+        int[] counts = new int[actionCount];
+        for (int a = 0; a < actionCount; a++) {
+            counts[a] = (int) unzigzag(reader.readVarint());
+        }
+        GameDefinition definition = game.getDefinition();
+        int[] nonLinearPoints = new int[definition.getNonLinearCount() * definition.getTeamCount()];
+        for (int i = 0; i < nonLinearPoints.length; i++) {
+            nonLinearPoints[i] = (int) unzigzag(reader.readVarint());
+        }
+
+        long entryCount = reader.readVarint();
+        long cursor = reader.readVarint();
+        if (entryCount < 0 || entryCount > MAX_JOURNAL_ENTRIES || cursor < 0 || cursor > entryCount) {
+            throw new IOException("Wrong journal");
+        }
+        int size = (int) entryCount;
+        int[] entries = new int[1 + 2 * size];
+        long[] timestamps = new long[size];
+        entries[0] = (int) cursor;
+        long timestamp = 0;
+        for (int i = 0; i < size; i++) {
+            long actionIndex = reader.readVarint();
+            if (actionIndex < 0 || actionIndex >= actionCount) {
+                throw new IOException("Wrong action index " + actionIndex);
+            }
+            entries[1 + 2 * i] = (int) actionIndex;
+            entries[2 + 2 * i] = (int) unzigzag(reader.readVarint());
+            timestamp += unzigzag(reader.readVarint());
+            timestamps[i] = timestamp;
+        }
+        long markCount = reader.readVarint();
+        if (markCount < 0 || markCount > MAX_JOURNAL_ENTRIES) throw new IOException("Wrong marks count");
+        int[] marks = new int[(int) markCount];
+        long position = 0;
+        for (int m = 0; m < marks.length; m++) {
+            position += reader.readVarint();
+            if (position < 0 || position > entryCount) throw new IOException("Wrong mark " + position);
+            marks[m] = (int) position;
+        }
+        int[] setHistory = null;
+        if (version == VERSION) {
+            int teamCount = definition.getTeamCount();
+            long setCount = reader.readVarint();
+            // each set takes at least one byte per value, so the count is checked against the data
+            if (setCount < 0 || setCount > data.length) throw new IOException("Wrong sets count");
+            setHistory = new int[(int) setCount * (teamCount + 1)];
+            for (int i = 0; i < setHistory.length; i++) {
+                setHistory[i] = (int) unzigzag(reader.readVarint());
+                if (i % (teamCount + 1) == teamCount && (setHistory[i] < 0 || setHistory[i] >= teamCount)) {
+                    throw new IOException("Wrong winner of the set " + setHistory[i]);
+                }
+            }
+        }
+        if (reader.hasRemaining()) throw new IOException("Trailing bytes in match state");
+
+        game.setCurrentState(counts, nonLinearPoints, entries, timestamps, marks, setHistory);
+    }
+
+    /**
+     * ZigZag encoding of the signed value
+     *
+     * @param value signed value
+     * @return unsigned value with small magnitude for small signed values
+     */
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * ZigZag decoding of the signed value
+     *
+     * @param value unsigned value
+     * @return signed value
+     */
+    static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Growable writer of the varints, shared with the sync protocol
+     */
+    static final class Writer {
+
+        /**
+         * Buffer and count of the written bytes
+         */
+        private byte[] mBuffer;
+        private int mSize;
+
+        /**
+         * Constructor of the writer
+         *
+         * @param capacity expected size of the data
+         */
+        Writer(int capacity) {
+            mBuffer = new byte[Math.max(16, capacity)];
+        }
+
+        /**
+         * Writing unsigned varint, 7 bits per byte
+         *
+         * @param value unsigned value
+         */
+        void writeVarint(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0) {
+                mBuffer[mSize++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            mBuffer[mSize++] = (byte) value;
+        }
+
+        /**
+         * Writing big-endian long
+         *
+         * @param value value
+         */
+        void writeFixed64(long value) {
+            ensureCapacity(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                mBuffer[mSize++] = (byte) (value >>> shift);
+            }
+        }
+
+        /**
+         * Getting the written bytes
+         *
+         * @return copy of the written bytes
+         */
+        byte[] toByteArray() {
+            byte[] data = new byte[mSize];
+            System.arraycopy(mBuffer, 0, data, 0, mSize);
+            return data;
+        }
+
+        /**
+         * Growing the buffer for the next bytes
+         *
+         * @param count count of the next bytes
+         */
+        private void ensureCapacity(int count) {
+            if (mSize + count <= mBuffer.length) return;
+            byte[] buffer = new byte[Math.max(mBuffer.length * 2, mSize + count)];
+            System.arraycopy(mBuffer, 0, buffer, 0, mSize);
+            mBuffer = buffer;
+        }
+    }
+
+    /**
+     * Reader of the varints with bounds checking, shared with the sync protocol
+     */
+    static final class Reader {
+
+        /**
+         * Encoded data and position of the next byte
+         */
+        private final byte[] mData;
+        private int mPos;
+
+        /**
+         * Constructor of the reader
+         *
+         * @param data encoded data
+         * @throws IOException if there is no data
+         */
+        Reader(byte[] data) throws IOException {
+            if (data == null) throw new IOException("No match state");
+            mData = data;
+        }
+
+        /**
+         * Reading unsigned varint
+         *
+         * @return value
+         * @throws IOException if the varint is truncated or malformed
+         */
+        long readVarint() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (mPos >= mData.length) throw new IOException("Truncated match state");
+                byte b = mData[mPos++];
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+            throw new IOException("Malformed varint at byte " + mPos);
+        }
+
+        /**
+         * Reading big-endian long
+         *
+         * @return value
+         * @throws IOException if the data is truncated
+         */
+        long readFixed64() throws IOException {
+            if (mPos + 8 > mData.length) throw new IOException("Truncated match state");
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (mData[mPos++] & 0xFF);
+            }
+            return value;
+        }
+
+        /**
+         * Checking if there are unread bytes
+         *
+         * @return true if there are unread bytes
+         */
+        boolean hasRemaining() {
+            return mPos < mData.length;
+        }
+    }
+}
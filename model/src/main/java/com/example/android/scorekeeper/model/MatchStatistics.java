@@ -0,0 +1,221 @@
+package com.example.android.scorekeeper.model;
+
+import java.util.Arrays;
+
+/**
+ * Statistics of the match kept up to date on each change of the counters:
+ * points of each player for each team, taps of each player, and the time span of the match.
+ * Rates per minute are measured over the changes seen since the last reset, together with
+ * their own points, because a restored match has no time of its earlier changes.
+ * Queries are O(1) and read only the primitive arrays, so views can poll them every frame.
+ *
+ * @package com.example.android.scorekeeper
+ * (c) 2018, Igor Korovchenko.
+ */
+
+public final class MatchStatistics implements MatchListener {
+
+    /**
+     * Milliseconds in one minute
+     */
+    private static final double MILLIS_PER_MINUTE = 60000.0;
+
+    /**
+     * Definition and state of the match
+     */
+    private final GameDefinition mDefinition;
+    private final MatchState mState;
+
+    /**
+     * Points of each player for each team: row per player, column per team
+     */
+    private final int[] mPlayerPoints;
+
+    /**
+     * Count of the actions of each player
+     */
+    private final int[] mPlayerActions;
+
+    /**
+     * Count of all actions of the match
+     */
+    private int mTotalActions;
+
+    /**
+     * Points of each team and points of each player to the own team since reset, for the rates
+     */
+    private final int[] mRateTeamPoints;
+    private final int[] mRatePlayerPoints;
+
+    /**
+     * Monotonic time of the first and the last change since reset, or -1
+     */
+    private long mFirstTimestamp = -1;
+    private long mLastTimestamp = -1;
+
+    /**
+     * Constructor of the statistics over the current state of the match.
+     * The statistics should be added to the game as a listener.
+     *
+     * @param game game of the match
+     */
+    public MatchStatistics(Game game) {
+        mDefinition = game.getDefinition();
+        mState = game.getState();
+        mPlayerPoints = new int[mDefinition.getPlayerCount() * mDefinition.getTeamCount()];
+        mPlayerActions = new int[mDefinition.getPlayerCount()];
+        mRateTeamPoints = new int[mDefinition.getTeamCount()];
+        mRatePlayerPoints = new int[mDefinition.getPlayerCount()];
+        onMatchReset();
+    }
+
+    /**
+     * Updating the statistics of the player of the action
+     *
+     * @param actionIndex index of the action in the game
+     * @param delta change of the counter
+     * @param timestamp monotonic time of the change in milliseconds
+     */
+    @Override
+    public void onActionChanged(int actionIndex, int delta, long timestamp) {
+        int teamCount = mDefinition.getTeamCount();
+        int playerIndex = mDefinition.getActionPlayer(actionIndex);
+        int row = playerIndex * teamCount;
+        for (int t = 0; t < teamCount; t++) {
+            mPlayerPoints[row + t] += mState.getLastPoints(t);
+            mRateTeamPoints[t] += mState.getLastPoints(t);
+        }
+        mRatePlayerPoints[playerIndex] += mState.getLastPoints(mDefinition.getPlayerTeam(playerIndex));
+        mPlayerActions[playerIndex] += delta;
+        mTotalActions += delta;
+        if (mFirstTimestamp < 0) mFirstTimestamp = timestamp;
+        mLastTimestamp = timestamp;
+    }
+
+    /**
+     * Ends of the sets don't change the statistics
+     *
+     * @param timestamp monotonic time of the end in milliseconds
+     */
+    @Override
+    public void onSetEnded(long timestamp) {
+    }
+
+    /**
+     * Recomputing the statistics from the counters of the match.
+     * The rates start again, as the points and the time are measured together.
+     */
+    @Override
+    public void onMatchReset() {
+        int teamCount = mDefinition.getTeamCount();
+        Arrays.fill(mPlayerPoints, 0);
+        Arrays.fill(mPlayerActions, 0);
+        mTotalActions = 0;
+        for (int a = 0; a < mDefinition.getActionCount(); a++) {
+            int count = mState.getActionsCount(a);
+            if (count == 0) continue;
+            int playerIndex = mDefinition.getActionPlayer(a);
+            for (int t = 0; t < teamCount; t++) {
+                mPlayerPoints[playerIndex * teamCount + t] += mState.getActionPoints(a, t);
+            }
+            mPlayerActions[playerIndex] += count;
+            mTotalActions += count;
+        }
+        Arrays.fill(mRateTeamPoints, 0);
+        Arrays.fill(mRatePlayerPoints, 0);
+        mFirstTimestamp = -1;
+        mLastTimestamp = -1;
+    }
+
+    /**
+     * Getting points given by the actions of the player to the team
+     *
+     * @param playerIndex index of the player in the game
+     * @param teamIndex index of the team
+     * @return points
+     */
+    public int getPlayerPoints(int playerIndex, int teamIndex) {
+        return mPlayerPoints[playerIndex * mDefinition.getTeamCount() + teamIndex];
+    }
+
+    /**
+     * Getting points given by the actions of the player to the own team
+     *
+     * @param playerIndex index of the player in the game
+     * @return points
+     */
+    public int getPlayerContribution(int playerIndex) {
+        return getPlayerPoints(playerIndex, mDefinition.getPlayerTeam(playerIndex));
+    }
+
+    /**
+     * Getting share of the player in the points of the own team
+     *
+     * @param playerIndex index of the player in the game
+     * @return share from 0 to 1, or 0 if the team has no points
+     */
+    public double getShareOfTeamPoints(int playerIndex) {
+        int teamScore = mState.getScore(mDefinition.getPlayerTeam(playerIndex));
+        return teamScore == 0 ? 0.0 : (double) getPlayerContribution(playerIndex) / teamScore;
+    }
+
+    /**
+     * Getting count of the actions of the player
+     *
+     * @param playerIndex index of the player in the game
+     * @return actions count
+     */
+    public int getPlayerActionCount(int playerIndex) {
+        return mPlayerActions[playerIndex];
+    }
+
+    /**
+     * Getting count of all actions of the match
+     *
+     * @return actions count
+     */
+    public int getTotalActionCount() {
+        return mTotalActions;
+    }
+
+    /**
+     * Getting frequency of the action among all actions of the match
+     *
+     * @param actionIndex index of the action in the game
+     * @return frequency from 0 to 1, or 0 if there are no actions
+     */
+    public double getActionFrequency(int actionIndex) {
+        return mTotalActions == 0 ? 0.0 : (double) mState.getActionsCount(actionIndex) / mTotalActions;
+    }
+
+    /**
+     * Getting duration of the match between the first and the last change since reset
+     *
+     * @return duration in milliseconds
+     */
+    public long getDurationMillis() {
+        return mFirstTimestamp < 0 ? 0 : mLastTimestamp - mFirstTimestamp;
+    }
+
+    /**
+     * Getting points of the team per minute of the match since reset
+     *
+     * @param teamIndex index of the team
+     * @return points per minute, or 0 if the match is shorter than a second
+     */
+    public double getPointsPerMinute(int teamIndex) {
+        long duration = getDurationMillis();
+        return duration < 1000 ? 0.0 : mRateTeamPoints[teamIndex] * MILLIS_PER_MINUTE / duration;
+    }
+
+    /**
+     * Getting points of the player to the own team per minute of the match since reset
+     *
+     * @param playerIndex index of the player in the game
+     * @return points per minute, or 0 if the match is shorter than a second
+     */
+    public double getPlayerPointsPerMinute(int playerIndex) {
+        long duration = getDurationMillis();
+        return duration < 1000 ? 0.0 : mRatePlayerPoints[playerIndex] * MILLIS_PER_MINUTE / duration;
+    }
+}
@@ -0,0 +1,243 @@
+package com.example.android.scorekeeper.model;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.Executor;
+
+/**
+ * Display side of the live sync of the match. The background thread connects to
+ * the {@link MatchBroadcaster} of the scoring device, reads the frames and applies
+ * the snapshots and the changes to the game through the executor, e.g. on the main thread.
+ * Changes already included in the snapshot are skipped by their sequence. A missed change
+ * or a broken connection leads to reconnection, which resyncs the game from the new snapshot.
+ *
+ * @package com.example.android.scorekeeper
+ * (c) 2018, Igor Korovchenko.
+ */
+
+public final class MatchSubscriber {
+
+    /**
+     * TAG name for debugging
+     */
+    private static final String TAG = "MatchSubscriber";
+
+    /**
+     * Timeout of the connection and delay before the reconnection
+     */
+    private static final int CONNECT_TIMEOUT_MS = 3000;
+    private static final int RECONNECT_DELAY_MS = 1000;
+
+    /**
+     * Game of the display, its definition and the executor applying the changes to it
+     */
+    private final Game mGame;
+    private final GameDefinition mDefinition;
+    private final Executor mExecutor;
+
+    /**
+     * Address of the broadcaster
+     */
+    private final String mHost;
+    private final int mPort;
+
+    /**
+     * Reading thread and its current connection
+     */
+    private final Thread mThread;
+    private volatile Socket mSocket;
+    private volatile boolean mClosed;
+
+    /**
+     * Sequence of the last received change. Used by the reading thread only.
+     */
+    private long mReceivedSequence;
+
+    /**
+     * Sequence of the last change applied to the game or -1 before the first snapshot
+     */
+    private volatile long mAppliedSequence = -1;
+
+    /**
+     * Constructor of the subscriber. Changes are applied after {@link #start()}.
+     *
+     * @param game game of the display with the same definition as the scoring game
+     * @param host host of the broadcaster
+     * @param port port of the broadcaster
+     * @param executor executor of the changes of the game
+     */
+    public MatchSubscriber(Game game, String host, int port, Executor executor) {
+        mGame = game;
+        mDefinition = game.getDefinition();
+        mHost = host;
+        mPort = port;
+        mExecutor = executor;
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                readBroadcaster();
+            }
+        }, TAG);
+        mThread.setDaemon(true);
+    }
+
+    /**
+     * Starting the connection
+     */
+    public void start() {
+        mThread.start();
+    }
+
+    /**
+     * Getting sequence of the last change applied to the game
+     *
+     * @return sequence number or -1 before the first snapshot
+     */
+    public long getSequence() {
+        return mAppliedSequence;
+    }
+
+    /**
+     * Stopping the sync. Changes already passed to the executor are still applied.
+     */
+    public void close() {
+        mClosed = true;
+        Socket socket = mSocket;
+        if (socket != null) closeQuietly(socket);
+        mThread.interrupt();
+    }
+
+    /**
+     * Connecting to the broadcaster and reading its frames until the subscriber is closed
+     */
+    private void readBroadcaster() {
+        while (!mClosed) {
+            Socket socket = new Socket();
+            mSocket = socket;
+            try {
+                if (mClosed) break;
+                socket.setTcpNoDelay(true);
+                socket.connect(new InetSocketAddress(mHost, mPort), CONNECT_TIMEOUT_MS);
+                readFrames(new DataInputStream(new BufferedInputStream(socket.getInputStream())));
+            } catch (IOException e) {
+                if (!mClosed) ModelLog.d(TAG, "Sync with " + mHost + ":" + mPort + " is lost: " + e.getMessage());
+            } finally {
+                closeQuietly(socket);
+            }
+            if (mClosed) break;
+            try {
+                Thread.sleep(RECONNECT_DELAY_MS);
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Reading the hello and the frames of the connection
+     *
+     * @param in stream of the connection
+     * @throws IOException if the connection is broken or the frames are wrong
+     */
+    private void readFrames(DataInputStream in) throws IOException {
+        SyncProtocol.readHello(in, mDefinition.getFingerprint());
+        mReceivedSequence = -1;
+        while (!mClosed) {
+            MatchStateCodec.Reader reader = new MatchStateCodec.Reader(SyncProtocol.readFrame(in));
+            long type = reader.readVarint();
+            if (type == SyncProtocol.FRAME_SNAPSHOT) {
+                readSnapshot(reader);
+            } else if (type == SyncProtocol.FRAME_DELTAS) {
+                readDeltas(reader);
+            } else {
+                throw new IOException("Unknown sync frame " + type);
+            }
+            if (reader.hasRemaining()) throw new IOException("Trailing bytes in sync frame");
+        }
+    }
+
+    /**
+     * Reading the snapshot and replacing the counters of the game by it
+     *
+     * @param reader reader of the frame
+     * @throws IOException if the snapshot is wrong
+     */
+    private void readSnapshot(MatchStateCodec.Reader reader) throws IOException {
+        final long sequence = reader.readVarint();
+        if (reader.readVarint() != mDefinition.getActionCount()) throw new IOException("Wrong actions count");
+        final int[] counts = new int[mDefinition.getActionCount()];
+        for (int a = 0; a < counts.length; a++) {
+            counts[a] = (int) MatchStateCodec.unzigzag(reader.readVarint());
+        }
+        if (reader.readVarint() != mDefinition.getNonLinearCount() * mDefinition.getTeamCount()) {
+            throw new IOException("Wrong points count");
+        }
+        final int[] nonLinearPoints = new int[mDefinition.getNonLinearCount() * mDefinition.getTeamCount()];
+        for (int i = 0; i < nonLinearPoints.length; i++) {
+            nonLinearPoints[i] = (int) MatchStateCodec.unzigzag(reader.readVarint());
+        }
+        mReceivedSequence = sequence;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mGame.setCurrentState(counts, nonLinearPoints);
+                mAppliedSequence = sequence;
+            }
+        });
+    }
+
+    /**
+     * Reading the batch of the changes and applying the changes which are not applied yet
+     *
+     * @param reader reader of the frame
+     * @throws IOException if the batch is wrong or follows the missed changes
+     */
+    private void readDeltas(MatchStateCodec.Reader reader) throws IOException {
+        long first = reader.readVarint();
+        long count = reader.readVarint();
+        if (mReceivedSequence < 0) throw new IOException("Changes before the snapshot");
+        if (first > mReceivedSequence + 1) throw new IOException("Missed changes " + (mReceivedSequence + 1) + ".." + (first - 1));
+        if (count <= 0 || count > Integer.MAX_VALUE / 2) throw new IOException("Wrong changes count " + count);
+        int skipped = (int) Math.min(count, mReceivedSequence + 1 - first);
+        final int size = (int) count - skipped;
+        final int[] changes = new int[2 * size];
+        for (int i = 0; i < count; i++) {
+            long actionIndex = reader.readVarint();
+            long delta = MatchStateCodec.unzigzag(reader.readVarint());
+            if (actionIndex < 0 || actionIndex >= mDefinition.getActionCount()) {
+                throw new IOException("Wrong action index " + actionIndex);
+            }
+            if (i < skipped) continue;
+            changes[2 * (i - skipped)] = (int) actionIndex;
+            changes[2 * (i - skipped) + 1] = (int) delta;
+        }
+        if (size == 0) return;
+        final long sequence = first + count - 1;
+        mReceivedSequence = sequence;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < size; i++) {
+                    mGame.changeActionsCount(changes[2 * i], changes[2 * i + 1]);
+                }
+                mAppliedSequence = sequence;
+            }
+        });
+    }
+
+    /**
+     * Closing the socket ignoring errors
+     *
+     * @param socket socket
+     */
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // nothing to do with the broken connection
+        }
+    }
+}
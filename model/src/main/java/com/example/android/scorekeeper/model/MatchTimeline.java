@@ -0,0 +1,471 @@
+package com.example.android.scorekeeper.model;
+
+import java.util.Arrays;
+
+/**
+ * Timeline of the match: columns of the time, action, delta and points for each team
+ * of every change of the counters, with analytics updated in O(1) per event:
+ * scoring runs of the teams, points in the sliding time window and lead changes.
+ * Taking back a tap removes the last tap of the action from the timeline and recomputes
+ * the analytics in O(n), so undone points don't stay in the runs. Negative changes without
+ * a matching tap are kept as events with negative points; they end the current run.
+ * On reset the timeline is rebuilt from the journal of the game.
+ *
+ * @package com.example.android.scorekeeper
+ * (c) 2018, Igor Korovchenko.
+ */
+
+public final class MatchTimeline implements MatchListener {
+
+    /**
+     * Default length of the sliding window for the scoring rate
+     */
+    public static final long DEFAULT_WINDOW_MS = 5 * 60 * 1000;
+
+    /**
+     * Initial capacity of the columns
+     */
+    private static final int INITIAL_CAPACITY = 256;
+
+    /**
+     * Milliseconds in one minute
+     */
+    private static final double MILLIS_PER_MINUTE = 60000.0;
+
+    /**
+     * Definition and state of the match
+     */
+    private final GameDefinition mDefinition;
+    private final MatchState mState;
+
+    /**
+     * Journal of the match to rebuild the timeline on reset
+     */
+    private final ActionJournal mJournal;
+
+    /**
+     * Count of the teams
+     */
+    private final int mTeamCount;
+
+    /**
+     * Length of the sliding window
+     */
+    private final long mWindowMillis;
+
+    /**
+     * Columns of the events; points have a row per event and a column per team
+     */
+    private long[] mTimestamps;
+    private int[] mActions;
+    private int[] mDeltas;
+    private int[] mPoints;
+    private int mSize;
+
+    /**
+     * Scores of the teams before the first event and over the timeline
+     */
+    private final int[] mBaseScores;
+    private final int[] mScores;
+
+    /**
+     * Team of the current run, or -1, its length in points and the longest runs of the teams
+     */
+    private int mRunTeam = -1;
+    private int mRunPoints;
+    private final int[] mLongestRuns;
+
+    /**
+     * First event in the sliding window, end time of the window and points of the teams in the window
+     */
+    private int mWindowStart;
+    private long mWindowEnd = Long.MIN_VALUE;
+    private final int[] mWindowPoints;
+
+    /**
+     * Leading team, or -1 for a draw, and count of the lead changes
+     */
+    private int mLeader = -1;
+    private int mLastLeader = -1;
+    private int mLeadChanges;
+
+    /**
+     * Constructor of the timeline with the default sliding window
+     *
+     * @param game game of the match
+     */
+    public MatchTimeline(Game game) {
+        this(game, DEFAULT_WINDOW_MS);
+    }
+
+    /**
+     * Constructor of the timeline. The timeline should be added to the game as a listener.
+     *
+     * @param game game of the match
+     * @param windowMillis length of the sliding window for the scoring rate
+     */
+    public MatchTimeline(Game game, long windowMillis) {
+        mDefinition = game.getDefinition();
+        mState = game.getState();
+        mJournal = game.getJournal();
+        mTeamCount = mDefinition.getTeamCount();
+        mWindowMillis = windowMillis;
+        mTimestamps = new long[INITIAL_CAPACITY];
+        mActions = new int[INITIAL_CAPACITY];
+        mDeltas = new int[INITIAL_CAPACITY];
+        mPoints = new int[INITIAL_CAPACITY * mTeamCount];
+        mBaseScores = new int[mTeamCount];
+        mScores = new int[mTeamCount];
+        mLongestRuns = new int[mTeamCount];
+        mWindowPoints = new int[mTeamCount];
+        onMatchReset();
+    }
+
+    /**
+     * Appending the event and updating the analytics, or removing the tap taken back
+     *
+     * @param actionIndex index of the action in the game
+     * @param delta change of the counter
+     * @param timestamp monotonic time of the change in milliseconds
+     */
+    @Override
+    public void onActionChanged(int actionIndex, int delta, long timestamp) {
+        if (addEvent(mState, actionIndex, delta, timestamp)) {
+            applyEvent(mSize - 1);
+        } else {
+            rebuild();
+            slideWindow(timestamp);
+        }
+    }
+
+    /**
+     * Ends of the sets don't change the timeline
+     *
+     * @param timestamp monotonic time of the end in milliseconds
+     */
+    @Override
+    public void onSetEnded(long timestamp) {
+    }
+
+    /**
+     * Rebuilding the timeline from the journal. Changes made before the oldest entry
+     * of the journal are counted in the scores before the first event.
+     */
+    @Override
+    public void onMatchReset() {
+        mSize = 0;
+        // points of the actions can depend on the counters, so the journal is undone and replayed on a copy
+        MatchState replay = new MatchState(mDefinition);
+        replay.setCounts(mState.getCounts(), mState.getNonLinearPoints());
+        int cursor = mJournal.getCursor();
+        for (int i = cursor - 1; i >= 0; i--) {
+            replay.apply(mJournal.getAction(i), -mJournal.getDelta(i));
+        }
+        replay.copyScores(mBaseScores);
+        for (int i = 0; i < cursor; i++) {
+            replay.apply(mJournal.getAction(i), mJournal.getDelta(i));
+            addEvent(replay, mJournal.getAction(i), mJournal.getDelta(i), mJournal.getTimestamp(i));
+        }
+        mWindowEnd = Long.MIN_VALUE;
+        rebuild();
+    }
+
+    /**
+     * Getting count of the events
+     *
+     * @return events count
+     */
+    public int getEventCount() {
+        return mSize;
+    }
+
+    /**
+     * Getting time of the event
+     *
+     * @param event index of the event
+     * @return monotonic time in milliseconds
+     */
+    public long getTimestamp(int event) {
+        return mTimestamps[event];
+    }
+
+    /**
+     * Getting action of the event
+     *
+     * @param event index of the event
+     * @return index of the action in the game
+     */
+    public int getAction(int event) {
+        return mActions[event];
+    }
+
+    /**
+     * Getting change of the action counter of the event
+     *
+     * @param event index of the event
+     * @return delta
+     */
+    public int getDelta(int event) {
+        return mDeltas[event];
+    }
+
+    /**
+     * Getting points of the team by the event
+     *
+     * @param event index of the event
+     * @param teamIndex index of the team
+     * @return points
+     */
+    public int getPoints(int event, int teamIndex) {
+        return mPoints[event * mTeamCount + teamIndex];
+    }
+
+    /**
+     * Getting the longest run of the team, i.e. points scored in a row without points of other teams
+     *
+     * @param teamIndex index of the team
+     * @return points of the longest run
+     */
+    public int getLongestRun(int teamIndex) {
+        return mLongestRuns[teamIndex];
+    }
+
+    /**
+     * Getting team of the current run
+     *
+     * @return index of the team or -1
+     */
+    public int getCurrentRunTeam() {
+        return mRunTeam;
+    }
+
+    /**
+     * Getting points of the current run
+     *
+     * @return points
+     */
+    public int getCurrentRunPoints() {
+        return mRunPoints;
+    }
+
+    /**
+     * Getting points of the team in the sliding window ending at the last event or the last read
+     *
+     * @param teamIndex index of the team
+     * @return points
+     */
+    public int getWindowPoints(int teamIndex) {
+        return mWindowPoints[teamIndex];
+    }
+
+    /**
+     * Getting scoring rate of the team in the sliding window ending now
+     *
+     * @param teamIndex index of the team
+     * @return points per minute
+     */
+    public double getScoringRate(int teamIndex) {
+        return getScoringRate(teamIndex, Game.now());
+    }
+
+    /**
+     * Getting scoring rate of the team in the sliding window ending at the given time.
+     * The window doesn't move back, so earlier times give the rate at the last read.
+     *
+     * @param teamIndex index of the team
+     * @param timestamp monotonic time in milliseconds
+     * @return points per minute
+     */
+    public double getScoringRate(int teamIndex, long timestamp) {
+        slideWindow(timestamp);
+        return mWindowPoints[teamIndex] * MILLIS_PER_MINUTE / mWindowMillis;
+    }
+
+    /**
+     * Getting leading team
+     *
+     * @return index of the team or -1 for a draw
+     */
+    public int getLeader() {
+        return mLeader;
+    }
+
+    /**
+     * Getting count of the lead changes, i.e. the lead taken by other team than the last leader
+     *
+     * @return lead changes count
+     */
+    public int getLeadChanges() {
+        return mLeadChanges;
+    }
+
+    /**
+     * Appending the event with the last points of the state, or removing the last tap
+     * of the action if the change takes it back
+     *
+     * @param state state after the change
+     * @param actionIndex index of the action in the game
+     * @param delta change of the counter
+     * @param timestamp monotonic time of the change in milliseconds
+     * @return true if the event is appended, false if a tap is removed
+     */
+    private boolean addEvent(MatchState state, int actionIndex, int delta, long timestamp) {
+        if (delta < 0) {
+            for (int e = mSize - 1; e >= 0; e--) {
+                if (mActions[e] == actionIndex && mDeltas[e] == -delta) {
+                    removeEvent(e);
+                    return false;
+                }
+            }
+        }
+        if (mSize == mTimestamps.length) grow();
+        int row = mSize * mTeamCount;
+        mTimestamps[mSize] = timestamp;
+        mActions[mSize] = actionIndex;
+        mDeltas[mSize] = delta;
+        for (int t = 0; t < mTeamCount; t++) {
+            mPoints[row + t] = state.getLastPoints(t);
+        }
+        mSize++;
+        return true;
+    }
+
+    /**
+     * Removing the event from the columns
+     *
+     * @param event index of the event
+     */
+    private void removeEvent(int event) {
+        int tail = mSize - event - 1;
+        System.arraycopy(mTimestamps, event + 1, mTimestamps, event, tail);
+        System.arraycopy(mActions, event + 1, mActions, event, tail);
+        System.arraycopy(mDeltas, event + 1, mDeltas, event, tail);
+        System.arraycopy(mPoints, (event + 1) * mTeamCount, mPoints, event * mTeamCount, tail * mTeamCount);
+        mSize--;
+    }
+
+    /**
+     * Recomputing the analytics from the events. The window keeps its end time.
+     */
+    private void rebuild() {
+        long windowEnd = mWindowEnd;
+        System.arraycopy(mBaseScores, 0, mScores, 0, mTeamCount);
+        mRunTeam = -1;
+        mRunPoints = 0;
+        Arrays.fill(mLongestRuns, 0);
+        mWindowStart = 0;
+        mWindowEnd = Long.MIN_VALUE;
+        Arrays.fill(mWindowPoints, 0);
+        mLeadChanges = 0;
+        mLeader = findLeader();
+        mLastLeader = mLeader;
+        for (int e = 0; e < mSize; e++) {
+            applyEvent(e);
+        }
+        if (windowEnd != Long.MIN_VALUE) slideWindow(windowEnd);
+    }
+
+    /**
+     * Updating the analytics by the event
+     *
+     * @param event index of the event
+     */
+    private void applyEvent(int event) {
+        int row = event * mTeamCount;
+        int scoringTeam = -1;
+        boolean isNegative = false;
+        for (int t = 0; t < mTeamCount; t++) {
+            int points = mPoints[row + t];
+            mScores[t] += points;
+            mWindowPoints[t] += points;
+            if (points > 0 && (scoringTeam < 0 || points > mPoints[row + scoringTeam])) scoringTeam = t;
+            if (points < 0) isNegative = true;
+        }
+        updateRun(scoringTeam, isNegative, row);
+        slideWindow(mTimestamps[event]);
+        updateLeader();
+    }
+
+    /**
+     * Updating the current and the longest runs
+     *
+     * @param scoringTeam team with the most points by the event, or -1
+     * @param isNegative true if the event takes points away
+     * @param row row of the points of the event
+     */
+    private void updateRun(int scoringTeam, boolean isNegative, int row) {
+        if (isNegative || scoringTeam < 0) {
+            if (isNegative) {
+                mRunTeam = -1;
+                mRunPoints = 0;
+            }
+            return;
+        }
+        if (scoringTeam != mRunTeam) {
+            mRunTeam = scoringTeam;
+            mRunPoints = 0;
+        }
+        mRunPoints += mPoints[row + scoringTeam];
+        if (mRunPoints > mLongestRuns[scoringTeam]) mLongestRuns[scoringTeam] = mRunPoints;
+    }
+
+    /**
+     * Moving the end of the window forward and removing the events older than the window
+     * from the window points. Each event leaves the window once, so the cost is amortized O(1).
+     *
+     * @param timestamp time of the last event or of the read
+     */
+    private void slideWindow(long timestamp) {
+        if (timestamp > mWindowEnd) mWindowEnd = timestamp;
+        while (mWindowStart < mSize && mTimestamps[mWindowStart] <= mWindowEnd - mWindowMillis) {
+            int row = mWindowStart * mTeamCount;
+            for (int t = 0; t < mTeamCount; t++) {
+                mWindowPoints[t] -= mPoints[row + t];
+            }
+            mWindowStart++;
+        }
+    }
+
+    /**
+     * Updating the leader and the lead changes
+     */
+    private void updateLeader() {
+        mLeader = findLeader();
+        if (mLeader >= 0 && mLeader != mLastLeader) {
+            if (mLastLeader >= 0) mLeadChanges++;
+            mLastLeader = mLeader;
+        }
+    }
+
+    /**
+     * Finding the team with the strictly highest score
+     *
+     * @return index of the team or -1 for a draw
+     */
+    private int findLeader() {
+        int leader = -1;
+        int best = Integer.MIN_VALUE;
+        boolean isDraw = false;
+        for (int t = 0; t < mTeamCount; t++) {
+            if (mScores[t] > best) {
+                best = mScores[t];
+                leader = t;
+                isDraw = false;
+            } else if (mScores[t] == best) {
+                isDraw = true;
+            }
+        }
+        return isDraw ? -1 : leader;
+    }
+
+    /**
+     * Doubling capacity of the columns
+     */
+    private void grow() {
+        int capacity = mTimestamps.length * 2;
+        mTimestamps = Arrays.copyOf(mTimestamps, capacity);
+        mActions = Arrays.copyOf(mActions, capacity);
+        mDeltas = Arrays.copyOf(mDeltas, capacity);
+        mPoints = Arrays.copyOf(mPoints, capacity * mTeamCount);
+    }
+}
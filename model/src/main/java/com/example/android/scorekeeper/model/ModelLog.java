@@ -0,0 +1,38 @@
+package com.example.android.scorekeeper.model;
+
+/**
+ * Logging of the model through the logger bound by the application
+ *
+ * @package com.example.android.scorekeeper
+ * (c) 2018, Igor Korovchenko.
+ */
+
+public final class ModelLog {
+
+    /**
+     * Current logger
+     */
+    private static volatile Logger sLogger = Logger.NONE;
+
+    private ModelLog() {
+    }
+
+    /**
+     * Binding the logger of the model
+     *
+     * @param logger logger or null to drop the messages
+     */
+    public static void setLogger(Logger logger) {
+        sLogger = logger == null ? Logger.NONE : logger;
+    }
+
+    /**
+     * Writing the debugging message
+     *
+     * @param tag source of the message
+     * @param message text of the message
+     */
+    static void d(String tag, String message) {
+        sLogger.d(tag, message);
+    }
+}
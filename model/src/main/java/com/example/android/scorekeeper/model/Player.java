@@ -0,0 +1,71 @@
+package com.example.android.scorekeeper.model;
+
+/**
+ * Class of the player's model with all information of the player.
+ * The player is a lightweight view of its range of the actions in the game definition.
+ *
+ * @package com.example.android.scorekeeper
+ * (c) 2018, Igor Korovchenko.
+ */
+
+public class Player {
+
+    /**
+     * Game of the player
+     */
+    private final Game mGame;
+
+    /**
+     * Index of the player in the game
+     */
+    private final int mIndex;
+
+    /**
+     * Constructor of the player's model
+     *
+     * @param game game of the player
+     * @param index index of the player in the game
+     */
+    Player(Game game, int index) {
+        this.mGame = game;
+        this.mIndex = index;
+    }
+
+    /**
+     * Getting a name of the player
+     *
+     * @return name of the player
+     */
+    public String getName() {
+        return mGame.getDefinition().getPlayerName(mIndex);
+    }
+
+    /**
+     * Getting index of the player in the game
+     *
+     * @return player's index
+     */
+    public int getIndex() {
+        return mIndex;
+    }
+
+    /**
+     * Getting the game action of the player
+     *
+     * @param index index of the action of the player. First action has zero index.
+     * @return GameAction at index
+     */
+    public GameAction getGameAction(int index) {
+        return mGame.getGameAction(mGame.getDefinition().getFirstAction(mIndex) + index);
+    }
+
+    /**
+     * Getting count of the actions of the player
+     *
+     * @return actions count
+     */
+    public int getActionCount() {
+        GameDefinition definition = mGame.getDefinition();
+        return definition.getFirstAction(mIndex + 1) - definition.getFirstAction(mIndex);
+    }
+}
@@ -0,0 +1,408 @@
+package com.example.android.scorekeeper.model;
+
+import java.util.Arrays;
+
+/**
+ * Evaluator of the rules of the match: points of the teams in the current set,
+ * the finished sets and the winner of the match. Each change of the counters is checked
+ * against the target of the current set only, so the cost is O(teams) per event.
+ * Undoing a point while the current set has no points reopens the previous set.
+ * Manual ends of the sets are marked in the journal of the game, so they are rebuilt on reset;
+ * the sets finished before the oldest entry of the journal are kept by the set history of the game.
+ *
+ * @package com.example.android.scorekeeper
+ * (c) 2018, Igor Korovchenko.
+ */
+
+public final class RuleEvaluator implements MatchListener {
+
+    /**
+     * Initial capacity of the sets' history
+     */
+    private static final int INITIAL_CAPACITY = 8;
+
+    /**
+     * Game, definition, state and journal of the match
+     */
+    private final Game mGame;
+    private final GameDefinition mDefinition;
+    private final MatchState mState;
+    private final ActionJournal mJournal;
+
+    /**
+     * Rules of the match
+     */
+    private final MatchRules mRules;
+
+    /**
+     * Count of the teams
+     */
+    private final int mTeamCount;
+
+    /**
+     * Points of the teams in the current set
+     */
+    private final int[] mSetScores;
+
+    /**
+     * Count of the changes in the current set, taken away by the undone changes
+     */
+    private int mSetEvents;
+
+    /**
+     * Finished sets: points of the teams (row per set), winners and counts of the changes
+     */
+    private int[] mFinishedScores;
+    private int[] mSetWinners;
+    private int[] mFinishedEvents;
+    private int mSetCount;
+
+    /**
+     * Sets won by each team
+     */
+    private final int[] mSetsWon;
+
+    /**
+     * Winner of the match or -1
+     */
+    private int mMatchWinner = -1;
+
+    /**
+     * Constructor of the evaluator over the current state and journal of the match.
+     * The evaluator should be added to the game as a listener.
+     *
+     * @param game game of the match with rules
+     */
+    public RuleEvaluator(Game game) {
+        this(game, true);
+    }
+
+    /**
+     * Constructor of the evaluator
+     *
+     * @param game game of the match with rules
+     * @param isRebuilt true if the sets are rebuilt from the journal
+     */
+    private RuleEvaluator(Game game, boolean isRebuilt) {
+        mGame = game;
+        mDefinition = game.getDefinition();
+        mState = game.getState();
+        mJournal = game.getJournal();
+        mRules = mDefinition.getRules();
+        if (mRules == null) throw new IllegalArgumentException("Game " + mDefinition.getGameName() + " has no rules");
+        mTeamCount = mDefinition.getTeamCount();
+        mSetScores = new int[mTeamCount];
+        mFinishedScores = new int[INITIAL_CAPACITY * mTeamCount];
+        mSetWinners = new int[INITIAL_CAPACITY];
+        mFinishedEvents = new int[INITIAL_CAPACITY];
+        mSetsWon = new int[mTeamCount];
+        if (isRebuilt) onMatchReset();
+    }
+
+    /**
+     * Getting the sets finished before the position of the journal, e.g. when only the entries
+     * after the position are saved. Manual ends at the position are left to the saved journal
+     * unless they are included.
+     *
+     * @param game game of the match
+     * @param position position in the journal, not after its cursor
+     * @param isEndMarked true if the manual ends at the position are included
+     * @return set history as given by {@link Game#getSetHistory()}
+     */
+    static int[] getSetHistory(Game game, int position, boolean isEndMarked) {
+        if (game.getDefinition().getRules() == null) return game.getSetHistory();
+        RuleEvaluator evaluator = new RuleEvaluator(game, false);
+        evaluator.rebuild(position, isEndMarked);
+        int stride = evaluator.mTeamCount + 1;
+        int[] history = new int[evaluator.mSetCount * stride];
+        for (int s = 0; s < evaluator.mSetCount; s++) {
+            System.arraycopy(evaluator.mFinishedScores, s * evaluator.mTeamCount, history, s * stride,
+                    evaluator.mTeamCount);
+            history[s * stride + evaluator.mTeamCount] = evaluator.mSetWinners[s];
+        }
+        return history;
+    }
+
+    /**
+     * Applying the change to the current set and checking the end of the set
+     *
+     * @param actionIndex index of the action in the game
+     * @param delta change of the counter
+     * @param timestamp monotonic time of the change in milliseconds
+     */
+    @Override
+    public void onActionChanged(int actionIndex, int delta, long timestamp) {
+        applyChange(mState, delta);
+    }
+
+    /**
+     * Ending the current set marked by the game
+     *
+     * @param timestamp monotonic time of the end in milliseconds
+     */
+    @Override
+    public void onSetEnded(long timestamp) {
+        finishSetByLeader();
+    }
+
+    /**
+     * Rebuilding the sets and their manual ends from the set history and the journal of the game.
+     * Changes made before the oldest entry of the journal and not in the finished sets of the history
+     * are counted in the current set.
+     */
+    @Override
+    public void onMatchReset() {
+        rebuild(mJournal.getCursor(), true);
+    }
+
+    /**
+     * Rebuilding the sets from the set history and the applied entries of the journal before the position
+     *
+     * @param end position in the journal, not after its cursor
+     * @param isEndMarked true if the manual ends at the position are applied
+     */
+    private void rebuild(int end, boolean isEndMarked) {
+        mSetCount = 0;
+        mSetEvents = 0;
+        mMatchWinner = -1;
+        Arrays.fill(mSetsWon, 0);
+        // points of the actions can depend on the counters, so the journal is undone and replayed on a copy
+        MatchState replay = new MatchState(mDefinition);
+        replay.setCounts(mState.getCounts(), mState.getNonLinearPoints());
+        int cursor = mJournal.getCursor();
+        for (int i = cursor - 1; i >= 0; i--) {
+            replay.apply(mJournal.getAction(i), -mJournal.getDelta(i));
+        }
+        replay.copyScores(mSetScores);
+        int[] history = mGame.getSetHistory();
+        int stride = mTeamCount + 1;
+        for (int row = 0; row < history.length; row += stride) {
+            for (int t = 0; t < mTeamCount; t++) {
+                mSetScores[t] -= history[row + t];
+            }
+        }
+        for (int row = 0; row < history.length; row += stride) {
+            addFinishedSet(history, row, history[row + mTeamCount], 0);
+        }
+        int markCount = mJournal.getMarkCount();
+        int mark = 0;
+        for (int i = 0; i <= end; i++) {
+            if (i > 0) {
+                replay.apply(mJournal.getAction(i - 1), mJournal.getDelta(i - 1));
+                applyChange(replay, mJournal.getDelta(i - 1));
+            }
+            if (i == end && !isEndMarked) break;
+            for (; mark < markCount && mJournal.getMark(mark) == i; mark++) {
+                finishSetByLeader();
+            }
+        }
+    }
+
+    /**
+     * Ending the current set manually, e.g. a frame of snooker. The set is won by the leading team.
+     * The end is marked by the game, so it is kept after restoring and reloading the match.
+     *
+     * @return index of the winner of the set or -1 if the set is drawn or the match is over
+     */
+    public int endSet() {
+        if (mMatchWinner >= 0) return -1;
+        int leader = findLeader();
+        if (leader >= 0) mGame.endSet();
+        return leader;
+    }
+
+    /**
+     * Getting rules of the match
+     *
+     * @return rules
+     */
+    public MatchRules getRules() {
+        return mRules;
+    }
+
+    /**
+     * Getting index of the current set
+     *
+     * @return count of the finished sets
+     */
+    public int getSetCount() {
+        return mSetCount;
+    }
+
+    /**
+     * Getting points of the team in the current set
+     *
+     * @param teamIndex index of the team
+     * @return points
+     */
+    public int getSetScore(int teamIndex) {
+        return mSetScores[teamIndex];
+    }
+
+    /**
+     * Getting points of the team in the finished set
+     *
+     * @param setIndex index of the finished set
+     * @param teamIndex index of the team
+     * @return points
+     */
+    public int getFinishedSetScore(int setIndex, int teamIndex) {
+        return mFinishedScores[setIndex * mTeamCount + teamIndex];
+    }
+
+    /**
+     * Getting winner of the finished set
+     *
+     * @param setIndex index of the finished set
+     * @return index of the team
+     */
+    public int getSetWinner(int setIndex) {
+        return mSetWinners[setIndex];
+    }
+
+    /**
+     * Getting count of the sets won by the team
+     *
+     * @param teamIndex index of the team
+     * @return sets count
+     */
+    public int getSetsWon(int teamIndex) {
+        return mSetsWon[teamIndex];
+    }
+
+    /**
+     * Getting winner of the match
+     *
+     * @return index of the team or -1 if the match is not over
+     */
+    public int getMatchWinner() {
+        return mMatchWinner;
+    }
+
+    /**
+     * Checking if the current set is ended manually
+     *
+     * @return true if the current set has no target points
+     */
+    public boolean isManualSet() {
+        return mRules.isManual(mSetCount);
+    }
+
+    /**
+     * Applying the last change of the state to the current set and checking the end of the set
+     *
+     * @param state state with the points of the last change
+     * @param delta change of the counter
+     */
+    private void applyChange(MatchState state, int delta) {
+        if (delta < 0 && mSetEvents <= 0 && mSetCount > 0) reopenSet();
+        for (int t = 0; t < mTeamCount; t++) {
+            mSetScores[t] += state.getLastPoints(t);
+        }
+        mSetEvents += delta;
+        if (mMatchWinner < 0 && !mRules.isManual(mSetCount)) checkSet();
+    }
+
+    /**
+     * Finishing the current set if the leader reached the target with the margin
+     */
+    private void checkSet() {
+        int leader = 0;
+        int second = Integer.MIN_VALUE;
+        for (int t = 1; t < mTeamCount; t++) {
+            if (mSetScores[t] > mSetScores[leader]) {
+                second = mSetScores[leader];
+                leader = t;
+            } else if (mSetScores[t] > second) {
+                second = mSetScores[t];
+            }
+        }
+        if (mSetScores[leader] >= mRules.getSetPoints(mSetCount)
+                && (mTeamCount == 1 || mSetScores[leader] - second >= mRules.getMargin())) {
+            finishSet(leader);
+        }
+    }
+
+    /**
+     * Finishing the current set by the leading team if there is one and the match is not over
+     */
+    private void finishSetByLeader() {
+        if (mMatchWinner >= 0) return;
+        int leader = findLeader();
+        if (leader >= 0) finishSet(leader);
+    }
+
+    /**
+     * Moving the current set to the history and starting the next one
+     *
+     * @param winner index of the winner of the set
+     */
+    private void finishSet(int winner) {
+        addFinishedSet(mSetScores, 0, winner, mSetEvents);
+        Arrays.fill(mSetScores, 0);
+        mSetEvents = 0;
+    }
+
+    /**
+     * Adding the set to the history
+     *
+     * @param scores array with the points of the teams in the set
+     * @param offset offset of the points in the array
+     * @param winner index of the winner of the set
+     * @param events count of the changes in the set
+     */
+    private void addFinishedSet(int[] scores, int offset, int winner, int events) {
+        if (mSetCount == mSetWinners.length) grow();
+        System.arraycopy(scores, offset, mFinishedScores, mSetCount * mTeamCount, mTeamCount);
+        mSetWinners[mSetCount] = winner;
+        mFinishedEvents[mSetCount] = events;
+        mSetCount++;
+        mSetsWon[winner]++;
+        if (mSetsWon[winner] >= mRules.getSetsToWin()) mMatchWinner = winner;
+    }
+
+    /**
+     * Moving the last finished set back to the current one. Points of the current set are kept.
+     */
+    private void reopenSet() {
+        mSetCount--;
+        int row = mSetCount * mTeamCount;
+        for (int t = 0; t < mTeamCount; t++) {
+            mSetScores[t] += mFinishedScores[row + t];
+        }
+        mSetsWon[mSetWinners[mSetCount]]--;
+        mSetEvents += mFinishedEvents[mSetCount];
+        mMatchWinner = -1;
+    }
+
+    /**
+     * Finding the team with the strictly highest points in the current set
+     *
+     * @return index of the team or -1 for a draw
+     */
+    private int findLeader() {
+        int leader = -1;
+        int best = Integer.MIN_VALUE;
+        boolean isDraw = false;
+        for (int t = 0; t < mTeamCount; t++) {
+            if (mSetScores[t] > best) {
+                best = mSetScores[t];
+                leader = t;
+                isDraw = false;
+            } else if (mSetScores[t] == best) {
+                isDraw = true;
+            }
+        }
+        return isDraw ? -1 : leader;
+    }
+
+    /**
+     * Doubling capacity of the sets' history
+     */
+    private void grow() {
+        int capacity = mSetWinners.length * 2;
+        mFinishedScores = Arrays.copyOf(mFinishedScores, capacity * mTeamCount);
+        mSetWinners = Arrays.copyOf(mSetWinners, capacity);
+        mFinishedEvents = Arrays.copyOf(mFinishedEvents, capacity);
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.android.scorekeeper.model;
+
+/**
+ * State of one match changed and read by one thread only, e.g. by the shard of the {@link MatchEngine}.
+ * Counters, totals and points are dispatched like in {@link MatchState}, but they are kept in plain arrays
+ * without the lock, the atomics and the sequence number, as there is neither other writer nor other reader.
+ *
+ * @package com.example.android.scorekeeper
+ * (c) 2018, Igor Korovchenko.
+ */
+
+final class SingleWriterMatchState {
+
+    /**
+     * Definition of the game
+     */
+    private final GameDefinition mDefinition;
+
+    /**
+     * Score changes matrix of the definition and count of its columns
+     */
+    private final int[] mScoreChanges;
+    private final int mTeamCount;
+
+    /**
+     * Dispatch table of the definition or null if all actions are linear
+     */
+    private final int[] mDispatch;
+
+    /**
+     * Counters of all game actions
+     */
+    private final int[] mActionsCounts;
+
+    /**
+     * Running totals of the scores for each team
+     */
+    private final int[] mScores;
+
+    /**
+     * Points given by each conditional and scaled action: row per slot of the action, column per team
+     */
+    private final int[] mNonLinearPoints;
+
+    /**
+     * Constructor of the match with zero counters
+     *
+     * @param definition definition of the game
+     */
+    SingleWriterMatchState(GameDefinition definition) {
+        mDefinition = definition;
+        mScoreChanges = definition.getScoreChanges();
+        mTeamCount = definition.getTeamCount();
+        mDispatch = definition.getDispatchTable();
+        mActionsCounts = new int[definition.getActionCount()];
+        mScores = new int[mTeamCount];
+        mNonLinearPoints = new int[definition.getNonLinearCount() * mTeamCount];
+    }
+
+    /**
+     * Getting definition of the game
+     *
+     * @return game definition
+     */
+    GameDefinition getDefinition() {
+        return mDefinition;
+    }
+
+    /**
+     * Getting the counters of all actions, not copied
+     *
+     * @return array of actions' states
+     */
+    int[] getCounts() {
+        return mActionsCounts;
+    }
+
+    /**
+     * Getting the points given by the conditional and scaled actions, not copied
+     *
+     * @return row per slot of the action, column per team
+     */
+    int[] getNonLinearPoints() {
+        return mNonLinearPoints;
+    }
+
+    /**
+     * Changing the counter of the action and the running totals by delta.
+     * Taps are evaluated on the counters before the change and undoes on the counters after it.
+     *
+     * @param actionIndex index of the action in the game
+     * @param delta change of the counter
+     */
+    void apply(int actionIndex, int delta) {
+        int row = actionIndex * mTeamCount;
+        int entry = actionIndex * GameDefinition.DISPATCH_STRIDE;
+        if (mDispatch == null || mDispatch[entry + GameDefinition.DISPATCH_KIND] == GameDefinition.KIND_LINEAR) {
+            mActionsCounts[actionIndex] += delta;
+            for (int i = 0; i < mTeamCount; i++) {
+                mScores[i] += delta * mScoreChanges[row + i];
+            }
+            return;
+        }
+        if (delta < 0) mActionsCounts[actionIndex] += delta;
+        int factor = delta * MatchState.multiplier(mDispatch, entry,
+                mActionsCounts[mDispatch[entry + GameDefinition.DISPATCH_SOURCE]]);
+        if (delta >= 0) mActionsCounts[actionIndex] += delta;
+        int slotRow = mDispatch[entry + GameDefinition.DISPATCH_SLOT] * mTeamCount;
+        for (int i = 0; i < mTeamCount; i++) {
+            int points = factor * mScoreChanges[row + i];
+            mScores[i] += points;
+            if (slotRow >= 0) mNonLinearPoints[slotRow + i] += points;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.android.scorekeeper.model;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Wire format of the live sync of the match between the scoring device and the displays.
+ * The connection starts with the hello: magic, version and fingerprint of the definition
+ * (big-endian), so the display checks that it shows the same game.
+ * Then frames follow, each as the big-endian length and the varint payload:
+ * snapshot - type, sequence of the last included change or reset, actions count, zigzag counters,
+ * points count, zigzag points of the conditional and scaled actions;
+ * deltas - type, sequence of the first change, changes count and per change
+ * action index and zigzag delta. Changes of the batch have consecutive sequences.
+ *
+ * @package com.example.android.scorekeeper
+ * (c) 2018, Igor Korovchenko.
+ */
+
+final class SyncProtocol {
+
+    /**
+     * Magic number "SKSY" and version of the protocol
+     */
+    private static final int MAGIC = 0x534B5359;
+    private static final int VERSION = 1;
+
+    /**
+     * Types of the frames
+     */
+    static final int FRAME_SNAPSHOT = 1;
+    static final int FRAME_DELTAS = 2;
+
+    /**
+     * Largest accepted frame, protects the display from the corrupted length
+     */
+    private static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+
+    private SyncProtocol() {
+    }
+
+    /**
+     * Writing the hello of the connection
+     *
+     * @param out stream of the connection
+     * @param fingerprint fingerprint of the definition
+     * @throws IOException if the connection is broken
+     */
+    static void writeHello(DataOutputStream out, long fingerprint) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(fingerprint);
+        out.flush();
+    }
+
+    /**
+     * Reading and checking the hello of the connection
+     *
+     * @param in stream of the connection
+     * @param fingerprint fingerprint of the definition of the display
+     * @throws IOException if the connection is broken or the peer shows other game
+     */
+    static void readHello(DataInputStream in, long fingerprint) throws IOException {
+        if (in.readInt() != MAGIC) throw new IOException("Not a match sync connection");
+        int version = in.readInt();
+        if (version != VERSION) throw new IOException("Unsupported sync version " + version);
+        if (in.readLong() != fingerprint) throw new IOException("Sync of other game definition");
+    }
+
+    /**
+     * Encoding the snapshot frame
+     *
+     * @param sequence sequence of the last change included in the snapshot
+     * @param counts counters of all actions
+     * @param nonLinearPoints points of the conditional and scaled actions
+     * @return frame with the length
+     */
+    static byte[] encodeSnapshot(long sequence, int[] counts, int[] nonLinearPoints) {
+        MatchStateCodec.Writer writer = new MatchStateCodec.Writer(16 + 2 * (counts.length + nonLinearPoints.length));
+        writer.writeVarint(FRAME_SNAPSHOT);
+        writer.writeVarint(sequence);
+        writer.writeVarint(counts.length);
+        for (int count : counts) {
+            writer.writeVarint(MatchStateCodec.zigzag(count));
+        }
+        writer.writeVarint(nonLinearPoints.length);
+        for (int points : nonLinearPoints) {
+            writer.writeVarint(MatchStateCodec.zigzag(points));
+        }
+        return frame(writer.toByteArray());
+    }
+
+    /**
+     * Encoding the deltas frame
+     *
+     * @param firstSequence sequence of the first change
+     * @param changes pairs of action index and delta
+     * @param count count of the changes
+     * @return frame with the length
+     */
+    static byte[] encodeDeltas(long firstSequence, int[] changes, int count) {
+        MatchStateCodec.Writer writer = new MatchStateCodec.Writer(16 + 3 * count);
+        writer.writeVarint(FRAME_DELTAS);
+        writer.writeVarint(firstSequence);
+        writer.writeVarint(count);
+        for (int i = 0; i < count; i++) {
+            writer.writeVarint(changes[2 * i]);
+            writer.writeVarint(MatchStateCodec.zigzag(changes[2 * i + 1]));
+        }
+        return frame(writer.toByteArray());
+    }
+
+    /**
+     * Reading the payload of the next frame
+     *
+     * @param in stream of the connection
+     * @return payload
+     * @throws IOException if the connection is broken or the length is wrong
+     */
+    static byte[] readFrame(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        if (size <= 0 || size > MAX_FRAME_SIZE) throw new IOException("Wrong sync frame size " + size);
+        byte[] payload = new byte[size];
+        in.readFully(payload);
+        return payload;
+    }
+
+    /**
+     * Prefixing the payload by its length
+     *
+     * @param payload payload of the frame
+     * @return frame
+     */
+    private static byte[] frame(byte[] payload) {
+        byte[] frame = new byte[4 + payload.length];
+        frame[0] = (byte) (payload.length >>> 24);
+        frame[1] = (byte) (payload.length >>> 16);
+        frame[2] = (byte) (payload.length >>> 8);
+        frame[3] = (byte) payload.length;
+        System.arraycopy(payload, 0, frame, 4, payload.length);
+        return frame;
+    }
+}
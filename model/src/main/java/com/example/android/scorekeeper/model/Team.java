@@ -0,0 +1,72 @@
+package com.example.android.scorekeeper.model;
+
+/**
+ * Class of the team's model with all information of the team.
+ * The team is a lightweight view of its range of the players in the game definition.
+ *
+ * @package com.example.android.scorekeeper
+ * (c) 2018, Igor Korovchenko.
+ */
+
+public class Team {
+
+    /**
+     * Game of the team
+     */
+    private final Game mGame;
+
+    /**
+     * Index of the team in the game
+     */
+    private final int mIndex;
+
+    /**
+     * Constructor of the team model
+     *
+     * @param game game of the team
+     * @param index index of the team in the game
+     */
+    Team(Game game, int index) {
+        this.mGame = game;
+        this.mIndex = index;
+    }
+
+    /**
+     * Getting a name of the team. If team consists of only one player,
+     * the name of the team will be change to player's name.
+     *
+     * @return name of the team
+     */
+    public String getName() {
+        return mGame.getDefinition().getTeamName(mIndex);
+    }
+
+    /**
+     * Getting index of the team in the game
+     *
+     * @return team's index
+     */
+    public int getIndex() {
+        return mIndex;
+    }
+
+    /**
+     * Getting a size of the player array
+     *
+     * @return count of the players in the team
+     */
+    public int getPlayerCount() {
+        GameDefinition definition = mGame.getDefinition();
+        return definition.getFirstPlayer(mIndex + 1) - definition.getFirstPlayer(mIndex);
+    }
+
+    /**
+     * Getting one player at index of the team players
+     *
+     * @param index index of the player. First player has zero index.
+     * @return Player at index
+     */
+    public Player getPlayer(int index) {
+        return new Player(mGame, mGame.getDefinition().getFirstPlayer(mIndex) + index);
+    }
+}
@@ -0,0 +1,188 @@
+package com.example.android.scorekeeper.model;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the journal of the applied actions
+ */
+public class ActionJournalTest {
+
+    @Test
+    public void undoRedo_walkWholeHistory() throws Exception {
+        Game game = GameTest.loadGame("snooker.json");
+        Random random = new Random(11);
+        int[][] states = new int[301][];
+        states[0] = game.getCurrentState();
+        for (int i = 1; i < states.length; i++) {
+            GameTest.tapRandomly(game, random, 1);
+            states[i] = game.getCurrentState();
+        }
+        int steps = game.getJournal().getCursor();
+        for (int i = steps - 1; i >= 0; i--) {
+            assertTrue(game.undo() >= 0);
+        }
+        assertEquals(-1, game.undo());
+        assertArrayEquals(states[0], game.getCurrentState());
+        assertArrayEquals(new int[game.getTeamCount()], game.getScores());
+
+        while (game.redo() >= 0) {
+            assertArrayEquals(GameTest.recomputeScores(game), game.getScores());
+        }
+        assertArrayEquals(states[states.length - 1], game.getCurrentState());
+    }
+
+    @Test
+    public void record_dropsRedoTail() {
+        ActionJournal journal = new ActionJournal();
+        journal.record(1, 1, 10L);
+        journal.record(2, 1, 20L);
+        journal.record(3, 1, 30L);
+        assertEquals(2, journal.undo());
+        assertEquals(1, journal.undo());
+        journal.record(4, -1, 40L);
+        assertFalse(journal.canRedo());
+        assertEquals(2, journal.size());
+        assertEquals(4, journal.getAction(1));
+        assertEquals(-1, journal.getDelta(1));
+        assertEquals(40L, journal.getTimestamp(1));
+    }
+
+    @Test
+    public void record_limitedJournalKeepsLatestEntries() {
+        ActionJournal journal = new ActionJournal(100);
+        for (int i = 0; i < 250; i++) {
+            journal.record(i, 1, i);
+        }
+        assertEquals(100, journal.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(150 + i, journal.getAction(i));
+        }
+        int undone = 0;
+        while (journal.undo() >= 0) undone++;
+        assertEquals(100, undone);
+    }
+
+    @Test
+    public void marks_followEntries() {
+        ActionJournal journal = new ActionJournal(4);
+        journal.record(1, 1, 10L);
+        journal.mark();
+        journal.record(2, 1, 20L);
+        journal.mark();
+        journal.undo();
+        assertEquals(1, journal.getMarkCount());
+        journal.record(3, 1, 30L);
+        journal.record(4, 1, 40L);
+        journal.record(5, 1, 50L);
+        journal.mark();
+        assertArrayEquals(new int[]{1, 4}, journal.exportMarks());
+
+        // overwriting the oldest entries moves the marks and drops the ones before the journal
+        journal.record(6, 1, 60L);
+        assertArrayEquals(new int[]{0, 3}, journal.exportMarks());
+        journal.record(7, 1, 70L);
+        assertArrayEquals(new int[]{2}, journal.exportMarks());
+
+        ActionJournal imported = new ActionJournal();
+        assertTrue(imported.importEntries(journal.exportEntries(), journal.exportTimestamps(), journal.exportMarks()));
+        assertArrayEquals(journal.exportMarks(), imported.exportMarks());
+        assertFalse(imported.importEntries(journal.exportEntries(), journal.exportTimestamps(), new int[]{5}));
+    }
+
+    @Test
+    public void marks_areRestoredByRedo() {
+        ActionJournal journal = new ActionJournal();
+        journal.record(1, 1, 10L);
+        journal.mark();
+        journal.record(2, 1, 20L);
+        journal.mark();
+        journal.mark();
+        journal.record(3, 1, 30L);
+        journal.undo();
+        journal.undo();
+        journal.undo();
+        assertEquals(0, journal.getMarkCount());
+        assertEquals(3, journal.getStoredMarkCount());
+        assertArrayEquals(new int[]{1, 2, 2}, journal.exportMarks());
+
+        // the undone marks are kept by the saved state
+        ActionJournal imported = new ActionJournal();
+        assertTrue(imported.importEntries(journal.exportEntries(), journal.exportTimestamps(), journal.exportMarks()));
+        for (ActionJournal j : new ActionJournal[]{journal, imported}) {
+            assertEquals(0, j.redo());
+            assertEquals(1, j.getMarkCount());
+            assertEquals(1, j.redo());
+            assertEquals(3, j.getMarkCount());
+            assertEquals(2, j.redo());
+            assertEquals(3, j.getMarkCount());
+        }
+
+        // recording after undo drops the undone marks with the entries
+        journal.undo();
+        journal.undo();
+        assertEquals(1, journal.getMarkCount());
+        journal.record(4, 1, 40L);
+        assertEquals(1, journal.getStoredMarkCount());
+        assertEquals(-1, journal.redo());
+        assertArrayEquals(new int[]{1}, journal.exportMarks());
+    }
+
+    @Test
+    public void replay_restoresState() throws Exception {
+        Game game = GameTest.loadGame("beach_volleyball.json");
+        GameTest.tapRandomly(game, new Random(5), 1000);
+        game.undo();
+        game.undo();
+
+        MatchState replayed = new MatchState(game.getDefinition());
+        game.getJournal().replay(replayed);
+        assertArrayEquals(game.getCurrentState(), replayed.getCounts());
+        assertArrayEquals(game.getScores(), replayed.getScores());
+    }
+
+    @Test
+    public void exportEntries_roundTrip() throws Exception {
+        Game game = GameTest.loadGame("snooker.json");
+        GameTest.tapRandomly(game, new Random(3), 500);
+        game.undo();
+
+        Game restored = GameTest.loadGame("snooker.json");
+        restored.setCurrentState(game.getCurrentState());
+        ActionJournal journal = game.getJournal();
+        assertTrue(restored.getJournal().importEntries(journal.exportEntries(), journal.exportTimestamps()));
+        assertEquals(journal.getCursor(), restored.getJournal().getCursor());
+
+        assertEquals(game.redo(), restored.redo());
+        while (game.getJournal().canUndo()) {
+            assertEquals(game.undo(), restored.undo());
+        }
+        assertArrayEquals(game.getCurrentState(), restored.getCurrentState());
+        assertFalse(restored.getJournal().importEntries(new int[]{5}, new long[0]));
+    }
+
+    @Test
+    public void record_growsLinearlyWithEntries() {
+        long small = measureRecordAndUndo(100000);
+        long large = measureRecordAndUndo(1000000);
+        assertTrue("10x entries took " + large / Math.max(1, small) + "x time", large < small * 40);
+    }
+
+    private static long measureRecordAndUndo(int count) {
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run < 3; run++) {
+            ActionJournal journal = new ActionJournal();
+            long start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                journal.record(i & 1023, 1, i);
+            }
+            while (journal.undo() >= 0) ;
+            best = Math.min(best, System.nanoTime() - start);
+            assertEquals(count, journal.size());
+        }
+        return best;
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.android.scorekeeper.model;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the changes of the match from several threads
+ */
+public class ConcurrentGameTest {
+
+    /**
+     * Every action gives the same points to both teams, so the consistent scores are always equal
+     */
+    private static final String MIRROR_DEFINITION = "{\"name\":\"Mirror\",\"teams\":{"
+            + "\"Team 1\":{\"Player 1\":{\"buttons\":{\"One\":[1,1],\"Two\":[2,2],\"Three\":[3,3]}}},"
+            + "\"Team 2\":{\"Player 2\":{\"buttons\":{\"Five\":[5,5],\"Seven\":[7,7]}}}}}";
+
+    private static final int WRITER_COUNT = 4;
+    private static final int CHANGES_PER_WRITER = 50000;
+
+    @Test
+    public void concurrentChanges_keepExactTotalsAndConsistentScores() throws Exception {
+        final Game game = GameParserTest.parse(MIRROR_DEFINITION);
+        final int actionCount = game.getActionCount();
+        // listeners are called under the lock of the game, so the plain array is enough
+        final int[] notified = new int[actionCount];
+        game.addMatchListener(new MatchListener() {
+            @Override
+            public void onActionChanged(int actionIndex, int delta, long timestamp) {
+                notified[actionIndex] += delta;
+            }
+
+            @Override
+            public void onSetEnded(long timestamp) {
+            }
+
+            @Override
+            public void onMatchReset() {
+                fail("no resets expected");
+            }
+        });
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicBoolean isWriting = new AtomicBoolean(true);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] writers = new Thread[WRITER_COUNT];
+        for (int w = 0; w < WRITER_COUNT; w++) {
+            final Random random = new Random(w);
+            writers[w] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < CHANGES_PER_WRITER; i++) {
+                            GameAction action = game.getGameAction(random.nextInt(actionCount));
+                            int operation = random.nextInt(10);
+                            if (operation < 6) {
+                                action.addAction();
+                            } else if (operation < 8) {
+                                action.undoAction();
+                            } else if (operation < 9) {
+                                game.undo();
+                            } else {
+                                game.redo();
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            });
+            writers[w].start();
+        }
+        final int[] snapshots = new int[1];
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                int[] scores = new int[2];
+                while (isWriting.get()) {
+                    game.getState().copyScores(scores);
+                    if (scores[0] != scores[1]) {
+                        failure.compareAndSet(null, new AssertionError("torn snapshot"));
+                        return;
+                    }
+                    snapshots[0]++;
+                }
+            }
+        });
+        reader.start();
+        start.countDown();
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        isWriting.set(false);
+        reader.join();
+        if (failure.get() != null) throw new AssertionError(failure.get());
+
+        int[] counts = game.getCurrentState();
+        assertArrayEquals(notified, counts);
+        for (int count : counts) {
+            assertTrue(count >= 0);
+        }
+        MatchState recomputed = new MatchState(game.getDefinition());
+        recomputed.setCounts(counts);
+        assertArrayEquals(recomputed.getScores(), game.getScores());
+        MatchState replayed = new MatchState(game.getDefinition());
+        game.getJournal().replay(replayed);
+        assertArrayEquals(counts, replayed.getCounts());
+        assertTrue(snapshots[0] > 0);
+    }
+}
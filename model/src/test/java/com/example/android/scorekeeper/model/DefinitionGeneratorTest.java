@@ -0,0 +1,76 @@
+package com.example.android.scorekeeper.model;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the generated game definitions
+ */
+public class DefinitionGeneratorTest {
+
+    @Test
+    public void generate_givesAllActionsOfTheSizes() throws Exception {
+        DefinitionGenerator generator = new DefinitionGenerator(3, 4, 5);
+        Game game = GameParserTest.parse(generator.generate());
+        assertEquals(3, game.getTeamCount());
+        assertEquals(4, game.getTeam(2).getPlayerCount());
+        assertEquals(5, game.getTeam(2).getPlayer(3).getActionCount());
+        assertEquals(generator.getTotalActionCount(), game.getActionCount());
+        assertTrue(game.getDefinition().isLinear());
+        // teams, players and actions keep the order and the names given by the generator
+        for (int t = 0; t < 3; t++) {
+            Team team = game.getTeam(t);
+            assertEquals("Team " + (t + 1), team.getName());
+            for (int p = 0; p < 4; p++) {
+                Player player = team.getPlayer(p);
+                assertEquals("Player " + (p + 1), player.getName());
+                for (int a = 0; a < 5; a++) {
+                    GameAction action = player.getGameAction(a);
+                    assertEquals("Action " + (a + 1), action.getName());
+                    // points go to the team of the player or, for the penalty, one point to each opponent
+                    int own = game.getScoreChange(action.getIndex(), t);
+                    for (int i = 0; i < 3; i++) {
+                        if (i == t) continue;
+                        assertEquals(own == 0 ? 1 : 0, game.getScoreChange(action.getIndex(), i));
+                    }
+                    assertTrue(own >= 0 && own <= 7);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void generate_dependsOnTheSeedOnly() throws Exception {
+        DefinitionGenerator generator = new DefinitionGenerator(2, 10, 10);
+        generator.setSeed(20);
+        String first = generator.generate();
+        assertEquals(first, generator.generate());
+        generator.setSeed(21);
+        assertNotEquals(first, generator.generate());
+    }
+
+    @Test
+    public void generate_resolvesNonLinearActionsAndRules() throws Exception {
+        DefinitionGenerator generator = new DefinitionGenerator(2, 3, 20);
+        generator.setNonLinearShare(50);
+        generator.setRules(new MatchRules("Set \"A\"", new int[]{25, 15}, 2, 3));
+        Game game = GameParserTest.parse(generator.generate());
+        GameDefinition definition = game.getDefinition();
+        assertEquals(generator.getTotalActionCount(), definition.getActionCount());
+        assertEquals(GameDefinition.KIND_COUNTER, definition.getActionKind(0));
+        assertTrue(definition.getNonLinearCount() > 0);
+        for (int a = 0; a < definition.getActionCount(); a++) {
+            int kind = definition.getActionKind(a);
+            if (kind == GameDefinition.KIND_CONDITIONAL || kind == GameDefinition.KIND_SCALED) {
+                assertEquals(a / 20 * 20, definition.getActionSource(a));
+            }
+        }
+        assertEquals(new MatchRules("Set \"A\"", new int[]{25, 15}, 2, 3), definition.getRules());
+
+        GameTest.tapRandomly(game, new Random(20), 1000);
+        assertArrayEquals(GameTest.recomputeScores(game), game.getScores());
+    }
+}
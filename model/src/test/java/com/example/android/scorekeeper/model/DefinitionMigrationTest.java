@@ -0,0 +1,127 @@
+package com.example.android.scorekeeper.model;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the migration of the match between versions of the definition
+ */
+public class DefinitionMigrationTest {
+
+    private static String readAsset(String fileName) throws Exception {
+        return new String(Files.readAllBytes(new File(GameTest.ASSETS_DIR + fileName).toPath()),
+                GameParserTest.UTF_8);
+    }
+
+    /**
+     * Beach volleyball where each player of the first team gets "Dig" before "Kill" and loses "Block"
+     */
+    private static Game editedGame() throws Exception {
+        String json = readAsset("beach_volleyball.json")
+                .replace("\"Kill\": [1, 0],", "\"Dig\": [1, 0],\n\"Kill\": [1, 0],")
+                .replace("\"Block\": [1, 0],", "");
+        return GameParserTest.parse(json);
+    }
+
+    private static int findAction(GameDefinition definition, String teamName, String playerName, String actionName) {
+        for (int a = 0; a < definition.getActionCount(); a++) {
+            int player = definition.getActionPlayer(a);
+            if (definition.getTeamName(definition.getPlayerTeam(player)).equals(teamName)
+                    && definition.getPlayerName(player).equals(playerName)
+                    && definition.getActionName(a).equals(actionName)) return a;
+        }
+        return -1;
+    }
+
+    @Test
+    public void migrate_keepsCountersByNames() throws Exception {
+        Game source = GameTest.loadGame("beach_volleyball.json");
+        Game target = editedGame();
+        GameDefinition from = source.getDefinition();
+        GameDefinition to = target.getDefinition();
+        GameTest.tapRandomly(source, new Random(25), 200);
+        DefinitionMigration migration = new DefinitionMigration(from, to);
+        migration.migrate(source, target);
+
+        assertTrue(migration.isSameTeams());
+        for (int a = 0; a < to.getActionCount(); a++) {
+            String team = to.getTeamName(to.getPlayerTeam(to.getActionPlayer(a)));
+            String player = to.getPlayerName(to.getActionPlayer(a));
+            int sourceAction = findAction(from, team, player, to.getActionName(a));
+            assertEquals(sourceAction, migration.getSourceAction(a));
+            int expected = sourceAction < 0 ? 0 : source.getCurrentState()[sourceAction];
+            assertEquals(to.getActionName(a), expected, target.getCurrentState()[a]);
+        }
+        assertEquals(-1, migration.getTargetAction(findAction(from, "Team 1", "Player 2", "Block")));
+        assertTrue(findAction(to, "Team 1", "Player 2", "Dig") >= 0);
+        assertArrayEquals(GameTest.recomputeScores(target), target.getScores());
+    }
+
+    @Test
+    public void migrate_dropsJournalEntriesOfRemovedActions() throws Exception {
+        Game source = GameTest.loadGame("beach_volleyball.json");
+        Game target = editedGame();
+        GameDefinition from = source.getDefinition();
+        int kill = findAction(from, "Team 1", "Player 1", "Kill");
+        int block = findAction(from, "Team 1", "Player 1", "Block");
+        int error = findAction(from, "Team 2", "Player 2", "Error");
+        source.changeActionsCount(kill, 1);
+        source.changeActionsCount(block, 1);
+        source.changeActionsCount(error, 1);
+        source.changeActionsCount(block, 1);
+        source.undo();
+        new DefinitionMigration(from, target.getDefinition()).migrate(source, target);
+
+        ActionJournal journal = target.getJournal();
+        assertEquals(2, journal.size());
+        assertEquals(2, journal.getCursor());
+        assertEquals(findAction(target.getDefinition(), "Team 2", "Player 2", "Error"), target.undo());
+        assertEquals(findAction(target.getDefinition(), "Team 1", "Player 1", "Kill"), target.undo());
+        assertFalse(journal.canUndo());
+        assertArrayEquals(new int[]{0, 0}, target.getScores());
+    }
+
+    @Test
+    public void migrate_keepsPointsOfScaledTaps() throws Exception {
+        String json = "{\"name\":\"Snooker\",\"teams\":{"
+                + "\"Team 1\":{\"Player\":{\"buttons\":{"
+                + "\"Ball on\":{\"kind\":\"counter\"},"
+                + "\"Foul\":{\"points\":[0, 1],\"per\":\"Ball on\",\"min\":4}}}},"
+                + "\"Team 2\":{\"Player\":{\"buttons\":{\"Red ball\":[0, 1]}}}}}";
+        Game source = GameParserTest.parse(json);
+        source.changeActionsCount(0, 5);
+        source.changeActionsCount(1, 1);
+        source.changeActionsCount(0, 2);
+        assertArrayEquals(new int[]{0, 5}, source.getScores());
+
+        // the foul was scored on 5 balls on and keeps its points after an action is added
+        Game target = GameParserTest.parse(json.replace("\"Ball on\":{", "\"Red ball\":[1, 0],\"Ball on\":{"));
+        new DefinitionMigration(source.getDefinition(), target.getDefinition()).migrate(source, target);
+        assertArrayEquals(new int[]{0, 5}, target.getScores());
+        while (target.undo() >= 0) {
+            assertArrayEquals(GameTest.recomputeScores(target), target.getScores());
+        }
+        assertArrayEquals(new int[]{0, 0}, target.getScores());
+
+        // the foul scored differently by the new definition is evaluated on the migrated counters
+        Game changed = GameParserTest.parse(json.replace("[0, 1],\"per\"", "[0, 2],\"per\""));
+        new DefinitionMigration(source.getDefinition(), changed.getDefinition()).migrate(source, changed);
+        assertArrayEquals(new int[]{0, 14}, changed.getScores());
+    }
+
+    @Test
+    public void migrate_detectsChangedTeams() throws Exception {
+        Game source = GameTest.loadGame("beach_volleyball.json");
+        GameDefinition renamed = GameParserTest.parse(readAsset("beach_volleyball.json")
+                .replace("Team 2", "Guests")).getDefinition();
+        DefinitionMigration migration = new DefinitionMigration(source.getDefinition(), renamed);
+        assertFalse(migration.isSameTeams());
+        assertEquals(-1, migration.getSourceAction(renamed.getActionCount() - 1));
+        assertEquals(0, migration.getSourcePlayer(0));
+    }
+}
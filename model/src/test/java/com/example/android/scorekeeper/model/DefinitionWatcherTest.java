@@ -0,0 +1,91 @@
+package com.example.android.scorekeeper.model;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the watcher of the definition files
+ */
+public class DefinitionWatcherTest {
+
+    private File mDir;
+    private DefinitionWatcher mWatcher;
+    private final LinkedBlockingQueue<Object[]> mChanges = new LinkedBlockingQueue<>();
+
+    @Before
+    public void setUp() throws Exception {
+        mDir = Files.createTempDirectory("definitions").toFile();
+        mWatcher = new DefinitionWatcher(mDir, 20, new DefinitionWatcher.Listener() {
+            @Override
+            public void onDefinitionChanged(String fileName, GameDefinition definition) {
+                mChanges.add(new Object[]{fileName, definition});
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        mWatcher.close();
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                assertTrue(file.delete());
+            }
+        }
+        assertTrue(mDir.delete());
+    }
+
+    private void write(String fileName, String content, long modified) throws Exception {
+        File file = new File(mDir, fileName);
+        FileOutputStream outputStream = new FileOutputStream(file);
+        try {
+            outputStream.write(content.getBytes(GameParserTest.UTF_8));
+        } finally {
+            outputStream.close();
+        }
+        assertTrue(file.setLastModified(modified));
+    }
+
+    @Test
+    public void watcher_reportsOnlyChangedDefinitions() throws Exception {
+        write("first.json", GameParserTest.syntheticDefinition(2, 1, 2), 100000L);
+        write("second.json", GameParserTest.syntheticDefinition(2, 2, 2), 100000L);
+        write("notes.txt", "not a definition", 100000L);
+        mWatcher.start();
+        Thread.sleep(100);
+        assertNull(mChanges.poll());
+
+        write("second.json", GameParserTest.syntheticDefinition(2, 2, 3), 200000L);
+        Object[] change = mChanges.poll(5, TimeUnit.SECONDS);
+        assertNotNull(change);
+        assertEquals("second.json", change[0]);
+        assertEquals(12, ((GameDefinition) change[1]).getActionCount());
+        Thread.sleep(100);
+        assertNull(mChanges.poll());
+    }
+
+    @Test
+    public void watcher_skipsInvalidDefinitionUntilFixed() throws Exception {
+        write("game.json", GameParserTest.syntheticDefinition(2, 1, 2), 100000L);
+        mWatcher.start();
+        Thread.sleep(100);
+
+        write("game.json", "{\"name\":\"Broken\", \"teams\":{", 200000L);
+        Thread.sleep(100);
+        assertNull(mChanges.poll());
+
+        write("game.json", GameParserTest.syntheticDefinition(2, 1, 3), 300000L);
+        Object[] change = mChanges.poll(5, TimeUnit.SECONDS);
+        assertNotNull(change);
+        assertEquals(6, ((GameDefinition) change[1]).getActionCount());
+    }
+}
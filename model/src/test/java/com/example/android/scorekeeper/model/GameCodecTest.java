@@ -0,0 +1,103 @@
+package com.example.android.scorekeeper.model;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the binary encoding of the game definition
+ */
+public class GameCodecTest {
+
+    @Test
+    public void decode_restoresEncodedDefinition() throws Exception {
+        for (String fileName : new String[]{"beach_volleyball.json", "snooker.json"}) {
+            Game game = GameTest.loadGame(fileName);
+            byte[] data = GameCodec.encode(game.getDefinition(), 42L);
+            Game decoded = new Game(GameCodec.decode(ByteBuffer.wrap(data)));
+            assertSameOrder(game, decoded);
+            assertEquals(game.getDefinition().getRules(), decoded.getDefinition().getRules());
+            assertEquals(game.getDefinition().getFingerprint(), decoded.getDefinition().getFingerprint());
+        }
+    }
+
+    @Test
+    public void decode_restoresLargeDefinition() throws Exception {
+        Game game = GameParserTest.parse(GameParserTest.syntheticDefinition(2, 25, 40));
+        Game decoded = new Game(GameCodec.decode(ByteBuffer.wrap(GameCodec.encode(game.getDefinition(), 0L))));
+        assertSameOrder(game, decoded);
+    }
+
+    @Test
+    public void decode_keepsFingerprintOfUnnamedGame() throws Exception {
+        GameBuilder builder = new GameBuilder();
+        builder.addTeam("Home");
+        builder.addPlayer("Player");
+        builder.addAction("Goal", new int[]{1}, 1);
+        GameDefinition definition = builder.build();
+        assertNull(definition.getGameName());
+        GameDefinition decoded = GameCodec.decode(ByteBuffer.wrap(GameCodec.encode(definition, 0L)));
+        assertNull(decoded.getGameName());
+        assertEquals(definition.getFingerprint(), decoded.getFingerprint());
+    }
+
+    @Test
+    public void encode_sharesRepeatedNames() throws Exception {
+        Game game = GameTest.loadGame("beach_volleyball.json");
+        byte[] data = GameCodec.encode(game.getDefinition(), 0L);
+        int nameOccurrences = 0;
+        for (int i = 0; i + 4 <= data.length; i++) {
+            if (data[i] == 'K' && data[i + 1] == 'i' && data[i + 2] == 'l' && data[i + 3] == 'l') {
+                nameOccurrences++;
+            }
+        }
+        assertEquals(1, nameOccurrences);
+    }
+
+    @Test
+    public void readSourceStamp_returnsStampOfEncoding() throws Exception {
+        Game game = GameTest.loadGame("snooker.json");
+        assertEquals(1234567890123L, GameCodec.readSourceStamp(ByteBuffer.wrap(GameCodec.encode(game.getDefinition(), 1234567890123L))));
+    }
+
+    @Test(expected = IOException.class)
+    public void decode_rejectsUnknownData() throws Exception {
+        GameCodec.decode(ByteBuffer.wrap("{\"name\":\"Snooker\"}".getBytes(GameParserTest.UTF_8)));
+    }
+
+    @Test(expected = IOException.class)
+    public void decode_rejectsTruncatedData() throws Exception {
+        byte[] data = GameCodec.encode(GameTest.loadGame("snooker.json").getDefinition(), 0L);
+        GameCodec.decode(ByteBuffer.wrap(data, 0, data.length - 10).slice());
+    }
+
+    private static void assertSameOrder(Game expected, Game actual) {
+        assertEquals(expected.getGameName(), actual.getGameName());
+        assertEquals(expected.getTeamCount(), actual.getTeamCount());
+        assertEquals(expected.getActionCount(), actual.getActionCount());
+        for (int t = 0; t < expected.getTeamCount(); t++) {
+            Team team = expected.getTeam(t);
+            assertEquals(team.getName(), actual.getTeam(t).getName());
+            assertEquals(team.getPlayerCount(), actual.getTeam(t).getPlayerCount());
+            for (int p = 0; p < team.getPlayerCount(); p++) {
+                Player player = team.getPlayer(p);
+                Player actualPlayer = actual.getTeam(t).getPlayer(p);
+                assertEquals(player.getName(), actualPlayer.getName());
+                assertEquals(player.getActionCount(), actualPlayer.getActionCount());
+                for (int a = 0; a < player.getActionCount(); a++) {
+                    GameAction action = player.getGameAction(a);
+                    assertEquals(action.getName(), actualPlayer.getGameAction(a).getName());
+                    assertEquals(action.getIndex(), actualPlayer.getGameAction(a).getIndex());
+                }
+            }
+        }
+        for (int a = 0; a < expected.getActionCount(); a++) {
+            for (int i = 0; i < expected.getTeamCount(); i++) {
+                assertEquals(expected.getScoreChange(a, i), actual.getScoreChange(a, i));
+            }
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.example.android.scorekeeper.model;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the streaming game definition parser
+ */
+public class GameParserTest {
+
+    public static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    public static Game parse(String json) throws IOException {
+        return new Game(GameParser.parse(new ByteArrayInputStream(json.getBytes(UTF_8))));
+    }
+
+    /**
+     * Synthetic definition in the format of the assets
+     */
+    public static String syntheticDefinition(int teamCount, int playerCount, int actionCount) {
+        StringBuilder json = new StringBuilder("{\"name\":\"Synthetic\",\"teams\":{");
+        for (int t = 0; t < teamCount; t++) {
+            if (t > 0) json.append(',');
+            json.append("\"Team ").append(t + 1).append("\":{");
+            for (int p = 0; p < playerCount; p++) {
+                if (p > 0) json.append(',');
+                json.append("\"Player ").append(p + 1).append("\":{\"buttons\":{");
+                for (int a = 0; a < actionCount; a++) {
+                    if (a > 0) json.append(',');
+                    json.append("\"Action ").append(a + 1).append("\":[");
+                    for (int i = 0; i < teamCount; i++) {
+                        if (i > 0) json.append(',');
+                        json.append(i == t ? a % 7 + 1 : 0);
+                    }
+                    json.append(']');
+                }
+                json.append("}}");
+            }
+            json.append('}');
+        }
+        return json.append("}}").toString();
+    }
+
+    /**
+     * Checking that both games have the same teams, players, actions and score changes.
+     * Members are matched by name, because JSON objects do not define the order.
+     */
+    static void assertSameStructure(Game expected, Game actual) {
+        assertEquals(expected.getGameName(), actual.getGameName());
+        assertEquals(expected.getTeamCount(), actual.getTeamCount());
+        assertEquals(expected.getActionCount(), actual.getActionCount());
+        for (int t = 0; t < expected.getTeamCount(); t++) {
+            Team team = expected.getTeam(t);
+            Team actualTeam = actual.getTeam(findTeam(actual, team.getName()));
+            assertEquals(team.getPlayerCount(), actualTeam.getPlayerCount());
+            for (int p = 0; p < team.getPlayerCount(); p++) {
+                Player player = team.getPlayer(p);
+                Player actualPlayer = null;
+                for (int i = 0; i < actualTeam.getPlayerCount(); i++) {
+                    if (actualTeam.getPlayer(i).getName().equals(player.getName())) {
+                        actualPlayer = actualTeam.getPlayer(i);
+                    }
+                }
+                assertNotNull(player.getName(), actualPlayer);
+                assertEquals(player.getActionCount(), actualPlayer.getActionCount());
+                for (int a = 0; a < player.getActionCount(); a++) {
+                    GameAction action = player.getGameAction(a);
+                    GameAction actualAction = null;
+                    for (int i = 0; i < actualPlayer.getActionCount(); i++) {
+                        if (actualPlayer.getGameAction(i).getName().equals(action.getName())) {
+                            actualAction = actualPlayer.getGameAction(i);
+                        }
+                    }
+                    assertNotNull(action.getName(), actualAction);
+                    for (int i = 0; i < expected.getTeamCount(); i++) {
+                        String teamName = expected.getTeam(i).getName();
+                        assertEquals(
+                                expected.getScoreChange(action.getIndex(), i),
+                                actual.getScoreChange(actualAction.getIndex(), findTeam(actual, teamName))
+                        );
+                    }
+                }
+            }
+        }
+    }
+
+    private static int findTeam(Game game, String teamName) {
+        for (int t = 0; t < game.getTeamCount(); t++) {
+            if (game.getTeam(t).getName().equals(teamName)) return t;
+        }
+        fail(teamName);
+        return -1;
+    }
+
+    @Test
+    public void parse_bundledAssetsLikeJSONObjectPath() throws Exception {
+        for (String fileName : new String[]{"beach_volleyball.json", "snooker.json"}) {
+            byte[] bytes = Files.readAllBytes(Paths.get(GameTest.ASSETS_DIR + fileName));
+            Game expected = OrgJsonObjectView.newGame(new String(bytes, UTF_8));
+            Game actual = new Game(GameParser.parse(new ByteArrayInputStream(bytes)));
+            assertSameStructure(expected, actual);
+        }
+    }
+
+    @Test
+    public void parse_keepsOrderOfDefinition() throws Exception {
+        Game game = GameTest.loadGame("snooker.json");
+        assertEquals("Snooker", game.getGameName());
+        assertEquals("Team 2", game.getTeam(1).getName());
+        Player player = game.getTeam(0).getPlayer(0);
+        assertEquals(11, player.getActionCount());
+        assertEquals("Black ball", player.getGameAction(6).getName());
+        assertEquals(7, game.getScoreChange(player.getGameAction(6).getIndex(), 0));
+        assertEquals(4, game.getScoreChange(player.getGameAction(7).getIndex(), 1));
+    }
+
+    @Test
+    public void parse_syntheticDefinitionLikeJSONObjectPath() throws Exception {
+        String json = syntheticDefinition(2, 25, 40);
+        Game game = parse(json);
+        assertEquals(2000, game.getActionCount());
+        assertSameStructure(OrgJsonObjectView.newGame(json), game);
+    }
+
+    @Test
+    public void parse_skipsActionsWithWrongTeamCount() throws Exception {
+        Game game = parse("{\"teams\":{"
+                + "\"A\":{\"P\":{\"buttons\":{\"Good\":[1,0],\"Bad\":[1,0,0]}}},"
+                + "\"B\":{\"P\":{\"buttons\":{\"Short\":[1],\"Good\":[0,1]}}}"
+                + "},\"name\":\"Order\"}");
+        assertEquals("Order", game.getGameName());
+        assertEquals(2, game.getActionCount());
+        assertEquals("Good", game.getTeam(1).getPlayer(0).getGameAction(0).getName());
+        game.getTeam(1).getPlayer(0).getGameAction(0).addAction();
+        assertArrayEquals(new int[]{0, 1}, game.getScores());
+    }
+
+    @Test
+    public void parse_skipsValuesWhichAreNotObjects() throws Exception {
+        Game game = parse("{\"name\":\"Skip\",\"version\":[1,{\"a\":null}],\"teams\":{"
+                + "\"A\":{\"P\":{\"color\":\"red\",\"buttons\":{\"Point\":[1,0]}},\"Q\":true},"
+                + "\"B\":{\"P\":{\"buttons\":{\"Point\":[0,1]}}}"
+                + "}}");
+        assertEquals(2, game.getTeamCount());
+        assertEquals(1, game.getTeam(0).getPlayerCount());
+        assertEquals(2, game.getActionCount());
+    }
+
+    @Test
+    public void parse_decodesEscapesAndUnicode() throws Exception {
+        Game game = parse("{\"name\":\"P\u00e9tanque \\u00e9 \\\"1\\\" \ud83c\udfb1\",\"teams\":{"
+                + "\"\u00c9quipe\":{\"\u0418\u0433\u0440\u043e\u043a\":{\"buttons\":{\"Point\":[1]}}}}}");
+        assertEquals("P\u00e9tanque \u00e9 \"1\" \ud83c\udfb1", game.getGameName());
+        assertEquals("\u00c9quipe", game.getTeam(0).getName());
+        assertEquals("\u0418\u0433\u0440\u043e\u043a", game.getTeam(0).getPlayer(0).getName());
+    }
+
+    @Test
+    public void parse_readsLargeDefinitionInSmallChunks() throws Exception {
+        final byte[] bytes = syntheticDefinition(4, 50, 40)
+                .replace("Player", "Jo\u00e3o \ud83c\udfd0")
+                .getBytes(UTF_8);
+        InputStream trickle = new InputStream() {
+            private int mPos;
+
+            @Override
+            public int read() {
+                return mPos < bytes.length ? bytes[mPos++] & 0xff : -1;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) {
+                if (mPos == bytes.length) return -1;
+                int count = Math.min(Math.min(length, 1 + mPos % 7), bytes.length - mPos);
+                System.arraycopy(bytes, mPos, buffer, offset, count);
+                mPos += count;
+                return count;
+            }
+        };
+
+        GameParser parser = new GameParser(trickle, new byte[5]);
+        Game game = new Game(parser.parse());
+        assertEquals(bytes.length, parser.getBytesRead());
+        assertEquals(8000, game.getActionCount());
+        assertEquals("Jo\u00e3o \ud83c\udfd0 50", game.getTeam(3).getPlayer(49).getName());
+        assertSameStructure(parse(new String(bytes, UTF_8)), game);
+    }
+
+    @Test(expected = IOException.class)
+    public void parse_rejectsMalformedJSON() throws Exception {
+        parse("{\"name\":\"Broken\",\"teams\":{\"A\":{\"P\":{\"buttons\":{\"Point\":[1,]}}}}");
+    }
+
+    @Test
+    public void parse_rejectsTrailingValues() throws Exception {
+        assertEquals("Tail", parse("{\"name\":\"Tail\"} \n\t").getGameName());
+        for (String json : new String[]{"{\"name\":\"Tail\"}}", "{\"name\":\"Tail\"} {}", "{\"name\":\"Tail\"}x"}) {
+            try {
+                parse(json);
+                fail(json);
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void parse_rejectsCodePointsOutOfUnicode() throws Exception {
+        byte[][] names = {
+                {(byte) 0xf4, (byte) 0x90, (byte) 0x80, (byte) 0x80},
+                {(byte) 0xf7, (byte) 0xbf, (byte) 0xbf, (byte) 0xbf},
+                {(byte) 0xf0, (byte) 0x8f, (byte) 0xbf, (byte) 0xbf}
+        };
+        for (byte[] name : names) {
+            ByteArrayOutputStream json = new ByteArrayOutputStream();
+            json.write("{\"name\":\"".getBytes(UTF_8));
+            json.write(name);
+            json.write("\"}".getBytes(UTF_8));
+            try {
+                GameParser.parse(new ByteArrayInputStream(json.toByteArray()));
+                fail(Arrays.toString(name));
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.android.scorekeeper.model;
+
+import org.junit.Test;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the game model
+ */
+public class GameTest {
+
+    static final String ASSETS_DIR = "../app/src/main/assets/";
+
+    static Game loadGame(String fileName) throws IOException {
+        InputStream inputStream = new FileInputStream(ASSETS_DIR + fileName);
+        try {
+            return new Game(GameParser.parse(inputStream));
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * Full recomputation of the scores by walking all teams, players and actions
+     */
+    static int[] recomputeScores(Game game) {
+        int[] scores = new int[game.getTeamCount()];
+        for (int t = 0; t < game.getTeamCount(); t++) {
+            Team team = game.getTeam(t);
+            for (int p = 0; p < team.getPlayerCount(); p++) {
+                Player player = team.getPlayer(p);
+                for (int a = 0; a < player.getActionCount(); a++) {
+                    int actionIndex = player.getGameAction(a).getIndex();
+                    for (int i = 0; i < scores.length; i++) {
+                        scores[i] += game.getState().getActionPoints(actionIndex, i);
+                    }
+                }
+            }
+        }
+        return scores;
+    }
+
+    /**
+     * Random taps and undos on all buttons of the game
+     */
+    static void tapRandomly(Game game, Random random, int taps) {
+        for (int i = 0; i < taps; i++) {
+            Team team = game.getTeam(random.nextInt(game.getTeamCount()));
+            Player player = team.getPlayer(random.nextInt(team.getPlayerCount()));
+            GameAction action = player.getGameAction(random.nextInt(player.getActionCount()));
+            if (random.nextInt(4) == 0) {
+                action.undoAction();
+            } else {
+                action.addAction();
+            }
+        }
+    }
+
+    @Test
+    public void runningTotals_matchFullRecomputation() throws Exception {
+        for (String fileName : new String[]{"beach_volleyball.json", "snooker.json"}) {
+            Game game = loadGame(fileName);
+            assertArrayEquals(new int[game.getTeamCount()], game.getScores());
+            Random random = new Random(fileName.hashCode());
+            for (int round = 0; round < 50; round++) {
+                tapRandomly(game, random, 20);
+                assertArrayEquals(fileName, recomputeScores(game), game.getScores());
+            }
+        }
+    }
+
+    @Test
+    public void runningTotals_followRestoredState() throws Exception {
+        Game game = loadGame("snooker.json");
+        tapRandomly(game, new Random(1), 200);
+
+        Game restored = loadGame("snooker.json");
+        restored.setCurrentState(game.getCurrentState());
+        assertArrayEquals(game.getScores(), restored.getScores());
+        assertArrayEquals(recomputeScores(restored), restored.getScores());
+    }
+
+    @Test
+    public void copyScores_reusesArrayOfTheCaller() throws Exception {
+        Game game = loadGame("beach_volleyball.json");
+        int[] scores = game.getScores();
+        game.getTeam(0).getPlayer(0).getGameAction(0).addAction();
+        assertEquals(0, scores[0]);
+        game.copyScores(scores);
+        assertEquals(1, scores[0]);
+        assertArrayEquals(game.getScores(), scores);
+    }
+
+    @Test
+    public void currentState_isFlatCopyOfCounters() throws Exception {
+        Game game = loadGame("beach_volleyball.json");
+        assertEquals(16, game.getActionCount());
+        GameAction action = game.getTeam(1).getPlayer(0).getGameAction(2);
+        action.addAction();
+        action.addAction();
+
+        int[] state = game.getCurrentState();
+        assertEquals(2, state[action.getIndex()]);
+        state[action.getIndex()] = 5;
+        assertEquals(2, action.getActionsCount());
+    }
+
+    @Test
+    public void setCurrentState_ignoresStateOfOtherSize() throws Exception {
+        Game game = loadGame("beach_volleyball.json");
+        game.getTeam(0).getPlayer(1).getGameAction(0).addAction();
+        game.setCurrentState(new int[3]);
+        assertArrayEquals(new int[]{1, 0}, game.getScores());
+    }
+
+    @Test
+    public void matches_shareDefinitionWithIndependentCounters() throws Exception {
+        GameDefinition definition = loadGame("snooker.json").getDefinition();
+        Game first = new Game(definition);
+        Game second = new Game(definition);
+        assertSame(first.getDefinition(), second.getDefinition());
+
+        first.getTeam(0).getPlayer(0).getGameAction(6).addAction();
+        assertArrayEquals(new int[]{7, 0}, first.getScores());
+        assertArrayEquals(new int[]{0, 0}, second.getScores());
+        assertEquals("Black ball", second.getTeam(0).getPlayer(0).getGameAction(6).getName());
+        assertEquals(0, second.getTeam(0).getPlayer(0).getGameAction(6).getActionsCount());
+    }
+
+    @Test
+    public void reset_clearsCountersAndTotals() throws Exception {
+        Game game = loadGame("beach_volleyball.json");
+        tapRandomly(game, new Random(7), 100);
+        game.reset();
+        assertArrayEquals(new int[game.getActionCount()], game.getCurrentState());
+        assertArrayEquals(new int[]{0, 0}, game.getScores());
+        game.getTeam(1).getPlayer(1).getGameAction(3).addAction();
+        assertArrayEquals(new int[]{1, 0}, game.getScores());
+    }
+
+    @Test
+    public void definition_mapsActionsToPlayersAndTeams() throws Exception {
+        GameDefinition definition = loadGame("beach_volleyball.json").getDefinition();
+        assertEquals(4, definition.getPlayerCount());
+        assertEquals(2, definition.getFirstPlayer(1));
+        assertEquals(12, definition.getFirstAction(3));
+        assertEquals(3, definition.getActionPlayer(13));
+        assertEquals(1, definition.getPlayerTeam(3));
+        assertEquals("Error", definition.getActionName(7));
+    }
+
+    @Test
+    public void actionIndex_isDenseAndReversible() throws Exception {
+        Game game = GameParserTest.parse(GameParserTest.syntheticDefinition(3, 12, 15));
+        GameDefinition definition = game.getDefinition();
+        boolean[] used = new boolean[definition.getActionCount()];
+        for (int t = 0; t < game.getTeamCount(); t++) {
+            for (int p = 0; p < game.getTeam(t).getPlayerCount(); p++) {
+                for (int a = 0; a < game.getTeam(t).getPlayer(p).getActionCount(); a++) {
+                    int index = definition.getActionIndex(t, p, a);
+                    assertFalse(used[index]);
+                    used[index] = true;
+                    assertEquals(game.getTeam(t).getPlayer(p).getGameAction(a).getIndex(), index);
+
+                    int player = definition.getActionPlayer(index);
+                    assertEquals(t, definition.getPlayerTeam(player));
+                    assertEquals(p, player - definition.getFirstPlayer(t));
+                    assertEquals(a, index - definition.getFirstAction(player));
+                }
+            }
+        }
+        assertEquals(540, used.length);
+    }
+}
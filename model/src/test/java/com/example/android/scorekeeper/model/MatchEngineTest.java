@@ -0,0 +1,179 @@
+package com.example.android.scorekeeper.model;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the engine hosting many matches
+ */
+public class MatchEngineTest {
+
+    private MatchEngine mEngine;
+
+    @After
+    public void tearDown() throws Exception {
+        if (mEngine != null) mEngine.close();
+    }
+
+    private static void execute(MatchEngine engine, CommandBatch batch) throws InterruptedException {
+        engine.submit(batch);
+        batch.await();
+    }
+
+    @Test
+    public void batches_matchSequentialGames() throws Exception {
+        final int matchCount = 300;
+        mEngine = new MatchEngine(4, 1000);
+        GameDefinition definition = GameTest.loadGame("snooker.json").getDefinition();
+        int definitionId = mEngine.registerDefinition(definition);
+        Game[] expected = new Game[matchCount];
+        CommandBatch batch = new CommandBatch();
+        for (int m = 0; m < matchCount; m++) {
+            expected[m] = new Game(definition);
+            assertEquals(m, batch.addCreate(1000L * m, definitionId));
+        }
+        execute(mEngine, batch);
+        assertEquals(matchCount, mEngine.getMatchCount());
+
+        Random random = new Random(24);
+        for (int round = 0; round < 20; round++) {
+            batch.clear();
+            int[] undoneActions = new int[1000];
+            for (int i = 0; i < undoneActions.length; i++) {
+                int m = random.nextInt(matchCount);
+                if (random.nextInt(5) == 0) {
+                    batch.addUndo(1000L * m);
+                    undoneActions[i] = expected[m].undo();
+                } else {
+                    int actionIndex = random.nextInt(definition.getActionCount());
+                    batch.addApply(1000L * m, actionIndex, 1);
+                    expected[m].changeActionsCount(actionIndex, 1);
+                    undoneActions[i] = -1;
+                }
+            }
+            execute(mEngine, batch);
+            for (int i = 0; i < undoneActions.length; i++) {
+                boolean isUndoneNothing = undoneActions[i] < 0 && batch.getOp(i) == CommandBatch.OP_UNDO;
+                assertEquals(isUndoneNothing ? CommandBatch.RESULT_NOTHING_TO_UNDO : CommandBatch.RESULT_OK,
+                        batch.getResult(i));
+                assertEquals(undoneActions[i], batch.getUndoneAction(i));
+            }
+        }
+
+        batch.clear();
+        for (int m = 0; m < matchCount; m++) {
+            batch.addSnapshot(1000L * m);
+        }
+        execute(mEngine, batch);
+        for (int m = 0; m < matchCount; m++) {
+            Game restored = new Game(definition);
+            MatchStateCodec.decode(batch.getSnapshot(m), restored);
+            assertArrayEquals(expected[m].getCurrentState(), restored.getCurrentState());
+            assertArrayEquals(expected[m].getScores(), restored.getScores());
+        }
+    }
+
+    @Test
+    public void commands_reportErrors() throws Exception {
+        mEngine = new MatchEngine(2);
+        int definitionId = mEngine.registerDefinition(GameTest.loadGame("beach_volleyball.json").getDefinition());
+        CommandBatch batch = new CommandBatch();
+        batch.addCreate(7, definitionId);
+        batch.addCreate(7, definitionId);
+        batch.addCreate(8, definitionId + 1);
+        batch.addApply(7, 16, 1);
+        batch.addApply(9, 0, 1);
+        batch.addUndo(7);
+        batch.addSnapshot(9);
+        batch.addRemove(7);
+        batch.addApply(7, 0, 1);
+        execute(mEngine, batch);
+        assertEquals(CommandBatch.RESULT_OK, batch.getResult(0));
+        assertEquals(CommandBatch.RESULT_MATCH_EXISTS, batch.getResult(1));
+        assertEquals(CommandBatch.RESULT_WRONG_ARGUMENT, batch.getResult(2));
+        assertEquals(CommandBatch.RESULT_WRONG_ARGUMENT, batch.getResult(3));
+        assertEquals(CommandBatch.RESULT_UNKNOWN_MATCH, batch.getResult(4));
+        assertEquals(CommandBatch.RESULT_NOTHING_TO_UNDO, batch.getResult(5));
+        assertNull(batch.getSnapshot(6));
+        assertEquals(CommandBatch.RESULT_OK, batch.getResult(7));
+        assertEquals(CommandBatch.RESULT_UNKNOWN_MATCH, batch.getResult(8));
+        assertEquals(0, mEngine.getMatchCount());
+
+        batch.clear();
+        execute(mEngine, batch);
+        assertTrue(batch.isDone());
+    }
+
+    @Test
+    public void table_keepsMatchesAfterRemovals() throws Exception {
+        mEngine = new MatchEngine(1);
+        int definitionId = mEngine.registerDefinition(GameTest.loadGame("beach_volleyball.json").getDefinition());
+        CommandBatch batch = new CommandBatch();
+        for (long id = 0; id < 5000; id++) {
+            batch.addCreate(id, definitionId);
+        }
+        for (long id = 0; id < 5000; id += 3) {
+            batch.addRemove(id);
+        }
+        for (long id = 0; id < 5000; id++) {
+            batch.addApply(id, 0, 1);
+        }
+        execute(mEngine, batch);
+        for (int id = 0; id < 5000; id++) {
+            int expected = id % 3 == 0 ? CommandBatch.RESULT_UNKNOWN_MATCH : CommandBatch.RESULT_OK;
+            assertEquals("match " + id, expected, batch.getResult(5000 + (4999 / 3 + 1) + id));
+        }
+        assertEquals(5000 - (4999 / 3 + 1), mEngine.getMatchCount());
+    }
+
+    @Test
+    public void engine_keepsActionsOfBatchesInFlight() throws Exception {
+        final int matchCount = 1000;
+        final int batchSize = 500;
+        final int batchCount = 20;
+        mEngine = new MatchEngine(3);
+        GameDefinition definition = GameTest.loadGame("beach_volleyball.json").getDefinition();
+        int definitionId = mEngine.registerDefinition(definition);
+        CommandBatch batch = new CommandBatch();
+        for (int m = 0; m < matchCount; m++) {
+            batch.addCreate(m, definitionId);
+        }
+        execute(mEngine, batch);
+
+        Random random = new Random(25);
+        int[][] expected = new int[matchCount][definition.getActionCount()];
+        CommandBatch[] batches = new CommandBatch[4];
+        for (int b = 0; b < batches.length; b++) {
+            batches[b] = new CommandBatch();
+            for (int i = 0; i < batchSize; i++) {
+                int m = random.nextInt(matchCount);
+                int actionIndex = random.nextInt(definition.getActionCount());
+                batches[b].addApply(m, actionIndex, 1);
+                expected[m][actionIndex] += batchCount / batches.length;
+            }
+        }
+        for (int b = 0; b < batchCount; b++) {
+            CommandBatch next = batches[b % batches.length];
+            next.await();
+            mEngine.submit(next);
+        }
+        for (CommandBatch submitted : batches) {
+            submitted.await();
+        }
+
+        batch.clear();
+        for (int m = 0; m < matchCount; m++) {
+            batch.addSnapshot(m);
+        }
+        execute(mEngine, batch);
+        for (int m = 0; m < matchCount; m++) {
+            Game restored = new Game(definition);
+            MatchStateCodec.decode(batch.getSnapshot(m), restored);
+            assertArrayEquals(expected[m], restored.getCurrentState());
+        }
+    }
+}
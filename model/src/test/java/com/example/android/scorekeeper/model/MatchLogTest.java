@@ -0,0 +1,234 @@
+package com.example.android.scorekeeper.model;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the crash-safe log of the match
+ */
+public class MatchLogTest {
+
+    private static final String NAME = "match";
+
+    private File mDir;
+
+    @Before
+    public void setUp() throws Exception {
+        mDir = Files.createTempDirectory("matchlog").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                assertTrue(file.delete());
+            }
+        }
+        assertTrue(mDir.delete());
+    }
+
+    private static Game newGame() throws Exception {
+        return GameParserTest.parse(GameParserTest.syntheticDefinition(2, 3, 4));
+    }
+
+    private MatchLog openLog(Game game) {
+        MatchLog log = new MatchLog(mDir, NAME, game);
+        game.addMatchListener(log);
+        return log;
+    }
+
+    @Test
+    public void recover_replaysLogOverSnapshot() throws Exception {
+        Game game = newGame();
+        MatchLog log = openLog(game);
+        GameTest.tapRandomly(game, new Random(1), 300);
+        game.undo();
+        game.undo();
+        game.redo();
+        log.flushAndWait();
+
+        Game recovered = newGame();
+        assertTrue(MatchLog.recover(mDir, NAME, recovered));
+        assertArrayEquals(game.getCurrentState(), recovered.getCurrentState());
+        assertArrayEquals(game.getScores(), recovered.getScores());
+        log.close();
+    }
+
+    @Test
+    public void recover_keepsManualEndsOfSets() throws Exception {
+        Game game = GameTest.loadGame("snooker.json");
+        MatchLog log = openLog(game);
+        RuleEvaluator evaluator = new RuleEvaluator(game);
+        game.addMatchListener(evaluator);
+        game.getGameAction(6).addAction();
+        evaluator.endSet();
+        game.getGameAction(16).addAction();
+        game.getGameAction(16).addAction();
+        evaluator.endSet();
+        game.getGameAction(0).addAction();
+        log.flushAndWait();
+        log.close();
+
+        // the recovered match is logged again and recovered after the next crash
+        for (int crash = 0; crash < 2; crash++) {
+            Game recovered = GameTest.loadGame("snooker.json");
+            assertTrue(MatchLog.recover(mDir, NAME, recovered));
+            RuleEvaluator recoveredEvaluator = new RuleEvaluator(recovered);
+            assertArrayEquals(game.getCurrentState(), recovered.getCurrentState());
+            assertEquals(2, recoveredEvaluator.getSetCount());
+            assertEquals(0, recoveredEvaluator.getSetWinner(0));
+            assertEquals(1, recoveredEvaluator.getSetWinner(1));
+            assertEquals(1, recoveredEvaluator.getSetScore(0));
+            log = openLog(recovered);
+            log.flushAndWait();
+            log.close();
+        }
+    }
+
+    @Test
+    public void close_waitsBeforeLogIsReopened() throws Exception {
+        Game game = newGame();
+        Random random = new Random(4);
+        for (int reopen = 0; reopen < 20; reopen++) {
+            MatchLog log = openLog(game);
+            GameTest.tapRandomly(game, random, 50);
+            log.close();
+            // the closed log ignores the changes
+            game.getGameAction(0).addAction();
+            log.close();
+            game.removeMatchListener(log);
+
+            Game recovered = newGame();
+            assertTrue(MatchLog.recover(mDir, NAME, recovered));
+            game.undo();
+            assertArrayEquals(game.getCurrentState(), recovered.getCurrentState());
+        }
+    }
+
+    @Test
+    public void recover_withoutFilesReturnsFalse() throws Exception {
+        Game game = newGame();
+        assertFalse(MatchLog.recover(mDir, NAME, game));
+        assertArrayEquals(new int[game.getActionCount()], game.getCurrentState());
+    }
+
+    @Test
+    public void recover_stopsAtTornRecord() throws Exception {
+        Game game = newGame();
+        MatchLog log = openLog(game);
+        GameTest.tapRandomly(game, new Random(2), 100);
+        log.flushAndWait();
+        log.close();
+
+        FileOutputStream outputStream = new FileOutputStream(new File(mDir, NAME + ".log"), true);
+        try {
+            outputStream.write(new byte[]{0, 0, 0, 1, 0, 0, 0, 1, 0, 0, 0, 0});
+            outputStream.write(new byte[]{0, 0, 0, 2, 0});
+        } finally {
+            outputStream.close();
+        }
+
+        Game recovered = newGame();
+        assertTrue(MatchLog.recover(mDir, NAME, recovered));
+        assertArrayEquals(game.getCurrentState(), recovered.getCurrentState());
+    }
+
+    @Test
+    public void recover_ignoresLogOfOlderSnapshot() throws Exception {
+        Game game = newGame();
+        MatchLog log = openLog(game);
+        GameTest.tapRandomly(game, new Random(3), 100);
+        log.flushAndWait();
+        File logFile = new File(mDir, NAME + ".log");
+        byte[] oldLog = Files.readAllBytes(logFile.toPath());
+
+        game.reset();
+        log.flushAndWait();
+        log.close();
+        // crash after the new snapshot is written but before the log is started again
+        Files.write(logFile.toPath(), oldLog);
+
+        Game recovered = newGame();
+        assertTrue(MatchLog.recover(mDir, NAME, recovered));
+        assertArrayEquals(new int[game.getActionCount()], recovered.getCurrentState());
+    }
+
+    @Test
+    public void snapshots_boundLogSize() throws Exception {
+        Game game = newGame();
+        MatchLog log = openLog(game);
+        for (int i = 0; i < 3 * MatchLog.SNAPSHOT_INTERVAL + 17; i++) {
+            game.getGameAction(i % game.getActionCount()).addAction();
+        }
+        log.flushAndWait();
+        log.close();
+
+        assertTrue(new File(mDir, NAME + ".log").length() < 16 + 12 * MatchLog.SNAPSHOT_INTERVAL);
+        Game recovered = newGame();
+        assertTrue(MatchLog.recover(mDir, NAME, recovered));
+        assertArrayEquals(game.getCurrentState(), recovered.getCurrentState());
+    }
+
+    @Test
+    public void recover_afterProcessIsKilledMidWrite() throws Exception {
+        Process process = new ProcessBuilder(
+                System.getProperty("java.home") + File.separator + "bin" + File.separator + "java",
+                "-cp", System.getProperty("java.class.path"),
+                Tapper.class.getName(), mDir.getAbsolutePath()
+        ).start();
+        int synced = 0;
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+            String line;
+            while (synced < 2 * MatchLog.SNAPSHOT_INTERVAL + 1000 && (line = reader.readLine()) != null) {
+                synced = Integer.parseInt(line.trim());
+            }
+        } finally {
+            process.destroyForcibly();
+            process.waitFor();
+        }
+        assertTrue("tapper exited early", synced > 2 * MatchLog.SNAPSHOT_INTERVAL);
+
+        Game recovered = newGame();
+        assertTrue(MatchLog.recover(mDir, NAME, recovered));
+        int[] counts = recovered.getCurrentState();
+        int taps = 0;
+        for (int count : counts) {
+            taps += count;
+        }
+        assertTrue(taps + " < " + synced, taps >= synced);
+        for (int a = 0; a < counts.length; a++) {
+            assertEquals((taps - a + counts.length - 1) / counts.length, counts[a]);
+        }
+    }
+
+    /**
+     * Process tapping all actions in turn and reporting the count of the synced taps
+     */
+    public static class Tapper {
+        public static void main(String[] args) throws Exception {
+            Game game = newGame();
+            MatchLog log = new MatchLog(new File(args[0]), NAME, game);
+            game.addMatchListener(log);
+            for (int i = 1; ; i++) {
+                game.getGameAction((i - 1) % game.getActionCount()).addAction();
+                if (i % 100 == 0) {
+                    log.flushAndWait();
+                    System.out.println(i);
+                    System.out.flush();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.example.android.scorekeeper.model;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the merge of the concurrent scoring from several devices
+ */
+public class MatchReplicaTest {
+
+    private static MatchReplica replicate(Game game, long deviceId) {
+        MatchReplica replica = new MatchReplica(game, deviceId);
+        game.addMatchListener(replica);
+        return replica;
+    }
+
+    @Test
+    public void merge_isCommutativeAndIdempotent() throws Exception {
+        Game first = GameTest.loadGame("beach_volleyball.json");
+        Game second = GameTest.loadGame("beach_volleyball.json");
+        MatchReplica firstReplica = replicate(first, 1);
+        MatchReplica secondReplica = replicate(second, 2);
+        first.getGameAction(0).addAction();
+        first.getGameAction(0).addAction();
+        second.getGameAction(0).addAction();
+        second.getGameAction(3).addAction();
+        second.undo();
+
+        byte[] firstDelta = firstReplica.takeDelta();
+        byte[] secondDelta = secondReplica.takeDelta();
+        assertNull(firstReplica.takeDelta());
+        secondReplica.merge(firstDelta);
+        firstReplica.merge(secondDelta);
+        firstReplica.merge(secondDelta);
+        assertArrayEquals(first.getCurrentState(), second.getCurrentState());
+        assertArrayEquals(first.getScores(), second.getScores());
+        assertEquals(3, first.getCurrentState()[0]);
+        assertEquals(0, first.getCurrentState()[3]);
+        assertEquals(2, secondReplica.getDeviceCount());
+    }
+
+    @Test
+    public void merge_keepsResetOfOtherDeviceAsDecrements() throws Exception {
+        Game first = GameTest.loadGame("beach_volleyball.json");
+        Game second = GameTest.loadGame("beach_volleyball.json");
+        MatchReplica firstReplica = replicate(first, 1);
+        MatchReplica secondReplica = replicate(second, 2);
+        GameTest.tapRandomly(first, new Random(22), 50);
+        secondReplica.merge(firstReplica.takeDelta());
+        second.reset();
+        // the tap made concurrently with the reset survives it
+        first.getGameAction(1).addAction();
+        firstReplica.merge(secondReplica.takeDelta());
+        secondReplica.merge(firstReplica.takeDelta());
+        int[] expected = new int[first.getActionCount()];
+        expected[1] = 1;
+        assertArrayEquals(expected, first.getCurrentState());
+        assertArrayEquals(expected, second.getCurrentState());
+    }
+
+    @Test
+    public void merge_keepsLocalJournal() throws Exception {
+        DefinitionGenerator generator = new DefinitionGenerator(2, 2, 6);
+        generator.setNonLinearShare(50);
+        for (String definition : new String[]{GameParserTest.syntheticDefinition(2, 2, 6), generator.generate()}) {
+            Game first = GameParserTest.parse(definition);
+            Game second = GameParserTest.parse(definition);
+            MatchReplica firstReplica = replicate(first, 1);
+            MatchReplica secondReplica = replicate(second, 2);
+            first.getGameAction(2).addAction();
+            first.getGameAction(3).addAction();
+            second.getGameAction(4).addAction();
+            firstReplica.merge(secondReplica.takeDelta());
+            assertEquals(2, first.getJournal().size());
+            assertEquals(1, first.getCurrentState()[4]);
+
+            // the local undo takes back the local tap only and publishes it
+            assertEquals(3, first.undo());
+            assertEquals(1, first.getCurrentState()[4]);
+            secondReplica.merge(firstReplica.takeDelta());
+            assertArrayEquals(first.getCurrentState(), second.getCurrentState());
+            assertEquals(1, second.getJournal().size());
+            assertEquals(4, second.undo());
+        }
+    }
+
+    @Test
+    public void merge_rejectsOtherGameAndCorruptedData() throws Exception {
+        Game game = GameTest.loadGame("beach_volleyball.json");
+        MatchReplica replica = replicate(game, 1);
+        Game other = GameTest.loadGame("snooker.json");
+        MatchReplica otherReplica = replicate(other, 2);
+        other.getGameAction(0).addAction();
+        byte[] state = otherReplica.encodeState();
+        try {
+            replica.merge(state);
+            fail("merged other game");
+        } catch (IOException e) {
+            // expected
+        }
+        game.getGameAction(0).addAction();
+        byte[] delta = replica.encodeState();
+        byte[] truncated = new byte[delta.length - 1];
+        System.arraycopy(delta, 0, truncated, 0, truncated.length);
+        try {
+            replicate(GameTest.loadGame("beach_volleyball.json"), 3).merge(truncated);
+            fail("merged truncated data");
+        } catch (IOException e) {
+            // expected
+        }
+        assertEquals(1, replica.getDeviceCount());
+    }
+
+    @Test
+    public void merge_convergesUnderRandomPartitionsAndDelivery() throws Exception {
+        DefinitionGenerator generator = new DefinitionGenerator(2, 3, 6);
+        generator.setSeed(25);
+        generator.setNonLinearShare(50);
+        String[] definitions = {GameParserTest.syntheticDefinition(2, 3, 6), generator.generate()};
+        for (int seed = 0; seed < 20; seed++) {
+            Random random = new Random(seed);
+            String definition = definitions[seed % definitions.length];
+            int deviceCount = 2 + random.nextInt(4);
+            Game[] games = new Game[deviceCount];
+            MatchReplica[] replicas = new MatchReplica[deviceCount];
+            for (int d = 0; d < deviceCount; d++) {
+                games[d] = GameParserTest.parse(definition);
+                replicas[d] = replicate(games[d], 1000 + d);
+            }
+            // deltas in flight: destination and data, delivered in random order, duplicated or lost
+            ArrayList<Object[]> network = new ArrayList<>(0);
+            boolean[] isPartitioned = new boolean[deviceCount];
+            for (int step = 0; step < 2000; step++) {
+                int d = random.nextInt(deviceCount);
+                int operation = random.nextInt(100);
+                if (operation < 60) {
+                    GameTest.tapRandomly(games[d], random, 1);
+                } else if (operation < 65) {
+                    games[d].undo();
+                } else if (operation < 66) {
+                    games[d].reset();
+                } else if (operation < 70) {
+                    isPartitioned[d] = !isPartitioned[d];
+                } else if (operation < 85) {
+                    byte[] delta = replicas[d].takeDelta();
+                    if (delta == null || isPartitioned[d]) continue;
+                    for (int to = 0; to < deviceCount; to++) {
+                        if (to != d && random.nextInt(5) != 0) network.add(new Object[]{to, delta});
+                    }
+                } else if (!network.isEmpty()) {
+                    Object[] message = network.get(random.nextInt(network.size()));
+                    int to = (Integer) message[0];
+                    if (isPartitioned[to]) continue;
+                    replicas[to].merge((byte[]) message[1]);
+                    if (random.nextInt(3) != 0) network.remove(message);
+                }
+            }
+            // anti-entropy after the partitions heal: each device merges the state of every other one
+            for (int round = 0; round < 2; round++) {
+                for (int from = 0; from < deviceCount; from++) {
+                    byte[] state = replicas[from].encodeState();
+                    for (int to = 0; to < deviceCount; to++) {
+                        if (to != from) replicas[to].merge(state);
+                    }
+                }
+            }
+            for (int d = 1; d < deviceCount; d++) {
+                assertArrayEquals("seed " + seed, games[0].getCurrentState(), games[d].getCurrentState());
+                if (games[0].getDefinition().isLinear()) {
+                    assertArrayEquals("seed " + seed, games[0].getScores(), games[d].getScores());
+                }
+                for (int a = 0; a < games[0].getActionCount(); a++) {
+                    assertEquals(replicas[d].getValue(a), games[d].getCurrentState()[a]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void merge_countsLocalChangesOfOtherThreads() throws Exception {
+        final Game game = GameTest.loadGame("beach_volleyball.json");
+        final MatchReplica replica = replicate(game, 1);
+        Game remote = GameTest.loadGame("beach_volleyball.json");
+        MatchReplica remoteReplica = replicate(remote, 2);
+        final ArrayList<byte[]> deltas = new ArrayList<>(0);
+        for (int i = 0; i < 2000; i++) {
+            remote.getGameAction(i % remote.getActionCount()).addAction();
+            deltas.add(remoteReplica.takeDelta());
+        }
+        final Throwable[] failure = new Throwable[1];
+        Thread network = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (byte[] delta : deltas) {
+                        replica.merge(delta);
+                        replica.takeDelta();
+                    }
+                } catch (Throwable e) {
+                    failure[0] = e;
+                }
+            }
+        });
+        network.start();
+        for (int i = 0; i < 2000; i++) {
+            game.getGameAction(i % 3).addAction();
+        }
+        network.join();
+        assertNull(failure[0]);
+
+        // the local taps are counted for the device while the merged ones are not
+        remoteReplica.merge(replica.encodeState());
+        int total = 0;
+        for (int a = 0; a < game.getActionCount(); a++) {
+            assertEquals(game.getCurrentState()[a], replica.getValue(a));
+            assertEquals(game.getCurrentState()[a], remote.getCurrentState()[a]);
+            total += game.getCurrentState()[a];
+        }
+        assertEquals(4000, total);
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.android.scorekeeper.model;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the compact encoding of the match state
+ */
+public class MatchStateCodecTest {
+
+    private static Game largeGame() throws IOException {
+        return GameParserTest.parse(GameParserTest.syntheticDefinition(2, 25, 40));
+    }
+
+    @Test
+    public void encode_roundTripWithJournal() throws Exception {
+        Game game = GameTest.loadGame("snooker.json");
+        GameTest.tapRandomly(game, new Random(4), 300);
+        game.undo();
+        game.undo();
+        game.getGameAction(0).undoAction();
+        game.undo();
+
+        Game restored = GameTest.loadGame("snooker.json");
+        MatchStateCodec.decode(MatchStateCodec.encode(game), restored);
+        assertArrayEquals(game.getCurrentState(), restored.getCurrentState());
+        assertArrayEquals(game.getScores(), restored.getScores());
+        assertEquals(game.getJournal().getCursor(), restored.getJournal().getCursor());
+        assertEquals(game.redo(), restored.redo());
+        while (game.getJournal().canUndo()) {
+            assertEquals(game.undo(), restored.undo());
+            assertEquals(game.getJournal().getTimestamp(game.getJournal().getCursor()),
+                    restored.getJournal().getTimestamp(restored.getJournal().getCursor()));
+        }
+        assertArrayEquals(game.getCurrentState(), restored.getCurrentState());
+    }
+
+    @Test
+    public void encode_keepsLatestJournalEntries() throws Exception {
+        Game game = largeGame();
+        GameTest.tapRandomly(game, new Random(6), 3 * MatchStateCodec.MAX_JOURNAL_ENTRIES);
+
+        Game restored = largeGame();
+        MatchStateCodec.decode(MatchStateCodec.encode(game), restored);
+        assertEquals(MatchStateCodec.MAX_JOURNAL_ENTRIES, restored.getJournal().size());
+        while (restored.getJournal().canUndo()) {
+            assertEquals(game.undo(), restored.undo());
+        }
+        assertArrayEquals(game.getCurrentState(), restored.getCurrentState());
+    }
+
+    @Test
+    public void decode_rejectsStateOfOtherDefinition() throws Exception {
+        Game game = GameTest.loadGame("snooker.json");
+        GameTest.tapRandomly(game, new Random(7), 50);
+        byte[] data = MatchStateCodec.encode(game);
+
+        Game other = GameTest.loadGame("beach_volleyball.json");
+        try {
+            MatchStateCodec.decode(data, other);
+            fail("State of other definition is decoded");
+        } catch (IOException e) {
+            assertArrayEquals(new int[other.getActionCount()], other.getCurrentState());
+        }
+        assertNotEquals(game.getDefinition().getFingerprint(), other.getDefinition().getFingerprint());
+        assertEquals(game.getDefinition().getFingerprint(),
+                GameTest.loadGame("snooker.json").getDefinition().getFingerprint());
+    }
+
+    @Test
+    public void decode_rejectsTruncatedState() throws Exception {
+        Game game = GameTest.loadGame("snooker.json");
+        GameTest.tapRandomly(game, new Random(8), 50);
+        byte[] data = MatchStateCodec.encode(game);
+        for (int size = 0; size < data.length; size++) {
+            byte[] truncated = new byte[size];
+            System.arraycopy(data, 0, truncated, 0, size);
+            try {
+                MatchStateCodec.decode(truncated, GameTest.loadGame("snooker.json"));
+                fail("Truncated state of " + size + " bytes is decoded");
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void encode_isSmallerThanIntArrays() throws Exception {
+        Game game = largeGame();
+        int actionCount = game.getActionCount();
+        assertEquals(2000, actionCount);
+        GameTest.tapRandomly(game, new Random(9), 20000);
+
+        byte[] withJournal = MatchStateCodec.encode(game);
+        game.setCurrentState(game.getCurrentState());
+        byte[] countersOnly = MatchStateCodec.encode(game);
+        // Parcel sizes: int[] is 4 bytes per counter, boxed list is 8 bytes per counter
+        int intArraySize = 4 + 4 * actionCount;
+        int boxedListSize = 4 + 8 * actionCount;
+        assertTrue("Counters take " + countersOnly.length + " bytes", countersOnly.length < intArraySize / 2);
+        assertTrue("Journal takes " + withJournal.length + " bytes", withJournal.length < intArraySize);
+        assertTrue(withJournal.length < boxedListSize / 2);
+    }
+}
@@ -0,0 +1,208 @@
+package com.example.android.scorekeeper.model;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the counter, conditional and scaled actions of the match state
+ */
+public class MatchStateTest {
+
+    /**
+     * Snooker with the ball on and the golden frame as counters of the first player
+     */
+    private static final String DEFINITION = "{\"name\":\"Snooker\",\"teams\":{"
+            + "\"Team 1\":{\"Player\":{\"buttons\":{"
+            + "\"Red ball\":[1, 0],"
+            + "\"Black ball\":{\"points\":[7, 0],\"per\":\"Golden frame\",\"min\":1},"
+            + "\"Foul\":{\"points\":[0, 1],\"per\":\"Ball on\",\"min\":4},"
+            + "\"Free ball\":{\"points\":[1, 0],\"if\":\"Free ball on\"},"
+            + "\"Miss\":{\"points\":[0, 1],\"if\":\"Unknown\"},"
+            + "\"Ball on\":{\"kind\":\"counter\"},"
+            + "\"Free ball on\":{\"kind\":\"counter\"},"
+            + "\"Golden frame\":{\"kind\":\"counter\"}}}},"
+            + "\"Team 2\":{\"Player\":{\"buttons\":{"
+            + "\"Red ball\":[0, 1],"
+            + "\"Foul\":{\"points\":[1, 0],\"per\":\"Ball on\",\"min\":4}}}}}}";
+
+    /**
+     * Indexes of the actions in the definition
+     */
+    private static final int RED = 0;
+    private static final int BLACK = 1;
+    private static final int FOUL = 2;
+    private static final int FREE_BALL = 3;
+    private static final int BALL_ON = 4;
+    private static final int FREE_BALL_ON = 5;
+    private static final int GOLDEN_FRAME = 6;
+    private static final int OTHER_FOUL = 8;
+
+    private static Game newGame() throws Exception {
+        return GameParserTest.parse(DEFINITION);
+    }
+
+    private static void tap(Game game, int actionIndex, int times) {
+        for (int i = 0; i < times; i++) {
+            game.getGameAction(actionIndex).addAction();
+        }
+    }
+
+    @Test
+    public void parser_compilesKindsAndSkipsUnknownSources() throws Exception {
+        GameDefinition definition = newGame().getDefinition();
+        assertEquals(9, definition.getActionCount());
+        assertEquals("Foul", definition.getActionName(FOUL));
+        assertEquals(GameDefinition.KIND_SCALED, definition.getActionKind(FOUL));
+        assertEquals(BALL_ON, definition.getActionSource(FOUL));
+        assertEquals(BALL_ON, definition.getActionSource(OTHER_FOUL));
+        assertEquals(4, definition.getActionValue(FOUL));
+        assertEquals(GameDefinition.KIND_CONDITIONAL, definition.getActionKind(FREE_BALL));
+        assertEquals(GameDefinition.KIND_COUNTER, definition.getActionKind(BALL_ON));
+        assertEquals(GameDefinition.KIND_LINEAR, definition.getActionKind(RED));
+        assertEquals(0, definition.getScoreChange(BALL_ON, 0));
+        assertEquals(4, definition.getNonLinearCount());
+        assertFalse(definition.isLinear());
+        assertTrue(GameTest.loadGame("snooker.json").getDefinition().isLinear());
+    }
+
+    @Test
+    public void apply_dispatchesByKind() throws Exception {
+        Game game = newGame();
+        tap(game, RED, 1);
+        tap(game, BALL_ON, 2);
+        tap(game, FOUL, 1);
+        assertArrayEquals(new int[]{1, 4}, game.getScores());
+        tap(game, BALL_ON, 5);
+        tap(game, FOUL, 1);
+        assertArrayEquals(new int[]{1, 11}, game.getScores());
+        assertEquals(11, game.getState().getActionPoints(FOUL, 1));
+
+        tap(game, FREE_BALL, 1);
+        assertArrayEquals(new int[]{1, 11}, game.getScores());
+        tap(game, FREE_BALL_ON, 1);
+        tap(game, FREE_BALL, 1);
+        assertArrayEquals(new int[]{2, 11}, game.getScores());
+
+        tap(game, BLACK, 1);
+        tap(game, GOLDEN_FRAME, 2);
+        tap(game, BLACK, 1);
+        assertArrayEquals(new int[]{23, 11}, game.getScores());
+        assertArrayEquals(GameTest.recomputeScores(game), game.getScores());
+    }
+
+    @Test
+    public void undo_takesBackPointsOfTheTap() throws Exception {
+        Game game = newGame();
+        Random random = new Random(18);
+        int[][] scores = new int[200][];
+        for (int i = 0; i < scores.length; i++) {
+            tap(game, random.nextInt(game.getActionCount()), 1);
+            scores[i] = game.getScores().clone();
+        }
+        for (int i = scores.length - 1; i > 0; i--) {
+            game.undo();
+            assertArrayEquals(scores[i - 1], game.getScores());
+        }
+        game.undo();
+        assertArrayEquals(new int[2], game.getScores());
+    }
+
+    @Test
+    public void undoAction_takesBackPointsOfTheLastTap() throws Exception {
+        Game game = newGame();
+        tap(game, BALL_ON, 5);
+        tap(game, FOUL, 1);
+        tap(game, BALL_ON, 2);
+        // the foul was scored on 5 balls on, so it is not taken back on 7
+        game.getGameAction(FOUL).undoAction();
+        assertArrayEquals(new int[]{0, 5}, game.getScores());
+        assertEquals(1, game.getState().getActionsCount(FOUL));
+
+        tap(game, RED, 1);
+        tap(game, FOUL, 1);
+        tap(game, RED, 1);
+        tap(game, FOUL, 1);
+        tap(game, OTHER_FOUL, 1);
+        tap(game, RED, 1);
+        game.getGameAction(FOUL).undoAction();
+        game.getGameAction(FOUL).undoAction();
+        assertArrayEquals(new int[]{10, 5}, game.getScores());
+        assertEquals(1, game.getState().getActionsCount(FOUL));
+        assertArrayEquals(GameTest.recomputeScores(game), game.getScores());
+
+        // the journal takes back the same points, so the totals don't drift
+        while (game.undo() >= 0) {
+            assertArrayEquals(GameTest.recomputeScores(game), game.getScores());
+        }
+        assertArrayEquals(new int[2], game.getScores());
+    }
+
+    @Test
+    public void singleWriterState_matchesLockedState() throws Exception {
+        Game game = newGame();
+        SingleWriterMatchState state = new SingleWriterMatchState(game.getDefinition());
+        Random random = new Random(24);
+        for (int i = 0; i < 500; i++) {
+            int actionIndex = random.nextInt(game.getActionCount());
+            int delta = random.nextInt(4) == 0 && state.getCounts()[actionIndex] > 0 ? -1 : 1;
+            game.getState().apply(actionIndex, delta);
+            state.apply(actionIndex, delta);
+        }
+        assertArrayEquals(game.getState().getCounts(), state.getCounts());
+        assertArrayEquals(game.getState().getNonLinearPoints(), state.getNonLinearPoints());
+        assertArrayEquals(MatchStateCodec.encode(game), MatchStateCodec.encode(state, game.getJournal()));
+    }
+
+    @Test
+    public void restore_keepsPointsOfTheTaps() throws Exception {
+        Game game = newGame();
+        tap(game, BALL_ON, 7);
+        tap(game, FOUL, 1);
+        game.getGameAction(BALL_ON).undoAction();
+        game.getGameAction(BALL_ON).undoAction();
+        tap(game, FOUL, 1);
+        assertArrayEquals(new int[]{0, 12}, game.getScores());
+
+        Game restored = newGame();
+        MatchStateCodec.decode(MatchStateCodec.encode(game), restored);
+        assertArrayEquals(game.getScores(), restored.getScores());
+
+        File dir = Files.createTempDirectory("matchstate").toFile();
+        Game logged = newGame();
+        MatchLog log = new MatchLog(dir, "match", logged);
+        logged.addMatchListener(log);
+        tap(logged, BALL_ON, 7);
+        tap(logged, FOUL, 1);
+        logged.setCurrentState(logged.getCurrentState(), logged.getState().getNonLinearPoints());
+        logged.getGameAction(BALL_ON).undoAction();
+        tap(logged, FOUL, 1);
+        log.flushAndWait();
+        Game recovered = newGame();
+        assertTrue(MatchLog.recover(dir, "match", recovered));
+        assertArrayEquals(logged.getScores(), recovered.getScores());
+        assertArrayEquals(new int[]{0, 13}, recovered.getScores());
+        log.close();
+        for (File file : dir.listFiles()) {
+            assertTrue(file.delete());
+        }
+        assertTrue(dir.delete());
+    }
+
+    @Test
+    public void codec_keepsKindsOfActions() throws Exception {
+        GameDefinition definition = newGame().getDefinition();
+        GameDefinition decoded = GameCodec.decode(ByteBuffer.wrap(GameCodec.encode(definition, 0L)));
+        assertEquals(definition.getFingerprint(), decoded.getFingerprint());
+        for (int a = 0; a < definition.getActionCount(); a++) {
+            assertEquals(definition.getActionKind(a), decoded.getActionKind(a));
+            assertEquals(definition.getActionSource(a), decoded.getActionSource(a));
+            assertEquals(definition.getActionValue(a), decoded.getActionValue(a));
+        }
+    }
+}
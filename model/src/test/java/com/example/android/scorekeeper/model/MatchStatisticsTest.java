@@ -0,0 +1,112 @@
+package com.example.android.scorekeeper.model;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the incremental statistics of the match
+ */
+public class MatchStatisticsTest {
+
+    /**
+     * Statistics recomputed from the counters of the match
+     */
+    private static MatchStatistics recompute(Game game) {
+        return new MatchStatistics(game);
+    }
+
+    private static void assertSameStatistics(Game game, MatchStatistics expected, MatchStatistics actual) {
+        GameDefinition definition = game.getDefinition();
+        assertEquals(expected.getTotalActionCount(), actual.getTotalActionCount());
+        for (int p = 0; p < definition.getPlayerCount(); p++) {
+            for (int t = 0; t < definition.getTeamCount(); t++) {
+                assertEquals(expected.getPlayerPoints(p, t), actual.getPlayerPoints(p, t));
+            }
+            assertEquals(expected.getPlayerActionCount(p), actual.getPlayerActionCount(p));
+            assertEquals(expected.getShareOfTeamPoints(p), actual.getShareOfTeamPoints(p), 1e-9);
+        }
+        for (int a = 0; a < definition.getActionCount(); a++) {
+            assertEquals(expected.getActionFrequency(a), actual.getActionFrequency(a), 1e-9);
+        }
+    }
+
+    @Test
+    public void incrementalStatistics_matchRecomputation() throws Exception {
+        for (String fileName : new String[]{"beach_volleyball.json", "snooker.json"}) {
+            Game game = GameTest.loadGame(fileName);
+            MatchStatistics statistics = new MatchStatistics(game);
+            game.addMatchListener(statistics);
+            Random random = new Random(fileName.hashCode());
+            for (int round = 0; round < 20; round++) {
+                GameTest.tapRandomly(game, random, 30);
+                game.undo();
+                game.redo();
+                game.undo();
+                assertSameStatistics(game, recompute(game), statistics);
+            }
+            game.reset();
+            assertEquals(0, statistics.getTotalActionCount());
+            assertEquals(0, statistics.getDurationMillis());
+        }
+    }
+
+    @Test
+    public void playerPoints_sumToTeamScores() throws Exception {
+        Game game = GameTest.loadGame("beach_volleyball.json");
+        MatchStatistics statistics = new MatchStatistics(game);
+        game.addMatchListener(statistics);
+        GameTest.tapRandomly(game, new Random(15), 500);
+
+        GameDefinition definition = game.getDefinition();
+        for (int t = 0; t < definition.getTeamCount(); t++) {
+            int points = 0;
+            for (int p = 0; p < definition.getPlayerCount(); p++) {
+                points += statistics.getPlayerPoints(p, t);
+            }
+            assertEquals(game.getScores()[t], points);
+        }
+        double shares = 0;
+        for (int p = definition.getFirstPlayer(0); p < definition.getFirstPlayer(1); p++) {
+            shares += statistics.getShareOfTeamPoints(p);
+        }
+        int ownPoints = 0;
+        for (int p = definition.getFirstPlayer(0); p < definition.getFirstPlayer(1); p++) {
+            ownPoints += statistics.getPlayerContribution(p);
+        }
+        assertEquals((double) ownPoints / game.getScores()[0], shares, 1e-9);
+    }
+
+    @Test
+    public void pointsPerMinute_useTimeOfChanges() throws Exception {
+        Game game = GameTest.loadGame("snooker.json");
+        MatchStatistics statistics = new MatchStatistics(game);
+        // red ball of the first player twice, one minute apart
+        game.getState().apply(0, 1);
+        statistics.onActionChanged(0, 1, 1000);
+        game.getState().apply(0, 1);
+        statistics.onActionChanged(0, 1, 61000);
+        assertEquals(60000, statistics.getDurationMillis());
+        assertEquals(game.getScores()[0], statistics.getPointsPerMinute(0), 1e-9);
+        assertEquals(statistics.getPlayerContribution(0), statistics.getPlayerPointsPerMinute(0), 1e-9);
+    }
+
+    @Test
+    public void pointsPerMinute_ignoreRestoredPoints() throws Exception {
+        Game game = GameTest.loadGame("snooker.json");
+        int[] counts = new int[game.getActionCount()];
+        counts[0] = 30;
+        game.setCurrentState(counts);
+        MatchStatistics statistics = new MatchStatistics(game);
+        assertEquals(30, statistics.getPlayerContribution(0));
+        game.getState().apply(0, 1);
+        statistics.onActionChanged(0, 1, 5000);
+        game.getState().apply(0, 1);
+        statistics.onActionChanged(0, 1, 65000);
+        assertEquals(32, statistics.getPlayerContribution(0));
+        assertEquals(2, statistics.getPointsPerMinute(0), 1e-9);
+        assertEquals(2, statistics.getPlayerPointsPerMinute(0), 1e-9);
+    }
+}
@@ -0,0 +1,201 @@
+package com.example.android.scorekeeper.model;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the live sync of the match over the loopback
+ */
+public class MatchSyncTest {
+
+    private static final String LOOPBACK = "127.0.0.1";
+    private static final long TIMEOUT_MS = 10000;
+
+    /**
+     * Changes are applied on the reading thread of the subscriber
+     */
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private final ArrayList<MatchSubscriber> mSubscribers = new ArrayList<>(0);
+    private MatchBroadcaster mBroadcaster;
+
+    @After
+    public void tearDown() {
+        for (MatchSubscriber subscriber : mSubscribers) {
+            subscriber.close();
+        }
+        if (mBroadcaster != null) mBroadcaster.close();
+    }
+
+    private MatchBroadcaster broadcast(Game game) throws Exception {
+        mBroadcaster = new MatchBroadcaster(game, InetAddress.getByName(LOOPBACK), 0);
+        game.addMatchListener(mBroadcaster);
+        return mBroadcaster;
+    }
+
+    private MatchSubscriber subscribe(Game display) {
+        MatchSubscriber subscriber = new MatchSubscriber(display, LOOPBACK, mBroadcaster.getPort(), DIRECT);
+        mSubscribers.add(subscriber);
+        subscriber.start();
+        return subscriber;
+    }
+
+    private void awaitSynced() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        for (MatchSubscriber subscriber : mSubscribers) {
+            while (subscriber.getSequence() != mBroadcaster.getSequence()) {
+                assertTrue("subscriber is not synced", System.currentTimeMillis() < deadline);
+                Thread.sleep(1);
+            }
+        }
+    }
+
+    @Test
+    public void sync_appliesTapsUndosAndReset() throws Exception {
+        Game scorer = GameTest.loadGame("beach_volleyball.json");
+        Game display = GameTest.loadGame("beach_volleyball.json");
+        broadcast(scorer);
+        subscribe(display);
+        awaitSynced();
+
+        GameTest.tapRandomly(scorer, new Random(21), 500);
+        awaitSynced();
+        assertArrayEquals(scorer.getCurrentState(), display.getCurrentState());
+        assertArrayEquals(scorer.getScores(), display.getScores());
+
+        scorer.reset();
+        awaitSynced();
+        assertArrayEquals(new int[scorer.getActionCount()], display.getCurrentState());
+        scorer.getGameAction(3).addAction();
+        awaitSynced();
+        assertArrayEquals(scorer.getCurrentState(), display.getCurrentState());
+    }
+
+    @Test
+    public void sync_resyncsLateJoinerFromSnapshot() throws Exception {
+        Game scorer = GameParserTest.parse(GameParserTest.syntheticDefinition(2, 5, 8));
+        broadcast(scorer);
+        GameTest.tapRandomly(scorer, new Random(22), 300);
+        Game display = GameParserTest.parse(GameParserTest.syntheticDefinition(2, 5, 8));
+        subscribe(display);
+        // changes racing with the snapshot are sent by the next batch and skipped by their sequence
+        GameTest.tapRandomly(scorer, new Random(23), 300);
+        awaitSynced();
+        assertArrayEquals(scorer.getCurrentState(), display.getCurrentState());
+        assertArrayEquals(scorer.getScores(), display.getScores());
+    }
+
+    @Test
+    public void sync_rejectsOtherGame() throws Exception {
+        Game scorer = GameTest.loadGame("beach_volleyball.json");
+        broadcast(scorer);
+        scorer.getGameAction(0).addAction();
+        Game display = GameTest.loadGame("snooker.json");
+        MatchSubscriber subscriber = subscribe(display);
+        Thread.sleep(100);
+        assertEquals(-1, subscriber.getSequence());
+        assertEquals(0, display.getScores()[0]);
+        mSubscribers.remove(subscriber);
+        subscriber.close();
+    }
+
+    @Test
+    public void sync_deliversToFiftySubscribersUnderFiftyMillis() throws Exception {
+        final int subscriberCount = 50;
+        final int tapCount = 300;
+        Game scorer = GameTest.loadGame("snooker.json");
+        broadcast(scorer);
+        final long[] tapped = new long[tapCount + 1];
+        final long[][] received = new long[subscriberCount][tapCount + 1];
+        for (int s = 0; s < subscriberCount; s++) {
+            final long[] times = received[s];
+            Game display = GameTest.loadGame("snooker.json");
+            display.addMatchListener(new MatchListener() {
+                private int mChanges;
+
+                @Override
+                public void onActionChanged(int actionIndex, int delta, long timestamp) {
+                    times[++mChanges] = System.nanoTime();
+                }
+
+                @Override
+                public void onSetEnded(long timestamp) {
+                }
+
+                @Override
+                public void onMatchReset() {
+                }
+            });
+            subscribe(display);
+        }
+        awaitSynced();
+        assertEquals(subscriberCount, mBroadcaster.getSubscriberCount());
+
+        Random random = new Random(24);
+        for (int i = 1; i <= tapCount; i++) {
+            tapped[i] = System.nanoTime();
+            scorer.getGameAction(random.nextInt(scorer.getActionCount())).addAction();
+            if (random.nextInt(4) == 0) Thread.sleep(1);
+        }
+        awaitSynced();
+
+        long[] latencies = new long[subscriberCount * tapCount];
+        for (int s = 0; s < subscriberCount; s++) {
+            for (int i = 1; i <= tapCount; i++) {
+                latencies[s * tapCount + i - 1] = received[s][i] - tapped[i];
+            }
+        }
+        Arrays.sort(latencies);
+        long p99 = latencies[latencies.length * 99 / 100] / 1000;
+        assertTrue("p99 latency " + p99 + " us", p99 < 50000);
+    }
+
+    @Test
+    public void sync_dropsStalledSubscriberWithoutDelayingOthers() throws Exception {
+        Game scorer = GameParserTest.parse(GameParserTest.syntheticDefinition(2, 20, 50));
+        broadcast(scorer);
+        // the stalled display connects but never reads, so its writes block when the socket buffers are full
+        Socket stalled = new Socket();
+        stalled.setReceiveBufferSize(1024);
+        stalled.connect(new InetSocketAddress(LOOPBACK, mBroadcaster.getPort()));
+        try {
+            Game display = GameParserTest.parse(GameParserTest.syntheticDefinition(2, 20, 50));
+            subscribe(display);
+            awaitSynced();
+            assertEquals(2, mBroadcaster.getSubscriberCount());
+
+            Random random = new Random(25);
+            int[] counts = new int[scorer.getActionCount()];
+            long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+            while (mBroadcaster.getSubscriberCount() > 1) {
+                assertTrue("stalled subscriber is not dropped", System.currentTimeMillis() < deadline);
+                // snapshots of all counters fill the buffers of the stalled display quickly
+                counts[random.nextInt(counts.length)]++;
+                scorer.setCurrentState(counts);
+                mBroadcaster.flush();
+                awaitSynced();
+                assertArrayEquals(scorer.getCurrentState(), display.getCurrentState());
+            }
+            GameTest.tapRandomly(scorer, random, 100);
+            awaitSynced();
+            assertArrayEquals(scorer.getCurrentState(), display.getCurrentState());
+        } finally {
+            stalled.close();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.android.scorekeeper.model;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the timeline of the match and its analytics
+ */
+public class MatchTimelineTest {
+
+    private static final long WINDOW_MS = 60000;
+
+    /**
+     * Applying the change to the state and to the timeline at the given time
+     */
+    private static void change(Game game, MatchTimeline timeline, int actionIndex, int delta, long timestamp) {
+        game.getState().apply(actionIndex, delta);
+        timeline.onActionChanged(actionIndex, delta, timestamp);
+    }
+
+    @Test
+    public void runs_followScoringTeam() throws Exception {
+        Game game = GameTest.loadGame("beach_volleyball.json");
+        MatchTimeline timeline = new MatchTimeline(game, WINDOW_MS);
+        // action 0 is a point of the first team, action 8 of the second team
+        change(game, timeline, 0, 1, 0);
+        change(game, timeline, 1, 1, 10);
+        change(game, timeline, 8, 1, 20);
+        change(game, timeline, 0, 1, 30);
+        change(game, timeline, 0, 1, 40);
+        change(game, timeline, 0, 1, 50);
+        assertEquals(3, timeline.getLongestRun(0));
+        assertEquals(1, timeline.getLongestRun(1));
+        assertEquals(0, timeline.getCurrentRunTeam());
+        assertEquals(3, timeline.getCurrentRunPoints());
+
+        // the taken back tap leaves the run
+        change(game, timeline, 0, -1, 60);
+        assertEquals(5, timeline.getEventCount());
+        assertEquals(0, timeline.getCurrentRunTeam());
+        assertEquals(2, timeline.getCurrentRunPoints());
+        assertEquals(2, timeline.getLongestRun(0));
+        assertEquals(1, timeline.getLongestRun(1));
+    }
+
+    @Test
+    public void undo_doesNotInflateRuns() throws Exception {
+        Game game = GameTest.loadGame("beach_volleyball.json");
+        MatchTimeline timeline = new MatchTimeline(game, WINDOW_MS);
+        for (int i = 0; i < 10; i++) {
+            change(game, timeline, 0, 1, i * 20);
+            change(game, timeline, 0, -1, i * 20 + 10);
+        }
+        change(game, timeline, 0, 1, 200);
+        assertEquals(1, timeline.getLongestRun(0));
+        assertEquals(1, timeline.getEventCount());
+        assertEquals(1, timeline.getWindowPoints(0));
+    }
+
+    @Test
+    public void analytics_matchFullRecomputation() throws Exception {
+        Game game = GameTest.loadGame("snooker.json");
+        MatchTimeline timeline = new MatchTimeline(game, WINDOW_MS);
+        Random random = new Random(16);
+        long timestamp = 0;
+        int teamCount = game.getTeamCount();
+        for (int i = 0; i < 5000; i++) {
+            int actionIndex = random.nextInt(game.getActionCount());
+            int delta = random.nextInt(5) == 0 && game.getState().getActionsCount(actionIndex) > 0 ? -1 : 1;
+            timestamp += random.nextInt(5000);
+            change(game, timeline, actionIndex, delta, timestamp);
+            if (i % 97 != 0) continue;
+
+            int[] scores = new int[teamCount];
+            int[] longestRuns = new int[teamCount];
+            int runTeam = -1;
+            int runPoints = 0;
+            int leader = -1;
+            int leadChanges = 0;
+            for (int e = 0; e < timeline.getEventCount(); e++) {
+                int scoringTeam = -1;
+                boolean isNegative = false;
+                for (int t = 0; t < teamCount; t++) {
+                    int points = timeline.getPoints(e, t);
+                    scores[t] += points;
+                    if (points > 0 && (scoringTeam < 0 || points > timeline.getPoints(e, scoringTeam))) scoringTeam = t;
+                    if (points < 0) isNegative = true;
+                }
+                if (isNegative) {
+                    runTeam = -1;
+                    runPoints = 0;
+                } else if (scoringTeam >= 0) {
+                    if (scoringTeam != runTeam) runPoints = 0;
+                    runTeam = scoringTeam;
+                    runPoints += timeline.getPoints(e, scoringTeam);
+                    longestRuns[runTeam] = Math.max(longestRuns[runTeam], runPoints);
+                }
+                int current = scores[0] > scores[1] ? 0 : scores[1] > scores[0] ? 1 : -1;
+                if (current >= 0 && current != leader) {
+                    if (leader >= 0) leadChanges++;
+                    leader = current;
+                }
+            }
+            assertArrayEquals(game.getScores(), scores);
+            assertEquals(leadChanges, timeline.getLeadChanges());
+            for (int t = 0; t < teamCount; t++) {
+                assertEquals(longestRuns[t], timeline.getLongestRun(t));
+                int windowPoints = 0;
+                for (int e = timeline.getEventCount() - 1; e >= 0 && timeline.getTimestamp(e) > timestamp - WINDOW_MS; e--) {
+                    windowPoints += timeline.getPoints(e, t);
+                }
+                assertEquals(windowPoints, timeline.getWindowPoints(t));
+                assertEquals(windowPoints * 60000.0 / WINDOW_MS, timeline.getScoringRate(t, timestamp), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void scoringRate_slidesOnRead() throws Exception {
+        Game game = GameTest.loadGame("beach_volleyball.json");
+        MatchTimeline timeline = new MatchTimeline(game, WINDOW_MS);
+        change(game, timeline, 0, 1, 0);
+        change(game, timeline, 0, 1, 30000);
+        assertEquals(2, timeline.getScoringRate(0, 30000), 1e-9);
+        assertEquals(1, timeline.getScoringRate(0, 60000), 1e-9);
+        assertEquals(0, timeline.getScoringRate(0, 90000), 1e-9);
+        assertEquals(0, timeline.getScoringRate(0, 30000), 1e-9);
+        assertEquals(0, timeline.getScoringRate(0), 1e-9);
+    }
+
+    @Test
+    public void listener_recordsGameChanges() throws Exception {
+        Game game = GameTest.loadGame("snooker.json");
+        MatchTimeline timeline = new MatchTimeline(game);
+        game.addMatchListener(timeline);
+        GameTest.tapRandomly(game, new Random(17), 100);
+        game.undo();
+        game.undo();
+        game.redo();
+        for (int e = 1; e < timeline.getEventCount(); e++) {
+            assertTrue(timeline.getTimestamp(e) >= timeline.getTimestamp(e - 1));
+        }
+
+        // the timeline of the journal has the same taps; a redone tap can be at other position
+        MatchTimeline rebuilt = new MatchTimeline(game);
+        assertEquals(timeline.getEventCount(), rebuilt.getEventCount());
+        for (int t = 0; t < game.getTeamCount(); t++) {
+            int points = 0;
+            int rebuiltPoints = 0;
+            for (int e = 0; e < timeline.getEventCount(); e++) {
+                points += timeline.getPoints(e, t);
+                rebuiltPoints += rebuilt.getPoints(e, t);
+            }
+            assertEquals(game.getScores()[t], points);
+            assertEquals(game.getScores()[t], rebuiltPoints);
+        }
+        assertEquals(timeline.getLeader(), rebuilt.getLeader());
+
+        int[] counts = game.getCurrentState();
+        game.reset();
+        assertEquals(0, timeline.getEventCount());
+        game.setCurrentState(counts);
+        assertEquals(game.getScores()[0] > game.getScores()[1] ? 0
+                : game.getScores()[1] > game.getScores()[0] ? 1 : -1, timeline.getLeader());
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.android.scorekeeper.model;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * View of the org.json object for the game built from the JSON tree
+ */
+class OrgJsonObjectView implements JsonObjectView {
+
+    private final JSONObject mObject;
+
+    OrgJsonObjectView(JSONObject object) {
+        mObject = object;
+    }
+
+    static Game newGame(String json) {
+        try {
+            return new Game(new OrgJsonObjectView(new JSONObject(json)));
+        } catch (JSONException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    @Override
+    public int length() {
+        return mObject.length();
+    }
+
+    @Override
+    public Iterator<String> keys() {
+        return mObject.keys();
+    }
+
+    @Override
+    public String getString(String name) throws IOException {
+        try {
+            return mObject.getString(name);
+        } catch (JSONException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public JsonObjectView getObject(String name) throws IOException {
+        try {
+            Object value = mObject.get(name);
+            return value instanceof JSONObject ? new OrgJsonObjectView((JSONObject) value) : null;
+        } catch (JSONException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public int[] getIntArray(String name) throws IOException {
+        try {
+            Object value = mObject.get(name);
+            if (!(value instanceof JSONArray)) return null;
+            JSONArray array = (JSONArray) value;
+            int[] result = new int[array.length()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = array.getInt(i);
+            }
+            return result;
+        } catch (JSONException e) {
+            throw new IOException(e);
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package com.example.android.scorekeeper.model;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the rules of the match and their evaluation
+ */
+public class RuleEvaluatorTest {
+
+    /**
+     * Actions giving a point to the first and to the second team of the beach volleyball
+     */
+    private static final int POINT_1 = 0;
+    private static final int POINT_2 = 8;
+
+    private static RuleEvaluator listen(Game game) {
+        RuleEvaluator evaluator = new RuleEvaluator(game);
+        game.addMatchListener(evaluator);
+        return evaluator;
+    }
+
+    private static void tap(Game game, int actionIndex, int times) {
+        for (int i = 0; i < times; i++) {
+            game.getGameAction(actionIndex).addAction();
+        }
+    }
+
+    @Test
+    public void parser_readsRules() throws Exception {
+        MatchRules volleyball = GameTest.loadGame("beach_volleyball.json").getDefinition().getRules();
+        assertEquals(new MatchRules("Set", new int[]{21, 21, 15}, 2, 2), volleyball);
+        assertEquals(15, volleyball.getSetPoints(2));
+        assertEquals(15, volleyball.getSetPoints(5));
+        MatchRules snooker = GameTest.loadGame("snooker.json").getDefinition().getRules();
+        assertEquals("Frame", snooker.getSetName());
+        assertTrue(snooker.isManual(0));
+        assertEquals(4, snooker.getSetsToWin());
+    }
+
+    @Test
+    public void sets_requireMarginAndEndMatch() throws Exception {
+        Game game = GameTest.loadGame("beach_volleyball.json");
+        RuleEvaluator evaluator = listen(game);
+        tap(game, POINT_1, 20);
+        tap(game, POINT_2, 20);
+        tap(game, POINT_1, 1);
+        assertEquals(0, evaluator.getSetCount());
+        tap(game, POINT_2, 2);
+        tap(game, POINT_1, 1);
+        tap(game, POINT_2, 1);
+        assertEquals(0, evaluator.getSetCount());
+        tap(game, POINT_2, 1);
+        assertEquals(1, evaluator.getSetCount());
+        assertEquals(1, evaluator.getSetWinner(0));
+        assertEquals(22, evaluator.getFinishedSetScore(0, 0));
+        assertEquals(24, evaluator.getFinishedSetScore(0, 1));
+
+        tap(game, POINT_1, 21);
+        assertEquals(2, evaluator.getSetCount());
+        assertEquals(-1, evaluator.getMatchWinner());
+        // the final set is played to 15 points
+        tap(game, POINT_2, 14);
+        tap(game, POINT_1, 15);
+        assertEquals(2, evaluator.getSetCount());
+        tap(game, POINT_1, 1);
+        assertEquals(3, evaluator.getSetCount());
+        assertEquals(0, evaluator.getMatchWinner());
+        assertEquals(2, evaluator.getSetsWon(0));
+        assertEquals(1, evaluator.getSetsWon(1));
+    }
+
+    @Test
+    public void undo_reopensFinishedSet() throws Exception {
+        Game game = GameTest.loadGame("beach_volleyball.json");
+        RuleEvaluator evaluator = listen(game);
+        tap(game, POINT_1, 21);
+        assertEquals(1, evaluator.getSetCount());
+        tap(game, POINT_2, 1);
+        game.undo();
+        assertEquals(1, evaluator.getSetCount());
+        game.undo();
+        assertEquals(0, evaluator.getSetCount());
+        assertEquals(0, evaluator.getSetsWon(0));
+        assertEquals(20, evaluator.getSetScore(0));
+        game.redo();
+        assertEquals(1, evaluator.getSetCount());
+        assertEquals(0, evaluator.getSetScore(0));
+    }
+
+    @Test
+    public void endSet_awardsManualFrameToLeader() throws Exception {
+        Game game = GameTest.loadGame("snooker.json");
+        RuleEvaluator evaluator = listen(game);
+        tap(game, 6, 10);
+        assertEquals(0, evaluator.getSetCount());
+        assertEquals(0, evaluator.endSet());
+        assertEquals(1, evaluator.getSetCount());
+        assertEquals(70, evaluator.getFinishedSetScore(0, 0));
+        assertEquals(-1, evaluator.endSet());
+        assertEquals(1, evaluator.getSetCount());
+        for (int frame = 0; frame < 3; frame++) {
+            tap(game, 0, 1);
+            evaluator.endSet();
+        }
+        assertEquals(0, evaluator.getMatchWinner());
+    }
+
+    @Test
+    public void reset_rebuildsSetsFromJournal() throws Exception {
+        Game game = GameTest.loadGame("beach_volleyball.json");
+        RuleEvaluator evaluator = listen(game);
+        Random random = new Random(17);
+        for (int i = 0; i < 120; i++) {
+            tap(game, random.nextBoolean() ? POINT_1 : POINT_2, 1);
+        }
+        game.undo();
+
+        Game restored = GameTest.loadGame("beach_volleyball.json");
+        RuleEvaluator restoredEvaluator = listen(restored);
+        MatchStateCodec.decode(MatchStateCodec.encode(game), restored);
+        assertEquals(evaluator.getSetCount(), restoredEvaluator.getSetCount());
+        assertEquals(evaluator.getMatchWinner(), restoredEvaluator.getMatchWinner());
+        for (int t = 0; t < game.getTeamCount(); t++) {
+            assertEquals(evaluator.getSetScore(t), restoredEvaluator.getSetScore(t));
+            assertEquals(evaluator.getSetsWon(t), restoredEvaluator.getSetsWon(t));
+        }
+    }
+
+    @Test
+    public void endSet_isKeptByRestoreAndMigration() throws Exception {
+        Game game = GameTest.loadGame("snooker.json");
+        RuleEvaluator evaluator = listen(game);
+        tap(game, 6, 3);
+        evaluator.endSet();
+        tap(game, 0, 2);
+        tap(game, 16, 1);
+        evaluator.endSet();
+        tap(game, 1, 1);
+        assertEquals(2, evaluator.getSetCount());
+
+        Game restored = GameTest.loadGame("snooker.json");
+        RuleEvaluator restoredEvaluator = listen(restored);
+        MatchStateCodec.decode(MatchStateCodec.encode(game), restored);
+        Game migrated = GameTest.loadGame("snooker.json");
+        RuleEvaluator migratedEvaluator = listen(migrated);
+        new DefinitionMigration(game.getDefinition(), migrated.getDefinition()).migrate(game, migrated);
+        for (RuleEvaluator rebuilt : new RuleEvaluator[]{restoredEvaluator, migratedEvaluator, new RuleEvaluator(game)}) {
+            assertEquals(2, rebuilt.getSetCount());
+            for (int t = 0; t < game.getTeamCount(); t++) {
+                assertEquals(evaluator.getFinishedSetScore(0, t), rebuilt.getFinishedSetScore(0, t));
+                assertEquals(evaluator.getFinishedSetScore(1, t), rebuilt.getFinishedSetScore(1, t));
+                assertEquals(evaluator.getSetScore(t), rebuilt.getSetScore(t));
+            }
+        }
+    }
+
+    @Test
+    public void undo_reopensManualSet() throws Exception {
+        Game game = GameTest.loadGame("snooker.json");
+        RuleEvaluator evaluator = listen(game);
+        tap(game, 6, 2);
+        game.getGameAction(6).undoAction();
+        evaluator.endSet();
+        assertEquals(1, evaluator.getSetCount());
+        // the undone removal gives the point back to the reopened frame
+        game.undo();
+        assertEquals(0, evaluator.getSetCount());
+        assertEquals(14, evaluator.getSetScore(0));
+        assertEquals(0, game.getJournal().getMarkCount());
+
+        evaluator.endSet();
+        tap(game, 0, 1);
+        game.undo();
+        game.undo();
+        assertEquals(0, evaluator.getSetCount());
+        assertEquals(7, evaluator.getSetScore(0));
+        Game restored = GameTest.loadGame("snooker.json");
+        MatchStateCodec.decode(MatchStateCodec.encode(game), restored);
+        RuleEvaluator restoredEvaluator = listen(restored);
+        assertEquals(0, restoredEvaluator.getSetCount());
+        restored.redo();
+        assertEquals(1, restoredEvaluator.getSetCount());
+
+        // the redone point ends the frame again
+        game.redo();
+        assertEquals(1, evaluator.getSetCount());
+        assertEquals(14, evaluator.getFinishedSetScore(0, 0));
+        assertEquals(0, evaluator.getSetScore(0));
+        game.redo();
+        assertEquals(1, evaluator.getSetScore(0));
+        RuleEvaluator rebuilt = new RuleEvaluator(game);
+        assertEquals(1, rebuilt.getSetCount());
+        assertEquals(1, rebuilt.getSetScore(0));
+    }
+
+    private static void assertSameSets(RuleEvaluator expected, RuleEvaluator actual, int teamCount) {
+        assertEquals(expected.getSetCount(), actual.getSetCount());
+        assertEquals(expected.getMatchWinner(), actual.getMatchWinner());
+        for (int s = 0; s < expected.getSetCount(); s++) {
+            assertEquals(expected.getSetWinner(s), actual.getSetWinner(s));
+            for (int t = 0; t < teamCount; t++) {
+                assertEquals(expected.getFinishedSetScore(s, t), actual.getFinishedSetScore(s, t));
+            }
+        }
+        for (int t = 0; t < teamCount; t++) {
+            assertEquals(expected.getSetScore(t), actual.getSetScore(t));
+            assertEquals(expected.getSetsWon(t), actual.getSetsWon(t));
+        }
+    }
+
+    @Test
+    public void sets_areKeptPastSavedJournalAndSnapshots() throws Exception {
+        File dir = Files.createTempDirectory("sets").toFile();
+        Game game = GameTest.loadGame("snooker.json");
+        RuleEvaluator evaluator = listen(game);
+        MatchLog log = new MatchLog(dir, "match", game);
+        game.addMatchListener(log);
+        // each frame is longer than the saved journal and the second one passes the snapshot of the log
+        tap(game, 6, 1500);
+        tap(game, 16, 1400);
+        evaluator.endSet();
+        tap(game, 16, 2000);
+        tap(game, 6, 100);
+        evaluator.endSet();
+        tap(game, 6, 10);
+        assertTrue(game.getJournal().size() > MatchStateCodec.MAX_JOURNAL_ENTRIES);
+        assertTrue(game.getJournal().size() > MatchLog.SNAPSHOT_INTERVAL);
+        assertEquals(2, evaluator.getSetCount());
+        assertEquals(0, evaluator.getSetWinner(0));
+        assertEquals(1, evaluator.getSetWinner(1));
+        log.flushAndWait();
+
+        Game restored = GameTest.loadGame("snooker.json");
+        RuleEvaluator restoredEvaluator = listen(restored);
+        MatchStateCodec.decode(MatchStateCodec.encode(game), restored);
+        assertSameSets(evaluator, restoredEvaluator, game.getTeamCount());
+        // the restored match is saved again with the sets before its journal
+        Game saved = GameTest.loadGame("snooker.json");
+        MatchStateCodec.decode(MatchStateCodec.encode(restored), saved);
+        assertSameSets(evaluator, new RuleEvaluator(saved), game.getTeamCount());
+
+        Game recovered = GameTest.loadGame("snooker.json");
+        RuleEvaluator recoveredEvaluator = listen(recovered);
+        assertTrue(MatchLog.recover(dir, "match", recovered));
+        assertSameSets(evaluator, recoveredEvaluator, game.getTeamCount());
+        log.close();
+        for (File file : dir.listFiles()) {
+            assertTrue(file.delete());
+        }
+        assertTrue(dir.delete());
+
+        // sets ended by the points are kept as well
+        Game volleyball = GameTest.loadGame("beach_volleyball.json");
+        RuleEvaluator volleyballEvaluator = listen(volleyball);
+        tap(volleyball, POINT_1, 20);
+        tap(volleyball, POINT_2, 20);
+        for (int i = 0; i < 800; i++) {
+            tap(volleyball, POINT_1, 1);
+            tap(volleyball, POINT_2, 1);
+        }
+        tap(volleyball, POINT_2, 2);
+        tap(volleyball, POINT_1, 5);
+        assertEquals(1, volleyballEvaluator.getSetCount());
+        Game restoredVolleyball = GameTest.loadGame("beach_volleyball.json");
+        MatchStateCodec.decode(MatchStateCodec.encode(volleyball), restoredVolleyball);
+        assertSameSets(volleyballEvaluator, new RuleEvaluator(restoredVolleyball), volleyball.getTeamCount());
+    }
+}